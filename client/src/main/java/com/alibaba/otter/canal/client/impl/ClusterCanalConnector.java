@@ -9,6 +9,7 @@ import org.slf4j.LoggerFactory;
 
 import com.alibaba.otter.canal.client.CanalConnector;
 import com.alibaba.otter.canal.client.CanalNodeAccessStrategy;
+import com.alibaba.otter.canal.protocol.CanalPacket.Compression;
 import com.alibaba.otter.canal.protocol.Message;
 import com.alibaba.otter.canal.protocol.exception.CanalClientException;
 
@@ -20,16 +21,19 @@ import com.alibaba.otter.canal.protocol.exception.CanalClientException;
  */
 public class ClusterCanalConnector implements CanalConnector {
 
-    private final Logger            logger        = LoggerFactory.getLogger(this.getClass());
+    private final Logger            logger         = LoggerFactory.getLogger(this.getClass());
     private String                  username;
     private String                  password;
-    private int                     soTimeout     = 10000;
-    private int                     retryTimes    = 3;
-    private int                     retryInterval = 5000;                                    // 重试的时间间隔，默认5秒
+    private int                     soTimeout      = 10000;
+    private int                     retryTimes     = 3;
+    private int                     retryInterval  = 5000;                                    // 重试的时间间隔，默认5秒
     private CanalNodeAccessStrategy accessStrategy;
     private SimpleCanalConnector    currentConnector;
     private String                  destination;
-    private String                  filter;                                                  // 记录上一次的filter提交值,便于自动重试时提交
+    private String                  filter;                                                   // 记录上一次的filter提交值,便于自动重试时提交
+    private Compression             compression    = Compression.NONE;                        // 期望的数据压缩方式
+    private int                     prefetchSize   = 0;                                       // pipeline模式预取的batch数量
+    private boolean                 lazyParseEntry = false;                                   // 是否延迟反序列化entry
 
     public ClusterCanalConnector(String username, String password, String destination,
                                  CanalNodeAccessStrategy accessStrategy){
@@ -53,6 +57,9 @@ public class ClusterCanalConnector implements CanalConnector {
 
                     };
                     currentConnector.setSoTimeout(soTimeout);
+                    currentConnector.setCompression(compression);
+                    currentConnector.setPrefetchSize(prefetchSize);
+                    currentConnector.setLazyParseEntry(lazyParseEntry);
                     if (filter != null) {
                         currentConnector.setFilter(filter);
                     }
@@ -326,6 +333,30 @@ public class ClusterCanalConnector implements CanalConnector {
         this.accessStrategy = accessStrategy;
     }
 
+    public Compression getCompression() {
+        return compression;
+    }
+
+    public void setCompression(Compression compression) {
+        this.compression = compression;
+    }
+
+    public boolean isLazyParseEntry() {
+        return lazyParseEntry;
+    }
+
+    public void setLazyParseEntry(boolean lazyParseEntry) {
+        this.lazyParseEntry = lazyParseEntry;
+    }
+
+    public int getPrefetchSize() {
+        return prefetchSize;
+    }
+
+    public void setPrefetchSize(int prefetchSize) {
+        this.prefetchSize = prefetchSize;
+    }
+
     public SimpleCanalConnector getCurrentConnector() {
         return currentConnector;
     }
@@ -7,7 +7,10 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
@@ -19,8 +22,8 @@ import com.alibaba.otter.canal.client.impl.running.ClientRunningListener;
 import com.alibaba.otter.canal.client.impl.running.ClientRunningMonitor;
 import com.alibaba.otter.canal.common.utils.AddressUtils;
 import com.alibaba.otter.canal.common.utils.BooleanMutex;
+import com.alibaba.otter.canal.common.utils.NamedThreadFactory;
 import com.alibaba.otter.canal.common.zookeeper.ZkClientx;
-import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
 import com.alibaba.otter.canal.protocol.CanalPacket.Ack;
 import com.alibaba.otter.canal.protocol.CanalPacket.ClientAck;
 import com.alibaba.otter.canal.protocol.CanalPacket.ClientAuth;
@@ -35,19 +38,36 @@ import com.alibaba.otter.canal.protocol.CanalPacket.Sub;
 import com.alibaba.otter.canal.protocol.CanalPacket.Unsub;
 import com.alibaba.otter.canal.protocol.ClientIdentity;
 import com.alibaba.otter.canal.protocol.Message;
+import com.alibaba.otter.canal.protocol.compress.CompressionUtils;
 import com.alibaba.otter.canal.protocol.exception.CanalClientException;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.WireFormat;
 
 /**
  * 基于{@linkplain CanalServerWithNetty}定义的网络协议接口，对于canal数据进行get/rollback/ack等操作
  * 
+ * <pre>
+ * prefetchSize > 0时开启pipeline模式：
+ * 1. 每次get除了当前请求，额外保持prefetchSize个get请求在途，应用处理当前batch时server已经在准备后续的batch
+ * 2. ack不再单独发送，先缓存在本地，和下一次的get请求合并到一次写操作中发送
+ * 3. server按照get的顺序返回batch，ack必须按照batchId返回的顺序提交，乱序的ack在本地直接抛出异常
+ * 4. rollback会丢弃在途的响应并回滚所有未ack的batch，rollback(batchId)等同于rollback()
+ * 5. 在途的get使用发出时的batchSize/timeout，如果timeout为0(无限等待)，rollback可能需要等到这些get返回
+ * 
+ * lazyParseEntry为true时，返回的Message只保留entry序列化之后的数据，通过{@linkplain Message#getLazyEntries()}按需解析
+ * </pre>
+ * 
  * @author jianghang 2012-10-24 下午05:37:20
  * @version 1.0.0
  */
 public class SimpleCanalConnector implements CanalConnector {
 
     private static final Logger  logger                = LoggerFactory.getLogger(SimpleCanalConnector.class);
+    private static final int     INIT_READ_BUFFER_SIZE = 64 * 1024;
+    private static final int     MAX_READ_BUFFER_SIZE  = 8 * 1024 * 1024;                                    // 超过该大小的接收缓存用完之后不再保留
+    private static final ScheduledExecutorService ackFlusher = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("canal-client-ack-flush"));
     private SocketAddress        address;
     private String               username;
     private String               password;
@@ -56,8 +76,10 @@ public class SimpleCanalConnector implements CanalConnector {
 
     private final ByteBuffer     readHeader            = ByteBuffer.allocate(4).order(ByteOrder.BIG_ENDIAN);
     private final ByteBuffer     writeHeader           = ByteBuffer.allocate(4).order(ByteOrder.BIG_ENDIAN);
+    private byte[]               readBuffer            = new byte[INIT_READ_BUFFER_SIZE];                    // 复用的接收缓存
     private SocketChannel        channel;
     private List<Compression>    supportedCompressions = new ArrayList<Compression>();
+    private Compression          compression           = Compression.NONE;                                   // 期望的数据压缩方式，server不支持时退化为NONE
     private ClientIdentity       clientIdentity;
     private ClientRunningMonitor runningMonitor;                                                             // 运行控制
     private ZkClientx            zkClientx;
@@ -65,11 +87,21 @@ public class SimpleCanalConnector implements CanalConnector {
     private volatile boolean     connected             = false;                                              // 代表connected是否已正常执行，因为有HA，不代表在工作中
     private boolean              rollbackOnConnect     = true;                                               // 是否在connect链接成功后，自动执行rollback操作
     private boolean              rollbackOnDisConnect  = false;                                              // 是否在connect链接成功后，自动执行rollback操作
+    private int                  prefetchSize          = 0;                                                  // pipeline模式预取的batch数量，0代表关闭
+    private boolean              lazyParseEntry        = false;                                              // 是否延迟到访问时才反序列化entry
 
     // 读写数据分别使用不同的锁进行控制，减小锁粒度,读也需要排他锁，并发度容易造成数据包混乱，反序列化失败
     private Object               readDataLock          = new Object();
     private Object               writeDataLock         = new Object();
 
+    // pipeline模式的状态，锁的顺序为readDataLock -> pipelineLock -> writeDataLock
+    private Object               pipelineLock          = new Object();
+    private int                  inflightGets          = 0;                                                  // 已经发出但还未读取响应的get
+    private LinkedList<Long>     unackedBatchIds       = new LinkedList<Long>();                             // 已经返回给应用但未ack的batchId
+    private List<byte[]>         pendingAcks           = new ArrayList<byte[]>();                            // 等待和下一次get一起发送的ack
+    private boolean              ackFlushScheduled     = false;
+    private long                 ackFlushDelay         = 100;                                                // 缓存的ack最长等待时间(ms)，期间没有新的get也会单独发送
+
     public SimpleCanalConnector(SocketAddress address, String username, String password, String destination){
         this(address, username, password, destination, 60000);
     }
@@ -109,6 +141,8 @@ public class SimpleCanalConnector implements CanalConnector {
     public void disconnect() throws CanalClientException {
         if (rollbackOnDisConnect && channel.isConnected()) {
             rollback();
+        } else if (channel != null && channel.isConnected()) {
+            flushAcks();
         }
 
         connected = false;
@@ -130,7 +164,10 @@ public class SimpleCanalConnector implements CanalConnector {
                 address = getNextAddress();
             }
             channel.connect(address);
-            Packet p = Packet.parseFrom(readNextPacket(channel));
+            synchronized (pipelineLock) {
+                inflightGets = 0; // 新的链接上没有在途的响应
+            }
+            Packet p = readNextPacket(channel);
             if (p.getVersion() != 1) {
                 throw new CanalClientException("unsupported version at this client.");
             }
@@ -140,7 +177,14 @@ public class SimpleCanalConnector implements CanalConnector {
             }
             //
             Handshake handshake = Handshake.parseFrom(p.getBody());
+            supportedCompressions.clear();
             supportedCompressions.addAll(handshake.getSupportedCompressionsList());
+            // 通过auth包的compression告诉server期望的压缩方式
+            Compression negotiated = Compression.NONE;
+            if (compression != Compression.NONE && supportedCompressions.contains(compression)
+                && CompressionUtils.isSupported(compression)) {
+                negotiated = compression;
+            }
             //
             ClientAuth ca = ClientAuth.newBuilder()
                 .setUsername(username != null ? username : "")
@@ -150,11 +194,12 @@ public class SimpleCanalConnector implements CanalConnector {
             writeWithHeader(channel,
                 Packet.newBuilder()
                     .setType(PacketType.CLIENTAUTHENTICATION)
+                    .setCompression(negotiated)
                     .setBody(ca.toByteString())
                     .build()
                     .toByteArray());
             //
-            Packet ack = Packet.parseFrom(readNextPacket(channel));
+            Packet ack = readNextPacket(channel);
             if (ack.getType() != PacketType.ACK) {
                 throw new CanalClientException("unexpected packet type when ack is expected");
             }
@@ -189,6 +234,7 @@ public class SimpleCanalConnector implements CanalConnector {
 
     public void subscribe(String filter) throws CanalClientException {
         waitClientRunning();
+        rollbackInflight();
         try {
             writeWithHeader(channel,
                 Packet.newBuilder()
@@ -202,7 +248,7 @@ public class SimpleCanalConnector implements CanalConnector {
                     .build()
                     .toByteArray());
             //
-            Packet p = Packet.parseFrom(readNextPacket(channel));
+            Packet p = readNextPacket(channel);
             Ack ack = Ack.parseFrom(p.getBody());
             if (ack.getErrorCode() > 0) {
                 throw new CanalClientException("failed to subscribe with reason: " + ack.getErrorMessage());
@@ -216,6 +262,7 @@ public class SimpleCanalConnector implements CanalConnector {
 
     public void unsubscribe() throws CanalClientException {
         waitClientRunning();
+        rollbackInflight();
         try {
             writeWithHeader(channel,
                 Packet.newBuilder()
@@ -228,7 +275,7 @@ public class SimpleCanalConnector implements CanalConnector {
                     .build()
                     .toByteArray());
             //
-            Packet p = Packet.parseFrom(readNextPacket(channel));
+            Packet p = readNextPacket(channel);
             Ack ack = Ack.parseFrom(p.getBody());
             if (ack.getErrorCode() > 0) {
                 throw new CanalClientException("failed to unSubscribe with reason: " + ack.getErrorMessage());
@@ -261,21 +308,24 @@ public class SimpleCanalConnector implements CanalConnector {
                 unit = TimeUnit.MILLISECONDS;
             }
 
-            writeWithHeader(channel,
-                Packet.newBuilder()
-                    .setType(PacketType.GET)
-                    .setBody(Get.newBuilder()
-                        .setAutoAck(false)
-                        .setDestination(clientIdentity.getDestination())
-                        .setClientId(String.valueOf(clientIdentity.getClientId()))
-                        .setFetchSize(size)
-                        .setTimeout(time)
-                        .setUnit(unit.ordinal())
-                        .build()
-                        .toByteString())
+            byte[] get = Packet.newBuilder()
+                .setType(PacketType.GET)
+                .setBody(Get.newBuilder()
+                    .setAutoAck(false)
+                    .setDestination(clientIdentity.getDestination())
+                    .setClientId(String.valueOf(clientIdentity.getClientId()))
+                    .setFetchSize(size)
+                    .setTimeout(time)
+                    .setUnit(unit.ordinal())
                     .build()
-                    .toByteArray());
+                    .toByteString())
+                .build()
+                .toByteArray();
+            if (prefetchSize > 0) {
+                return pipelinedGet(get);
+            }
 
+            writeWithHeader(channel, get);
             return receiveMessages();
         } catch (IOException e) {
             throw new CanalClientException(e);
@@ -283,19 +333,21 @@ public class SimpleCanalConnector implements CanalConnector {
     }
 
     private Message receiveMessages() throws InvalidProtocolBufferException, IOException {
-        Packet p = Packet.parseFrom(readNextPacket(channel));
+        Packet p = readNextPacket(channel);
         switch (p.getType()) {
             case MESSAGES: {
-                if (!p.getCompression().equals(Compression.NONE)) {
-                    throw new CanalClientException("compression is not supported in this connector");
+                if (!CompressionUtils.isSupported(p.getCompression())) {
+                    throw new CanalClientException("compression " + p.getCompression()
+                                                   + " is not supported in this connector");
                 }
 
-                Messages messages = Messages.parseFrom(p.getBody());
-                Message result = new Message(messages.getBatchId());
-                for (ByteString byteString : messages.getMessagesList()) {
-                    result.addEntry(Entry.parseFrom(byteString));
+                if (p.getCompression() == Compression.NONE) {
+                    // entry直接引用body的切片，不再逐个复制
+                    return parseMessages(p.getBody());
                 }
-                return result;
+
+                Messages messages = Messages.parseFrom(CompressionUtils.decompress(p.getCompression(), p.getBody()));
+                return Message.fromRawEntries(messages.getBatchId(), messages.getMessagesList(), lazyParseEntry);
             }
             case ACK: {
                 Ack ack = Ack.parseFrom(p.getBody());
@@ -307,6 +359,43 @@ public class SimpleCanalConnector implements CanalConnector {
         }
     }
 
+    /**
+     * pipeline模式下依次读取在途get的响应，并补齐在途的get请求，缓存的ack和get合并在一次写操作中发送
+     */
+    private Message pipelinedGet(byte[] get) throws IOException {
+        synchronized (pipelineLock) {
+            List<byte[]> packets = new ArrayList<byte[]>(pendingAcks);
+            pendingAcks.clear();
+            while (inflightGets <= prefetchSize) { // 当前请求 + prefetchSize个预取
+                packets.add(get);
+                inflightGets++;
+            }
+            writeWithHeader(channel, packets);
+        }
+
+        synchronized (readDataLock) {
+            Message message = null;
+            try {
+                message = receiveMessages();
+            } catch (IOException e) {
+                resetPipeline();
+                throw e;
+            } catch (CanalClientException e) {
+                // server的ack/get错误都是以ACK包返回，无法确定链接上剩余的响应和get的对应关系，只能重建链接
+                resetPipeline();
+                throw e;
+            }
+
+            synchronized (pipelineLock) {
+                inflightGets--;
+                if (message.getId() != -1) {
+                    unackedBatchIds.add(message.getId());
+                }
+            }
+            return message;
+        }
+    }
+
     public void ack(long batchId) throws CanalClientException {
         waitClientRunning();
         ClientAck ca = ClientAck.newBuilder()
@@ -314,12 +403,45 @@ public class SimpleCanalConnector implements CanalConnector {
             .setClientId(String.valueOf(clientIdentity.getClientId()))
             .setBatchId(batchId)
             .build();
+        byte[] packet = Packet.newBuilder()
+            .setType(PacketType.CLIENTACK)
+            .setBody(ca.toByteString())
+            .build()
+            .toByteArray();
+        if (prefetchSize > 0) {
+            if (batchId == -1L) { // -1代表get没有数据，server会直接忽略
+                return;
+            }
+
+            synchronized (pipelineLock) {
+                Long firstBatchId = unackedBatchIds.peek();
+                if (firstBatchId == null || firstBatchId.longValue() != batchId) {
+                    throw new CanalClientException(String.format("ack error , batchId:%d is not the firstly:%s , please ack in order",
+                        batchId,
+                        firstBatchId));
+                }
+
+                unackedBatchIds.poll();
+                pendingAcks.add(packet);
+                if (inflightGets == 0) {
+                    // 没有在途的get，不会有马上到来的写操作，直接发送
+                    flushAcks();
+                } else if (!ackFlushScheduled) {
+                    // 应用处理完之后可能长时间不再get，超时之后单独发送，避免server端的batch一直得不到确认
+                    ackFlushScheduled = true;
+                    ackFlusher.schedule(new Runnable() {
+
+                        public void run() {
+                            flushAcks();
+                        }
+                    }, ackFlushDelay, TimeUnit.MILLISECONDS);
+                }
+            }
+            return;
+        }
+
         try {
-            writeWithHeader(channel, Packet.newBuilder()
-                .setType(PacketType.CLIENTACK)
-                .setBody(ca.toByteString())
-                .build()
-                .toByteArray());
+            writeWithHeader(channel, packet);
         } catch (IOException e) {
             throw new CanalClientException(e);
         }
@@ -327,17 +449,34 @@ public class SimpleCanalConnector implements CanalConnector {
 
     public void rollback(long batchId) throws CanalClientException {
         waitClientRunning();
+        if (prefetchSize > 0) {
+            // 丢弃的在途batch在server端仍然存在，只能回滚所有的batch
+            batchId = 0;
+        }
         ClientRollback ca = ClientRollback.newBuilder()
             .setDestination(clientIdentity.getDestination())
             .setClientId(String.valueOf(clientIdentity.getClientId()))
             .setBatchId(batchId)
             .build();
+        byte[] packet = Packet.newBuilder()
+            .setType(PacketType.CLIENTROLLBACK)
+            .setBody(ca.toByteString())
+            .build()
+            .toByteArray();
         try {
-            writeWithHeader(channel, Packet.newBuilder()
-                .setType(PacketType.CLIENTROLLBACK)
-                .setBody(ca.toByteString())
-                .build()
-                .toByteArray());
+            if (prefetchSize > 0) {
+                drainPipeline();
+                synchronized (pipelineLock) {
+                    // 已经处理完的batch先ack，再回滚剩余的batch
+                    List<byte[]> packets = new ArrayList<byte[]>(pendingAcks);
+                    packets.add(packet);
+                    pendingAcks.clear();
+                    unackedBatchIds.clear();
+                    writeWithHeader(channel, packets);
+                }
+            } else {
+                writeWithHeader(channel, packet);
+            }
         } catch (IOException e) {
             throw new CanalClientException(e);
         }
@@ -350,6 +489,96 @@ public class SimpleCanalConnector implements CanalConnector {
 
     // ==================== helper method ====================
 
+    /**
+     * 读取并丢弃在途get的响应，对应的batch需要随后rollback
+     */
+    private void drainPipeline() throws IOException {
+        synchronized (readDataLock) {
+            while (true) {
+                synchronized (pipelineLock) {
+                    if (inflightGets == 0) {
+                        return;
+                    }
+                    inflightGets--;
+                }
+                readNextPacket(channel);
+            }
+        }
+    }
+
+    /**
+     * subscribe/unsubscribe的响应不经过get的队列，需要先清空在途的get
+     */
+    private void rollbackInflight() {
+        boolean inflight;
+        synchronized (pipelineLock) {
+            inflight = inflightGets > 0;
+        }
+        if (inflight) {
+            rollback();
+        }
+    }
+
+    /**
+     * 发送缓存的ack
+     */
+    private void flushAcks() {
+        synchronized (pipelineLock) {
+            ackFlushScheduled = false;
+            if (pendingAcks.isEmpty() || channel == null || !channel.isConnected()) {
+                return;
+            }
+
+            try {
+                writeWithHeader(channel, pendingAcks);
+                pendingAcks.clear();
+            } catch (IOException e) {
+                logger.warn("exception on flushing acks:{} \n {}", channel, e);
+            }
+        }
+    }
+
+    /**
+     * 重建链接并回滚所有未ack的batch，已经缓存的ack在rollback之前发送
+     */
+    private void resetPipeline() {
+        synchronized (pipelineLock) {
+            inflightGets = 0;
+        }
+        doDisconnnect();
+        try {
+            doConnect();
+            if (filter != null) {
+                subscribe(filter);
+            }
+            rollback();
+        } catch (Throwable e) {
+            logger.warn("exception on resetting pipeline:{} \n {}", channel, e);
+        }
+    }
+
+    /**
+     * 多个数据包合并在一次写操作中发送
+     */
+    private void writeWithHeader(SocketChannel channel, List<byte[]> bodys) throws IOException {
+        int size = 0;
+        for (byte[] body : bodys) {
+            size += 4 + body.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.BIG_ENDIAN);
+        for (byte[] body : bodys) {
+            buffer.putInt(body.length);
+            buffer.put(body);
+        }
+        buffer.flip();
+        synchronized (writeDataLock) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
     private void writeWithHeader(SocketChannel channel, byte[] body) throws IOException {
         synchronized (writeDataLock) {
             writeHeader.clear();
@@ -360,14 +589,52 @@ public class SimpleCanalConnector implements CanalConnector {
         }
     }
 
-    private byte[] readNextPacket(SocketChannel channel) throws IOException {
+    private Message parseMessages(ByteString body) throws IOException {
+        long batchId = 0;
+        List<ByteString> entries = new ArrayList<ByteString>();
+        CodedInputStream input = body.newCodedInput();
+        while (true) {
+            int tag = input.readTag();
+            if (tag == 0) {
+                break;
+            }
+
+            int fieldNumber = WireFormat.getTagFieldNumber(tag);
+            int wireType = WireFormat.getTagWireType(tag);
+            if (fieldNumber == Messages.BATCH_ID_FIELD_NUMBER && wireType == WireFormat.WIRETYPE_VARINT) {
+                batchId = input.readInt64();
+            } else if (fieldNumber == Messages.MESSAGES_FIELD_NUMBER
+                       && wireType == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+                int length = input.readRawVarint32();
+                int offset = input.getTotalBytesRead();
+                input.skipRawBytes(length);
+                entries.add(body.substring(offset, offset + length));
+            } else if (!input.skipField(tag)) {
+                break;
+            }
+        }
+        return Message.fromRawEntries(batchId, entries, lazyParseEntry);
+    }
+
+    /**
+     * 读取一个数据包，数据先读到复用的接收缓存，解析Packet时body只做一次复制
+     */
+    private Packet readNextPacket(SocketChannel channel) throws IOException {
         synchronized (readDataLock) {
             readHeader.clear();
             read(channel, readHeader);
             int bodyLen = readHeader.getInt(0);
-            ByteBuffer bodyBuf = ByteBuffer.allocate(bodyLen).order(ByteOrder.BIG_ENDIAN);
-            read(channel, bodyBuf);
-            return bodyBuf.array();
+            if (readBuffer.length < bodyLen) {
+                readBuffer = new byte[bodyLen];
+            }
+            read(channel, ByteBuffer.wrap(readBuffer, 0, bodyLen));
+            try {
+                return Packet.PARSER.parseFrom(readBuffer, 0, bodyLen);
+            } finally {
+                if (readBuffer.length > MAX_READ_BUFFER_SIZE) {
+                    readBuffer = new byte[INIT_READ_BUFFER_SIZE];
+                }
+            }
         }
     }
 
@@ -479,4 +746,36 @@ public class SimpleCanalConnector implements CanalConnector {
         this.filter = filter;
     }
 
+    public Compression getCompression() {
+        return compression;
+    }
+
+    public void setCompression(Compression compression) {
+        this.compression = compression;
+    }
+
+    public boolean isLazyParseEntry() {
+        return lazyParseEntry;
+    }
+
+    public void setLazyParseEntry(boolean lazyParseEntry) {
+        this.lazyParseEntry = lazyParseEntry;
+    }
+
+    public long getAckFlushDelay() {
+        return ackFlushDelay;
+    }
+
+    public void setAckFlushDelay(long ackFlushDelay) {
+        this.ackFlushDelay = ackFlushDelay;
+    }
+
+    public int getPrefetchSize() {
+        return prefetchSize;
+    }
+
+    public void setPrefetchSize(int prefetchSize) {
+        this.prefetchSize = prefetchSize;
+    }
+
 }
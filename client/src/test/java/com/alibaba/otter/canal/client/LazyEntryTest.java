@@ -0,0 +1,97 @@
+package com.alibaba.otter.canal.client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.protocol.CanalEntry.Column;
+import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
+import com.alibaba.otter.canal.protocol.CanalEntry.EntryType;
+import com.alibaba.otter.canal.protocol.CanalEntry.EventType;
+import com.alibaba.otter.canal.protocol.CanalEntry.Header;
+import com.alibaba.otter.canal.protocol.CanalEntry.RowChange;
+import com.alibaba.otter.canal.protocol.CanalEntry.RowData;
+import com.alibaba.otter.canal.protocol.LazyEntry;
+import com.alibaba.otter.canal.protocol.Message;
+import com.google.protobuf.ByteString;
+
+public class LazyEntryTest {
+
+    @Test
+    public void testPartialParse() throws Exception {
+        Entry entry = buildEntry(1, EntryType.ROWDATA);
+        LazyEntry lazyEntry = new LazyEntry(entry.toByteString());
+        Assert.assertEquals(entry.getHeader(), lazyEntry.getHeader());
+        Assert.assertEquals(EntryType.ROWDATA, lazyEntry.getEntryType());
+        Assert.assertEquals(entry.getStoreValue(), lazyEntry.getStoreValue());
+        Assert.assertEquals(RowChange.parseFrom(entry.getStoreValue()), lazyEntry.getRowChange());
+        Assert.assertEquals(entry, lazyEntry.getEntry());
+
+        // 没有设置entryType/storeValue时使用默认值
+        Entry empty = Entry.newBuilder().setHeader(entry.getHeader()).build();
+        lazyEntry = new LazyEntry(empty.toByteString());
+        Assert.assertEquals(EntryType.ROWDATA, lazyEntry.getEntryType());
+        Assert.assertEquals(ByteString.EMPTY, lazyEntry.getStoreValue());
+
+        lazyEntry = new LazyEntry(buildEntry(2, EntryType.TRANSACTIONEND).toByteString());
+        Assert.assertEquals(EntryType.TRANSACTIONEND, lazyEntry.getEntryType());
+        Assert.assertEquals("table_2", lazyEntry.getHeader().getTableName());
+    }
+
+    @Test
+    public void testLazyMessage() {
+        List<Entry> entries = new ArrayList<Entry>();
+        List<ByteString> rawEntries = new ArrayList<ByteString>();
+        for (int i = 0; i < 10; i++) {
+            Entry entry = buildEntry(i, EntryType.ROWDATA);
+            entries.add(entry);
+            rawEntries.add(entry.toByteString());
+        }
+
+        Message message = Message.fromRawEntries(1L, rawEntries, true);
+        Assert.assertEquals(10, message.getLazyEntries().size());
+        Assert.assertEquals("table_3", message.getLazyEntries().get(3).getHeader().getTableName());
+        Assert.assertEquals(entries, message.getEntries());
+
+        message = Message.fromRawEntries(1L, rawEntries, false);
+        Assert.assertEquals(entries, message.getEntries());
+        Assert.assertEquals(entries.get(5).getHeader(), message.getLazyEntries().get(5).getHeader());
+    }
+
+    @Test
+    public void testAddEntry() {
+        List<ByteString> rawEntries = new ArrayList<ByteString>();
+        rawEntries.add(buildEntry(0, EntryType.ROWDATA).toByteString());
+
+        Message message = Message.fromRawEntries(1L, rawEntries, true);
+        Assert.assertEquals(1, message.getLazyEntries().size());
+        message.addEntry(buildEntry(1, EntryType.ROWDATA));
+        // 序列化之后的数据已经过期，不能再被使用
+        Assert.assertNull(message.getRawEntries());
+        Assert.assertEquals(2, message.getEntries().size());
+        Assert.assertEquals("table_1", message.getLazyEntries().get(1).getHeader().getTableName());
+    }
+
+    private Entry buildEntry(int index, EntryType entryType) {
+        Header.Builder headerBuilder = Header.newBuilder();
+        headerBuilder.setLogfileName("mysql-bin.000001");
+        headerBuilder.setLogfileOffset(1024L * index);
+        headerBuilder.setSchemaName("canal_test");
+        headerBuilder.setTableName("table_" + index);
+        headerBuilder.setEventType(EventType.INSERT);
+
+        RowData.Builder rowDataBuilder = RowData.newBuilder();
+        rowDataBuilder.addAfterColumns(Column.newBuilder().setIndex(0).setName("id").setValue(String.valueOf(index)));
+        RowChange.Builder rowChangeBuilder = RowChange.newBuilder();
+        rowChangeBuilder.setEventType(EventType.INSERT);
+        rowChangeBuilder.addRowDatas(rowDataBuilder.build());
+
+        Entry.Builder entryBuilder = Entry.newBuilder();
+        entryBuilder.setHeader(headerBuilder.build());
+        entryBuilder.setEntryType(entryType);
+        entryBuilder.setStoreValue(rowChangeBuilder.build().toByteString());
+        return entryBuilder.build();
+    }
+}
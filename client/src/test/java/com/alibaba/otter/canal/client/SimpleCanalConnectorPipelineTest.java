@@ -0,0 +1,312 @@
+package com.alibaba.otter.canal.client;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.client.impl.SimpleCanalConnector;
+import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
+import com.alibaba.otter.canal.protocol.CanalEntry.EntryType;
+import com.alibaba.otter.canal.protocol.CanalEntry.Header;
+import com.alibaba.otter.canal.protocol.CanalPacket.Ack;
+import com.alibaba.otter.canal.protocol.CanalPacket.ClientAck;
+import com.alibaba.otter.canal.protocol.CanalPacket.ClientRollback;
+import com.alibaba.otter.canal.protocol.CanalPacket.Handshake;
+import com.alibaba.otter.canal.protocol.CanalPacket.Messages;
+import com.alibaba.otter.canal.protocol.CanalPacket.Packet;
+import com.alibaba.otter.canal.protocol.CanalPacket.PacketType;
+import com.alibaba.otter.canal.protocol.Message;
+import com.alibaba.otter.canal.protocol.exception.CanalClientException;
+import com.google.protobuf.ByteString;
+
+/**
+ * 基于本地socket模拟canal server，验证pipeline模式下get/ack/rollback的发送顺序
+ *
+ * <pre>
+ * 模拟的server按照链接分配batchId，第n个链接上的batchId从n * 100 + 1开始递增，收到的请求按链接记录下来
+ * </pre>
+ *
+ * @author yzy
+ * @version 1.0.24
+ */
+public class SimpleCanalConnectorPipelineTest {
+
+    private FakeCanalServer      server;
+    private SimpleCanalConnector connector;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeCanalServer();
+        server.start();
+        connector = new SimpleCanalConnector(new InetSocketAddress("127.0.0.1", server.getPort()),
+            "",
+            "",
+            "example",
+            5000);
+        connector.setPrefetchSize(2);
+        connector.setRollbackOnConnect(false);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try {
+            connector.disconnect();
+        } catch (Throwable e) {
+            // ignore
+        }
+        server.close();
+    }
+
+    @Test
+    public void testPipelinedGet() throws Exception {
+        connector.connect();
+        Message message = connector.getWithoutAck(10);
+        Assert.assertEquals(101, message.getId());
+        Assert.assertEquals(101, message.getEntries().get(0).getHeader().getExecuteTime());
+        // 当前请求 + 2个预取
+        expect(1, "GET", "GET", "GET");
+
+        Assert.assertEquals(102, connector.getWithoutAck(10).getId());
+        // 只补齐一个在途的get
+        expect(1, "GET");
+
+        connector.ack(101);
+        connector.ack(102);
+        Assert.assertEquals(103, connector.getWithoutAck(10).getId());
+        // ack缓存在本地，和下一次get一起发送
+        expect(1, "ACK:101", "ACK:102", "GET");
+
+        connector.ack(103);
+        connector.disconnect();
+        // 断开链接之前发送缓存的ack
+        expect(1, "ACK:103");
+    }
+
+    @Test
+    public void testAckThenIdle() throws Exception {
+        connector.setAckFlushDelay(50);
+        connector.connect();
+        Assert.assertEquals(101, connector.getWithoutAck(10).getId());
+        expect(1, "GET", "GET", "GET");
+
+        // ack之后不再get，缓存的ack在超时之后单独发送
+        connector.ack(101);
+        expect(1, "ACK:101");
+
+        Assert.assertEquals(102, connector.getWithoutAck(10).getId());
+        expect(1, "GET");
+        connector.ack(102);
+        expect(1, "ACK:102");
+    }
+
+    @Test
+    public void testAckOrder() throws Exception {
+        connector.connect();
+        Assert.assertEquals(101, connector.getWithoutAck(10).getId());
+        Assert.assertEquals(102, connector.getWithoutAck(10).getId());
+
+        try {
+            connector.ack(102);
+            Assert.fail();
+        } catch (CanalClientException e) {
+            // 必须按照batch返回的顺序ack
+        }
+
+        connector.ack(-1L); // 没有数据的batch直接忽略
+        connector.ack(101);
+        try {
+            connector.ack(101);
+            Assert.fail();
+        } catch (CanalClientException e) {
+            // 重复ack
+        }
+        connector.ack(102);
+
+        Assert.assertEquals(103, connector.getWithoutAck(10).getId());
+        expect(1, "GET", "GET", "GET", "GET", "ACK:101", "ACK:102", "GET");
+    }
+
+    @Test
+    public void testRollbackDrain() throws Exception {
+        connector.connect();
+        Assert.assertEquals(101, connector.getWithoutAck(10).getId());
+        connector.ack(101);
+        connector.rollback(101);
+        // 已经处理完的batch先ack，rollback(batchId)退化为回滚所有batch
+        expect(1, "GET", "GET", "GET", "ACK:101", "ROLLBACK:0");
+
+        // 在途的102/103已经被读取丢弃
+        Assert.assertEquals(104, connector.getWithoutAck(10).getId());
+        expect(1, "GET", "GET", "GET");
+        connector.ack(104);
+    }
+
+    @Test
+    public void testResetPipeline() throws Exception {
+        server.failBatchId = 101;
+        connector.setFilter("test\\..*");
+        connector.setRollbackOnConnect(true);
+        connector.connect();
+        expect(1, "SUB", "ROLLBACK:0");
+
+        try {
+            connector.getWithoutAck(10);
+            Assert.fail();
+        } catch (CanalClientException e) {
+            // server返回错误
+        }
+
+        // 重建链接，重新订阅并回滚所有未ack的batch
+        expect(2, "SUB", "ROLLBACK:0");
+        Assert.assertEquals(201, connector.getWithoutAck(10).getId());
+        expect(2, "GET", "GET", "GET");
+        connector.ack(201);
+    }
+
+    private void expect(int connection, String... requests) throws InterruptedException {
+        for (String request : requests) {
+            Assert.assertEquals(request, server.getRequests(connection).poll(5, TimeUnit.SECONDS));
+        }
+    }
+
+    /**
+     * 模拟的canal server，每个链接一个线程处理
+     */
+    private static class FakeCanalServer extends Thread {
+
+        private final ServerSocket                        serverSocket;
+        private final AtomicInteger                       connections = new AtomicInteger(0);
+        private final Map<Integer, BlockingQueue<String>> requests    = new ConcurrentHashMap<Integer, BlockingQueue<String>>();
+        private volatile long                             failBatchId = -1;
+
+        public FakeCanalServer() throws IOException{
+            serverSocket = new ServerSocket(0);
+            setDaemon(true);
+        }
+
+        public int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        public synchronized BlockingQueue<String> getRequests(int connection) {
+            BlockingQueue<String> queue = requests.get(connection);
+            if (queue == null) {
+                queue = new LinkedBlockingQueue<String>();
+                requests.put(connection, queue);
+            }
+            return queue;
+        }
+
+        public void run() {
+            while (true) {
+                final Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (IOException e) {
+                    return;
+                }
+
+                final int connection = connections.incrementAndGet();
+                Thread handler = new Thread(new Runnable() {
+
+                    public void run() {
+                        try {
+                            handle(socket, connection);
+                        } catch (IOException e) {
+                            // 客户端关闭链接
+                        } finally {
+                            IOUtils.closeQuietly(socket);
+                        }
+                    }
+                });
+                handler.setDaemon(true);
+                handler.start();
+            }
+        }
+
+        private void handle(Socket socket, int connection) throws IOException {
+            DataInputStream input = new DataInputStream(socket.getInputStream());
+            DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+            BlockingQueue<String> queue = getRequests(connection);
+            long batchId = connection * 100;
+
+            write(output, PacketType.HANDSHAKE, Handshake.newBuilder().build().toByteArray());
+            read(input); // auth
+            write(output, PacketType.ACK, Ack.newBuilder().build().toByteArray());
+            while (true) {
+                Packet packet = read(input);
+                switch (packet.getType()) {
+                    case SUBSCRIPTION:
+                        queue.add("SUB");
+                        write(output, PacketType.ACK, Ack.newBuilder().build().toByteArray());
+                        break;
+                    case GET:
+                        queue.add("GET");
+                        batchId++;
+                        if (batchId == failBatchId) {
+                            write(output, PacketType.ACK, Ack.newBuilder()
+                                .setErrorCode(400)
+                                .setErrorMessage("batch failed")
+                                .build()
+                                .toByteArray());
+                        } else {
+                            Entry entry = Entry.newBuilder()
+                                .setHeader(Header.newBuilder().setExecuteTime(batchId).build())
+                                .setEntryType(EntryType.ROWDATA)
+                                .build();
+                            write(output, PacketType.MESSAGES, Messages.newBuilder()
+                                .setBatchId(batchId)
+                                .addMessages(entry.toByteString())
+                                .build()
+                                .toByteArray());
+                        }
+                        break;
+                    case CLIENTACK:
+                        queue.add("ACK:" + ClientAck.parseFrom(packet.getBody()).getBatchId());
+                        break;
+                    case CLIENTROLLBACK:
+                        queue.add("ROLLBACK:" + ClientRollback.parseFrom(packet.getBody()).getBatchId());
+                        break;
+                    default:
+                        queue.add(packet.getType().name());
+                }
+            }
+        }
+
+        private Packet read(DataInputStream input) throws IOException {
+            byte[] body = new byte[input.readInt()];
+            input.readFully(body);
+            return Packet.parseFrom(body);
+        }
+
+        private void write(DataOutputStream output, PacketType type, byte[] body) throws IOException {
+            byte[] packet = Packet.newBuilder()
+                .setType(type)
+                .setBody(ByteString.copyFrom(body))
+                .build()
+                .toByteArray();
+            output.writeInt(packet.length);
+            output.write(packet);
+            output.flush();
+        }
+
+        public void close() throws IOException {
+            serverSocket.close();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.alibaba.otter.canal.client.compress;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.junit.Test;
+
+import com.alibaba.otter.canal.protocol.CanalEntry.Column;
+import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
+import com.alibaba.otter.canal.protocol.CanalEntry.EntryType;
+import com.alibaba.otter.canal.protocol.CanalEntry.EventType;
+import com.alibaba.otter.canal.protocol.CanalEntry.Header;
+import com.alibaba.otter.canal.protocol.CanalEntry.RowChange;
+import com.alibaba.otter.canal.protocol.CanalEntry.RowData;
+import com.alibaba.otter.canal.protocol.CanalPacket.Compression;
+import com.alibaba.otter.canal.protocol.CanalPacket.Messages;
+import com.alibaba.otter.canal.protocol.compress.CompressionUtils;
+import com.google.protobuf.ByteString;
+
+/**
+ * 对比不同压缩方式的压缩率、吞吐以及cpu消耗，数据为宽表的update事件
+ */
+public class CompressionPerformanceNoRunTest {
+
+    private static final int BATCH_SIZE = 1000;
+    private static final int ROUNDS     = 200;
+
+    @Test
+    public void testCompare() throws Exception {
+        byte[] data = buildMessages().toByteArray();
+        Compression[] compressions = { Compression.NONE, Compression.LZF, Compression.ZLIB, Compression.GZIP };
+        ThreadMXBean mxBean = ManagementFactory.getThreadMXBean();
+        for (Compression compression : compressions) {
+            // 预热
+            for (int i = 0; i < 20; i++) {
+                Messages.parseFrom(CompressionUtils.decompress(compression,
+                    CompressionUtils.compress(compression, data)));
+            }
+
+            long compressedSize = 0;
+            long compressCpu = 0;
+            long decompressCpu = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < ROUNDS; i++) {
+                long cpu = mxBean.getCurrentThreadCpuTime();
+                ByteString body = CompressionUtils.compress(compression, data);
+                long cpu2 = mxBean.getCurrentThreadCpuTime();
+                Messages.parseFrom(CompressionUtils.decompress(compression, body));
+                long cpu3 = mxBean.getCurrentThreadCpuTime();
+                compressedSize = body.size();
+                compressCpu += cpu2 - cpu;
+                decompressCpu += cpu3 - cpu2;
+            }
+            long cost = System.nanoTime() - start;
+
+            System.out.println(String.format("%-5s : size %d -> %d (%.1f%%) , throughput %d MB/s , compress cpu %d us/batch , decompress cpu %d us/batch",
+                compression,
+                data.length,
+                compressedSize,
+                compressedSize * 100.0 / data.length,
+                (long) data.length * ROUNDS * 1000 / Math.max(cost / 1000, 1) / 1024 / 1024,
+                compressCpu / ROUNDS / 1000,
+                decompressCpu / ROUNDS / 1000));
+        }
+    }
+
+    private Messages buildMessages() {
+        Messages.Builder messagesBuilder = Messages.newBuilder();
+        messagesBuilder.setBatchId(1L);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            Header.Builder headerBuilder = Header.newBuilder();
+            headerBuilder.setLogfileName("mysql-bin.000001");
+            headerBuilder.setLogfileOffset(1024L * i);
+            headerBuilder.setServerId(1L);
+            headerBuilder.setExecuteTime(System.currentTimeMillis());
+            headerBuilder.setSchemaName("canal_test");
+            headerBuilder.setTableName("wide_table");
+            headerBuilder.setEventType(EventType.UPDATE);
+
+            RowData.Builder rowDataBuilder = RowData.newBuilder();
+            for (int j = 0; j < 40; j++) {
+                rowDataBuilder.addBeforeColumns(buildColumn(i, j, false));
+                rowDataBuilder.addAfterColumns(buildColumn(i, j, j % 10 == 0));
+            }
+            RowChange.Builder rowChangeBuilder = RowChange.newBuilder();
+            rowChangeBuilder.setEventType(EventType.UPDATE);
+            rowChangeBuilder.addRowDatas(rowDataBuilder.build());
+
+            Entry.Builder entryBuilder = Entry.newBuilder();
+            entryBuilder.setHeader(headerBuilder.build());
+            entryBuilder.setEntryType(EntryType.ROWDATA);
+            entryBuilder.setStoreValue(rowChangeBuilder.build().toByteString());
+            messagesBuilder.addMessages(entryBuilder.build().toByteString());
+        }
+        return messagesBuilder.build();
+    }
+
+    private Column buildColumn(int row, int index, boolean updated) {
+        Column.Builder columnBuilder = Column.newBuilder();
+        columnBuilder.setIndex(index);
+        columnBuilder.setName("column_" + index);
+        columnBuilder.setIsKey(index == 0);
+        columnBuilder.setUpdated(updated);
+        columnBuilder.setMysqlType(index % 2 == 0 ? "bigint(20)" : "varchar(64)");
+        columnBuilder.setValue(index == 0 ? String.valueOf(row) : "value_" + (updated ? row : index));
+        return columnBuilder.build();
+    }
+}
@@ -0,0 +1,106 @@
+package com.alibaba.otter.canal.client.compress;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.protocol.CanalPacket.Compression;
+import com.alibaba.otter.canal.protocol.compress.CompressionUtils;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+
+public class CompressionUtilsTest {
+
+    private Random random = new Random();
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        for (Compression compression : CompressionUtils.SUPPORTED_COMPRESSIONS) {
+            for (int size : new int[] { 0, 1, 3, 33, 1000, 100 * 1024, 3 * 1024 * 1024 }) {
+                byte[] text = buildText(size);
+                Assert.assertTrue(Arrays.equals(text, roundTrip(compression, text)));
+
+                byte[] binary = new byte[size];
+                random.nextBytes(binary);
+                Assert.assertTrue(Arrays.equals(binary, roundTrip(compression, binary)));
+            }
+        }
+    }
+
+    @Test
+    public void testGzipCompatible() throws IOException {
+        byte[] data = buildText(64 * 1024);
+        // 和jdk的gzip实现互相兼容
+        ByteString compressed = CompressionUtils.compress(Compression.GZIP, data);
+        GZIPInputStream input = new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int n;
+        while ((n = input.read(buf)) > 0) {
+            output.write(buf, 0, n);
+        }
+        Assert.assertTrue(Arrays.equals(data, output.toByteArray()));
+
+        output = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(output);
+        gzip.write(data);
+        gzip.close();
+        CodedInputStream decoded = CompressionUtils.decompress(Compression.GZIP, ByteString.copyFrom(output.toByteArray()));
+        Assert.assertTrue(Arrays.equals(data, decoded.readRawBytes(data.length)));
+        Assert.assertTrue(decoded.isAtEnd());
+    }
+
+    @Test
+    public void testCorrupt() {
+        byte[] data = buildText(10000);
+        for (Compression compression : CompressionUtils.SUPPORTED_COMPRESSIONS) {
+            byte[] compressed = CompressionUtils.compress(compression, data).toByteArray();
+            byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+            try {
+                CompressionUtils.decompress(compression, ByteString.copyFrom(truncated));
+                Assert.fail(compression + " should be failed");
+            } catch (IOException e) {
+                // expect
+            }
+        }
+    }
+
+    @Test
+    public void testLzfInvalidLength() {
+        byte[] compressed = CompressionUtils.compress(Compression.LZF, buildText(1000)).toByteArray();
+        // 伪造超大的原始长度，解压之前就需要失败，不能按照该长度分配内存
+        compressed[0] = (byte) 0x7f;
+        compressed[1] = (byte) 0xff;
+        compressed[2] = (byte) 0xff;
+        compressed[3] = (byte) 0xff;
+        try {
+            CompressionUtils.decompress(Compression.LZF, ByteString.copyFrom(compressed));
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains("invalid length"));
+        }
+    }
+
+    private byte[] roundTrip(Compression compression, byte[] data) throws IOException {
+        ByteString compressed = CompressionUtils.compress(compression, data);
+        CodedInputStream input = CompressionUtils.decompress(compression, compressed);
+        byte[] result = input.readRawBytes(data.length);
+        Assert.assertTrue(input.isAtEnd());
+        return result;
+    }
+
+    private byte[] buildText(int size) {
+        StringBuilder builder = new StringBuilder(size);
+        while (builder.length() < size) {
+            builder.append("id=").append(random.nextInt(100000)).append(",name=canal_test,status=1,");
+        }
+        return builder.substring(0, size).getBytes();
+    }
+}
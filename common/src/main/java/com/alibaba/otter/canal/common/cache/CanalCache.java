@@ -0,0 +1,248 @@
+package com.alibaba.otter.canal.common.cache;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.alibaba.otter.canal.common.CanalException;
+import com.google.common.base.Function;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * canal内部共享的缓存实现，替换原先基于MigrateMap.makeComputingMap的计算型map
+ *
+ * <pre>
+ * 1. 同一个key并发get时只会加载一次(single-flight)，其余线程等待加载结果；加载失败不会缓存，下一次get重新加载，异常原样抛出
+ * 2. 可选的容量上限(按照LRU淘汰)以及访问/写入之后的过期时间，默认不淘汰
+ * 3. 命中/未命中/加载/淘汰次数以及加载耗时统计
+ * 4. 命中时不产生额外的对象，配合{@linkplain CompositeKey#probe(Object, Object)}可以做到组合key的无分配查询
+ * </pre>
+ *
+ * 没有设置loader时get等同于getIfPresent，loader不允许返回null
+ *
+ * @author yzy
+ * @version 1.0.24
+ */
+public class CanalCache<K, V> {
+
+    private final String             name;
+    private final Cache<K, V>        cache;
+    private final LoadingCache<K, V> loadingCache;
+
+    // 统计信息
+    private final AtomicLong         hitCount         = new AtomicLong(0);
+    private final AtomicLong         missCount        = new AtomicLong(0);
+    private final AtomicLong         loadCount        = new AtomicLong(0);
+    private final AtomicLong         loadFailureCount = new AtomicLong(0);
+    private final AtomicLong         loadTime         = new AtomicLong(0);
+    private final AtomicLong         evictionCount    = new AtomicLong(0);
+
+    public CanalCache(String name){
+        this(name, null);
+    }
+
+    public CanalCache(String name, Function<? super K, ? extends V> loader){
+        this(name, 0, 0, 0, TimeUnit.MILLISECONDS, loader);
+    }
+
+    /**
+     * @param maximumSize 容量上限，超过之后淘汰最近最少使用的数据，<=0代表不限制
+     * @param expireAfterAccess 最后一次访问之后的过期时间，<=0代表不过期
+     * @param expireAfterWrite 写入之后的过期时间，<=0代表不过期
+     */
+    public CanalCache(String name, long maximumSize, long expireAfterAccess, long expireAfterWrite, TimeUnit unit,
+                      final Function<? super K, ? extends V> loader){
+        this.name = name;
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder();
+        if (maximumSize > 0) {
+            builder.maximumSize(maximumSize);
+        }
+        if (expireAfterAccess > 0) {
+            builder.expireAfterAccess(expireAfterAccess, unit);
+        }
+        if (expireAfterWrite > 0) {
+            builder.expireAfterWrite(expireAfterWrite, unit);
+        }
+
+        CacheBuilder<K, V> typedBuilder = builder.removalListener(new RemovalListener<K, V>() {
+
+            public void onRemoval(RemovalNotification<K, V> notification) {
+                if (notification.wasEvicted()) {
+                    evictionCount.incrementAndGet();
+                }
+            }
+        });
+
+        if (loader == null) {
+            this.loadingCache = null;
+            this.cache = typedBuilder.build();
+        } else {
+            this.loadingCache = typedBuilder.build(new CacheLoader<K, V>() {
+
+                public V load(K key) throws Exception {
+                    long start = System.nanoTime();
+                    try {
+                        V value = loader.apply(key);
+                        loadCount.incrementAndGet();
+                        return value;
+                    } catch (RuntimeException e) {
+                        loadFailureCount.incrementAndGet();
+                        throw e;
+                    } finally {
+                        loadTime.addAndGet(System.nanoTime() - start);
+                    }
+                }
+            });
+            this.cache = loadingCache;
+        }
+    }
+
+    /**
+     * 获取数据，不存在时通过loader加载，没有loader时返回null
+     */
+    public V get(K key) {
+        V value = cache.getIfPresent(key);
+        if (value != null) {
+            hitCount.incrementAndGet();
+            return value;
+        }
+
+        missCount.incrementAndGet();
+        if (loadingCache == null) {
+            return null;
+        }
+
+        try {
+            return loadingCache.getUnchecked(toKey(key));
+        } catch (UncheckedExecutionException e) {
+            throw propagate(e.getCause());
+        } catch (ExecutionError e) {
+            throw (Error) e.getCause();
+        }
+    }
+
+    /**
+     * 获取数据，不存在时返回null，不会触发加载
+     */
+    public V getIfPresent(Object key) {
+        V value = cache.getIfPresent(key);
+        if (value != null) {
+            hitCount.incrementAndGet();
+        } else {
+            missCount.incrementAndGet();
+        }
+        return value;
+    }
+
+    public void put(K key, V value) {
+        cache.put(toKey(key), value);
+    }
+
+    public V remove(Object key) {
+        return cache.asMap().remove(key);
+    }
+
+    public boolean containsKey(Object key) {
+        return cache.asMap().containsKey(key);
+    }
+
+    public Set<K> keySet() {
+        return cache.asMap().keySet();
+    }
+
+    public Collection<V> values() {
+        return cache.asMap().values();
+    }
+
+    public Set<Map.Entry<K, V>> entrySet() {
+        return cache.asMap().entrySet();
+    }
+
+    /**
+     * map视图，get不会触发加载
+     */
+    public ConcurrentMap<K, V> asMap() {
+        return cache.asMap();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    @SuppressWarnings("unchecked")
+    private K toKey(K key) {
+        if (key instanceof CompositeKey) {
+            return (K) ((CompositeKey) key).toKey();
+        }
+        return key;
+    }
+
+    private RuntimeException propagate(Throwable cause) {
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        return new CanalException("load cache [" + name + "] failed", cause);
+    }
+
+    // ============================ statistics =========================
+
+    public String getName() {
+        return name;
+    }
+
+    public long getRequestCount() {
+        return hitCount.get() + missCount.get();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public double getHitRate() {
+        long requestCount = getRequestCount();
+        return requestCount == 0 ? 1.0 : (double) hitCount.get() / requestCount;
+    }
+
+    public long getLoadCount() {
+        return loadCount.get();
+    }
+
+    public long getLoadFailureCount() {
+        return loadFailureCount.get();
+    }
+
+    /**
+     * loader的累计耗时，单位ms
+     */
+    public long getLoadTimeMillis() {
+        return loadTime.get() / 1000000;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    public String toString() {
+        return "CanalCache [name=" + name + ", size=" + size() + ", hitCount=" + getHitCount() + ", missCount="
+               + getMissCount() + ", loadCount=" + getLoadCount() + ", loadFailureCount=" + getLoadFailureCount()
+               + ", loadTimeMillis=" + getLoadTimeMillis() + ", evictionCount=" + getEvictionCount() + "]";
+    }
+}
@@ -0,0 +1,97 @@
+package com.alibaba.otter.canal.common.cache;
+
+/**
+ * 由两部分组成的缓存key，比如schema + table，避免拼接字符串
+ *
+ * <pre>
+ * 1. hash在构造时计算一次，String本身会缓存hashCode，所以计算的代价很小
+ * 2. {@linkplain #probe(Object, Object)}返回线程内复用的查询key，命中缓存时不产生任何对象
+ * 3. 查询key只能用于get/remove/containsKey，写入缓存时需要通过{@linkplain #toKey()}转换，{@linkplain CanalCache}会自动处理
+ * </pre>
+ *
+ * @author yzy
+ * @version 1.0.24
+ */
+public final class CompositeKey {
+
+    private static final ThreadLocal<CompositeKey> probes = new ThreadLocal<CompositeKey>() {
+
+                                                              protected CompositeKey initialValue() {
+                                                                  return new CompositeKey();
+                                                              }
+                                                          };
+
+    private Object                                 first;
+    private Object                                 second;
+    private int                                    hash;
+    private final boolean                          probe;
+
+    private CompositeKey(){
+        this.probe = true;
+    }
+
+    public CompositeKey(Object first, Object second){
+        this.probe = false;
+        this.first = first;
+        this.second = second;
+        this.hash = hash(first, second);
+    }
+
+    /**
+     * 返回当前线程复用的查询key，下一次调用probe之后内容会被覆盖，不能保存引用
+     */
+    public static CompositeKey probe(Object first, Object second) {
+        CompositeKey key = probes.get();
+        key.first = first;
+        key.second = second;
+        key.hash = hash(first, second);
+        return key;
+    }
+
+    /**
+     * 转换为可以保存的key，非查询key时返回自身
+     */
+    public CompositeKey toKey() {
+        return probe ? new CompositeKey(first, second) : this;
+    }
+
+    public boolean isProbe() {
+        return probe;
+    }
+
+    public Object getFirst() {
+        return first;
+    }
+
+    public Object getSecond() {
+        return second;
+    }
+
+    public int hashCode() {
+        return hash;
+    }
+
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof CompositeKey)) {
+            return false;
+        }
+
+        CompositeKey other = (CompositeKey) obj;
+        return hash == other.hash && equals(first, other.first) && equals(second, other.second);
+    }
+
+    public String toString() {
+        return first + "." + second;
+    }
+
+    private static int hash(Object first, Object second) {
+        return 31 * (first == null ? 0 : first.hashCode()) + (second == null ? 0 : second.hashCode());
+    }
+
+    private static boolean equals(Object o1, Object o2) {
+        return o1 == null ? o2 == null : o1.equals(o2);
+    }
+}
@@ -0,0 +1,188 @@
+package com.alibaba.otter.canal.common.utils;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 所有destination共享的定时调度线程池，替换每个instance各自创建的Timer/ScheduledExecutorService
+ *
+ * <pre>
+ * 1. 心跳检测、meta/position定时刷新、binlog文件扫描等低频任务统一在一个线程池中调度，线程数不再随destination数量增长
+ * 2. 线程数默认为max(cpu, 4)，可以通过canal.scheduler.threads配置，需要在第一次使用之前设置
+ * 3. 周期任务抛出异常后只记录日志，不会影响后续调度(Timer遇到异常会直接退出)
+ * 4. 需要保证顺序的任务使用{@linkplain SerialExecutor}，同一个SerialExecutor中的任务按照提交顺序串行执行
+ * 5. 心跳检测(数据库重连/查询)、zookeeper写入等可能长时间阻塞的任务使用scheduleBlockingWithFixedDelay或者getBlockingExecutor，
+ *    在单独的有界线程池中执行，调度线程只负责触发，线程数默认为max(cpu * 2, 8)，可以通过canal.scheduler.blocking.threads配置
+ * </pre>
+ *
+ * 调度线程池中的任务不要做长时间的阻塞操作，否则会影响其他destination的调度
+ *
+ * @author yzy
+ * @version 1.0.24
+ */
+public class CanalScheduler {
+
+    private static final Logger                         logger   = LoggerFactory.getLogger(CanalScheduler.class);
+    private static volatile int                         poolSize = Math.max(Runtime.getRuntime().availableProcessors(),
+                                                                     4);
+    private static volatile ScheduledThreadPoolExecutor executor;
+
+    private static volatile int                blockingPoolSize = Math.max(Runtime.getRuntime().availableProcessors() * 2,
+                                                                    8);
+    private static volatile ThreadPoolExecutor blockingExecutor;
+
+    /**
+     * 设置线程数，线程池已经创建时直接调整core size
+     */
+    public static synchronized void setPoolSize(int poolSize) {
+        if (poolSize <= 0) {
+            throw new IllegalArgumentException("poolSize must be positive : " + poolSize);
+        }
+
+        CanalScheduler.poolSize = poolSize;
+        if (executor != null) {
+            executor.setCorePoolSize(poolSize);
+        }
+    }
+
+    /**
+     * 设置阻塞任务线程池的线程数，线程池已经创建时直接调整线程数
+     */
+    public static synchronized void setBlockingPoolSize(int blockingPoolSize) {
+        if (blockingPoolSize <= 0) {
+            throw new IllegalArgumentException("blockingPoolSize must be positive : " + blockingPoolSize);
+        }
+
+        CanalScheduler.blockingPoolSize = blockingPoolSize;
+        if (blockingExecutor != null) {
+            if (blockingPoolSize > blockingExecutor.getMaximumPoolSize()) {
+                blockingExecutor.setMaximumPoolSize(blockingPoolSize);
+                blockingExecutor.setCorePoolSize(blockingPoolSize);
+            } else {
+                blockingExecutor.setCorePoolSize(blockingPoolSize);
+                blockingExecutor.setMaximumPoolSize(blockingPoolSize);
+            }
+        }
+    }
+
+    public static ScheduledThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            synchronized (CanalScheduler.class) {
+                if (executor == null) {
+                    executor = new ScheduledThreadPoolExecutor(poolSize, new NamedThreadFactory("canal-scheduler"));
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * 执行可能长时间阻塞任务的有界线程池，和调度线程隔离，空闲线程会被回收
+     */
+    public static ThreadPoolExecutor getBlockingExecutor() {
+        if (blockingExecutor == null) {
+            synchronized (CanalScheduler.class) {
+                if (blockingExecutor == null) {
+                    ThreadPoolExecutor pool = new ThreadPoolExecutor(blockingPoolSize,
+                        blockingPoolSize,
+                        60L,
+                        TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<Runnable>(),
+                        new NamedThreadFactory("canal-blocking"));
+                    pool.allowCoreThreadTimeOut(true);
+                    blockingExecutor = pool;
+                }
+            }
+        }
+        return blockingExecutor;
+    }
+
+    public static void execute(Runnable task) {
+        getExecutor().execute(new SafeRunnable(task));
+    }
+
+    public static ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+        return getExecutor().schedule(new SafeRunnable(task), delay, unit);
+    }
+
+    public static ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        return getExecutor().scheduleAtFixedRate(new SafeRunnable(task), initialDelay, period, unit);
+    }
+
+    public static ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long initialDelay, long delay,
+                                                            TimeUnit unit) {
+        return getExecutor().scheduleWithFixedDelay(new SafeRunnable(task), initialDelay, delay, unit);
+    }
+
+    /**
+     * 周期触发在调度线程中，任务本身提交到阻塞任务线程池中执行，上一次还没有执行完时跳过本次触发，避免同一个任务堆积
+     */
+    public static ScheduledFuture<?> scheduleBlockingWithFixedDelay(Runnable task, long initialDelay, long delay,
+                                                                    TimeUnit unit) {
+        final SafeRunnable once = new SafeRunnable(task);
+        final AtomicBoolean pending = new AtomicBoolean(false);
+        return getExecutor().scheduleWithFixedDelay(new Runnable() {
+
+            public void run() {
+                if (pending.compareAndSet(false, true)) {
+                    try {
+                        getBlockingExecutor().execute(new Runnable() {
+
+                            public void run() {
+                                try {
+                                    once.run();
+                                } finally {
+                                    pending.set(false);
+                                }
+                            }
+                        });
+                    } catch (RejectedExecutionException e) {
+                        pending.set(false);
+                    }
+                }
+            }
+        }, initialDelay, delay, unit);
+    }
+
+    /**
+     * 取消任务，并从队列中清除已经取消的任务，避免长时间运行后队列中堆积
+     */
+    public static void cancel(Future<?> future) {
+        if (future != null) {
+            future.cancel(false);
+            ScheduledThreadPoolExecutor current = executor;
+            if (current != null) {
+                current.purge();
+            }
+        }
+    }
+
+    /**
+     * 捕获所有异常，保证周期任务不会因为一次异常而停止调度
+     */
+    static class SafeRunnable implements Runnable {
+
+        private final Runnable task;
+
+        SafeRunnable(Runnable task){
+            this.task = task;
+        }
+
+        public void run() {
+            try {
+                task.run();
+            } catch (Throwable e) {
+                logger.error("scheduled task failed : " + task, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.alibaba.otter.canal.common.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 基于{@linkplain CanalScheduler}共享线程池的串行执行器，替换原先每个instance单独的单线程executor
+ *
+ * <pre>
+ * 1. 任务按照提交顺序执行，同一时刻最多只有一个任务在执行，和单线程executor的语义一致
+ * 2. 周期任务每次触发时提交到当前executor中执行，和普通任务之间同样保证串行；上一次还没有执行完时跳过本次触发
+ * 3. shutdownNow之后丢弃还未执行的任务，取消周期任务，再提交任务会抛出RejectedExecutionException
+ * 4. 任务中有阻塞操作(比如zookeeper写入)时，指定{@linkplain CanalScheduler#getBlockingExecutor()}执行任务，周期触发仍然在调度线程中
+ * </pre>
+ *
+ * @author yzy
+ * @version 1.0.24
+ */
+public class SerialExecutor implements Executor {
+
+    private static final Logger            logger   = LoggerFactory.getLogger(SerialExecutor.class);
+    private final Queue<Runnable>          tasks    = new LinkedList<Runnable>();
+    private final List<ScheduledFuture<?>> futures  = new ArrayList<ScheduledFuture<?>>();
+    private Runnable                       active;
+    private volatile boolean               shutdown = false;
+    private final Executor                 executor;
+
+    public SerialExecutor(){
+        this(CanalScheduler.getExecutor());
+    }
+
+    public SerialExecutor(Executor executor){
+        this.executor = executor;
+    }
+
+    public synchronized void execute(final Runnable task) {
+        if (shutdown) {
+            throw new RejectedExecutionException("executor has been shutdown");
+        }
+
+        tasks.offer(new Runnable() {
+
+            public void run() {
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    logger.error("serial task failed : " + task, e);
+                } finally {
+                    scheduleNext();
+                }
+            }
+        });
+        if (active == null) {
+            scheduleNext();
+        }
+    }
+
+    public ScheduledFuture<?> scheduleAtFixedRate(final Runnable task, long initialDelay, long period, TimeUnit unit) {
+        final AtomicBoolean pending = new AtomicBoolean(false);
+        final Runnable once = new Runnable() {
+
+            public void run() {
+                try {
+                    task.run();
+                } finally {
+                    pending.set(false);
+                }
+            }
+        };
+
+        ScheduledFuture<?> future = CanalScheduler.scheduleAtFixedRate(new Runnable() {
+
+            public void run() {
+                if (!shutdown && pending.compareAndSet(false, true)) {
+                    try {
+                        execute(once);
+                    } catch (RejectedExecutionException e) {
+                        pending.set(false);
+                    }
+                }
+            }
+        }, initialDelay, period, unit);
+
+        synchronized (this) {
+            if (shutdown) {
+                CanalScheduler.cancel(future);
+            } else {
+                futures.add(future);
+            }
+        }
+        return future;
+    }
+
+    public synchronized void shutdownNow() {
+        shutdown = true;
+        tasks.clear();
+        for (ScheduledFuture<?> future : futures) {
+            CanalScheduler.cancel(future);
+        }
+        futures.clear();
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    private synchronized void scheduleNext() {
+        active = shutdown ? null : tasks.poll();
+        if (active != null) {
+            executor.execute(active);
+        }
+    }
+}
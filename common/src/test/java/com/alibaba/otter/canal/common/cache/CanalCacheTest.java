@@ -0,0 +1,162 @@
+package com.alibaba.otter.canal.common.cache;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Function;
+
+public class CanalCacheTest {
+
+    @Test
+    public void testSingleFlight() throws Exception {
+        final AtomicInteger loads = new AtomicInteger(0);
+        final CanalCache<String, String> cache = new CanalCache<String, String>("test", new Function<String, String>() {
+
+            public String apply(String key) {
+                loads.incrementAndGet();
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return key + "_value";
+            }
+        });
+
+        int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicInteger errors = new AtomicInteger(0);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            executor.submit(new Runnable() {
+
+                public void run() {
+                    try {
+                        start.await();
+                        if (!"key_value".equals(cache.get("key"))) {
+                            errors.incrementAndGet();
+                        }
+                    } catch (InterruptedException e) {
+                        errors.incrementAndGet();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+
+        start.countDown();
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        executor.shutdownNow();
+        Assert.assertEquals(0, errors.get());
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals(1, cache.getLoadCount());
+    }
+
+    @Test
+    public void testLoadFailure() {
+        final AtomicInteger loads = new AtomicInteger(0);
+        CanalCache<String, String> cache = new CanalCache<String, String>("test", new Function<String, String>() {
+
+            public String apply(String key) {
+                if (loads.incrementAndGet() == 1) {
+                    throw new IllegalStateException("fail");
+                }
+                return key;
+            }
+        });
+
+        try {
+            cache.get("key");
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // 异常原样抛出
+        }
+
+        // 失败不缓存，再次get重新加载
+        Assert.assertEquals("key", cache.get("key"));
+        Assert.assertEquals(2, loads.get());
+        Assert.assertEquals(1, cache.getLoadFailureCount());
+    }
+
+    @Test
+    public void testMaximumSize() {
+        CanalCache<Integer, Integer> cache = new CanalCache<Integer, Integer>("test",
+            2,
+            0,
+            0,
+            TimeUnit.MILLISECONDS,
+            new Function<Integer, Integer>() {
+
+                public Integer apply(Integer key) {
+                    return key;
+                }
+            });
+
+        cache.get(1);
+        cache.get(2);
+        cache.get(1); // 1最近被访问，淘汰2
+        cache.get(3);
+        Assert.assertEquals(2, cache.size());
+        Assert.assertTrue(cache.containsKey(1));
+        Assert.assertFalse(cache.containsKey(2));
+        Assert.assertTrue(cache.containsKey(3));
+        Assert.assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testExpireAfterWrite() throws Exception {
+        final AtomicInteger loads = new AtomicInteger(0);
+        CanalCache<String, Integer> cache = new CanalCache<String, Integer>("test",
+            0,
+            0,
+            50,
+            TimeUnit.MILLISECONDS,
+            new Function<String, Integer>() {
+
+                public Integer apply(String key) {
+                    return loads.incrementAndGet();
+                }
+            });
+
+        Assert.assertEquals(Integer.valueOf(1), cache.get("key"));
+        Assert.assertEquals(Integer.valueOf(1), cache.get("key"));
+        Thread.sleep(100);
+        Assert.assertEquals(Integer.valueOf(2), cache.get("key"));
+    }
+
+    @Test
+    public void testCompositeKey() {
+        final AtomicInteger loads = new AtomicInteger(0);
+        CanalCache<CompositeKey, String> cache = new CanalCache<CompositeKey, String>("test",
+            new Function<CompositeKey, String>() {
+
+                public String apply(CompositeKey key) {
+                    loads.incrementAndGet();
+                    return key.toString();
+                }
+            });
+
+        Assert.assertEquals("test.t1", cache.get(CompositeKey.probe("test", "t1")));
+        Assert.assertEquals("test.t2", cache.get(CompositeKey.probe("test", "t2")));
+        // 查询key被复用，缓存中保存的必须是独立的key
+        for (CompositeKey key : cache.keySet()) {
+            Assert.assertFalse(key.isProbe());
+        }
+        Assert.assertTrue(cache.containsKey(new CompositeKey("test", "t1")));
+        Assert.assertEquals("test.t1", cache.get(CompositeKey.probe("test", "t1")));
+        Assert.assertEquals(2, loads.get());
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(2, cache.getMissCount());
+
+        Assert.assertEquals("test.t1", cache.remove(CompositeKey.probe("test", "t1")));
+        Assert.assertEquals(1, cache.size());
+    }
+}
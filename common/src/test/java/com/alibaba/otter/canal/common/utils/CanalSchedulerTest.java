@@ -0,0 +1,48 @@
+package com.alibaba.otter.canal.common.utils;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CanalSchedulerTest {
+
+    @Test
+    public void testScheduleBlocking() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger runs = new AtomicInteger(0);
+        ScheduledFuture<?> future = CanalScheduler.scheduleBlockingWithFixedDelay(new Runnable() {
+
+            public void run() {
+                runs.incrementAndGet();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, 0, 10, TimeUnit.MILLISECONDS);
+
+        try {
+            // 阻塞的任务不占用调度线程，其他任务可以正常调度
+            final CountDownLatch scheduled = new CountDownLatch(1);
+            CanalScheduler.schedule(new Runnable() {
+
+                public void run() {
+                    scheduled.countDown();
+                }
+            }, 10, TimeUnit.MILLISECONDS);
+            Assert.assertTrue(scheduled.await(10, TimeUnit.SECONDS));
+
+            // 上一次没有执行完时跳过触发，不会堆积
+            Thread.sleep(200);
+            Assert.assertEquals(1, runs.get());
+        } finally {
+            release.countDown();
+            CanalScheduler.cancel(future);
+        }
+    }
+}
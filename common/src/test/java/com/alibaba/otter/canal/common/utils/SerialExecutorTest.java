@@ -0,0 +1,119 @@
+package com.alibaba.otter.canal.common.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SerialExecutorTest {
+
+    @Test
+    public void testSerialOrder() throws Exception {
+        SerialExecutor executor = new SerialExecutor();
+        final List<Integer> result = Collections.synchronizedList(new ArrayList<Integer>());
+        final AtomicInteger running = new AtomicInteger(0);
+        final AtomicInteger overlaps = new AtomicInteger(0);
+        int count = 200;
+        final CountDownLatch done = new CountDownLatch(count);
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            executor.execute(new Runnable() {
+
+                public void run() {
+                    if (running.incrementAndGet() > 1) {
+                        overlaps.incrementAndGet();
+                    }
+                    result.add(index);
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(0, overlaps.get());
+        for (int i = 0; i < count; i++) {
+            Assert.assertEquals(Integer.valueOf(i), result.get(i));
+        }
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testFailureNotBlock() throws Exception {
+        SerialExecutor executor = new SerialExecutor();
+        final CountDownLatch done = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+
+            public void run() {
+                throw new IllegalStateException("fail");
+            }
+        });
+        executor.execute(new Runnable() {
+
+            public void run() {
+                done.countDown();
+            }
+        });
+
+        // 前一个任务失败不影响后续任务
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        SerialExecutor executor = new SerialExecutor();
+        final AtomicInteger ticks = new AtomicInteger(0);
+        executor.scheduleAtFixedRate(new Runnable() {
+
+            public void run() {
+                ticks.incrementAndGet();
+            }
+        }, 10, 10, TimeUnit.MILLISECONDS);
+
+        Thread.sleep(200);
+        Assert.assertTrue(ticks.get() > 0);
+        executor.shutdownNow();
+        Assert.assertTrue(executor.isShutdown());
+        Thread.sleep(50);
+        int stopped = ticks.get();
+        Thread.sleep(100);
+        Assert.assertEquals(stopped, ticks.get());
+
+        try {
+            executor.execute(new Runnable() {
+
+                public void run() {
+                }
+            });
+            Assert.fail();
+        } catch (RejectedExecutionException e) {
+            // shutdown之后拒绝提交
+        }
+    }
+
+    @Test
+    public void testBlockingExecutor() throws Exception {
+        SerialExecutor executor = new SerialExecutor(CanalScheduler.getBlockingExecutor());
+        final CountDownLatch done = new CountDownLatch(1);
+        final List<String> threads = Collections.synchronizedList(new ArrayList<String>());
+        executor.execute(new Runnable() {
+
+            public void run() {
+                threads.add(Thread.currentThread().getName());
+                done.countDown();
+            }
+        });
+
+        // 阻塞任务不在共享的调度线程中执行
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assert.assertTrue(threads.get(0).startsWith("canal-blocking"));
+        executor.shutdownNow();
+    }
+}
@@ -4,8 +4,16 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
 import com.taobao.tddl.dbsync.binlog.event.FormatDescriptionLogEvent;
 
 /**
@@ -26,6 +34,20 @@ import com.taobao.tddl.dbsync.binlog.event.FormatDescriptionLogEvent;
  * // file ending reached.
  * </pre>
  * 
+ * When <code>mappedWindowSize</code> is set, the file is read through
+ * read-only memory mapped windows instead of <code>FileInputStream.read</code>
+ * calls. Only the window covering the current file position is mapped, it is
+ * remapped when the reading crosses the window end, and the previous window
+ * is unmapped eagerly. Each window is still copied into the fetcher buffer,
+ * the saving is the read system calls, not the copy.
+ * 
+ * Eager unmapping needs the JDK internal buffer cleaner. It is checked once
+ * when the class is loaded, if the cleaner is not accessible (e.g. JDK 9+
+ * without --add-opens java.base/java.nio=ALL-UNNAMED and --add-opens
+ * java.base/jdk.internal.ref=ALL-UNNAMED) the fetcher falls back to
+ * <code>FileInputStream</code> reading, because windows released only by GC
+ * would pile up address space on large binlogs.
+ * 
  * @author <a href="mailto:changyuan.lh@taobao.com">Changyuan.lh</a>
  * @version 1.0
  */
@@ -33,8 +55,23 @@ public final class FileLogFetcher extends LogFetcher {
 
     public static final byte[] BINLOG_MAGIC = { -2, 0x62, 0x69, 0x6e };
 
+    /* Max bytes loaded by prefetch, only the head of next file is needed. */
+    public static final int    PREFETCH_SIZE = 1024 * 1024;
+
+    private static final Log   logger        = LogFactory.getLog(FileLogFetcher.class);
+
+    /* Whether mapped buffers can be unmapped eagerly. */
+    static final boolean       UNMAP_SUPPORTED = checkUnmapSupported();
+
     private FileInputStream    fin;
 
+    private int                mappedWindowSize = 0;
+
+    private MappedByteBuffer   window;
+
+    /* File offset of the next byte to read in mapped mode. */
+    private long               mappedPosition;
+
     public FileLogFetcher(){
         super(DEFAULT_INITIAL_CAPACITY, DEFAULT_GROWTH_FACTOR);
     }
@@ -47,6 +84,21 @@ public final class FileLogFetcher extends LogFetcher {
         super(initialCapacity, growthFactor);
     }
 
+    /**
+     * Read file through memory mapped windows of the given size, 0 means
+     * reading through <code>FileInputStream</code>.
+     */
+    public FileLogFetcher(final int initialCapacity, final int mappedWindowSize){
+        super(initialCapacity, DEFAULT_GROWTH_FACTOR);
+        if (mappedWindowSize > 0 && !UNMAP_SUPPORTED) {
+            logger.warn("mapped buffer can not be unmapped in this jvm, fallback to stream reading, mappedWindowSize: "
+                        + mappedWindowSize);
+            this.mappedWindowSize = 0;
+        } else {
+            this.mappedWindowSize = mappedWindowSize;
+        }
+    }
+
     /**
      * Open binlog file in local disk to fetch.
      */
@@ -72,6 +124,8 @@ public final class FileLogFetcher extends LogFetcher {
      * Open binlog file in local disk to fetch.
      */
     public void open(File file, final long filePosition) throws FileNotFoundException, IOException {
+        unmap(window);
+        window = null;
         fin = new FileInputStream(file);
 
         ensureCapacity(BIN_LOG_HEADER_SIZE);
@@ -98,6 +152,8 @@ public final class FileLogFetcher extends LogFetcher {
             limit = (int) getUint32(LogEvent.EVENT_LEN_OFFSET);
             fin.getChannel().position(filePosition);
         }
+
+        mappedPosition = fin.getChannel().position();
     }
 
     /**
@@ -107,7 +163,7 @@ public final class FileLogFetcher extends LogFetcher {
      */
     public boolean fetch() throws IOException {
         if (limit == 0) {
-            final int len = fin.read(buffer, 0, buffer.length);
+            final int len = read(0, buffer.length);
             if (len >= 0) {
                 limit += len;
                 position = 0;
@@ -117,10 +173,14 @@ public final class FileLogFetcher extends LogFetcher {
                 return true;
             }
         } else if (origin == 0) {
-            if (limit > buffer.length / 2) {
+            /*
+             * Grow only when the buffer is full, fetch may be retried at the
+             * end of a growing file, where nothing new is read.
+             */
+            if (limit == buffer.length) {
                 ensureCapacity(buffer.length + limit);
             }
-            final int len = fin.read(buffer, limit, buffer.length - limit);
+            final int len = read(limit, buffer.length - limit);
             if (len >= 0) {
                 limit += len;
 
@@ -131,7 +191,7 @@ public final class FileLogFetcher extends LogFetcher {
             System.arraycopy(buffer, origin, buffer, 0, limit);
             position -= origin;
             origin = 0;
-            final int len = fin.read(buffer, limit, buffer.length - limit);
+            final int len = read(limit, buffer.length - limit);
             if (len >= 0) {
                 limit += len;
 
@@ -153,8 +213,101 @@ public final class FileLogFetcher extends LogFetcher {
      * @see com.taobao.tddl.dbsync.binlog.LogFetcher#close()
      */
     public void close() throws IOException {
+        unmap(window);
+        window = null;
+
         if (fin != null) fin.close();
 
         fin = null;
     }
+
+    /**
+     * Reads up to len bytes into buffer at off, returns -1 when file ending
+     * reached.
+     */
+    private int read(final int off, final int len) throws IOException {
+        if (mappedWindowSize <= 0) return fin.read(buffer, off, len);
+
+        if (len == 0) return 0;
+
+        if (window == null || !window.hasRemaining()) {
+            /* The file may still be written, check size for every remap. */
+            final long size = fin.getChannel().size();
+            if (mappedPosition >= size) return -1;
+
+            unmap(window);
+            window = fin.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                mappedPosition,
+                Math.min(mappedWindowSize, size - mappedPosition));
+        }
+
+        final int n = Math.min(len, window.remaining());
+        window.get(buffer, off, n);
+        mappedPosition += n;
+        return n;
+    }
+
+    /**
+     * Loads the head of binlog file into page cache, so the fetcher switching
+     * to it later will not block on disk reading. At most
+     * <code>PREFETCH_SIZE</code> bytes are loaded.
+     */
+    public static void prefetch(File file, final long length) throws IOException {
+        if (!UNMAP_SUPPORTED) return;
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            MappedByteBuffer buf = raf.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                0,
+                Math.min(Math.min(length, PREFETCH_SIZE), raf.length()));
+            buf.load();
+            unmap(buf);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Unmaps the buffer eagerly, mapped buffer is only released by GC
+     * otherwise, which keeps large address space and file handles.
+     */
+    private static void unmap(ByteBuffer buf) {
+        if (buf == null) return;
+
+        try {
+            clean(buf);
+        } catch (Throwable e) {
+            /* Checked by UNMAP_SUPPORTED, should not happen. */
+            logger.warn("unmap buffer failed, released by GC", e);
+        }
+    }
+
+    private static void clean(ByteBuffer buf) throws Exception {
+        Method cleanerMethod = buf.getClass().getMethod("cleaner");
+        cleanerMethod.setAccessible(true);
+        Object cleaner = cleanerMethod.invoke(buf);
+        if (cleaner != null) {
+            Method cleanMethod = cleaner.getClass().getMethod("clean");
+            cleanMethod.setAccessible(true);
+            cleanMethod.invoke(cleaner);
+        }
+    }
+
+    /**
+     * Checks the cleaner on a direct buffer, mapped buffers share the same
+     * implementation.
+     */
+    private static boolean checkUnmapSupported() {
+        try {
+            clean(ByteBuffer.allocateDirect(1));
+            return true;
+        } catch (Throwable e) {
+            logger.warn("buffer cleaner is not accessible, memory mapped reading is disabled", e);
+            return false;
+        }
+    }
+
+    public int getMappedWindowSize() {
+        return mappedWindowSize;
+    }
 }
@@ -1237,11 +1237,11 @@ public class LogBuffer {
         if (pos + binSize > limit || pos < 0) {
             throw new IllegalArgumentException("limit excceed: " + (pos < 0 ? pos : (pos + binSize)));
         }
-        return getDecimal0(origin + pos, intg, frac, // NL
+        return new BigDecimal(getDecimal0(origin + pos, intg, frac, // NL
             intg0,
             frac0,
             intg0x,
-            frac0x);
+            frac0x));
     }
 
     /**
@@ -1250,6 +1250,16 @@ public class LogBuffer {
      * @see mysql-5.1.60/strings/decimal.c - bin2decimal()
      */
     public final BigDecimal getDecimal(final int precision, final int scale) {
+        return new BigDecimal(getDecimalString(precision, scale));
+    }
+
+    /**
+     * Return next decimal from buffer as plain string, same as
+     * getDecimal(precision, scale).toPlainString() but without BigDecimal.
+     * 
+     * @see mysql-5.1.60/strings/decimal.c - bin2decimal()
+     */
+    public final String getDecimalString(final int precision, final int scale) {
         final int intg = precision - scale;
         final int frac = scale;
         final int intg0 = intg / DIG_PER_INT32;
@@ -1262,7 +1272,7 @@ public class LogBuffer {
             throw new IllegalArgumentException("limit excceed: " + (position + binSize - origin));
         }
 
-        BigDecimal decimal = getDecimal0(position, intg, frac, // NL
+        String decimal = getDecimal0(position, intg, frac, // NL
             intg0,
             frac0,
             intg0x,
@@ -1272,7 +1282,7 @@ public class LogBuffer {
     }
 
     /**
-     * Return big decimal from buffer.
+     * Return decimal plain string from buffer.
      * 
      * <pre>
      * Decimal representation in binlog seems to be as follows:
@@ -1296,7 +1306,7 @@ public class LogBuffer {
      * @see mysql-5.1.60/strings/decimal.c - bin2decimal()
      * @see mysql-5.1.60/strings/decimal.c - decimal2string()
      */
-    private final BigDecimal getDecimal0(final int begin, final int intg, final int frac, final int intg0,
+    private final String getDecimal0(final int begin, final int intg, final int frac, final int intg0,
                                          final int frac0, final int intg0x, final int frac0x) {
         final int mask = ((buffer[begin] & 0x80) == 0x80) ? 0 : -1;
         int from = begin;
@@ -1444,8 +1454,18 @@ public class LogBuffer {
         }
 
         d_copy[begin] ^= 0x80; /* restore sign */
-        String decimal = String.valueOf(buf, 0, pos);
-        return new BigDecimal(decimal);
+        int start = 0;
+        if (mask != 0) {
+            /* -0.00 is 0.00 in BigDecimal */
+            start = 1;
+            for (int i = 1; i < pos; i++) {
+                if (buf[i] > '0') {
+                    start = 0;
+                    break;
+                }
+            }
+        }
+        return String.valueOf(buf, start, pos - start);
     }
 
     /**
@@ -1558,6 +1578,22 @@ public class LogBuffer {
         position += len;
     }
 
+    /**
+     * Return true if the bytes from <code>pos</code> to limit are the same as
+     * <code>data</code>.
+     */
+    public final boolean contentEquals(final int pos, byte[] data) {
+        if (pos < 0 || pos > limit) throw new IllegalArgumentException("limit excceed: " + pos);
+
+        if (limit - pos != data.length) return false;
+
+        final int from = origin + pos;
+        for (int i = 0; i < data.length; i++) {
+            if (buffer[from + i] != data[i]) return false;
+        }
+        return true;
+    }
+
     /**
      * Return n-byte data from buffer.
      */
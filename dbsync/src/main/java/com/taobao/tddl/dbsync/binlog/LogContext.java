@@ -4,6 +4,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import com.taobao.tddl.dbsync.binlog.event.FormatDescriptionLogEvent;
+import com.taobao.tddl.dbsync.binlog.event.LogHeader;
 import com.taobao.tddl.dbsync.binlog.event.TableMapLogEvent;
 
 /**
@@ -14,7 +15,18 @@ import com.taobao.tddl.dbsync.binlog.event.TableMapLogEvent;
  */
 public final class LogContext {
 
-    private final Map<Long, TableMapLogEvent> mapOfTable = new HashMap<Long, TableMapLogEvent>();
+    /* Table ids change after DDL or table cache eviction, limit the cache. */
+    private static final int                  MAX_CACHED_TABLES = 4096;
+
+    private final Map<Long, TableMapLogEvent> mapOfTable        = new HashMap<Long, TableMapLogEvent>();
+
+    /*
+     * Decoded table maps and their raw body, keyed by table id. Unlike
+     * mapOfTable, they are kept across statements.
+     */
+    private final Map<Long, TableMapLogEvent> cacheOfTable      = new HashMap<Long, TableMapLogEvent>();
+
+    private final Map<Long, byte[]>           cacheOfTableData  = new HashMap<Long, byte[]>();
 
     private FormatDescriptionLogEvent         formatDescription;
 
@@ -48,6 +60,34 @@ public final class LogContext {
         mapOfTable.put(Long.valueOf(mapEvent.getTableId()), mapEvent);
     }
 
+    /**
+     * Decode table map event from buffer and put it in context. MySQL logs
+     * the table map before every rows event, if the event body is the same as
+     * the previous map of the table id, the decoded names and column
+     * information are shared instead of decoded again.
+     */
+    public final TableMapLogEvent decodeTable(LogHeader header, LogBuffer buffer) {
+        final int bodyPos = formatDescription.getCommonHeaderLen();
+        final Long tableId = Long.valueOf(TableMapLogEvent.getTableId(header, buffer, formatDescription));
+
+        TableMapLogEvent mapEvent = cacheOfTable.get(tableId);
+        byte[] data = cacheOfTableData.get(tableId);
+        if (mapEvent != null && data != null && buffer.contentEquals(bodyPos, data)) {
+            mapEvent = new TableMapLogEvent(header, mapEvent);
+        } else {
+            mapEvent = new TableMapLogEvent(header, buffer, formatDescription);
+            if (cacheOfTable.size() >= MAX_CACHED_TABLES) {
+                cacheOfTable.clear();
+                cacheOfTableData.clear();
+            }
+            cacheOfTable.put(tableId, mapEvent);
+            cacheOfTableData.put(tableId, buffer.getData(bodyPos, buffer.limit() - bodyPos));
+        }
+
+        mapOfTable.put(tableId, mapEvent);
+        return mapEvent;
+    }
+
     public final TableMapLogEvent getTable(final long tableId) {
         return mapOfTable.get(Long.valueOf(tableId));
     }
@@ -60,5 +100,7 @@ public final class LogContext {
         formatDescription = FormatDescriptionLogEvent.FORMAT_DESCRIPTION_EVENT_5_x;
 
         mapOfTable.clear();
+        cacheOfTable.clear();
+        cacheOfTableData.clear();
     }
 }
@@ -163,10 +163,9 @@ public final class LogDecoder {
                 return event;
             }
             case LogEvent.TABLE_MAP_EVENT: {
-                TableMapLogEvent mapEvent = new TableMapLogEvent(header, buffer, descriptionEvent);
+                TableMapLogEvent mapEvent = context.decodeTable(header, buffer);
                 /* updating position in context */
                 logPosition.position = header.getLogPos();
-                context.putTable(mapEvent);
                 return mapEvent;
             }
             case LogEvent.WRITE_ROWS_EVENT_V1: {
@@ -1,9 +1,10 @@
 package com.taobao.tddl.dbsync.binlog.event;
 
 import java.io.Serializable;
-import java.sql.Timestamp;
+import java.math.BigDecimal;
 import java.sql.Types;
 import java.util.BitSet;
+import java.util.TimeZone;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -28,6 +29,16 @@ public final class RowsLogBuffer {
     public static final long   TIMEF_INT_OFS     = 0x800000L;
     public static final long   TIMEF_OFS         = 0x800000000000L;
 
+    private static final long  MILLIS_PER_DAY    = 24 * 60 * 60 * 1000L;
+
+    // 数值类型的值不直接装箱，保存在longValue/doubleValue/text中，getValue时才构造对象
+    private static final int   BOXED             = 0;
+    private static final int   INT_VALUE         = 1;
+    private static final int   LONG_VALUE        = 2;
+    private static final int   FLOAT_VALUE       = 3;
+    private static final int   DOUBLE_VALUE      = 4;
+    private static final int   DECIMAL_VALUE     = 5;
+
     private final LogBuffer    buffer;
     private final int          columnLen;
     private final String       charsetName;
@@ -40,6 +51,14 @@ public final class RowsLogBuffer {
     private int                javaType;
     private int                length;
     private Serializable       value;
+    private int                valueKind;
+    private long               longValue;
+    private double             doubleValue;
+    private String             text;
+
+    // 时间类型格式化复用的缓存，避免String.format/Timestamp.toString的开销
+    private final char[]       chars             = new char[128];
+    private TimeZone           timeZone;
 
     public RowsLogBuffer(LogBuffer buffer, final int columnLen, String charsetName){
         this.buffer = buffer;
@@ -87,16 +106,26 @@ public final class RowsLogBuffer {
      * Rows_log_event::print_verbose_one_row
      */
     public final Serializable nextValue(final int type, final int meta, boolean isBinary) {
+        readValue(type, meta, isBinary);
+        return getValue();
+    }
+
+    /**
+     * Extracting next field value from packed buffer, numeric value is not
+     * boxed, use {@link #getLong()}/{@link #getDouble()}/
+     * {@link #writeTo(StringBuilder, boolean)} to access it.
+     */
+    public final void readValue(final int type, final int meta, boolean isBinary) {
         fNull = nullBits.get(nullBitIndex++);
+        valueKind = BOXED;
+        value = null;
 
         if (fNull) {
-            value = null;
             javaType = mysqlToJavaType(type, meta, isBinary);
             length = 0;
-            return null;
         } else {
             // Extracting field value from packed buffer.
-            return fetchValue(type, meta, isBinary);
+            fetchValue(type, meta, isBinary);
         }
     }
 
@@ -247,7 +276,7 @@ public final class RowsLogBuffer {
      * 
      * @see mysql-5.1.60/sql/log_event.cc - log_event_print_value
      */
-    final Serializable fetchValue(int type, final int meta, boolean isBinary) {
+    final void fetchValue(int type, final int meta, boolean isBinary) {
         int len = 0;
 
         if (type == LogEvent.MYSQL_TYPE_STRING) {
@@ -283,7 +312,8 @@ public final class RowsLogBuffer {
                 // XXX: How to check signed / unsigned?
                 // value = unsigned ? Long.valueOf(buffer.getUint32()) :
                 // Integer.valueOf(buffer.getInt32());
-                value = Integer.valueOf(buffer.getInt32());
+                longValue = buffer.getInt32();
+                valueKind = INT_VALUE;
                 javaType = Types.INTEGER;
                 length = 4;
                 break;
@@ -292,7 +322,8 @@ public final class RowsLogBuffer {
                 // XXX: How to check signed / unsigned?
                 // value = Integer.valueOf(unsigned ? buffer.getUint8() :
                 // buffer.getInt8());
-                value = Integer.valueOf(buffer.getInt8());
+                longValue = buffer.getInt8();
+                valueKind = INT_VALUE;
                 javaType = Types.TINYINT; // java.sql.Types.INTEGER;
                 length = 1;
                 break;
@@ -301,7 +332,8 @@ public final class RowsLogBuffer {
                 // XXX: How to check signed / unsigned?
                 // value = Integer.valueOf(unsigned ? buffer.getUint16() :
                 // buffer.getInt16());
-                value = Integer.valueOf((short) buffer.getInt16());
+                longValue = (short) buffer.getInt16();
+                valueKind = INT_VALUE;
                 javaType = Types.SMALLINT; // java.sql.Types.INTEGER;
                 length = 2;
                 break;
@@ -310,7 +342,8 @@ public final class RowsLogBuffer {
                 // XXX: How to check signed / unsigned?
                 // value = Integer.valueOf(unsigned ? buffer.getUint24() :
                 // buffer.getInt24());
-                value = Integer.valueOf(buffer.getInt24());
+                longValue = buffer.getInt24();
+                valueKind = INT_VALUE;
                 javaType = Types.INTEGER;
                 length = 3;
                 break;
@@ -319,7 +352,8 @@ public final class RowsLogBuffer {
                 // XXX: How to check signed / unsigned?
                 // value = unsigned ? buffer.getUlong64()) :
                 // Long.valueOf(buffer.getLong64());
-                value = Long.valueOf(buffer.getLong64());
+                longValue = buffer.getLong64();
+                valueKind = LONG_VALUE;
                 javaType = Types.BIGINT; // Types.INTEGER;
                 length = 8;
                 break;
@@ -339,19 +373,22 @@ public final class RowsLogBuffer {
             case LogEvent.MYSQL_TYPE_NEWDECIMAL: {
                 final int precision = meta >> 8;
                 final int decimals = meta & 0xff;
-                value = buffer.getDecimal(precision, decimals);
+                text = buffer.getDecimalString(precision, decimals);
+                valueKind = DECIMAL_VALUE;
                 javaType = Types.DECIMAL;
                 length = precision;
                 break;
             }
             case LogEvent.MYSQL_TYPE_FLOAT: {
-                value = Float.valueOf(buffer.getFloat32());
+                doubleValue = buffer.getFloat32();
+                valueKind = FLOAT_VALUE;
                 javaType = Types.REAL; // Types.FLOAT;
                 length = 4;
                 break;
             }
             case LogEvent.MYSQL_TYPE_DOUBLE: {
-                value = Double.valueOf(buffer.getDouble64());
+                doubleValue = buffer.getDouble64();
+                valueKind = DOUBLE_VALUE;
                 javaType = Types.DOUBLE;
                 length = 8;
                 break;
@@ -413,8 +450,7 @@ public final class RowsLogBuffer {
                 if (i32 == 0) {
                     value = "0000-00-00 00:00:00";
                 } else {
-                    String v = new Timestamp(i32 * 1000).toString();
-                    value = v.substring(0, v.length() - 2);
+                    value = new String(chars, 0, appendTimestamp(0, i32));
                 }
                 javaType = Types.TIMESTAMP;
                 length = 4;
@@ -444,22 +480,17 @@ public final class RowsLogBuffer {
                         break;
                 }
 
-                String second = null;
+                int pos = 0;
                 if (tv_sec == 0) {
-                    second = "0000-00-00 00:00:00";
+                    pos = appendDateTime(pos, 0, 0, 0, 0, 0, 0); // 0000-00-00 00:00:00
                 } else {
-                    Timestamp time = new Timestamp(tv_sec * 1000);
-                    second = time.toString();
-                    second = second.substring(0, second.length() - 2);// 去掉毫秒精度.0
+                    pos = appendTimestamp(pos, tv_sec);
                 }
 
                 if (meta >= 1) {
-                    String microSecond = usecondsToStr(tv_usec, meta);
-                    microSecond = microSecond.substring(0, meta);
-                    value = second + '.' + microSecond;
-                } else {
-                    value = second;
+                    pos = appendFraction(pos, tv_usec, meta);
                 }
+                value = new String(chars, 0, pos);
 
                 javaType = Types.TIMESTAMP;
                 length = 4 + (meta + 1) / 2;
@@ -480,13 +511,13 @@ public final class RowsLogBuffer {
                     // cal.set(d / 10000, (d % 10000) / 100 - 1, d % 100, t /
                     // 10000, (t % 10000) / 100, t % 100);
                     // value = new Timestamp(cal.getTimeInMillis());
-                    value = String.format("%04d-%02d-%02d %02d:%02d:%02d",
+                    value = new String(chars, 0, appendDateTime(0,
                         d / 10000,
                         (d % 10000) / 100,
                         d % 100,
                         t / 10000,
                         (t % 10000) / 100,
-                        t % 100);
+                        t % 100));
                 }
                 javaType = Types.TIMESTAMP;
                 length = 8;
@@ -525,9 +556,9 @@ public final class RowsLogBuffer {
                         break;
                 }
 
-                String second = null;
+                int pos = 0;
                 if (intpart == 0) {
-                    second = "0000-00-00 00:00:00";
+                    pos = appendDateTime(pos, 0, 0, 0, 0, 0, 0); // 0000-00-00 00:00:00
                 } else {
                     // 构造TimeStamp只处理到秒
                     long ymd = intpart >> 17;
@@ -540,7 +571,7 @@ public final class RowsLogBuffer {
                     // % (1 << 5)), (int) (hms >> 12),
                     // (int) ((hms >> 6) % (1 << 6)), (int) (hms % (1 << 6)));
                     // value = new Timestamp(cal.getTimeInMillis());
-                    second = String.format("%04d-%02d-%02d %02d:%02d:%02d",
+                    pos = appendDateTime(pos,
                         (int) (ym / 13),
                         (int) (ym % 13),
                         (int) (ymd % (1 << 5)),
@@ -550,12 +581,9 @@ public final class RowsLogBuffer {
                 }
 
                 if (meta >= 1) {
-                    String microSecond = usecondsToStr(frac, meta);
-                    microSecond = microSecond.substring(0, meta);
-                    value = second + '.' + microSecond;
-                } else {
-                    value = second;
+                    pos = appendFraction(pos, frac, meta);
                 }
+                value = new String(chars, 0, pos);
 
                 javaType = Types.TIMESTAMP;
                 length = 5 + (meta + 1) / 2;
@@ -575,11 +603,12 @@ public final class RowsLogBuffer {
                     // cal.set(70, 0, 1, i32 / 10000, (i32 % 10000) / 100, i32 %
                     // 100);
                     // value = new Time(cal.getTimeInMillis());
-                    value = String.format("%s%02d:%02d:%02d",
-                        (i32 >= 0) ? "" : "-",
-                        u32 / 10000,
-                        (u32 % 10000) / 100,
-                        u32 % 100);
+                    int pos = 0;
+                    if (i32 < 0) {
+                        chars[pos++] = '-';
+                    }
+                    pos = appendTime(pos, u32 / 10000, (u32 % 10000) / 100, u32 % 100);
+                    value = new String(chars, 0, pos);
                 }
                 javaType = Types.TIME;
                 length = 3;
@@ -660,9 +689,9 @@ public final class RowsLogBuffer {
                         break;
                 }
 
-                String second = null;
+                int pos = 0;
                 if (intpart == 0) {
-                    second = "00:00:00";
+                    pos = appendTime(pos, 0, 0, 0); // 00:00:00
                 } else {
                     // 目前只记录秒，不处理us frac
                     // if (cal == null) cal = Calendar.getInstance();
@@ -673,20 +702,19 @@ public final class RowsLogBuffer {
                     // value = new Time(cal.getTimeInMillis());
                     long ultime = Math.abs(ltime);
                     intpart = ultime >> 24;
-                    second = String.format("%s%02d:%02d:%02d",
-                        ltime >= 0 ? "" : "-",
+                    if (ltime < 0) {
+                        chars[pos++] = '-';
+                    }
+                    pos = appendTime(pos,
                         (int) ((intpart >> 12) % (1 << 10)),
                         (int) ((intpart >> 6) % (1 << 6)),
                         (int) (intpart % (1 << 6)));
                 }
 
                 if (meta >= 1) {
-                    String microSecond = usecondsToStr(Math.abs(frac), meta);
-                    microSecond = microSecond.substring(0, meta);
-                    value = second + '.' + microSecond;
-                } else {
-                    value = second;
+                    pos = appendFraction(pos, Math.abs(frac), meta);
                 }
+                value = new String(chars, 0, pos);
 
                 javaType = Types.TIME;
                 length = 3 + (meta + 1) / 2;
@@ -717,7 +745,7 @@ public final class RowsLogBuffer {
                     // cal.set((i32 / (16 * 32)), (i32 / 32 % 16) - 1, (i32 %
                     // 32));
                     // value = new java.sql.Date(cal.getTimeInMillis());
-                    value = String.format("%04d-%02d-%02d", i32 / (16 * 32), i32 / 32 % 16, i32 % 32);
+                    value = new String(chars, 0, appendDate(0, i32 / (16 * 32), i32 / 32 % 16, i32 % 32));
                 }
                 javaType = Types.DATE;
                 length = 3;
@@ -773,7 +801,8 @@ public final class RowsLogBuffer {
                 }
                 // logger.warn("MYSQL_TYPE_ENUM : This enumeration value is "
                 // + "only used internally and cannot exist in a binlog!");
-                value = Integer.valueOf(int32);
+                longValue = int32;
+                valueKind = INT_VALUE;
                 javaType = Types.INTEGER;
                 length = len;
                 break;
@@ -1007,8 +1036,6 @@ public final class RowsLogBuffer {
                 value = null;
                 length = 0;
         }
-
-        return value;
     }
 
     public final boolean isNull() {
@@ -1020,30 +1047,230 @@ public final class RowsLogBuffer {
     }
 
     public final Serializable getValue() {
+        if (value == null) {
+            switch (valueKind) {
+                case INT_VALUE:
+                    value = Integer.valueOf((int) longValue);
+                    break;
+                case LONG_VALUE:
+                    value = Long.valueOf(longValue);
+                    break;
+                case FLOAT_VALUE:
+                    value = Float.valueOf((float) doubleValue);
+                    break;
+                case DOUBLE_VALUE:
+                    value = Double.valueOf(doubleValue);
+                    break;
+                case DECIMAL_VALUE:
+                    value = new BigDecimal(text);
+                    break;
+                default:
+                    break;
+            }
+        }
         return value;
     }
 
+    /**
+     * 整数类型的值，不做装箱
+     */
+    public final long getLong() {
+        switch (valueKind) {
+            case INT_VALUE:
+            case LONG_VALUE:
+                return longValue;
+            case FLOAT_VALUE:
+            case DOUBLE_VALUE:
+                return (long) doubleValue;
+            default:
+                return ((Number) getValue()).longValue();
+        }
+    }
+
+    /**
+     * 浮点类型的值，不做装箱
+     */
+    public final double getDouble() {
+        switch (valueKind) {
+            case INT_VALUE:
+            case LONG_VALUE:
+                return longValue;
+            case FLOAT_VALUE:
+            case DOUBLE_VALUE:
+                return doubleValue;
+            default:
+                return ((Number) getValue()).doubleValue();
+        }
+    }
+
+    /**
+     * 输出当前值的文本，和String.valueOf(getValue())一致(decimal为toPlainString)，数值类型不经过装箱以及BigInteger
+     * 
+     * @param unsigned 整数类型按照字段长度转为无符号数
+     */
+    public final StringBuilder writeTo(StringBuilder sb, boolean unsigned) {
+        switch (valueKind) {
+            case INT_VALUE:
+            case LONG_VALUE:
+                if (!unsigned) {
+                    return sb.append(longValue);
+                }
+
+                switch (length) {
+                    case 1:
+                        return sb.append(longValue & 0xFFL);
+                    case 2:
+                        return sb.append(longValue & 0xFFFFL);
+                    case 3:
+                        return sb.append(longValue & 0xFFFFFFL);
+                    case 4:
+                        return sb.append(longValue & 0xFFFFFFFFL);
+                    case 8:
+                        if (longValue >= 0) {
+                            return sb.append(longValue);
+                        }
+                        // 无符号64位：先无符号除10，再补最后一位
+                        long quotient = (longValue >>> 1) / 5;
+                        return sb.append(quotient).append(longValue - quotient * 10);
+                    default:
+                        return sb.append(longValue);
+                }
+            case FLOAT_VALUE:
+                return sb.append((float) doubleValue);
+            case DOUBLE_VALUE:
+                return sb.append(doubleValue);
+            case DECIMAL_VALUE:
+                return sb.append(text);
+            default:
+                Serializable value = getValue();
+                if (value instanceof BigDecimal) {
+                    return sb.append(((BigDecimal) value).toPlainString());
+                }
+                return sb.append(value);
+        }
+    }
+
     public final int getLength() {
         return length;
     }
 
-    private String usecondsToStr(int frac, int meta) {
-        String sec = String.valueOf(frac);
+    // ==================== 时间类型的格式化 ====================
+
+    /**
+     * 输出和Timestamp.toString()一致的本地时间，精确到秒
+     */
+    private int appendTimestamp(int pos, long seconds) {
+        if (timeZone == null) {
+            timeZone = TimeZone.getDefault();
+        }
+
+        long millis = seconds * 1000;
+        long local = millis + timeZone.getOffset(millis);
+        long days = local / MILLIS_PER_DAY;
+        if (local % MILLIS_PER_DAY < 0) {
+            days--;
+        }
+        int secondOfDay = (int) ((local - days * MILLIS_PER_DAY) / 1000);
+
+        // 基于公历的天数计算年月日，see http://howardhinnant.github.io/date_algorithms.html#civil_from_days
+        long z = days + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        int year = (int) (yoe + era * 400 + (month <= 2 ? 1 : 0));
+        return appendDateTime(pos,
+            year,
+            month,
+            day,
+            secondOfDay / 3600,
+            (secondOfDay % 3600) / 60,
+            secondOfDay % 60);
+    }
+
+    /**
+     * 等价于String.format("%04d-%02d-%02d %02d:%02d:%02d")
+     */
+    private int appendDateTime(int pos, int year, int month, int day, int hour, int minute, int second) {
+        pos = appendDate(pos, year, month, day);
+        chars[pos++] = ' ';
+        return appendTime(pos, hour, minute, second);
+    }
+
+    /**
+     * 等价于String.format("%04d-%02d-%02d")
+     */
+    private int appendDate(int pos, int year, int month, int day) {
+        pos = appendNumber(pos, year, 4);
+        chars[pos++] = '-';
+        pos = appendNumber(pos, month, 2);
+        chars[pos++] = '-';
+        return appendNumber(pos, day, 2);
+    }
+
+    /**
+     * 等价于String.format("%02d:%02d:%02d")
+     */
+    private int appendTime(int pos, int hour, int minute, int second) {
+        pos = appendNumber(pos, hour, 2);
+        chars[pos++] = ':';
+        pos = appendNumber(pos, minute, 2);
+        chars[pos++] = ':';
+        return appendNumber(pos, second, 2);
+    }
+
+    /**
+     * 输出'.'和微秒的前meta位，String.valueOf(frac)左补0到6位之后截取前meta位
+     */
+    private int appendFraction(int pos, int frac, int meta) {
         if (meta > 6) {
             throw new IllegalArgumentException("unknow useconds meta : " + meta);
         }
 
-        if (sec.length() < 6) {
-            StringBuilder result = new StringBuilder(6);
-            int len = 6 - sec.length();
-            for (; len > 0; len--) {
-                result.append('0');
-            }
-            result.append(sec);
-            sec = result.toString();
+        chars[pos++] = '.';
+        int start = pos;
+        for (int i = stringSize(frac); i < 6; i++) {
+            chars[pos++] = '0';
+        }
+        appendNumber(pos, frac, 0);
+        return start + meta;
+    }
+
+    /**
+     * 等价于String.format("%0{width}d")，负数的符号占用一位宽度
+     */
+    private int appendNumber(int pos, int v, int width) {
+        long abs = v;
+        if (v < 0) {
+            chars[pos++] = '-';
+            abs = -abs;
+            width--;
+        }
+
+        int digits = stringSize(abs);
+        for (int i = digits; i < width; i++) {
+            chars[pos++] = '0';
         }
+        int end = pos + digits;
+        for (int i = end - 1; i >= pos; i--) {
+            chars[i] = (char) ('0' + abs % 10);
+            abs /= 10;
+        }
+        return end;
+    }
 
-        return sec.substring(0, meta);
+    /**
+     * String.valueOf(v)的长度
+     */
+    private static int stringSize(long v) {
+        int size = v < 0 ? 2 : 1;
+        for (long x = Math.abs(v); x >= 10; x /= 10) {
+            size++;
+        }
+        return size;
     }
 
 }
@@ -346,17 +346,7 @@ public final class TableMapLogEvent extends LogEvent {
         final int commonHeaderLen = descriptionEvent.commonHeaderLen;
         final int postHeaderLen = descriptionEvent.postHeaderLen[header.type - 1];
         /* Read the post-header */
-        buffer.position(commonHeaderLen + TM_MAPID_OFFSET);
-        if (postHeaderLen == 6) {
-            /*
-             * Master is of an intermediate source tree before 5.1.4. Id is 4
-             * bytes
-             */
-            tableId = buffer.getUint32();
-        } else {
-            // DBUG_ASSERT(post_header_len == TABLE_MAP_HEADER_LEN);
-            tableId = buffer.getUlong48();
-        }
+        tableId = getTableId(header, buffer, descriptionEvent);
         // flags = buffer.getUint16();
 
         /* Read the variable part of the event */
@@ -382,6 +372,39 @@ public final class TableMapLogEvent extends LogEvent {
         }
     }
 
+    /**
+     * Constructor sharing the decoded table information of a previous map
+     * event, used when the same table map is logged again unchanged.
+     */
+    public TableMapLogEvent(LogHeader header, TableMapLogEvent mapEvent){
+        super(header);
+
+        this.dbname = mapEvent.dbname;
+        this.tblname = mapEvent.tblname;
+        this.columnCnt = mapEvent.columnCnt;
+        this.columnInfo = mapEvent.columnInfo;
+        this.tableId = mapEvent.tableId;
+        this.nullBits = mapEvent.nullBits;
+    }
+
+    /**
+     * Read the table id from the post-header of a table map event.
+     */
+    public static long getTableId(LogHeader header, LogBuffer buffer, FormatDescriptionLogEvent descriptionEvent) {
+        final int commonHeaderLen = descriptionEvent.commonHeaderLen;
+        final int postHeaderLen = descriptionEvent.postHeaderLen[header.type - 1];
+        if (postHeaderLen == 6) {
+            /*
+             * Master is of an intermediate source tree before 5.1.4. Id is 4
+             * bytes
+             */
+            return buffer.getUint32(commonHeaderLen + TM_MAPID_OFFSET);
+        } else {
+            // DBUG_ASSERT(post_header_len == TABLE_MAP_HEADER_LEN);
+            return buffer.getUlong48(commonHeaderLen + TM_MAPID_OFFSET);
+        }
+    }
+
     /**
      * Decode field metadata by column types.
      * 
@@ -1,8 +1,12 @@
 package com.taobao.tddl.dbsync.binlog;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.Assert;
 import org.junit.Before;
@@ -87,4 +91,119 @@ public class FileLogFetcherTest extends BaseLogFetcherTest {
             }
         }
     }
+
+    @Test
+    public void testMapped() throws Exception {
+        File current = new File(directory, "mysql-bin.000001");
+        List<String> expected = decode(new FileLogFetcher(1024 * 16), current, 2051L);
+        // 窗口和初始缓冲都很小，覆盖event跨窗口以及缓冲扩容的情况
+        List<String> result = decode(new FileLogFetcher(256, 1000), current, 2051L);
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(expected, result);
+
+        result = decode(new FileLogFetcher(256, 1000), current, 4L);
+        Assert.assertEquals(decode(new FileLogFetcher(1024 * 16), current, 4L), result);
+    }
+
+    /**
+     * 读取吞吐的对比，通过-Dbinlog.benchmark.file指定一个较大的binlog文件
+     */
+    @Test
+    public void testThroughput() throws Exception {
+        String path = System.getProperty("binlog.benchmark.file");
+        if (path == null) {
+            return;
+        }
+
+        File file = new File(path);
+        for (int i = 0; i < 3; i++) {
+            benchmark("stream", new FileLogFetcher(1024 * 16), file);
+            benchmark("mmap", new FileLogFetcher(1024 * 16, 64 * 1024 * 1024), file);
+        }
+    }
+
+    @Test
+    public void testTail() throws Exception {
+        File source = new File(directory, "mysql-bin.000001");
+        List<String> expected = decode(new FileLogFetcher(1024 * 16), source, 4L);
+        Assert.assertEquals(expected, tail(new FileLogFetcher(256), source));
+        Assert.assertEquals(expected, tail(new FileLogFetcher(256, 1000), source));
+    }
+
+    /**
+     * 先写入一半文件，读到文件末尾之后再追加剩余内容，模拟跟随正在写入的binlog文件
+     */
+    private List<String> tail(FileLogFetcher fetcher, File source) throws IOException {
+        byte[] data = new byte[(int) source.length()];
+        FileInputStream in = new FileInputStream(source);
+        try {
+            Assert.assertEquals(data.length, in.read(data));
+        } finally {
+            in.close();
+        }
+
+        File file = File.createTempFile("mysql-bin.", ".tail");
+        file.deleteOnExit();
+        int half = data.length / 2;
+        write(file, data, 0, half, false);
+
+        List<String> result = new ArrayList<String>();
+        LogDecoder decoder = new LogDecoder(LogEvent.UNKNOWN_EVENT, LogEvent.ENUM_END_EVENT);
+        LogContext context = new LogContext();
+        try {
+            fetcher.open(file, 4L);
+            context.setLogPosition(new LogPosition(file.getName()));
+            drain(fetcher, decoder, context, result);
+            drain(fetcher, decoder, context, result);// 到达末尾后重试，没有新内容
+            write(file, data, half, data.length - half, true);
+            drain(fetcher, decoder, context, result);
+        } finally {
+            fetcher.close();
+            file.delete();
+        }
+        return result;
+    }
+
+    private void write(File file, byte[] data, int off, int len, boolean append) throws IOException {
+        FileOutputStream out = new FileOutputStream(file, append);
+        try {
+            out.write(data, off, len);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void drain(FileLogFetcher fetcher, LogDecoder decoder, LogContext context, List<String> result)
+                                                                                                          throws IOException {
+        while (fetcher.fetch()) {
+            LogEvent event;
+            while ((event = decoder.decode(fetcher, context)) != null) {
+                result.add(event.getHeader().getType() + ":" + event.getLogPos());
+            }
+        }
+    }
+
+    private void benchmark(String name, FileLogFetcher fetcher, File file) throws IOException {
+        long start = System.currentTimeMillis();
+        List<String> events = decode(fetcher, file, 4L);
+        long cost = Math.max(System.currentTimeMillis() - start, 1L);
+        System.out.println(String.format("%s : %d events , %d MB/s",
+            name,
+            events.size(),
+            file.length() * 1000 / cost / 1024 / 1024));
+    }
+
+    private List<String> decode(FileLogFetcher fetcher, File file, long position) throws IOException {
+        List<String> result = new ArrayList<String>();
+        LogDecoder decoder = new LogDecoder(LogEvent.UNKNOWN_EVENT, LogEvent.ENUM_END_EVENT);
+        LogContext context = new LogContext();
+        try {
+            fetcher.open(file, position);
+            context.setLogPosition(new LogPosition(file.getName()));
+            drain(fetcher, decoder, context, result);
+        } finally {
+            fetcher.close();
+        }
+        return result;
+    }
 }
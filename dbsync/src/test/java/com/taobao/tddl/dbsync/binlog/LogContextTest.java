@@ -0,0 +1,135 @@
+package com.taobao.tddl.dbsync.binlog;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.net.URL;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.taobao.tddl.dbsync.binlog.event.FormatDescriptionLogEvent;
+import com.taobao.tddl.dbsync.binlog.event.LogHeader;
+import com.taobao.tddl.dbsync.binlog.event.TableMapLogEvent;
+
+/**
+ * table map解析结果的缓存
+ *
+ * @author yzy
+ * @version 1.0.24
+ */
+public class LogContextTest {
+
+    private String directory;
+
+    @Before
+    public void setUp() {
+        URL url = Thread.currentThread().getContextClassLoader().getResource("dummy.txt");
+        File dummyFile = new File(url.getFile());
+        directory = new File(dummyFile.getParent() + "/binlog").getPath();
+    }
+
+    @Test
+    public void testTableMapCache() throws Exception {
+        File current = new File(directory, "mysql-bin.000001");
+        FileLogFetcher fetcher = new FileLogFetcher(1024 * 16);
+        LogDecoder decoder = new LogDecoder(LogEvent.UNKNOWN_EVENT, LogEvent.ENUM_END_EVENT);
+        LogContext context = new LogContext();
+        int reused = 0;
+        try {
+            fetcher.open(current, 4L);
+            context.setLogPosition(new LogPosition(current.getName()));
+            TableMapLogEvent previous = null;
+            while (fetcher.fetch()) {
+                LogEvent event;
+                while ((event = decoder.decode(fetcher, context)) != null) {
+                    if (!(event instanceof TableMapLogEvent)) {
+                        continue;
+                    }
+
+                    TableMapLogEvent mapEvent = (TableMapLogEvent) event;
+                    Assert.assertEquals(event.getLogPos(), context.getLogPosition().getPosition());
+                    if (previous != null && previous.getTableId() == mapEvent.getTableId()) {
+                        // 相同的table map共享解析结果，header使用当前事件的
+                        Assert.assertTrue(previous.getColumnInfo() == mapEvent.getColumnInfo());
+                        Assert.assertFalse(previous.getLogPos() == mapEvent.getLogPos());
+                        reused++;
+                    }
+                    previous = mapEvent;
+                }
+            }
+        } finally {
+            fetcher.close();
+        }
+        Assert.assertTrue(reused > 0);
+    }
+
+    @Test
+    public void testTableMapChanged() {
+        LogContext context = new LogContext();
+        TableMapLogEvent first = decodeTable(context, "t1", LogEvent.MYSQL_TYPE_LONG, LogEvent.MYSQL_TYPE_VARCHAR);
+        TableMapLogEvent same = decodeTable(context, "t1", LogEvent.MYSQL_TYPE_LONG, LogEvent.MYSQL_TYPE_VARCHAR);
+        Assert.assertTrue(first.getColumnInfo() == same.getColumnInfo());
+
+        // 相同的tableId，内容变化(比如ddl之后)需要重新解析
+        TableMapLogEvent changed = decodeTable(context,
+            "t1",
+            LogEvent.MYSQL_TYPE_LONG,
+            LogEvent.MYSQL_TYPE_VARCHAR,
+            LogEvent.MYSQL_TYPE_LONGLONG);
+        Assert.assertFalse(first.getColumnInfo() == changed.getColumnInfo());
+        Assert.assertEquals(3, changed.getColumnCnt());
+        Assert.assertEquals(LogEvent.MYSQL_TYPE_LONGLONG, changed.getColumnInfo()[2].type);
+        Assert.assertTrue(context.getTable(1) == changed);
+
+        TableMapLogEvent renamed = decodeTable(context,
+            "t2",
+            LogEvent.MYSQL_TYPE_LONG,
+            LogEvent.MYSQL_TYPE_VARCHAR,
+            LogEvent.MYSQL_TYPE_LONGLONG);
+        Assert.assertEquals("t2", renamed.getTableName());
+        Assert.assertFalse(changed.getColumnInfo() == renamed.getColumnInfo());
+
+        // 变化之后的结果同样可以被复用
+        TableMapLogEvent again = decodeTable(context,
+            "t2",
+            LogEvent.MYSQL_TYPE_LONG,
+            LogEvent.MYSQL_TYPE_VARCHAR,
+            LogEvent.MYSQL_TYPE_LONGLONG);
+        Assert.assertTrue(renamed.getColumnInfo() == again.getColumnInfo());
+    }
+
+    /**
+     * 构造table id为1的table map事件，通过LogContext解析
+     */
+    private TableMapLogEvent decodeTable(LogContext context, String table, int... types) {
+        FormatDescriptionLogEvent descriptionEvent = context.getFormatDescription();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[descriptionEvent.getCommonHeaderLen()], 0, descriptionEvent.getCommonHeaderLen());
+        out.write(new byte[] { 1, 0, 0, 0, 0, 0 }, 0, 6); // table id
+        out.write(new byte[] { 1, 0 }, 0, 2); // flags
+        writeName(out, "test");
+        writeName(out, table);
+        out.write(types.length);
+        ByteArrayOutputStream meta = new ByteArrayOutputStream();
+        for (int type : types) {
+            out.write(type);
+            if (type == LogEvent.MYSQL_TYPE_VARCHAR) {
+                meta.write(64);
+                meta.write(0);
+            }
+        }
+        out.write(meta.size());
+        out.write(meta.toByteArray(), 0, meta.size());
+        out.write(0xff); // null bits
+
+        byte[] data = out.toByteArray();
+        return context.decodeTable(new LogHeader(LogEvent.TABLE_MAP_EVENT), new LogBuffer(data, 0, data.length));
+    }
+
+    private void writeName(ByteArrayOutputStream out, String name) {
+        out.write(name.length());
+        out.write(name.getBytes(), 0, name.length());
+        out.write(0);
+    }
+}
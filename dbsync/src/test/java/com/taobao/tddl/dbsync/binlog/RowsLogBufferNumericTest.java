@@ -0,0 +1,186 @@
+package com.taobao.tddl.dbsync.binlog;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.taobao.tddl.dbsync.binlog.event.RowsLogBuffer;
+
+/**
+ * 数值类型直接输出文本的结果需要和原先基于装箱对象以及BigInteger的实现完全一致
+ */
+public class RowsLogBufferNumericTest {
+
+    private static final BigInteger BIGINT_MAX_VALUE = new BigInteger("18446744073709551616");
+
+    private static final int[]      INTEGER_TYPES    = { LogEvent.MYSQL_TYPE_TINY, LogEvent.MYSQL_TYPE_SHORT,
+            LogEvent.MYSQL_TYPE_INT24, LogEvent.MYSQL_TYPE_LONG, LogEvent.MYSQL_TYPE_LONGLONG };
+
+    private Random                  random           = new Random();
+
+    @Test
+    public void testInteger() {
+        for (int type : INTEGER_TYPES) {
+            for (int i = 0; i < 20000; i++) {
+                byte[] data = new byte[8];
+                random.nextBytes(data);
+                if (i < 2) {
+                    // 边界值
+                    fill(data, i == 0 ? (byte) 0xFF : (byte) 0x80);
+                }
+
+                RowsLogBuffer buffer = newBuffer(data);
+                buffer.readValue(type, 0, false);
+                Number expected = (Number) buffer.getValue();
+                Assert.assertEquals(expected.longValue(), buffer.getLong());
+                Assert.assertEquals(String.valueOf(expected), buffer.writeTo(new StringBuilder(), false).toString());
+                Assert.assertEquals(legacyUnsigned(expected, buffer.getLength()),
+                    buffer.writeTo(new StringBuilder(), expected.longValue() < 0).toString());
+            }
+        }
+    }
+
+    @Test
+    public void testFloat() {
+        for (int i = 0; i < 20000; i++) {
+            byte[] data = new byte[8];
+            random.nextBytes(data);
+
+            RowsLogBuffer buffer = newBuffer(data);
+            buffer.readValue(LogEvent.MYSQL_TYPE_FLOAT, 4, false);
+            Assert.assertEquals(String.valueOf(buffer.getValue()), buffer.writeTo(new StringBuilder(), false)
+                .toString());
+
+            buffer = newBuffer(data);
+            buffer.readValue(LogEvent.MYSQL_TYPE_DOUBLE, 8, false);
+            Assert.assertEquals(String.valueOf(buffer.getValue()), buffer.writeTo(new StringBuilder(), false)
+                .toString());
+            Assert.assertEquals(((Number) buffer.getValue()).doubleValue(), buffer.getDouble(), 0);
+        }
+    }
+
+    @Test
+    public void testDecimal() {
+        for (int precision = 1; precision <= 65; precision++) {
+            for (int scale = 0; scale <= Math.min(precision, 30); scale++) {
+                for (int i = 0; i < 200; i++) {
+                    BigDecimal value = randomDecimal(precision, scale);
+                    byte[] data = toBinary(value, precision, scale);
+                    int meta = (precision << 8) | scale;
+
+                    RowsLogBuffer buffer = newBuffer(data);
+                    buffer.readValue(LogEvent.MYSQL_TYPE_NEWDECIMAL, meta, false);
+                    String text = buffer.writeTo(new StringBuilder(), false).toString();
+                    // 小数部分为0时按照原先的实现会输出为x.0，所以只比较数值
+                    Assert.assertEquals(0, value.compareTo(new BigDecimal(text)));
+                    // -0.00需要和BigDecimal.toPlainString()一致
+                    Assert.assertEquals(new BigDecimal(text).toPlainString(), text);
+                    Assert.assertEquals(((BigDecimal) buffer.getValue()).toPlainString(), text);
+                }
+            }
+        }
+    }
+
+    private RowsLogBuffer newBuffer(byte[] data) {
+        return new RowsLogBuffer(new LogBuffer(data, 0, data.length), 1, "UTF-8");
+    }
+
+    /**
+     * 原先LogEventConvert中unsigned类型的处理
+     */
+    private String legacyUnsigned(Number number, int length) {
+        if (number.longValue() >= 0) {
+            return String.valueOf(number);
+        }
+
+        switch (length) {
+            case 1:
+                return String.valueOf(Integer.valueOf(256 + number.intValue()));
+            case 2:
+                return String.valueOf(Integer.valueOf(65536 + number.intValue()));
+            case 3:
+                return String.valueOf(Integer.valueOf(16777216 + number.intValue()));
+            case 4:
+                return String.valueOf(Long.valueOf(4294967296L + number.longValue()));
+            case 8:
+                return BIGINT_MAX_VALUE.add(BigInteger.valueOf(number.longValue())).toString();
+            default:
+                return String.valueOf(number);
+        }
+    }
+
+    private BigDecimal randomDecimal(int precision, int scale) {
+        StringBuilder digits = new StringBuilder();
+        int length = random.nextInt(precision) + 1;
+        for (int i = 0; i < length; i++) {
+            digits.append((char) ('0' + random.nextInt(10)));
+        }
+        BigDecimal value = new BigDecimal(new BigInteger(digits.toString()), scale);
+        return random.nextBoolean() ? value.negate() : value;
+    }
+
+    private void fill(byte[] data, byte b) {
+        for (int i = 0; i < data.length; i++) {
+            data[i] = b;
+        }
+    }
+
+    /**
+     * 按照mysql的decimal2bin格式生成二进制数据
+     */
+    private byte[] toBinary(BigDecimal value, int precision, int scale) {
+        final int[] dig2bytes = { 0, 1, 1, 2, 2, 3, 3, 4, 4, 4 };
+        int intg = precision - scale;
+        int intg0 = intg / 9, intg0x = intg - intg0 * 9;
+        int frac0 = scale / 9, frac0x = scale - frac0 * 9;
+        int size = intg0 * 4 + dig2bytes[intg0x] + frac0 * 4 + dig2bytes[frac0x];
+
+        String plain = value.abs().setScale(scale).toPlainString();
+        String intPart = scale > 0 ? plain.substring(0, plain.indexOf('.')) : plain;
+        String fracPart = scale > 0 ? plain.substring(plain.indexOf('.') + 1) : "";
+        StringBuilder padded = new StringBuilder();
+        for (int i = intPart.length(); i < intg; i++) {
+            padded.append('0');
+        }
+        padded.append(intPart);
+        intPart = padded.substring(padded.length() - intg);
+
+        byte[] data = new byte[size];
+        int pos = 0;
+        int start = 0;
+        if (intg0x > 0) {
+            pos = writeBe(data, pos, Integer.parseInt(intPart.substring(0, intg0x)), dig2bytes[intg0x]);
+            start = intg0x;
+        }
+        for (int i = 0; i < intg0; i++, start += 9) {
+            pos = writeBe(data, pos, Integer.parseInt(intPart.substring(start, start + 9)), 4);
+        }
+        start = 0;
+        for (int i = 0; i < frac0; i++, start += 9) {
+            pos = writeBe(data, pos, Integer.parseInt(fracPart.substring(start, start + 9)), 4);
+        }
+        if (frac0x > 0) {
+            pos = writeBe(data, pos, Integer.parseInt(fracPart.substring(start)), dig2bytes[frac0x]);
+        }
+
+        // 负数所有位取反，最高位为符号位
+        if (value.signum() < 0) {
+            for (int i = 0; i < size; i++) {
+                data[i] = (byte) ~data[i];
+            }
+        }
+        data[0] ^= 0x80;
+        return data;
+    }
+
+    private int writeBe(byte[] data, int pos, int value, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            data[pos + i] = (byte) value;
+            value >>= 8;
+        }
+        return pos + length;
+    }
+}
@@ -0,0 +1,100 @@
+package com.taobao.tddl.dbsync.binlog;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.sun.management.ThreadMXBean;
+import com.taobao.tddl.dbsync.binlog.RowsLogBufferTemporalTest.LegacyTemporal;
+import com.taobao.tddl.dbsync.binlog.event.RowsLogBuffer;
+
+/**
+ * 对比时间类型格式化的耗时以及内存分配，数据为包含多个时间字段的行
+ */
+public class RowsLogBufferTemporalNoRunTest {
+
+    private static final int   ROWS    = 10000;
+    private static final int   ROUNDS  = 50;
+    // 每行的字段类型和meta：datetime(3), timestamp, date, time, datetime, timestamp(6), time(2)
+    private static final int[] TYPES   = { LogEvent.MYSQL_TYPE_DATETIME2, LogEvent.MYSQL_TYPE_TIMESTAMP2,
+            LogEvent.MYSQL_TYPE_DATE, LogEvent.MYSQL_TYPE_TIME2, LogEvent.MYSQL_TYPE_DATETIME2,
+            LogEvent.MYSQL_TYPE_TIMESTAMP2, LogEvent.MYSQL_TYPE_TIME2 };
+    private static final int[] METAS   = { 3, 0, 0, 0, 0, 6, 2 };
+
+    private Random             random  = new Random(1);
+
+    @Test
+    public void testCompare() {
+        byte[] rows = buildRows();
+        ThreadMXBean mxBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            long bytes = mxBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < ROUNDS; i++) {
+                LogBuffer buffer = new LogBuffer(rows, 0, rows.length);
+                while (buffer.hasRemaining()) {
+                    for (int j = 0; j < TYPES.length; j++) {
+                        LegacyTemporal.fetchValue(buffer, TYPES[j], METAS[j]);
+                    }
+                }
+            }
+            print("legacy ", start, bytes, mxBean, threadId);
+
+            start = System.nanoTime();
+            bytes = mxBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < ROUNDS; i++) {
+                LogBuffer buffer = new LogBuffer(rows, 0, rows.length);
+                RowsLogBuffer rowsBuffer = new RowsLogBuffer(buffer, TYPES.length, "UTF-8");
+                while (buffer.hasRemaining()) {
+                    for (int j = 0; j < TYPES.length; j++) {
+                        rowsBuffer.nextValue(TYPES[j], METAS[j]);
+                    }
+                }
+            }
+            print("current", start, bytes, mxBean, threadId);
+        }
+    }
+
+    private void print(String name, long start, long bytes, ThreadMXBean mxBean, long threadId) {
+        long values = (long) ROWS * ROUNDS * TYPES.length;
+        System.out.println(String.format("%s : %d ns/value , %d bytes/value",
+            name,
+            (System.nanoTime() - start) / values,
+            (mxBean.getThreadAllocatedBytes(threadId) - bytes) / values));
+    }
+
+    private byte[] buildRows() {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        for (int i = 0; i < ROWS; i++) {
+            int year = 2000 + random.nextInt(30);
+            int month = 1 + random.nextInt(12);
+            int day = 1 + random.nextInt(28);
+            long ymd = ((year * 13L + month) << 5) | day;
+            long hms = (random.nextInt(24) << 12) | (random.nextInt(60) << 6) | random.nextInt(60);
+            long time = (random.nextInt(24) << 12) | (random.nextInt(60) << 6) | random.nextInt(60);
+            long seconds = 1500000000L + random.nextInt(100000000);
+
+            write(output, ((ymd << 17) | hms) + RowsLogBuffer.DATETIMEF_INT_OFS, 5, true); // datetime(3)
+            write(output, random.nextInt(1000) * 10, 2, true);
+            write(output, seconds, 4, true); // timestamp
+            write(output, year * 16 * 32 + month * 32 + day, 3, false); // date
+            write(output, time + RowsLogBuffer.TIMEF_INT_OFS, 3, true); // time
+            write(output, ((ymd << 17) | hms) + RowsLogBuffer.DATETIMEF_INT_OFS, 5, true); // datetime
+            write(output, seconds, 4, true); // timestamp(6)
+            write(output, random.nextInt(1000000), 3, true);
+            write(output, time + RowsLogBuffer.TIMEF_INT_OFS, 3, true); // time(2)
+            write(output, random.nextInt(100), 1, true);
+        }
+        return output.toByteArray();
+    }
+
+    private void write(ByteArrayOutputStream output, long value, int length, boolean bigEndian) {
+        for (int i = 0; i < length; i++) {
+            int shift = bigEndian ? 8 * (length - 1 - i) : 8 * i;
+            output.write((int) (value >> shift));
+        }
+    }
+}
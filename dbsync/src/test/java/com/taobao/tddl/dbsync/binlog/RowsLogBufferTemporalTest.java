@@ -0,0 +1,291 @@
+package com.taobao.tddl.dbsync.binlog;
+
+import java.io.Serializable;
+import java.sql.Timestamp;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.taobao.tddl.dbsync.binlog.event.RowsLogBuffer;
+
+/**
+ * 时间类型的格式化结果需要和原先基于String.format/Timestamp.toString的实现完全一致
+ */
+public class RowsLogBufferTemporalTest {
+
+    private static final int[] TYPES = { LogEvent.MYSQL_TYPE_TIMESTAMP, LogEvent.MYSQL_TYPE_TIMESTAMP2,
+            LogEvent.MYSQL_TYPE_DATETIME, LogEvent.MYSQL_TYPE_DATETIME2, LogEvent.MYSQL_TYPE_TIME,
+            LogEvent.MYSQL_TYPE_TIME2, LogEvent.MYSQL_TYPE_DATE };
+
+    private Random             random = new Random();
+
+    @Test
+    public void testRandomBytes() {
+        TimeZone defaultTimeZone = TimeZone.getDefault();
+        try {
+            for (String id : new String[] { "UTC", "Asia/Shanghai", "America/New_York", "Asia/Kolkata" }) {
+                TimeZone.setDefault(TimeZone.getTimeZone(id));
+                for (int type : TYPES) {
+                    for (int meta = 0; meta <= 6; meta++) {
+                        for (int i = 0; i < 5000; i++) {
+                            byte[] data = new byte[8];
+                            random.nextBytes(data);
+                            assertSame(type, meta, data);
+                        }
+                    }
+                }
+            }
+        } finally {
+            TimeZone.setDefault(defaultTimeZone);
+        }
+    }
+
+    @Test
+    public void testValidValues() {
+        for (int i = 0; i < 20000; i++) {
+            int year = random.nextInt(10000);
+            int month = random.nextInt(13);
+            int day = random.nextInt(32);
+            int hour = random.nextInt(24);
+            int minute = random.nextInt(60);
+            int second = random.nextInt(60);
+
+            // DATETIME : YYYYMMDDhhmmss
+            long datetime = ((year * 100L + month) * 100 + day) * 1000000L + (hour * 100 + minute) * 100 + second;
+            assertSame(LogEvent.MYSQL_TYPE_DATETIME, 0, littleEndian(datetime, 8));
+
+            // DATE : YYYY×16×32 + MM×32 + DD
+            assertSame(LogEvent.MYSQL_TYPE_DATE, 0, littleEndian(year * 16 * 32 + month * 32 + day, 3));
+
+            // TIME : hhmmss
+            int time = (random.nextInt(839) * 100 + minute) * 100 + second;
+            assertSame(LogEvent.MYSQL_TYPE_TIME, 0, littleEndian(random.nextBoolean() ? time : -time, 3));
+
+            // TIMESTAMP : 秒
+            assertSame(LogEvent.MYSQL_TYPE_TIMESTAMP, 0, littleEndian(random.nextInt(Integer.MAX_VALUE), 4));
+
+            // DATETIME2 : 大端，ymd和hms按位拼装
+            for (int meta = 0; meta <= 6; meta++) {
+                long ymd = ((year * 13L + month) << 5) | day;
+                long hms = (hour << 12) | (minute << 6) | second;
+                long intpart = ((ymd << 17) | hms) + RowsLogBuffer.DATETIMEF_INT_OFS;
+                byte[] data = new byte[8];
+                System.arraycopy(bigEndian(intpart, 5), 0, data, 0, 5);
+                System.arraycopy(bigEndian(random.nextInt(1000000), 3), 0, data, 5, 3);
+                assertSame(LogEvent.MYSQL_TYPE_DATETIME2, meta, data);
+            }
+        }
+    }
+
+    private void assertSame(int type, int meta, byte[] data) {
+        Serializable expected = LegacyTemporal.fetchValue(new LogBuffer(data, 0, data.length), type, meta);
+        Serializable actual = new RowsLogBuffer(new LogBuffer(data, 0, data.length), 1, "UTF-8").nextValue(type, meta);
+        Assert.assertEquals("type=" + type + " meta=" + meta + " data=" + toHex(data), expected, actual);
+    }
+
+    private byte[] littleEndian(long value, int length) {
+        byte[] data = new byte[8];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (value >> (8 * i));
+        }
+        return data;
+    }
+
+    private byte[] bigEndian(long value, int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[length - 1 - i] = (byte) (value >> (8 * i));
+        }
+        return data;
+    }
+
+    private String toHex(byte[] data) {
+        StringBuilder builder = new StringBuilder();
+        for (byte b : data) {
+            builder.append(String.format("%02X", b));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 原先RowsLogBuffer中时间类型的实现，作为对比的基准
+     */
+    static class LegacyTemporal {
+
+        static Serializable fetchValue(LogBuffer buffer, int type, int meta) {
+            switch (type) {
+                case LogEvent.MYSQL_TYPE_TIMESTAMP: {
+                    final long i32 = buffer.getUint32();
+                    if (i32 == 0) {
+                        return "0000-00-00 00:00:00";
+                    }
+                    String v = new Timestamp(i32 * 1000).toString();
+                    return v.substring(0, v.length() - 2);
+                }
+                case LogEvent.MYSQL_TYPE_TIMESTAMP2: {
+                    final long tv_sec = buffer.getBeUint32();
+                    int tv_usec = readFraction(buffer, meta);
+                    String second = null;
+                    if (tv_sec == 0) {
+                        second = "0000-00-00 00:00:00";
+                    } else {
+                        Timestamp time = new Timestamp(tv_sec * 1000);
+                        second = time.toString();
+                        second = second.substring(0, second.length() - 2);
+                    }
+                    return meta >= 1 ? second + '.' + usecondsToStr(tv_usec, meta).substring(0, meta) : second;
+                }
+                case LogEvent.MYSQL_TYPE_DATETIME: {
+                    final long i64 = buffer.getLong64();
+                    if (i64 == 0) {
+                        return "0000-00-00 00:00:00";
+                    }
+                    final int d = (int) (i64 / 1000000);
+                    final int t = (int) (i64 % 1000000);
+                    return String.format("%04d-%02d-%02d %02d:%02d:%02d",
+                        d / 10000,
+                        (d % 10000) / 100,
+                        d % 100,
+                        t / 10000,
+                        (t % 10000) / 100,
+                        t % 100);
+                }
+                case LogEvent.MYSQL_TYPE_DATETIME2: {
+                    long intpart = buffer.getBeUlong40() - RowsLogBuffer.DATETIMEF_INT_OFS;
+                    int frac = readFraction(buffer, meta);
+                    String second = null;
+                    if (intpart == 0) {
+                        second = "0000-00-00 00:00:00";
+                    } else {
+                        long ymd = intpart >> 17;
+                        long ym = ymd >> 5;
+                        long hms = intpart % (1 << 17);
+                        second = String.format("%04d-%02d-%02d %02d:%02d:%02d",
+                            (int) (ym / 13),
+                            (int) (ym % 13),
+                            (int) (ymd % (1 << 5)),
+                            (int) (hms >> 12),
+                            (int) ((hms >> 6) % (1 << 6)),
+                            (int) (hms % (1 << 6)));
+                    }
+                    return meta >= 1 ? second + '.' + usecondsToStr(frac, meta).substring(0, meta) : second;
+                }
+                case LogEvent.MYSQL_TYPE_TIME: {
+                    final int i32 = buffer.getInt24();
+                    final int u32 = Math.abs(i32);
+                    if (i32 == 0) {
+                        return "00:00:00";
+                    }
+                    return String.format("%s%02d:%02d:%02d",
+                        (i32 >= 0) ? "" : "-",
+                        u32 / 10000,
+                        (u32 % 10000) / 100,
+                        u32 % 100);
+                }
+                case LogEvent.MYSQL_TYPE_TIME2: {
+                    long intpart = 0;
+                    int frac = 0;
+                    long ltime = 0;
+                    switch (meta) {
+                        case 0:
+                            intpart = buffer.getBeUint24() - RowsLogBuffer.TIMEF_INT_OFS;
+                            ltime = intpart << 24;
+                            break;
+                        case 1:
+                        case 2:
+                            intpart = buffer.getBeUint24() - RowsLogBuffer.TIMEF_INT_OFS;
+                            frac = buffer.getUint8();
+                            if (intpart < 0 && frac > 0) {
+                                intpart++;
+                                frac -= 0x100;
+                            }
+                            frac = frac * 10000;
+                            ltime = intpart << 24;
+                            break;
+                        case 3:
+                        case 4:
+                            intpart = buffer.getBeUint24() - RowsLogBuffer.TIMEF_INT_OFS;
+                            frac = buffer.getBeUint16();
+                            if (intpart < 0 && frac > 0) {
+                                intpart++;
+                                frac -= 0x10000;
+                            }
+                            frac = frac * 100;
+                            ltime = intpart << 24;
+                            break;
+                        case 5:
+                        case 6:
+                            intpart = buffer.getBeUlong48() - RowsLogBuffer.TIMEF_OFS;
+                            ltime = intpart;
+                            frac = (int) (intpart % (1L << 24));
+                            break;
+                        default:
+                            intpart = buffer.getBeUint24() - RowsLogBuffer.TIMEF_INT_OFS;
+                            ltime = intpart << 24;
+                            break;
+                    }
+
+                    String second = null;
+                    if (intpart == 0) {
+                        second = "00:00:00";
+                    } else {
+                        long ultime = Math.abs(ltime);
+                        intpart = ultime >> 24;
+                        second = String.format("%s%02d:%02d:%02d",
+                            ltime >= 0 ? "" : "-",
+                            (int) ((intpart >> 12) % (1 << 10)),
+                            (int) ((intpart >> 6) % (1 << 6)),
+                            (int) (intpart % (1 << 6)));
+                    }
+                    return meta >= 1 ? second + '.' + usecondsToStr(Math.abs(frac), meta).substring(0, meta) : second;
+                }
+                case LogEvent.MYSQL_TYPE_DATE: {
+                    final int i32 = buffer.getUint24();
+                    if (i32 == 0) {
+                        return "0000-00-00";
+                    }
+                    return String.format("%04d-%02d-%02d", i32 / (16 * 32), i32 / 32 % 16, i32 % 32);
+                }
+                default:
+                    throw new UnsupportedOperationException("type : " + type);
+            }
+        }
+
+        private static int readFraction(LogBuffer buffer, int meta) {
+            switch (meta) {
+                case 1:
+                case 2:
+                    return buffer.getInt8() * 10000;
+                case 3:
+                case 4:
+                    return buffer.getBeInt16() * 100;
+                case 5:
+                case 6:
+                    return buffer.getBeInt24();
+                default:
+                    return 0;
+            }
+        }
+
+        private static String usecondsToStr(int frac, int meta) {
+            String sec = String.valueOf(frac);
+            if (meta > 6) {
+                throw new IllegalArgumentException("unknow useconds meta : " + meta);
+            }
+
+            if (sec.length() < 6) {
+                StringBuilder result = new StringBuilder(6);
+                int len = 6 - sec.length();
+                for (; len > 0; len--) {
+                    result.append('0');
+                }
+                result.append(sec);
+                sec = result.toString();
+            }
+
+            return sec.substring(0, meta);
+        }
+    }
+}
@@ -16,6 +16,10 @@ public class CanalConstants {
     public static final String CANAL_IP                          = ROOT + "." + "ip";
     public static final String CANAL_PORT                        = ROOT + "." + "port";
     public static final String CANAL_ZKSERVERS                   = ROOT + "." + "zkServers";
+    public static final String CANAL_SERVER_WORKER_THREADS       = ROOT + "." + "server.worker.threads";
+    public static final String CANAL_COMPRESSION_THRESHOLD       = ROOT + "." + "server.compression.threshold";
+    public static final String CANAL_SCHEDULER_THREADS           = ROOT + "." + "scheduler.threads";
+    public static final String CANAL_SCHEDULER_BLOCKING_THREADS  = ROOT + "." + "scheduler.blocking.threads";
 
     public static final String CANAL_DESTINATIONS                = ROOT + "." + "destinations";
     public static final String CANAL_AUTO_SCAN                   = ROOT + "." + "auto.scan";
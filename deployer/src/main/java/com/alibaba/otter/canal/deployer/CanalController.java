@@ -18,6 +18,7 @@ import org.springframework.context.support.ClassPathXmlApplicationContext;
 
 import com.alibaba.otter.canal.common.CanalException;
 import com.alibaba.otter.canal.common.utils.AddressUtils;
+import com.alibaba.otter.canal.common.utils.CanalScheduler;
 import com.alibaba.otter.canal.common.zookeeper.ZkClientx;
 import com.alibaba.otter.canal.common.zookeeper.ZookeeperPathUtils;
 import com.alibaba.otter.canal.common.zookeeper.running.ServerRunningData;
@@ -97,6 +98,22 @@ public class CanalController {
         canalServer = CanalServerWithNetty.instance();
         canalServer.setIp(ip);
         canalServer.setPort(port);
+        String workerThreads = getProperty(properties, CanalConstants.CANAL_SERVER_WORKER_THREADS);
+        if (StringUtils.isNotEmpty(workerThreads)) {
+            canalServer.setWorkerThreads(Integer.valueOf(workerThreads));
+        }
+        String compressionThreshold = getProperty(properties, CanalConstants.CANAL_COMPRESSION_THRESHOLD);
+        if (StringUtils.isNotEmpty(compressionThreshold)) {
+            canalServer.setCompressionThreshold(Integer.valueOf(compressionThreshold));
+        }
+        String schedulerThreads = getProperty(properties, CanalConstants.CANAL_SCHEDULER_THREADS);
+        if (StringUtils.isNotEmpty(schedulerThreads)) {
+            CanalScheduler.setPoolSize(Integer.valueOf(schedulerThreads));
+        }
+        String schedulerBlockingThreads = getProperty(properties, CanalConstants.CANAL_SCHEDULER_BLOCKING_THREADS);
+        if (StringUtils.isNotEmpty(schedulerBlockingThreads)) {
+            CanalScheduler.setBlockingPoolSize(Integer.valueOf(schedulerBlockingThreads));
+        }
 
         // 处理下ip为空，默认使用hostIp暴露到zk中
         if (StringUtils.isEmpty(ip)) {
@@ -8,17 +8,34 @@ import io.netty.channel.Channel;
 import java.io.IOException;
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * 封装netty的通信channel和数据接收缓存，实现读、写、连接校验的功能。 2016-12-28
- * 
+ *
+ * <pre>
+ * 接收缓存带有流控：
+ * 1. 缓存中未读取的数据超过highWaterMark时，关闭channel的autoRead，netty不再从socket读取数据，由tcp窗口反压到mysql
+ * 2. 读取之后低于lowWaterMark时，重新打开autoRead
+ * 3. 读线程通过Condition等待数据，read语义和java.nio的SocketChannel保持一致：阻塞直到有数据，返回实际读取的字节数，连接关闭返回-1
+ * </pre>
+ *
  * @author luoyaogui
  */
 public class SocketChannel {
 
-    private Channel channel = null;
-    private Object  lock    = new Object();
-    private ByteBuf cache   = PooledByteBufAllocator.DEFAULT.directBuffer(1024 * 1024 * 5); // 缓存大小
+    private static final int DEFAULT_INITIAL_CAPACITY = 64 * 1024;
+    private static final int DEFAULT_HIGH_WATER_MARK  = 8 * 1024 * 1024;
+    private static final int DEFAULT_LOW_WATER_MARK   = 2 * 1024 * 1024;
+
+    private volatile Channel channel                  = null;
+    private ReentrantLock    lock                     = new ReentrantLock();
+    private Condition        notEmpty                 = lock.newCondition();
+    private ByteBuf          cache                    = PooledByteBufAllocator.DEFAULT.directBuffer(DEFAULT_INITIAL_CAPACITY); // 缓存大小
+    private int              highWaterMark            = DEFAULT_HIGH_WATER_MARK;
+    private int              lowWaterMark             = DEFAULT_LOW_WATER_MARK;
+    private volatile boolean suspended                = false;                                                                // 是否已经关闭autoRead
 
     public Channel getChannel() {
         return channel;
@@ -27,19 +44,32 @@ public class SocketChannel {
     public void setChannel(Channel channel, boolean notify) {
         this.channel = channel;
         if (notify) {// 是否需要通知，主要是channel不可用时
-            synchronized (this) {
-                notifyAll();
+            lock.lock();
+            try {
+                notEmpty.signalAll();
+            } finally {
+                lock.unlock();
             }
         }
     }
 
     public void writeCache(ByteBuf buf) {
-        synchronized (lock) {
-            cache.discardReadBytes();// 回收内存
+        lock.lock();
+        try {
+            if (cache == null) {
+                return;
+            }
+
+            cache.discardSomeReadBytes();// 回收内存
             cache.writeBytes(buf);
-        }
-        synchronized (this) {
-            notifyAll();
+            if (!suspended && cache.readableBytes() > highWaterMark && channel != null) {
+                // 超过高水位，暂停从socket读取
+                suspended = true;
+                channel.config().setAutoRead(false);
+            }
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -52,23 +82,39 @@ public class SocketChannel {
     }
 
     public int read(ByteBuffer buffer) throws IOException {
-        if (null == channel) {
-            throw new IOException("socket has Interrupted !");
-        }
-        if (cache.readableBytes() < buffer.remaining()) {
-            synchronized (this) {
+        lock.lock();
+        try {
+            while (cache != null && !cache.isReadable()) {
+                if (null == channel) {
+                    return -1;
+                }
+
                 try {
-                    wait();
+                    notEmpty.await();
                 } catch (InterruptedException e) {
                     throw new IOException("socket has Interrupted !");
                 }
             }
-        } else {
-            synchronized (lock) {
-                cache.readBytes(buffer);
+
+            if (cache == null) {
+                throw new IOException("socket has closed !");
+            }
+
+            int length = Math.min(cache.readableBytes(), buffer.remaining());
+            int limit = buffer.limit();
+            buffer.limit(buffer.position() + length);
+            cache.readBytes(buffer);
+            buffer.limit(limit);
+
+            if (suspended && cache.readableBytes() < lowWaterMark && channel != null) {
+                // 低于低水位，恢复读取
+                suspended = false;
+                channel.config().setAutoRead(true);
             }
+            return length;
+        } finally {
+            lock.unlock();
         }
-        return 0;
     }
 
     public boolean isConnected() {
@@ -79,13 +125,52 @@ public class SocketChannel {
         return channel != null ? channel.remoteAddress() : null;
     }
 
+    /**
+     * 当前连接接收缓存占用的堆外内存大小
+     */
+    public long getDirectMemoryUsage() {
+        ByteBuf cache = this.cache;
+        return cache != null ? cache.capacity() : 0;
+    }
+
+    /**
+     * 当前接收缓存中未读取的数据大小
+     */
+    public int getReadableBytes() {
+        lock.lock();
+        try {
+            return cache != null ? cache.readableBytes() : 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isSuspended() {
+        return suspended;
+    }
+
+    public void setHighWaterMark(int highWaterMark) {
+        this.highWaterMark = highWaterMark;
+    }
+
+    public void setLowWaterMark(int lowWaterMark) {
+        this.lowWaterMark = lowWaterMark;
+    }
+
     public void close() {
         if (channel != null) {
             channel.close();
         }
         channel = null;
-        cache.discardReadBytes();// 回收已占用的内存
-        cache.release();// 释放整个内存
-        cache = null;
+        lock.lock();
+        try {
+            if (cache != null) {
+                cache.release();// 释放整个内存
+                cache = null;
+            }
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
     }
 }
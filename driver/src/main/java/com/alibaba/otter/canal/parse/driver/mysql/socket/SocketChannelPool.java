@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.net.SocketAddress;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 
 /**
  * @author luoyaogui 实现channel的管理（监听连接、读数据、回收） 2016-12-28
@@ -53,34 +54,47 @@ public abstract class SocketChannelPool {
 
     public static SocketChannel open(SocketAddress address) throws Exception {
         final SocketChannel socket = new SocketChannel();
+        final CountDownLatch latch = new CountDownLatch(1);
         boot.connect(address).addListener(new ChannelFutureListener() {
 
             @Override
             public void operationComplete(ChannelFuture arg0) throws Exception {
                 if (arg0.isSuccess()) {
                     socket.setChannel(arg0.channel(), false);
+                    chManager.put(arg0.channel(), socket);// 先注册，避免数据早于注册到达
                 }
-                synchronized (socket) {
-                    socket.notify();
-                }
+                latch.countDown();
             }
         });
-        synchronized (socket) {
-            socket.wait();
-        }
+        latch.await();
         if (null == socket.getChannel()) {
             throw new IOException("can't create socket!");
         }
-        chManager.put(socket.getChannel(), socket);
         return socket;
     }
 
+    /**
+     * 所有连接接收缓存占用的堆外内存大小
+     */
+    public static long getDirectMemoryUsage() {
+        long size = 0;
+        for (SocketChannel socket : chManager.values()) {
+            size += socket.getDirectMemoryUsage();
+        }
+        return size;
+    }
+
     public static class BusinessHandler extends ChannelInboundHandlerAdapter {
 
         private SocketChannel socket = null;
 
         public void channelInactive(ChannelHandlerContext ctx) throws Exception {
-            socket.setChannel(null, true);
+            if (null == socket) {
+                socket = chManager.get(ctx.channel());
+            }
+            if (socket != null) {
+                socket.setChannel(null, true);
+            }
             chManager.remove(ctx.channel());// 移除
         }
 
@@ -0,0 +1,56 @@
+package com.alibaba.otter.canal.parse.driver.mysql.socket;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 接收缓存的高低水位流控测试
+ *
+ * @author yzy
+ * @version 1.0.24
+ */
+public class SocketChannelTest {
+
+    @Test
+    public void testWaterMark() throws IOException {
+        EmbeddedChannel channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+        SocketChannel socket = new SocketChannel();
+        socket.setHighWaterMark(1024);
+        socket.setLowWaterMark(256);
+        socket.setChannel(channel, false);
+
+        try {
+            socket.writeCache(Unpooled.wrappedBuffer(new byte[512]));
+            Assert.assertFalse(socket.isSuspended());
+            Assert.assertTrue(channel.config().isAutoRead());
+
+            // 超过高水位，暂停读取
+            socket.writeCache(Unpooled.wrappedBuffer(new byte[1024]));
+            Assert.assertTrue(socket.isSuspended());
+            Assert.assertFalse(channel.config().isAutoRead());
+            Assert.assertEquals(1536, socket.getReadableBytes());
+
+            // 读取之后仍然高于低水位，保持暂停
+            ByteBuffer buffer = ByteBuffer.allocate(1024);
+            Assert.assertEquals(1024, socket.read(buffer));
+            Assert.assertTrue(socket.isSuspended());
+            Assert.assertFalse(channel.config().isAutoRead());
+
+            // 低于低水位，恢复读取
+            buffer.clear();
+            Assert.assertEquals(512, socket.read(buffer));
+            Assert.assertFalse(socket.isSuspended());
+            Assert.assertTrue(channel.config().isAutoRead());
+            Assert.assertEquals(0, socket.getReadableBytes());
+        } finally {
+            socket.close();
+        }
+    }
+}
@@ -4,37 +4,51 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import org.apache.commons.lang.StringUtils;
 
 import com.alibaba.otter.canal.filter.CanalEventFilter;
 import com.alibaba.otter.canal.filter.exception.CanalFilterException;
-import com.googlecode.aviator.AviatorEvaluator;
-import com.googlecode.aviator.Expression;
 
 /**
- * 基于aviater进行tableName正则匹配的过滤算法
+ * tableName正则匹配的过滤算法
+ * 
+ * <pre>
+ * 规则在构造时一次性编译，不再每次通过aviator表达式 + oro创建matcher进行匹配：
+ * 1. 精确的表名(比如 test\.t1)转化为hash查找
+ * 2. 前缀匹配(比如 test\..*)转化为按前缀长度的hash查找
+ * 3. 其余规则合并编译为一个java.util.regex的Pattern
+ * 4. schema.table的数量一般比较少且稳定，对每个name的匹配结果做缓存，规则变化时会重新构造filter，缓存随之失效
+ * </pre>
  * 
  * @author jianghang 2012-7-20 下午06:01:34
  */
 public class AviaterRegexFilter implements CanalEventFilter<String> {
 
-    private static final String             SPLIT             = ",";
-    private static final String             PATTERN_SPLIT     = "|";
-    private static final String             FILTER_EXPRESSION = "regex(pattern,target)";
-    private static final RegexFunction      regexFunction     = new RegexFunction();
-    private final Expression                exp               = AviatorEvaluator.compile(FILTER_EXPRESSION, true);
-    static {
-        AviatorEvaluator.addFunction(regexFunction);
-    }
+    private static final String                   SPLIT              = ",";
+    private static final String                   PATTERN_SPLIT      = "|";
+    private static final String                   ANY_SUFFIX         = ".*";
+    private static final int                      MAX_CACHE_SIZE     = 10000;
+
+    private static final Comparator<String>       COMPARATOR         = new StringComparator();
 
-    private static final Comparator<String> COMPARATOR        = new StringComparator();
+    final private String                          pattern;
+    final private boolean                         defaultEmptyValue;
 
-    final private String                    pattern;
-    final private boolean                   defaultEmptyValue;
+    // 编译之后的规则
+    private final Set<String>                     exactNames         = new HashSet<String>();
+    private final Set<String>                     prefixes           = new HashSet<String>();
+    private final int[]                           prefixLengths;
+    private final Pattern                         regexPattern;
+    private final ConcurrentMap<String, Boolean>  decisions          = new ConcurrentHashMap<String, Boolean>();
 
     public AviaterRegexFilter(String pattern){
         this(pattern, true);
@@ -54,9 +68,42 @@ public class AviaterRegexFilter implements CanalEventFilter<String> {
         // 因为 foo|foot 匹配 foot 会出错，原因是 foot 匹配了 foo 之后，会返回 foo，但是 foo 的长度和 foot
         // 的长度不一样
         Collections.sort(list, COMPARATOR);
+
+        // 拆分为精确匹配/前缀匹配/正则匹配三类
+        List<String> regexs = new ArrayList<String>();
+        Set<Integer> lengths = new TreeSet<Integer>();
+        for (String rule : list) {
+            String literal = toLiteral(rule);
+            if (literal != null) {
+                exactNames.add(literal.toLowerCase());
+            } else if (rule.endsWith(ANY_SUFFIX)
+                       && (literal = toLiteral(rule.substring(0, rule.length() - ANY_SUFFIX.length()))) != null) {
+                prefixes.add(literal.toLowerCase());
+                lengths.add(literal.length());
+            } else {
+                regexs.add(rule);
+            }
+        }
+
+        prefixLengths = new int[lengths.size()];
+        int i = 0;
+        for (Integer length : lengths) {
+            prefixLengths[i++] = length;
+        }
+
         // 对pattern进行头尾完全匹配
         list = completionPattern(list);
         this.pattern = StringUtils.join(list, PATTERN_SPLIT);
+        if (regexs.isEmpty()) {
+            regexPattern = null;
+        } else {
+            try {
+                regexPattern = Pattern.compile(StringUtils.join(completionPattern(regexs), PATTERN_SPLIT),
+                    Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+            } catch (PatternSyntaxException e) {
+                throw new CanalFilterException(e);
+            }
+        }
     }
 
     public boolean filter(String filtered) throws CanalFilterException {
@@ -68,10 +115,79 @@ public class AviaterRegexFilter implements CanalEventFilter<String> {
             return defaultEmptyValue;
         }
 
-        Map<String, Object> env = new HashMap<String, Object>();
-        env.put("pattern", pattern);
-        env.put("target", filtered.toLowerCase());
-        return (Boolean) exp.execute(env);
+        Boolean result = decisions.get(filtered);
+        if (result == null) {
+            result = match(filtered.toLowerCase());
+            if (decisions.size() >= MAX_CACHE_SIZE) {
+                // 避免异常情况下name过多导致内存膨胀
+                decisions.clear();
+            }
+            decisions.put(filtered, result);
+        }
+        return result;
+    }
+
+    private boolean match(String name) {
+        if (exactNames.contains(name)) {
+            return true;
+        }
+
+        for (int length : prefixLengths) {
+            if (length > name.length()) {
+                break;
+            }
+
+            if (prefixes.contains(name.substring(0, length))) {
+                return true;
+            }
+        }
+
+        return regexPattern != null && regexPattern.matcher(name).matches();
+    }
+
+    /**
+     * 所有规则都是精确的表名或者前缀匹配，不包含其他正则规则
+     */
+    public boolean isLiteral() {
+        return StringUtils.isNotEmpty(pattern) && regexPattern == null;
+    }
+
+    /**
+     * 精确匹配的表名，已经转为小写
+     */
+    public Set<String> getExactNames() {
+        return Collections.unmodifiableSet(exactNames);
+    }
+
+    /**
+     * 前缀匹配的规则去掉.*之后的前缀，已经转为小写
+     */
+    public Set<String> getPrefixes() {
+        return Collections.unmodifiableSet(prefixes);
+    }
+
+    /**
+     * 如果规则中不包含正则的元字符(允许转义的\.)，返回对应的字面值，否则返回null
+     */
+    private static String toLiteral(String rule) {
+        StringBuilder literal = new StringBuilder(rule.length());
+        for (int i = 0; i < rule.length(); i++) {
+            char c = rule.charAt(i);
+            if (c == '\\') {
+                if (i + 1 < rule.length() && rule.charAt(i + 1) == '.') {
+                    literal.append('.');
+                    i++;
+                } else {
+                    return null;
+                }
+            } else if (Character.isLetterOrDigit(c) || c == '_' || c == '-') {
+                literal.append(c);
+            } else {
+                return null;
+            }
+        }
+
+        return literal.length() > 0 ? literal.toString() : null;
     }
 
     /**
@@ -92,6 +92,40 @@ public class AviaterFilterTest {
 
     }
 
+    @Test
+    public void testCompiledRules() {
+        // 精确匹配 + 前缀匹配 + 正则匹配混合
+        AviaterRegexFilter filter = new AviaterRegexFilter("test\\.t1,Test2\\..*,s3\\.t\\d+,s4.t1");
+        Assert.assertEquals(true, filter.filter("test.t1"));
+        Assert.assertEquals(true, filter.filter("TEST.T1"));
+        Assert.assertEquals(false, filter.filter("test.t12"));
+        Assert.assertEquals(false, filter.filter("test1t1"));
+
+        Assert.assertEquals(true, filter.filter("test2.abc"));
+        Assert.assertEquals(true, filter.filter("TEST2.ABC"));
+        Assert.assertEquals(true, filter.filter("test2."));
+        Assert.assertEquals(false, filter.filter("test22.abc"));
+
+        Assert.assertEquals(true, filter.filter("s3.t123"));
+        Assert.assertEquals(false, filter.filter("s3.tx"));
+        Assert.assertEquals(true, filter.filter("s4.t1"));
+        Assert.assertEquals(true, filter.filter("s4xt1"));
+
+        // 缓存之后结果不变
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(true, filter.filter("test.t1"));
+            Assert.assertEquals(false, filter.filter("test.t12"));
+        }
+
+        // 黑名单默认值
+        AviaterRegexFilter blackFilter = new AviaterRegexFilter("", false);
+        Assert.assertEquals(false, blackFilter.filter("test.t1"));
+        blackFilter = new AviaterRegexFilter("test\\..*", false);
+        Assert.assertEquals(false, blackFilter.filter(""));
+        Assert.assertEquals(true, blackFilter.filter("test.t1"));
+        Assert.assertEquals(false, blackFilter.filter("test1.t1"));
+    }
+
     @Test
     public void test_el() {
         AviaterELFilter filter = new AviaterELFilter("str(entry.entryType) == 'ROWDATA'");
@@ -0,0 +1,105 @@
+package com.alibaba.otter.canal.filter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.filter.aviater.AviaterRegexFilter;
+import com.alibaba.otter.canal.filter.aviater.RegexFunction;
+import com.googlecode.aviator.AviatorEvaluator;
+import com.googlecode.aviator.Expression;
+
+/**
+ * 对比编译后的规则匹配和原先aviator + oro逐条匹配的性能
+ */
+public class AviaterRegexFilterPerformanceNoRunTest {
+
+    private static final String RULES = "canal\\\\.t1,canal\\\\.t2,canal\\\\.t3,test\\\\..*,otter_.*\\\\.retl_.*,s\\\\d+\\\\.t\\\\d+";
+    private static final int    COUNT = 1000000;
+
+    @Test
+    public void testCompare() {
+        List<String> names = new ArrayList<String>();
+        for (int i = 0; i < 50; i++) {
+            names.add("canal.t" + i);
+            names.add("test.t" + i);
+            names.add("otter_" + i + ".retl_buffer");
+            names.add("s" + i + ".t" + i);
+        }
+
+        AviaterRegexFilter filter = new AviaterRegexFilter(RULES);
+        LegacyFilter legacy = new LegacyFilter(RULES);
+        for (String name : names) {
+            if (filter.filter(name) != legacy.filter(name)) {
+                throw new IllegalStateException("result not match for " + name);
+            }
+        }
+
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            int matched = 0;
+            for (int i = 0; i < COUNT; i++) {
+                if (legacy.filter(names.get(i % names.size()))) {
+                    matched++;
+                }
+            }
+            long legacyCost = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < COUNT; i++) {
+                if (filter.filter(names.get(i % names.size()))) {
+                    matched--;
+                }
+            }
+            long compiledCost = System.nanoTime() - start;
+            System.out.println(String.format("round %d : legacy %d ns/op , compiled %d ns/op , diff %d",
+                round,
+                legacyCost / COUNT,
+                compiledCost / COUNT,
+                matched));
+        }
+    }
+
+    /**
+     * 原先基于aviator表达式 + oro的实现
+     */
+    private static class LegacyFilter {
+
+        private final Expression exp = AviatorEvaluator.compile("regex(pattern,target)", true);
+        private final String     pattern;
+        static {
+            AviatorEvaluator.addFunction(new RegexFunction());
+        }
+
+        public LegacyFilter(String rules){
+            List<String> list = new ArrayList<String>();
+            for (String rule : StringUtils.split(rules, ",")) {
+                list.add(rule);
+            }
+            Collections.sort(list, new Comparator<String>() {
+
+                public int compare(String str1, String str2) {
+                    return str2.length() - str1.length();
+                }
+            });
+            List<String> result = new ArrayList<String>();
+            for (String rule : list) {
+                result.add("^" + rule + "$");
+            }
+            pattern = StringUtils.join(result, "|");
+        }
+
+        public boolean filter(String filtered) {
+            Map<String, Object> env = new HashMap<String, Object>();
+            env.put("pattern", pattern);
+            env.put("target", filtered.toLowerCase());
+            return (Boolean) exp.execute(env);
+        }
+    }
+}
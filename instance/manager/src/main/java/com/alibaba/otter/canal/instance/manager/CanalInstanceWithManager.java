@@ -42,12 +42,14 @@ import com.alibaba.otter.canal.parse.index.FailbackLogPositionManager;
 import com.alibaba.otter.canal.parse.index.MemoryLogPositionManager;
 import com.alibaba.otter.canal.parse.index.MetaLogPositionManager;
 import com.alibaba.otter.canal.parse.index.PeriodMixedLogPositionManager;
+import com.alibaba.otter.canal.parse.index.StoreLogPositionManager;
 import com.alibaba.otter.canal.parse.index.ZooKeeperLogPositionManager;
 import com.alibaba.otter.canal.parse.support.AuthenticationInfo;
 import com.alibaba.otter.canal.protocol.position.EntryPosition;
 import com.alibaba.otter.canal.sink.entry.EntryEventSink;
 import com.alibaba.otter.canal.sink.entry.group.GroupEventSink;
 import com.alibaba.otter.canal.store.AbstractCanalStoreScavenge;
+import com.alibaba.otter.canal.store.file.FileEventStore;
 import com.alibaba.otter.canal.store.memory.MemoryEventStoreWithBuffer;
 import com.alibaba.otter.canal.store.model.BatchMode;
 
@@ -138,8 +140,12 @@ public class CanalInstanceWithManager extends AbstractCanalInstance {
             memoryEventStore.setDdlIsolation(parameters.getDdlIsolation());
             eventStore = memoryEventStore;
         } else if (mode.isFile()) {
-            // 后续版本支持
-            throw new CanalException("unsupport MetaMode for " + mode);
+            FileEventStore fileEventStore = new FileEventStore();
+            fileEventStore.setDataDir(parameters.getFileStorageDirectory());
+            fileEventStore.setBufferMemUnit(parameters.getMemoryStorageBufferMemUnit());
+            fileEventStore.setBatchMode(BatchMode.valueOf(parameters.getStorageBatchMode().name()));
+            fileEventStore.setDdlIsolation(parameters.getDdlIsolation());
+            eventStore = fileEventStore;
         } else if (mode.isMixed()) {
             // 后续版本支持
             throw new CanalException("unsupport MetaMode for " + mode);
@@ -363,8 +369,18 @@ public class CanalInstanceWithManager extends AbstractCanalInstance {
             ((MetaLogPositionManager) logPositionManager).setMetaManager(metaManager);
         } else if (indexMode.isMemoryMetaFailback()) {
             MemoryLogPositionManager primaryLogPositionManager = new MemoryLogPositionManager();
-            MetaLogPositionManager failbackLogPositionManager = new MetaLogPositionManager();
-            failbackLogPositionManager.setMetaManager(metaManager);
+            MetaLogPositionManager metaLogPositionManager = new MetaLogPositionManager();
+            metaLogPositionManager.setMetaManager(metaManager);
+            CanalLogPositionManager failbackLogPositionManager = metaLogPositionManager;
+            if (parameters.getStorageMode().isFile()) {
+                // 文件store重启之后数据依然存在，优先从store的最后位置继续解析
+                StoreLogPositionManager storeLogPositionManager = new StoreLogPositionManager();
+                storeLogPositionManager.setEventStore(eventStore);
+
+                failbackLogPositionManager = new FailbackLogPositionManager();
+                ((FailbackLogPositionManager) failbackLogPositionManager).setPrimary(storeLogPositionManager);
+                ((FailbackLogPositionManager) failbackLogPositionManager).setFailback(metaLogPositionManager);
+            }
 
             logPositionManager = new FailbackLogPositionManager();
             ((FailbackLogPositionManager) logPositionManager).setPrimary(primaryLogPositionManager);
@@ -7,10 +7,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.io.FileUtils;
@@ -19,14 +16,15 @@ import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 import org.springframework.util.Assert;
 
+import com.alibaba.otter.canal.common.cache.CanalCache;
 import com.alibaba.otter.canal.common.utils.JsonUtils;
+import com.alibaba.otter.canal.common.utils.SerialExecutor;
 import com.alibaba.otter.canal.meta.exception.CanalMetaManagerException;
 import com.alibaba.otter.canal.protocol.ClientIdentity;
 import com.alibaba.otter.canal.protocol.position.LogPosition;
 import com.alibaba.otter.canal.protocol.position.Position;
 import com.google.common.base.Function;
 import com.google.common.collect.Lists;
-import com.google.common.collect.MigrateMap;
 
 /**
  * 基于文件刷新的metaManager实现
@@ -46,8 +44,8 @@ public class FileMixedMetaManager extends MemoryMetaManager implements CanalMeta
     private static final Charset     charset      = Charset.forName("UTF-8");
     private File                     dataDir;
     private String                   dataFileName = "meta.dat";
-    private Map<String, File>        dataFileCaches;
-    private ScheduledExecutorService executor;
+    private CanalCache<String, File> dataFileCaches;
+    private SerialExecutor           executor;
     @SuppressWarnings("serial")
     private final Position           nullCursor   = new Position() {
                                                   };
@@ -69,22 +67,23 @@ public class FileMixedMetaManager extends MemoryMetaManager implements CanalMeta
             throw new CanalMetaManagerException("dir[" + dataDir.getPath() + "] can not read/write");
         }
 
-        dataFileCaches = MigrateMap.makeComputingMap(new Function<String, File>() {
+        dataFileCaches = new CanalCache<String, File>("dataFileCaches", new Function<String, File>() {
 
             public File apply(String destination) {
                 return getDataFile(destination);
             }
         });
 
-        executor = Executors.newScheduledThreadPool(1);
-        destinations = MigrateMap.makeComputingMap(new Function<String, List<ClientIdentity>>() {
+        executor = new SerialExecutor();
+        destinations = new CanalCache<String, List<ClientIdentity>>("destinations",
+            new Function<String, List<ClientIdentity>>() {
 
-            public List<ClientIdentity> apply(String destination) {
-                return loadClientIdentity(destination);
-            }
-        });
+                public List<ClientIdentity> apply(String destination) {
+                    return loadClientIdentity(destination);
+                }
+            });
 
-        cursors = MigrateMap.makeComputingMap(new Function<ClientIdentity, Position>() {
+        cursors = new CanalCache<ClientIdentity, Position>("cursors", new Function<ClientIdentity, Position>() {
 
             public Position apply(ClientIdentity clientIdentity) {
                 Position position = loadCursor(clientIdentity.getDestination(), clientIdentity);
@@ -141,7 +140,7 @@ public class FileMixedMetaManager extends MemoryMetaManager implements CanalMeta
         super.subscribe(clientIdentity);
 
         // 订阅信息频率发生比较低，不需要做定时merge处理
-        executor.submit(new Runnable() {
+        executor.execute(new Runnable() {
 
             public void run() {
                 flushDataToFile(clientIdentity.getDestination());
@@ -153,7 +152,7 @@ public class FileMixedMetaManager extends MemoryMetaManager implements CanalMeta
         super.unsubscribe(clientIdentity);
 
         // 订阅信息频率发生比较低，不需要做定时merge处理
-        executor.submit(new Runnable() {
+        executor.execute(new Runnable() {
 
             public void run() {
                 flushDataToFile(clientIdentity.getDestination());
@@ -7,6 +7,7 @@ import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 
 import com.alibaba.otter.canal.common.AbstractCanalLifeCycle;
+import com.alibaba.otter.canal.common.cache.CanalCache;
 import com.alibaba.otter.canal.meta.exception.CanalMetaManagerException;
 import com.alibaba.otter.canal.protocol.ClientIdentity;
 import com.alibaba.otter.canal.protocol.position.Position;
@@ -15,7 +16,6 @@ import com.google.common.base.Function;
 import com.google.common.collect.Lists;
 import com.google.common.collect.MapMaker;
 import com.google.common.collect.Maps;
-import com.google.common.collect.MigrateMap;
 
 /**
  * 内存版实现
@@ -25,29 +25,31 @@ import com.google.common.collect.MigrateMap;
  */
 public class MemoryMetaManager extends AbstractCanalLifeCycle implements CanalMetaManager {
 
-    protected Map<String, List<ClientIdentity>>              destinations;
-    protected Map<ClientIdentity, MemoryClientIdentityBatch> batches;
-    protected Map<ClientIdentity, Position>                  cursors;
+    protected CanalCache<String, List<ClientIdentity>>              destinations;
+    protected CanalCache<ClientIdentity, MemoryClientIdentityBatch> batches;
+    protected CanalCache<ClientIdentity, Position>                  cursors;
 
     public void start() {
         super.start();
 
-        batches = MigrateMap.makeComputingMap(new Function<ClientIdentity, MemoryClientIdentityBatch>() {
+        batches = new CanalCache<ClientIdentity, MemoryClientIdentityBatch>("batches",
+            new Function<ClientIdentity, MemoryClientIdentityBatch>() {
 
-            public MemoryClientIdentityBatch apply(ClientIdentity clientIdentity) {
-                return MemoryClientIdentityBatch.create(clientIdentity);
-            }
+                public MemoryClientIdentityBatch apply(ClientIdentity clientIdentity) {
+                    return MemoryClientIdentityBatch.create(clientIdentity);
+                }
 
-        });
+            });
 
-        cursors = new MapMaker().makeMap();
+        cursors = new CanalCache<ClientIdentity, Position>("cursors");
 
-        destinations = MigrateMap.makeComputingMap(new Function<String, List<ClientIdentity>>() {
+        destinations = new CanalCache<String, List<ClientIdentity>>("destinations",
+            new Function<String, List<ClientIdentity>>() {
 
-            public List<ClientIdentity> apply(String destination) {
-                return Lists.newArrayList();
-            }
-        });
+                public List<ClientIdentity> apply(String destination) {
+                    return Lists.newArrayList();
+                }
+            });
     }
 
     public void stop() {
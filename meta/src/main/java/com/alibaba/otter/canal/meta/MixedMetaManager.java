@@ -2,17 +2,17 @@ package com.alibaba.otter.canal.meta;
 
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import org.springframework.util.Assert;
 
+import com.alibaba.otter.canal.common.cache.CanalCache;
+import com.alibaba.otter.canal.common.utils.CanalScheduler;
+import com.alibaba.otter.canal.common.utils.SerialExecutor;
 import com.alibaba.otter.canal.meta.exception.CanalMetaManagerException;
 import com.alibaba.otter.canal.protocol.ClientIdentity;
 import com.alibaba.otter.canal.protocol.position.Position;
 import com.alibaba.otter.canal.protocol.position.PositionRange;
 import com.google.common.base.Function;
-import com.google.common.collect.MigrateMap;
 
 /**
  * 组合memory + zookeeper的使用模式
@@ -23,7 +23,7 @@ import com.google.common.collect.MigrateMap;
 
 public class MixedMetaManager extends MemoryMetaManager implements CanalMetaManager {
 
-    private ExecutorService      executor;
+    private SerialExecutor       executor;
     private ZooKeeperMetaManager zooKeeperMetaManager;
     @SuppressWarnings("serial")
     private final Position       nullCursor = new Position() {
@@ -36,15 +36,17 @@ public class MixedMetaManager extends MemoryMetaManager implements CanalMetaMana
             zooKeeperMetaManager.start();
         }
 
-        executor = Executors.newFixedThreadPool(1);
-        destinations = MigrateMap.makeComputingMap(new Function<String, List<ClientIdentity>>() {
+        // zookeeper写入会阻塞，不占用共享的调度线程
+        executor = new SerialExecutor(CanalScheduler.getBlockingExecutor());
+        destinations = new CanalCache<String, List<ClientIdentity>>("destinations",
+            new Function<String, List<ClientIdentity>>() {
 
-            public List<ClientIdentity> apply(String destination) {
-                return zooKeeperMetaManager.listAllSubscribeInfo(destination);
-            }
-        });
+                public List<ClientIdentity> apply(String destination) {
+                    return zooKeeperMetaManager.listAllSubscribeInfo(destination);
+                }
+            });
 
-        cursors = MigrateMap.makeComputingMap(new Function<ClientIdentity, Position>() {
+        cursors = new CanalCache<ClientIdentity, Position>("cursors", new Function<ClientIdentity, Position>() {
 
             public Position apply(ClientIdentity clientIdentity) {
                 Position position = zooKeeperMetaManager.getCursor(clientIdentity);
@@ -56,18 +58,19 @@ public class MixedMetaManager extends MemoryMetaManager implements CanalMetaMana
             }
         });
 
-        batches = MigrateMap.makeComputingMap(new Function<ClientIdentity, MemoryClientIdentityBatch>() {
-
-            public MemoryClientIdentityBatch apply(ClientIdentity clientIdentity) {
-                // 读取一下zookeeper信息，初始化一次
-                MemoryClientIdentityBatch batches = MemoryClientIdentityBatch.create(clientIdentity);
-                Map<Long, PositionRange> positionRanges = zooKeeperMetaManager.listAllBatchs(clientIdentity);
-                for (Map.Entry<Long, PositionRange> entry : positionRanges.entrySet()) {
-                    batches.addPositionRange(entry.getValue(), entry.getKey()); // 添加记录到指定batchId
+        batches = new CanalCache<ClientIdentity, MemoryClientIdentityBatch>("batches",
+            new Function<ClientIdentity, MemoryClientIdentityBatch>() {
+
+                public MemoryClientIdentityBatch apply(ClientIdentity clientIdentity) {
+                    // 读取一下zookeeper信息，初始化一次
+                    MemoryClientIdentityBatch batches = MemoryClientIdentityBatch.create(clientIdentity);
+                    Map<Long, PositionRange> positionRanges = zooKeeperMetaManager.listAllBatchs(clientIdentity);
+                    for (Map.Entry<Long, PositionRange> entry : positionRanges.entrySet()) {
+                        batches.addPositionRange(entry.getValue(), entry.getKey()); // 添加记录到指定batchId
+                    }
+                    return batches;
                 }
-                return batches;
-            }
-        });
+            });
     }
 
     public void stop() {
@@ -85,7 +88,7 @@ public class MixedMetaManager extends MemoryMetaManager implements CanalMetaMana
     public void subscribe(final ClientIdentity clientIdentity) throws CanalMetaManagerException {
         super.subscribe(clientIdentity);
 
-        executor.submit(new Runnable() {
+        executor.execute(new Runnable() {
 
             public void run() {
                 zooKeeperMetaManager.subscribe(clientIdentity);
@@ -96,7 +99,7 @@ public class MixedMetaManager extends MemoryMetaManager implements CanalMetaMana
     public void unsubscribe(final ClientIdentity clientIdentity) throws CanalMetaManagerException {
         super.unsubscribe(clientIdentity);
 
-        executor.submit(new Runnable() {
+        executor.execute(new Runnable() {
 
             public void run() {
                 zooKeeperMetaManager.unsubscribe(clientIdentity);
@@ -109,7 +112,7 @@ public class MixedMetaManager extends MemoryMetaManager implements CanalMetaMana
         super.updateCursor(clientIdentity, position);
 
         // 异步刷新
-        executor.submit(new Runnable() {
+        executor.execute(new Runnable() {
 
             public void run() {
                 zooKeeperMetaManager.updateCursor(clientIdentity, position);
@@ -131,7 +134,7 @@ public class MixedMetaManager extends MemoryMetaManager implements CanalMetaMana
                                                                                                 throws CanalMetaManagerException {
         final Long batchId = super.addBatch(clientIdentity, positionRange);
         // 异步刷新
-        executor.submit(new Runnable() {
+        executor.execute(new Runnable() {
 
             public void run() {
                 zooKeeperMetaManager.addBatch(clientIdentity, positionRange, batchId);
@@ -144,7 +147,7 @@ public class MixedMetaManager extends MemoryMetaManager implements CanalMetaMana
                                                                                                                     throws CanalMetaManagerException {
         super.addBatch(clientIdentity, positionRange, batchId);
         // 异步刷新
-        executor.submit(new Runnable() {
+        executor.execute(new Runnable() {
 
             public void run() {
                 zooKeeperMetaManager.addBatch(clientIdentity, positionRange, batchId);
@@ -156,7 +159,7 @@ public class MixedMetaManager extends MemoryMetaManager implements CanalMetaMana
                                                                                              throws CanalMetaManagerException {
         PositionRange positionRange = super.removeBatch(clientIdentity, batchId);
         // 异步刷新
-        executor.submit(new Runnable() {
+        executor.execute(new Runnable() {
 
             public void run() {
                 zooKeeperMetaManager.removeBatch(clientIdentity, batchId);
@@ -170,7 +173,7 @@ public class MixedMetaManager extends MemoryMetaManager implements CanalMetaMana
         super.clearAllBatchs(clientIdentity);
 
         // 异步刷新
-        executor.submit(new Runnable() {
+        executor.execute(new Runnable() {
 
             public void run() {
                 zooKeeperMetaManager.clearAllBatchs(clientIdentity);
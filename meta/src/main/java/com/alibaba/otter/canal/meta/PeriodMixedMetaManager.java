@@ -6,20 +6,20 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
 
+import com.alibaba.otter.canal.common.cache.CanalCache;
+import com.alibaba.otter.canal.common.utils.CanalScheduler;
+import com.alibaba.otter.canal.common.utils.SerialExecutor;
 import com.alibaba.otter.canal.meta.exception.CanalMetaManagerException;
 import com.alibaba.otter.canal.protocol.ClientIdentity;
 import com.alibaba.otter.canal.protocol.position.Position;
 import com.alibaba.otter.canal.protocol.position.PositionRange;
 import com.google.common.base.Function;
-import com.google.common.collect.MigrateMap;
 
 /**
  * 基于定时刷新的策略的mixed实现
@@ -36,7 +36,7 @@ import com.google.common.collect.MigrateMap;
 public class PeriodMixedMetaManager extends MemoryMetaManager implements CanalMetaManager {
 
     private static final Logger      logger     = LoggerFactory.getLogger(PeriodMixedMetaManager.class);
-    private ScheduledExecutorService executor;
+    private SerialExecutor           executor;
     private ZooKeeperMetaManager     zooKeeperMetaManager;
     @SuppressWarnings("serial")
     private final Position           nullCursor = new Position() {
@@ -51,21 +51,23 @@ public class PeriodMixedMetaManager extends MemoryMetaManager implements CanalMe
             zooKeeperMetaManager.start();
         }
 
-        executor = Executors.newScheduledThreadPool(1);
+        // zookeeper写入会阻塞，不占用共享的调度线程
+        executor = new SerialExecutor(CanalScheduler.getBlockingExecutor());
         /*
          * 覆盖基类实现，从ZK获取每个instance的客户端信息
          * */
-        destinations = MigrateMap.makeComputingMap(new Function<String, List<ClientIdentity>>() {
+        destinations = new CanalCache<String, List<ClientIdentity>>("destinations",
+            new Function<String, List<ClientIdentity>>() {
 
-            public List<ClientIdentity> apply(String destination) {
-                return zooKeeperMetaManager.listAllSubscribeInfo(destination);
-            }
-        });
+                public List<ClientIdentity> apply(String destination) {
+                    return zooKeeperMetaManager.listAllSubscribeInfo(destination);
+                }
+            });
 
         /*
          * 覆盖了积累的实现，从ZK中获取CURSOR
          * */
-        cursors = MigrateMap.makeComputingMap(new Function<ClientIdentity, Position>() {
+        cursors = new CanalCache<ClientIdentity, Position>("cursors", new Function<ClientIdentity, Position>() {
 
             public Position apply(ClientIdentity clientIdentity) {
                 Position position = zooKeeperMetaManager.getCursor(clientIdentity);
@@ -80,19 +82,20 @@ public class PeriodMixedMetaManager extends MemoryMetaManager implements CanalMe
         /*
          * 从这个看，一个Client的初始batch信息是空的
          * */
-        batches = MigrateMap.makeComputingMap(new Function<ClientIdentity, MemoryClientIdentityBatch>() {
-
-            public MemoryClientIdentityBatch apply(ClientIdentity clientIdentity) {
-                // 读取一下zookeeper信息，初始化一次
-                MemoryClientIdentityBatch batches = MemoryClientIdentityBatch.create(clientIdentity);
-                //
-                Map<Long, PositionRange> positionRanges = zooKeeperMetaManager.listAllBatchs(clientIdentity);
-                for (Map.Entry<Long, PositionRange> entry : positionRanges.entrySet()) {
-                    batches.addPositionRange(entry.getValue(), entry.getKey()); // 添加记录到指定batchId
+        batches = new CanalCache<ClientIdentity, MemoryClientIdentityBatch>("batches",
+            new Function<ClientIdentity, MemoryClientIdentityBatch>() {
+
+                public MemoryClientIdentityBatch apply(ClientIdentity clientIdentity) {
+                    // 读取一下zookeeper信息，初始化一次
+                    MemoryClientIdentityBatch batches = MemoryClientIdentityBatch.create(clientIdentity);
+                    //
+                    Map<Long, PositionRange> positionRanges = zooKeeperMetaManager.listAllBatchs(clientIdentity);
+                    for (Map.Entry<Long, PositionRange> entry : positionRanges.entrySet()) {
+                        batches.addPositionRange(entry.getValue(), entry.getKey()); // 添加记录到指定batchId
+                    }
+                    return batches;
                 }
-                return batches;
-            }
-        });
+            });
 
         updateCursorTasks = Collections.synchronizedSet(new HashSet<ClientIdentity>());
 
@@ -135,7 +138,7 @@ public class PeriodMixedMetaManager extends MemoryMetaManager implements CanalMe
         super.subscribe(clientIdentity);
 
         // 订阅信息频率发生比较低，不需要做定时merge处理
-        executor.submit(new Runnable() {
+        executor.execute(new Runnable() {
 
             public void run() {
                 zooKeeperMetaManager.subscribe(clientIdentity);
@@ -147,7 +150,7 @@ public class PeriodMixedMetaManager extends MemoryMetaManager implements CanalMe
         super.unsubscribe(clientIdentity);
 
         // 订阅信息频率发生比较低，不需要做定时merge处理
-        executor.submit(new Runnable() {
+        executor.execute(new Runnable() {
 
             public void run() {
                 zooKeeperMetaManager.unsubscribe(clientIdentity);
@@ -3,8 +3,9 @@ package com.alibaba.otter.canal.parse.inbound;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -17,10 +18,12 @@ import org.slf4j.MDC;
 
 import com.alibaba.otter.canal.common.AbstractCanalLifeCycle;
 import com.alibaba.otter.canal.common.alarm.CanalAlarmHandler;
+import com.alibaba.otter.canal.common.utils.CanalScheduler;
 import com.alibaba.otter.canal.filter.CanalEventFilter;
 import com.alibaba.otter.canal.parse.CanalEventParser;
 import com.alibaba.otter.canal.parse.exception.CanalParseException;
 import com.alibaba.otter.canal.parse.exception.TableIdNotFoundException;
+import com.alibaba.otter.canal.parse.inbound.EventTransactionBuffer.TransactionChunk;
 import com.alibaba.otter.canal.parse.inbound.EventTransactionBuffer.TransactionFlushCallback;
 import com.alibaba.otter.canal.parse.index.CanalLogPositionManager;
 import com.alibaba.otter.canal.parse.support.AuthenticationInfo;
@@ -42,6 +45,7 @@ import com.alibaba.otter.canal.sink.exception.CanalSinkException;
  */
 public abstract class AbstractEventParser<EVENT> extends AbstractCanalLifeCycle implements CanalEventParser<EVENT> {
 
+    private static final int                         CPU_COUNT                  = Runtime.getRuntime().availableProcessors();
     protected final Logger                           logger                     = LoggerFactory.getLogger(this.getClass());
 
     protected CanalLogPositionManager                logPositionManager         = null;
@@ -79,14 +83,20 @@ public abstract class AbstractEventParser<EVENT> extends AbstractCanalLifeCycle
 
     protected EventTransactionBuffer                 transactionBuffer;
     protected int                                    transactionSize            = 1024;
+    protected boolean                                transactionStreaming       = false;                                   // 超大事务按照transactionSize分段流式输出，不做拷贝
     protected AtomicBoolean                          needTransactionPosition    = new AtomicBoolean(false);
     protected long                                   lastEntryTime              = 0L;
     protected volatile boolean                       detectingEnable            = true;                                    // 是否开启心跳检查
     protected Integer                                detectingIntervalInSeconds = 3;                                       // 检测频率
-    protected volatile Timer                         timer;
+    protected volatile ScheduledFuture<?>            heartBeatFuture;
     protected TimerTask                              heartBeatTimerTask;
     protected Throwable                              exception                  = null;
 
+    // 多阶段并行解析
+    protected boolean                                parallel                   = false;                                   // 是否开启并行解析
+    protected int                                    parallelThreadSize         = Math.max(CPU_COUNT * 60 / 100, 2);      // 并行解析线程数，默认60%的cpu
+    protected int                                    parallelBufferSize         = 256;                                     // 阶段之间的队列大小
+
     protected abstract BinlogParser buildParser();
 
     protected abstract ErosaConnection buildErosaConnection();
@@ -99,6 +109,12 @@ public abstract class AbstractEventParser<EVENT> extends AbstractCanalLifeCycle
     protected void afterDump(ErosaConnection connection) {
     }
 
+    /**
+     * 事务flush成功并记录位点之后的回调，比如记录时间戳索引
+     */
+    protected void afterTransactionFlush(LogPosition position) {
+    }
+
     public void sendAlarm(String destination, String msg) {
         if (this.alarmHandler != null) {
             this.alarmHandler.sendAlarm(destination, msg);
@@ -119,9 +135,15 @@ public abstract class AbstractEventParser<EVENT> extends AbstractCanalLifeCycle
                     throw new CanalParseException("consume failed!");
                 }
 
+                if (((TransactionChunk) transaction).isPartial()) {
+                    // 事务还没有结束，不记录位点，保证重启后从完整的事务开始
+                    return;
+                }
+
                 LogPosition position = buildLastTransactionPosition(transaction);
                 if (position != null) { // 可能position为空
                     logPositionManager.persistLogPosition(AbstractEventParser.this.destination, position);
+                    afterTransactionFlush(position);
                 }
             }
         });
@@ -133,16 +155,18 @@ public abstract class AbstractEventParser<EVENT> extends AbstractCanalLifeCycle
         // 配置transaction buffer
         // 初始化缓冲队列
         transactionBuffer.setBufferSize(transactionSize);// 设置buffer大小
+        transactionBuffer.setStreaming(transactionStreaming);
         transactionBuffer.start();
         // 构造bin log parser
         binlogParser = buildParser();// 初始化一下BinLogParser
         binlogParser.start();
-        // 启动工作线程
+        // 启动工作线程，dump过程是阻塞的socket/file读取，仍然每个destination独占一个线程，不放到CanalScheduler中
         parseThread = new Thread(new Runnable() {
 
             public void run() {
                 MDC.put("destination", String.valueOf(destination));
                 ErosaConnection erosaConnection = null;
+                MultiStageCoprocessor<EVENT> coprocessor = null;
                 while (running) {
                     try {
 
@@ -207,13 +231,46 @@ public abstract class AbstractEventParser<EVENT> extends AbstractCanalLifeCycle
 
                         };
 
+                        SinkFunction dumpHandler = sinkHandler;
+                        if (parallel && binlogParser instanceof MultiStageBinlogParser) {
+                            // 开启并行解析，dump线程只做fetch/decode及有序的上下文处理
+                            coprocessor = buildMultiStageCoprocessor(startPosition);
+                            coprocessor.start();
+                            final MultiStageCoprocessor<EVENT> stageCoprocessor = coprocessor;
+                            dumpHandler = new SinkFunction<EVENT>() {
+
+                                public boolean sink(EVENT event) {
+                                    try {
+                                        return stageCoprocessor.publish(event) && running;
+                                    } catch (InterruptedException e) {
+                                        Thread.currentThread().interrupt();
+                                        return false;
+                                    }
+                                }
+                            };
+                        }
+
                         // 4. 开始dump数据
-                        if (StringUtils.isEmpty(startPosition.getJournalName()) && startPosition.getTimestamp() != null) {
-                            erosaConnection.dump(startPosition.getTimestamp(), sinkHandler);
-                        } else {
-                            erosaConnection.dump(startPosition.getJournalName(),
-                                startPosition.getPosition(),
-                                sinkHandler);
+                        try {
+                            if (StringUtils.isEmpty(startPosition.getJournalName())
+                                && startPosition.getTimestamp() != null) {
+                                erosaConnection.dump(startPosition.getTimestamp(), dumpHandler);
+                            } else {
+                                // 先做一次回放(比如本地历史binlog的并行解析)，再从回放结束的位点开始串行dump
+                                EntryPosition dumpPosition = backfill(erosaConnection,
+                                    startPosition,
+                                    buildEntrySink(startPosition));
+                                if (dumpPosition != null) {
+                                    erosaConnection.dump(dumpPosition.getJournalName(),
+                                        dumpPosition.getPosition(),
+                                        dumpHandler);
+                                }
+                            }
+                        } finally {
+                            if (coprocessor != null) {
+                                // 并行解析失败时会中断dump线程，抛出原始的异常代替中断产生的异常
+                                coprocessor.checkException();
+                            }
                         }
 
                     } catch (TableIdNotFoundException e) {
@@ -237,6 +294,11 @@ public abstract class AbstractEventParser<EVENT> extends AbstractCanalLifeCycle
                             sendAlarm(destination, ExceptionUtils.getFullStackTrace(e));
                         }
                     } finally {
+                        // 停止并行解析，未输出的数据会在重新dump时再次解析
+                        if (coprocessor != null) {
+                            coprocessor.stop();
+                            coprocessor = null;
+                        }
                         // 重新置为中断状态
                         Thread.interrupted();
                         // 关闭一下链接
@@ -301,6 +363,67 @@ public abstract class AbstractEventParser<EVENT> extends AbstractCanalLifeCycle
         }
     }
 
+    /**
+     * dump之前的回放，解析结果按顺序交给entrySink，默认不做处理
+     * 
+     * @return 串行dump的起始位点，返回null代表已经停止
+     */
+    protected EntryPosition backfill(ErosaConnection connection, EntryPosition startPosition,
+                                     SinkFunction<CanalEntry.Entry> entrySink) throws IOException {
+        return startPosition;
+    }
+
+    /**
+     * 构造并行解析的协调器，最后一个阶段负责将解析结果按顺序放入transaction buffer
+     */
+    protected MultiStageCoprocessor<EVENT> buildMultiStageCoprocessor(final EntryPosition startPosition) {
+        return new MultiStageCoprocessor<EVENT>(parallelBufferSize,
+            parallelThreadSize,
+            (MultiStageBinlogParser<EVENT>) binlogParser,
+            buildEntrySink(startPosition),
+            destination);
+    }
+
+    /**
+     * 接收已经解析好的entry，按顺序放入transaction buffer
+     */
+    protected SinkFunction<CanalEntry.Entry> buildEntrySink(final EntryPosition startPosition) {
+        return new SinkFunction<CanalEntry.Entry>() {
+
+            private LogPosition lastPosition;
+
+            public boolean sink(CanalEntry.Entry entry) {
+                try {
+                    if (parsedEventCount.incrementAndGet() < 0) {
+                        parsedEventCount.set(0);
+                    }
+
+                    if (!running) {
+                        return false;
+                    }
+
+                    exception = null; // 有正常数据流过，清空exception
+                    transactionBuffer.add(entry);
+                    // 记录一下对应的positions
+                    this.lastPosition = buildLastPosition(entry);
+                    // 记录一下最后一次有数据的时间
+                    lastEntryTime = System.currentTimeMillis();
+                    return running;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                } catch (Throwable e) {
+                    // 记录一下，出错的位点信息
+                    processSinkError(e,
+                        this.lastPosition,
+                        startPosition.getJournalName(),
+                        startPosition.getPosition());
+                    throw new CanalParseException(e); // 继续抛出异常，让上层统一感知
+                }
+            }
+        };
+    }
+
     protected boolean consumeTheEventAndProfilingIfNecessary(List<CanalEntry.Entry> entrys) throws CanalSinkException,
                                                                                            InterruptedException {
         long startTs = -1;
@@ -344,7 +467,7 @@ public abstract class AbstractEventParser<EVENT> extends AbstractCanalLifeCycle
     }
 
     protected LogPosition buildLastTransactionPosition(List<CanalEntry.Entry> entries) { // 初始化一下
-        for (int i = entries.size() - 1; i > 0; i--) {
+        for (int i = entries.size() - 1; i >= 0; i--) {
             CanalEntry.Entry entry = entries.get(i);
             if (entry.getEntryType() == CanalEntry.EntryType.TRANSACTIONEND) {// 尽量记录一个事务做为position
                 return buildLastPosition(entry);
@@ -387,25 +510,14 @@ public abstract class AbstractEventParser<EVENT> extends AbstractCanalLifeCycle
 
     protected void startHeartBeat(ErosaConnection connection) {
         lastEntryTime = 0L; // 初始化
-        if (timer == null) {// lazy初始化一下
-            String name = String.format("destination = %s , address = %s , HeartBeatTimeTask",
-                destination,
-                runningInfo == null ? null : runningInfo.getAddress().toString());
-            synchronized (AbstractEventParser.class) {
-                // synchronized (MysqlEventParser.class) {
-                // why use MysqlEventParser.class, u know, MysqlEventParser is
-                // the child class 4 AbstractEventParser,
-                // do this is ...
-                if (timer == null) {
-                    timer = new Timer(name, true);
-                }
-            }
-        }
-
         if (heartBeatTimerTask == null) {// fixed issue #56，避免重复创建heartbeat线程
             heartBeatTimerTask = buildHeartBeatTimeTask(connection);
             Integer interval = detectingIntervalInSeconds;
-            timer.schedule(heartBeatTimerTask, interval * 1000L, interval * 1000L);
+            // 所有destination共享调度线程触发，心跳检测中有数据库重连/查询等阻塞操作，在单独的阻塞任务线程池中执行
+            heartBeatFuture = CanalScheduler.scheduleBlockingWithFixedDelay(heartBeatTimerTask,
+                interval * 1000L,
+                interval * 1000L,
+                TimeUnit.MILLISECONDS);
             logger.info("start heart beat.... ");
         }
     }
@@ -441,9 +553,9 @@ public abstract class AbstractEventParser<EVENT> extends AbstractCanalLifeCycle
 
     protected void stopHeartBeat() {
         lastEntryTime = 0L; // 初始化
-        if (timer != null) {
-            timer.cancel();
-            timer = null;
+        if (heartBeatFuture != null) {
+            CanalScheduler.cancel(heartBeatFuture);
+            heartBeatFuture = null;
         }
         heartBeatTimerTask = null;
     }
@@ -508,6 +620,10 @@ public abstract class AbstractEventParser<EVENT> extends AbstractCanalLifeCycle
         this.transactionSize = transactionSize;
     }
 
+    public void setTransactionStreaming(boolean transactionStreaming) {
+        this.transactionStreaming = transactionStreaming;
+    }
+
     public CanalLogPositionManager getLogPositionManager() {
         return logPositionManager;
     }
@@ -524,4 +640,16 @@ public abstract class AbstractEventParser<EVENT> extends AbstractCanalLifeCycle
         return exception;
     }
 
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    public void setParallelThreadSize(int parallelThreadSize) {
+        this.parallelThreadSize = parallelThreadSize;
+    }
+
+    public void setParallelBufferSize(int parallelBufferSize) {
+        this.parallelBufferSize = parallelBufferSize;
+    }
+
 }
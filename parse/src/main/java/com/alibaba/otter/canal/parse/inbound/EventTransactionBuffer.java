@@ -1,7 +1,8 @@
 package com.alibaba.otter.canal.parse.inbound;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
 import java.util.List;
+import java.util.RandomAccess;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.springframework.util.Assert;
@@ -23,6 +24,11 @@ import com.alibaba.otter.canal.store.CanalStoreException;
  * {@code EventTransactionBuffer}的目的是，将一个事务内部的事件，打包在一起，发送给客户端；如果一个事务的大小，超过了bufferSize，那么
  * 这个事务将会被拆分成多次发送。
  * </p>
+ * <p>
+ * 每次flush的数据为一个{@linkplain TransactionChunk}，事务因为buffer写满被拆分时标记为partial，只有事务结束的chunk才能用于记录位点。
+ * 开启streaming之后，chunk直接引用ring buffer中的数据段，不做拷贝，超大事务(比如上百万行的批量delete)按照bufferSize分段流式输出，
+ * 此时chunk只在callback执行期间有效，callback不能保存chunk的引用。
+ * </p>
  * 
  * @author jianghang 2012-12-6 上午11:05:12
  * @version 1.0.0
@@ -38,6 +44,8 @@ public class EventTransactionBuffer extends AbstractCanalLifeCycle {
     private AtomicLong               flushSequence = new AtomicLong(INIT_SQEUENCE); // 代表满足flush条件后最后一次数据flush的时间
 
     private TransactionFlushCallback flushCallback;
+    private boolean                  streaming     = false;                         // 是否直接输出ring buffer中的数据段，不做拷贝
+    private TransactionChunk         chunk;                                         // streaming模式下复用的chunk
 
     public EventTransactionBuffer(){
 
@@ -56,6 +64,7 @@ public class EventTransactionBuffer extends AbstractCanalLifeCycle {
         Assert.notNull(flushCallback, "flush callback is null!");
         indexMask = bufferSize - 1;
         entries = new CanalEntry.Entry[bufferSize];
+        chunk = new TransactionChunk(entries, indexMask);
     }
 
     public void stop() throws CanalStoreException {
@@ -63,6 +72,7 @@ public class EventTransactionBuffer extends AbstractCanalLifeCycle {
         flushSequence.set(INIT_SQEUENCE);
 
         entries = null;
+        chunk = null;
         super.stop();
     }
 
@@ -87,19 +97,19 @@ public class EventTransactionBuffer extends AbstractCanalLifeCycle {
     public void add(CanalEntry.Entry entry) throws InterruptedException {
         switch (entry.getEntryType()) {
             case TRANSACTIONBEGIN:
-                flush();// 刷新上一次的数据
+                flush(false);// 刷新上一次的数据
                 put(entry);
                 break;
             case TRANSACTIONEND:
                 put(entry);
-                flush();
+                flush(false);
                 break;
             case ROWDATA:
                 put(entry);
                 // 针对非DML的数据，直接输出，不进行buffer控制
                 EventType eventType = entry.getHeader().getEventType();
                 if (eventType != null && !isDml(eventType)) {
-                    flush();
+                    flush(false);
                 }
                 break;
             default:
@@ -122,19 +132,31 @@ public class EventTransactionBuffer extends AbstractCanalLifeCycle {
             entries[getIndex(next)] = data;
             putSequence.set(next);
         } else {
-            flush();// buffer区满了，刷新一下
+            flush(true);// buffer区满了，刷新一下，事务被拆分
             put(data);// 继续加一下新数据
         }
     }
 
-    private void flush() throws InterruptedException {
+    /**
+     * @param partial 是否因为buffer写满而拆分了事务
+     */
+    private void flush(boolean partial) throws InterruptedException {
         long start = this.flushSequence.get() + 1;
         long end = this.putSequence.get();
 
         if (start <= end) {
-            List<CanalEntry.Entry> transaction = new ArrayList<CanalEntry.Entry>();
-            for (long next = start; next <= end; next++) {
-                transaction.add(this.entries[getIndex(next)]);
+            int size = (int) (end - start + 1);
+            TransactionChunk transaction;
+            if (streaming) {
+                transaction = chunk;
+                transaction.reset(start, size, partial);
+            } else {
+                CanalEntry.Entry[] copy = new CanalEntry.Entry[size];
+                for (int i = 0; i < size; i++) {
+                    copy[i] = this.entries[getIndex(start + i)];
+                }
+                transaction = new TransactionChunk(copy, -1);
+                transaction.reset(0, size, partial);
             }
 
             flushCallback.flush(transaction);
@@ -178,6 +200,10 @@ public class EventTransactionBuffer extends AbstractCanalLifeCycle {
         this.flushCallback = flushCallback;
     }
 
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
     /**
      * 事务刷新机制
      * 
@@ -186,7 +212,56 @@ public class EventTransactionBuffer extends AbstractCanalLifeCycle {
      */
     public static interface TransactionFlushCallback {
 
+        /**
+         * @param transaction 实际类型为{@linkplain TransactionChunk}
+         */
         public void flush(List<CanalEntry.Entry> transaction) throws InterruptedException;
     }
 
+    /**
+     * 一次flush的数据段，基于数组的只读视图
+     * 
+     * <pre>
+     * 1. streaming模式下直接引用ring buffer，下标按照indexMask取模，只在本次flush期间有效
+     * 2. 非streaming模式下引用拷贝出来的数组，可以被保存
+     * </pre>
+     */
+    public static class TransactionChunk extends AbstractList<CanalEntry.Entry> implements RandomAccess {
+
+        private final CanalEntry.Entry[] entries;
+        private final int                mask;
+        private long                     start;
+        private int                      size;
+        private boolean                  partial;
+
+        TransactionChunk(CanalEntry.Entry[] entries, int mask){
+            this.entries = entries;
+            this.mask = mask;
+        }
+
+        void reset(long start, int size, boolean partial) {
+            this.start = start;
+            this.size = size;
+            this.partial = partial;
+        }
+
+        public CanalEntry.Entry get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("index : " + index + " , size : " + size);
+            }
+            return entries[(int) (start + index) & mask];
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * 事务因为超过bufferSize被拆分，后续还有该事务的数据
+         */
+        public boolean isPartial() {
+            return partial;
+        }
+    }
+
 }
@@ -0,0 +1,25 @@
+package com.alibaba.otter.canal.parse.inbound;
+
+import java.util.concurrent.Callable;
+
+import com.alibaba.otter.canal.parse.exception.CanalParseException;
+import com.alibaba.otter.canal.protocol.CanalEntry;
+
+/**
+ * 支持多阶段并行解析的binlog解析接口
+ * 
+ * <pre>
+ * 1. prepare阶段严格按照binlog顺序调用，负责处理解析上下文(比如rotate文件名、ddl对table meta的影响、tableId映射等)
+ * 2. 返回的Callable只依赖prepare阶段准备好的数据，可以在多线程中并行执行
+ * </pre>
+ * 
+ * @author yzy
+ * @version 1.0.24
+ */
+public interface MultiStageBinlogParser<T> extends BinlogParser<T> {
+
+    /**
+     * 有序阶段的处理，返回null代表当前事件不需要输出
+     */
+    Callable<CanalEntry.Entry> prepare(T event) throws CanalParseException;
+}
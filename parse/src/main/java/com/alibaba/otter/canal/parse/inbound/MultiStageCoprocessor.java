@@ -0,0 +1,185 @@
+package com.alibaba.otter.canal.parse.inbound;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.MDC;
+
+import com.alibaba.otter.canal.common.AbstractCanalLifeCycle;
+import com.alibaba.otter.canal.common.utils.NamedThreadFactory;
+import com.alibaba.otter.canal.parse.exception.CanalParseException;
+import com.alibaba.otter.canal.protocol.CanalEntry;
+
+/**
+ * 多阶段并行解析的协调器
+ *
+ * <pre>
+ * stage 1: dump线程，负责fetch + LogDecoder.decode，并调用{@linkplain MultiStageBinlogParser#prepare}完成有序的上下文处理
+ * stage 2: 并行解析线程池，执行rows事件的行数据解析及protobuf构造
+ * stage 3: 单独的sink线程，严格按照stage 1的提交顺序获取解析结果，交给transaction buffer
+ *
+ * 各阶段之间通过有界的ArrayBlockingQueue连接，sink跟不上时dump线程会被阻塞，保证内存可控
+ * 最终输出的顺序和串行解析完全一致
+ *
+ * start()/publish()需要在dump线程中调用，stage 2/3出错时会中断dump线程，binlog空闲时也能立即感知
+ * </pre>
+ *
+ * @author yzy
+ * @version 1.0.24
+ */
+public class MultiStageCoprocessor<EVENT> extends AbstractCanalLifeCycle {
+
+    private static final long                            PUBLISH_WAIT_MILLS = 100L;
+    private static final long                            STOP_WAIT_MILLS    = 3000L;
+
+    private final int                                    bufferSize;
+    private final int                                    threadSize;
+    private final MultiStageBinlogParser<EVENT>          binlogParser;
+    private final SinkFunction<CanalEntry.Entry>         entrySink;
+    private final String                                 destination;
+
+    private BlockingQueue<FutureTask<CanalEntry.Entry>> orderedQueue;
+    private ThreadPoolExecutor                           parserExecutor;
+    private Thread                                       sinkThread;
+    private Thread                                       dumpThread;
+    private volatile Throwable                           exception;
+
+    public MultiStageCoprocessor(int bufferSize, int threadSize, MultiStageBinlogParser<EVENT> binlogParser,
+                                 SinkFunction<CanalEntry.Entry> entrySink, String destination){
+        this.bufferSize = bufferSize;
+        this.threadSize = threadSize;
+        this.binlogParser = binlogParser;
+        this.entrySink = entrySink;
+        this.destination = destination;
+    }
+
+    public void start() {
+        super.start();
+        exception = null;
+        dumpThread = Thread.currentThread();
+        orderedQueue = new ArrayBlockingQueue<FutureTask<CanalEntry.Entry>>(bufferSize);
+        // 在途的任务数量受orderedQueue限制，线程池的队列不会超过bufferSize
+        parserExecutor = new ThreadPoolExecutor(threadSize,
+            threadSize,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(bufferSize),
+            new NamedThreadFactory("destination = " + destination + " , MultiStageParser"),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+
+        sinkThread = new Thread(new Runnable() {
+
+            public void run() {
+                MDC.put("destination", String.valueOf(destination));
+                try {
+                    while (running) {
+                        // stop时不中断，处理完当前的entry之后退出
+                        FutureTask<CanalEntry.Entry> task = orderedQueue.poll(PUBLISH_WAIT_MILLS,
+                            TimeUnit.MILLISECONDS);
+                        if (task == null) {
+                            continue;
+                        }
+
+                        CanalEntry.Entry entry = task.get();
+                        if (entry != null && !entrySink.sink(entry)) {
+                            break;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    // 正常退出
+                } catch (ExecutionException e) {
+                    fail(e.getCause());
+                } catch (Throwable e) {
+                    fail(e);
+                } finally {
+                    MDC.remove("destination");
+                }
+            }
+        });
+        sinkThread.setName(String.format("destination = %s , MultiStageSink", destination));
+        sinkThread.start();
+    }
+
+    /**
+     * dump线程调用，按照binlog顺序提交事件，队列满时阻塞等待
+     *
+     * @return false代表sink阶段已经退出，需要停止dump
+     */
+    public boolean publish(EVENT event) throws InterruptedException {
+        checkException();
+        Callable<CanalEntry.Entry> callable = binlogParser.prepare(event);
+        if (callable == null) {
+            return true;
+        }
+
+        FutureTask<CanalEntry.Entry> task = new FutureTask<CanalEntry.Entry>(callable);
+        // 先入有序队列再提交线程池，保证在途的任务数量不超过bufferSize
+        while (!orderedQueue.offer(task, PUBLISH_WAIT_MILLS, TimeUnit.MILLISECONDS)) {
+            checkException();
+            if (!sinkThread.isAlive()) {
+                return false;
+            }
+        }
+
+        parserExecutor.execute(task);
+        return true;
+    }
+
+    public void stop() {
+        super.stop();
+        // 等待sink线程处理完当前的entry，只有下游一直阻塞(比如store已满)超过STOP_WAIT_MILLS才中断
+        boolean interrupted = false;
+        long deadline = System.currentTimeMillis() + STOP_WAIT_MILLS;
+        while (sinkThread.isAlive()) {
+            long wait = deadline - System.currentTimeMillis();
+            if (wait <= 0) {
+                sinkThread.interrupt();
+                wait = PUBLISH_WAIT_MILLS;
+            }
+
+            try {
+                sinkThread.join(wait);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        parserExecutor.shutdownNow();
+        orderedQueue.clear();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 抛出stage 2/3的异常，保留原始的异常类型(比如TableIdNotFoundException需要上层特殊处理)
+     */
+    void checkException() {
+        Throwable e = exception;
+        if (e == null) {
+            return;
+        }
+
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        } else if (e instanceof Error) {
+            throw (Error) e;
+        } else {
+            throw new CanalParseException("multi stage parse failed", e);
+        }
+    }
+
+    private void fail(Throwable e) {
+        exception = e;
+        if (running) {
+            // dump线程可能阻塞在binlog的读取上(比如binlog空闲)，中断它以便立即抛出异常并重新dump
+            dumpThread.interrupt();
+        }
+    }
+
+}
@@ -1,7 +1,11 @@
 package com.alibaba.otter.canal.parse.inbound.mysql;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.nio.charset.Charset;
 
+import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -10,6 +14,8 @@ import com.alibaba.otter.canal.filter.aviater.AviaterRegexFilter;
 import com.alibaba.otter.canal.parse.inbound.AbstractEventParser;
 import com.alibaba.otter.canal.parse.inbound.BinlogParser;
 import com.alibaba.otter.canal.parse.inbound.mysql.dbsync.LogEventConvert;
+import com.alibaba.otter.canal.parse.inbound.mysql.dbsync.TableMetaCache;
+import com.alibaba.otter.canal.parse.inbound.mysql.dbsync.TableMetaHistory;
 
 public abstract class AbstractMysqlEventParser extends AbstractEventParser {
 
@@ -24,6 +30,16 @@ public abstract class AbstractMysqlEventParser extends AbstractEventParser {
     protected boolean           filterQueryDdl          = false;
     protected boolean           filterRows              = false;
     protected boolean           filterTableError        = false;
+    // 启动时通过information_schema批量加载table meta
+    protected boolean           tableMetaPreload        = false;
+    // ddl之后异步刷新table meta
+    protected boolean           tableMetaAsyncRefresh   = false;
+    // 按照binlog位点记录table meta历史的本地目录，为空时不开启
+    protected String            tableMetaHistoryDir;
+    protected TableMetaHistory  tableMetaHistory;
+    // 上一次链接使用的table meta，重连到同一个地址时沿用，preload在每次start之后只执行一次
+    private TableMetaCache      lastTableMetaCache;
+    private InetSocketAddress   lastTableMetaAddress;
 
     protected BinlogParser buildParser() {
         LogEventConvert convert = new LogEventConvert();
@@ -44,6 +60,61 @@ public abstract class AbstractMysqlEventParser extends AbstractEventParser {
         return convert;
     }
 
+    protected TableMetaCache buildTableMetaCache(MysqlConnection metaConnection) {
+        TableMetaCache tableMetaCache = new TableMetaCache(metaConnection);
+        InetSocketAddress address = metaConnection.getConnector() != null ? metaConnection.getConnector()
+            .getAddress() : null;
+        if (tableMetaPreload && lastTableMetaCache != null && address != null
+            && address.equals(lastTableMetaAddress)) {
+            // ddl在解析过程中已经使上一次的结果失效，不需要再次查询information_schema
+            tableMetaCache.copyFrom(lastTableMetaCache);
+            lastTableMetaCache = tableMetaCache;
+        } else if (tableMetaPreload) {
+            long start = System.currentTimeMillis();
+            AviaterRegexFilter filter = null;
+            AviaterRegexFilter blackFilter = null;
+            if (eventFilter != null && eventFilter instanceof AviaterRegexFilter) {
+                filter = (AviaterRegexFilter) eventFilter;
+            }
+            if (eventBlackFilter != null && eventBlackFilter instanceof AviaterRegexFilter) {
+                blackFilter = (AviaterRegexFilter) eventBlackFilter;
+            }
+
+            try {
+                int count = tableMetaCache.preload(filter, blackFilter);
+                logger.info("preload table meta for {} tables , cost {} ms", count, System.currentTimeMillis() - start);
+                lastTableMetaCache = tableMetaCache;
+                lastTableMetaAddress = address;
+            } catch (IOException e) {
+                // 预加载失败不影响解析，退化为按需desc
+                logger.warn("preload table meta failed , fallback to desc on demand", e);
+            }
+        }
+
+        if (tableMetaAsyncRefresh) {
+            tableMetaCache.enableAsyncRefresh("destination = " + destination);
+        }
+
+        if (StringUtils.isNotBlank(tableMetaHistoryDir)) {
+            // history跨越多次重连，只在第一次使用时加载
+            if (tableMetaHistory == null || !tableMetaHistory.isStart()) {
+                tableMetaHistory = new TableMetaHistory(new File(tableMetaHistoryDir));
+                tableMetaHistory.start();
+            }
+            tableMetaCache.setHistory(tableMetaHistory);
+        }
+        return tableMetaCache;
+    }
+
+    public void stop() {
+        super.stop();
+        lastTableMetaCache = null;
+        lastTableMetaAddress = null;
+        if (tableMetaHistory != null && tableMetaHistory.isStart()) {
+            tableMetaHistory.stop();
+        }
+    }
+
     public void setEventFilter(CanalEventFilter eventFilter) {
         super.setEventFilter(eventFilter);
 
@@ -97,4 +168,16 @@ public abstract class AbstractMysqlEventParser extends AbstractEventParser {
         this.filterTableError = filterTableError;
     }
 
+    public void setTableMetaPreload(boolean tableMetaPreload) {
+        this.tableMetaPreload = tableMetaPreload;
+    }
+
+    public void setTableMetaAsyncRefresh(boolean tableMetaAsyncRefresh) {
+        this.tableMetaAsyncRefresh = tableMetaAsyncRefresh;
+    }
+
+    public void setTableMetaHistoryDir(String tableMetaHistoryDir) {
+        this.tableMetaHistoryDir = tableMetaHistoryDir;
+    }
+
 }
@@ -0,0 +1,401 @@
+package com.alibaba.otter.canal.parse.inbound.mysql;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alibaba.otter.canal.common.AbstractCanalLifeCycle;
+import com.alibaba.otter.canal.common.utils.JsonUtils;
+import com.alibaba.otter.canal.parse.exception.CanalParseException;
+import com.alibaba.otter.canal.parse.inbound.mysql.dbsync.TableMetaHistory;
+import com.alibaba.otter.canal.protocol.position.EntryPosition;
+
+/**
+ * 基于本地文件的binlog时间戳索引，用于按时间戳查找位点时直接定位到对应的binlog文件和offset
+ *
+ * <pre>
+ * 1. dump过程中按照事务提交的位点增量记录，每个binlog文件记录第一个和最后一个位点，文件内每隔indexInterval字节记录一个稀疏的(timestamp, offset)
+ * 2. 查询时先按照文件的第一个时间戳二分找到binlog文件，再在文件内二分找到小于目标时间戳的最近一个位点
+ * 3. 返回的只是扫描的起点，调用方需要从该位点开始扫描确认，索引过期(比如reset master)时扫描失败再退化为逐个文件查找
+ * 4. 文件格式和{@linkplain TableMetaHistory}一致，snapshot + delta的json行
+ * </pre>
+ *
+ * 线程安全，查询和记录可能来自不同的线程
+ *
+ * @author yzy
+ * @version 1.0.24
+ */
+public class BinlogTimestampIndex extends AbstractCanalLifeCycle {
+
+    private static final Logger        logger              = LoggerFactory.getLogger(BinlogTimestampIndex.class);
+    private static final Charset       charset             = Charset.forName("UTF-8");
+    private static final String        SNAPSHOT_FILE       = "timestamp.snapshot";
+    private static final String        DELTA_FILE          = "timestamp.delta";
+
+    private File                       dataDir;
+    private long                       indexInterval       = 8 * 1024 * 1024L; // 文件内索引间隔的字节数
+    private int                        maxFileCount        = 1024;             // 最多保留的binlog文件数
+    private int                        checkpointThreshold = 1000;             // delta超过该数量时做checkpoint
+    private TreeMap<String, FileIndex> files               = new TreeMap<String, FileIndex>(new JournalNameComparator());
+    private OutputStream               deltaOutput;
+    private int                        deltaCount          = 0;
+    // 最近一次记录的位点，切换文件或者stop时作为文件的最后一个索引
+    private String                     lastJournalName;
+    private long                       lastPosition;
+    private long                       lastTimestamp;
+
+    public BinlogTimestampIndex(){
+    }
+
+    public BinlogTimestampIndex(File dataDir){
+        this.dataDir = dataDir;
+    }
+
+    public synchronized void start() {
+        super.start();
+        try {
+            FileUtils.forceMkdir(dataDir);
+            deltaCount = 0;
+            load(new File(dataDir, SNAPSHOT_FILE));
+            deltaCount = load(new File(dataDir, DELTA_FILE));
+            checkpoint();
+        } catch (IOException e) {
+            throw new CanalParseException("load binlog timestamp index failed , dir : " + dataDir.getPath(), e);
+        }
+    }
+
+    public synchronized void stop() {
+        super.stop();
+        try {
+            flushLastMark();
+            checkpoint();
+        } catch (IOException e) {
+            logger.warn("checkpoint binlog timestamp index failed , dir : " + dataDir.getPath(), e);
+        }
+        IOUtils.closeQuietly(deltaOutput);
+        deltaOutput = null;
+        lastJournalName = null;
+        files.clear();
+    }
+
+    /**
+     * 记录一个可以作为查找起点的位点，每个事务调用一次，只有满足间隔的位点才会写入索引
+     *
+     * @param position 事务结束事件(xid/commit)自身的offset，不是下一个事务的起点
+     */
+    public synchronized void mark(String journalName, long position, long timestamp) {
+        if (lastJournalName != null && !lastJournalName.equals(journalName)) {
+            // 切换了binlog文件，补充上一个文件的最后一个位点
+            flushLastMark();
+        }
+
+        FileIndex file = files.get(journalName);
+        if (file == null || position >= file.getLastPosition() + indexInterval) {
+            append(new Record(journalName, position, timestamp));
+        }
+
+        lastJournalName = journalName;
+        lastPosition = position;
+        lastTimestamp = timestamp;
+    }
+
+    /**
+     * 查找时间戳小于timestamp的最近一个索引位点，没有时返回null
+     */
+    public synchronized EntryPosition floor(long timestamp) {
+        List<FileIndex> indexes = new ArrayList<FileIndex>(files.values());
+        // 找到第一个时间戳小于timestamp的最后一个文件
+        int low = 0;
+        int high = indexes.size() - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (indexes.get(mid).getFirstTimestamp() < timestamp) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        if (found < 0) {
+            return null;
+        }
+
+        FileIndex file = indexes.get(found);
+        int index = file.floor(timestamp);
+        return new EntryPosition(file.getJournalName(), file.positions[index], file.timestamps[index]);
+    }
+
+    /**
+     * 删除已经被purge的binlog文件的索引
+     */
+    public synchronized void prune(String minJournalName) {
+        boolean removed = false;
+        Iterator<String> iterator = files.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (TableMetaHistory.compareJournalName(iterator.next(), minJournalName) >= 0) {
+                break;
+            }
+            iterator.remove();
+            removed = true;
+        }
+
+        if (removed) {
+            try {
+                deltaCount++; // 强制重写snapshot
+                checkpoint();
+            } catch (IOException e) {
+                logger.warn("checkpoint binlog timestamp index failed , dir : " + dataDir.getPath(), e);
+            }
+        }
+    }
+
+    /**
+     * 将所有索引写入snapshot文件，并清空delta文件
+     */
+    public synchronized void checkpoint() throws IOException {
+        IOUtils.closeQuietly(deltaOutput);
+        deltaOutput = null;
+        if (deltaCount == 0 && new File(dataDir, SNAPSHOT_FILE).exists()) {
+            return;
+        }
+
+        StringBuilder builder = new StringBuilder();
+        for (FileIndex file : files.values()) {
+            for (int i = 0; i < file.size; i++) {
+                builder.append(JsonUtils.marshalToString(new Record(file.getJournalName(),
+                    file.positions[i],
+                    file.timestamps[i]))).append('\n');
+            }
+        }
+
+        File tmp = new File(dataDir, SNAPSHOT_FILE + ".tmp");
+        File snapshot = new File(dataDir, SNAPSHOT_FILE);
+        FileUtils.writeStringToFile(tmp, builder.toString(), charset.name());
+        if (snapshot.exists() && !snapshot.delete()) {
+            throw new IOException("delete file failed : " + snapshot.getPath());
+        }
+        if (!tmp.renameTo(snapshot)) {
+            throw new IOException("rename file failed : " + tmp.getPath());
+        }
+
+        FileUtils.deleteQuietly(new File(dataDir, DELTA_FILE));
+        deltaCount = 0;
+    }
+
+    public synchronized int getFileCount() {
+        return files.size();
+    }
+
+    private void flushLastMark() {
+        if (lastJournalName == null) {
+            return;
+        }
+
+        FileIndex file = files.get(lastJournalName);
+        if (file == null || lastPosition > file.getLastPosition()) {
+            append(new Record(lastJournalName, lastPosition, lastTimestamp));
+        }
+    }
+
+    private void append(Record record) {
+        if (!put(record)) {
+            return;
+        }
+
+        try {
+            if (deltaOutput == null) {
+                deltaOutput = new FileOutputStream(new File(dataDir, DELTA_FILE), true);
+            }
+            deltaOutput.write((JsonUtils.marshalToString(record) + "\n").getBytes(charset));
+            deltaOutput.flush();
+            if (++deltaCount >= checkpointThreshold) {
+                checkpoint();
+            }
+        } catch (IOException e) {
+            throw new CanalParseException("write binlog timestamp index failed , dir : " + dataDir.getPath(), e);
+        }
+    }
+
+    private int load(File file) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+
+        int count = 0;
+        List<String> lines = FileUtils.readLines(file, charset.name());
+        for (String line : lines) {
+            if (StringUtils.isBlank(line)) {
+                continue;
+            }
+
+            try {
+                put(JsonUtils.unmarshalFromString(line, Record.class));
+                count++;
+            } catch (Exception e) {
+                // 最后一行可能因为进程退出没有写完整
+                logger.warn("skip broken binlog timestamp index in " + file.getName() + " : " + line, e);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 只接受文件内递增的位点，从旧位点重新dump时已经记录过的部分直接忽略
+     */
+    private boolean put(Record record) {
+        FileIndex file = files.get(record.getJournalName());
+        if (file == null) {
+            file = new FileIndex(record.getJournalName());
+            files.put(record.getJournalName(), file);
+            while (files.size() > maxFileCount) {
+                files.pollFirstEntry();
+            }
+        } else if (record.getPosition() <= file.getLastPosition()) {
+            return false;
+        }
+
+        file.add(record.getPosition(), record.getTimestamp());
+        return true;
+    }
+
+    public void setDataDir(File dataDir) {
+        this.dataDir = dataDir;
+    }
+
+    public void setIndexInterval(long indexInterval) {
+        this.indexInterval = indexInterval;
+    }
+
+    public void setMaxFileCount(int maxFileCount) {
+        this.maxFileCount = maxFileCount;
+    }
+
+    public void setCheckpointThreshold(int checkpointThreshold) {
+        this.checkpointThreshold = checkpointThreshold;
+    }
+
+    static class JournalNameComparator implements Comparator<String> {
+
+        public int compare(String o1, String o2) {
+            return TableMetaHistory.compareJournalName(o1, o2);
+        }
+    }
+
+    /**
+     * 单个binlog文件的索引，使用原生数组保存，避免大量的Long对象
+     */
+    static class FileIndex {
+
+        private final String journalName;
+        private long[]       positions  = new long[8];
+        private long[]       timestamps = new long[8];
+        private int          size       = 0;
+
+        FileIndex(String journalName){
+            this.journalName = journalName;
+        }
+
+        void add(long position, long timestamp) {
+            if (size == positions.length) {
+                long[] newPositions = new long[size << 1];
+                long[] newTimestamps = new long[size << 1];
+                System.arraycopy(positions, 0, newPositions, 0, size);
+                System.arraycopy(timestamps, 0, newTimestamps, 0, size);
+                positions = newPositions;
+                timestamps = newTimestamps;
+            }
+            positions[size] = position;
+            timestamps[size] = timestamp;
+            size++;
+        }
+
+        /**
+         * 返回时间戳小于timestamp的最后一个下标，都不满足时返回0
+         */
+        int floor(long timestamp) {
+            int low = 0;
+            int high = size - 1;
+            int found = 0;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (timestamps[mid] < timestamp) {
+                    found = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return found;
+        }
+
+        String getJournalName() {
+            return journalName;
+        }
+
+        long getFirstTimestamp() {
+            return timestamps[0];
+        }
+
+        long getLastPosition() {
+            return positions[size - 1];
+        }
+    }
+
+    /**
+     * 文件中的一条记录
+     */
+    public static class Record {
+
+        private String journalName;
+        private Long   position;
+        private Long   timestamp;
+
+        public Record(){
+        }
+
+        public Record(String journalName, long position, long timestamp){
+            this.journalName = journalName;
+            this.position = position;
+            this.timestamp = timestamp;
+        }
+
+        public String getJournalName() {
+            return journalName;
+        }
+
+        public void setJournalName(String journalName) {
+            this.journalName = journalName;
+        }
+
+        public Long getPosition() {
+            return position;
+        }
+
+        public void setPosition(Long position) {
+            this.position = position;
+        }
+
+        public Long getTimestamp() {
+            return timestamp;
+        }
+
+        public void setTimestamp(Long timestamp) {
+            this.timestamp = timestamp;
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.alibaba.otter.canal.parse.inbound.mysql;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
@@ -26,12 +27,16 @@ import com.taobao.tddl.dbsync.binlog.event.RotateLogEvent;
  */
 public class LocalBinLogConnection implements ErosaConnection {
 
-    private static final Logger logger     = LoggerFactory.getLogger(LocalBinLogConnection.class);
-    private BinLogFileQueue     binlogs    = null;
+    private static final Logger logger           = LoggerFactory.getLogger(LocalBinLogConnection.class);
+    private BinLogFileQueue     binlogs          = null;
     private boolean             needWait;
     private String              directory;
-    private int                 bufferSize = 16 * 1024;
-    private boolean             running    = false;
+    private int                 bufferSize       = 16 * 1024;
+    // mmap读取的窗口大小，0代表使用流读取
+    private int                 mappedWindowSize = 0;
+    // needWait时跟随当前文件增长，没有收到目录变化通知时的最长等待时间
+    private long                tailWaitMillis   = 500L;
+    private boolean             running          = false;
 
     public LocalBinLogConnection(){
     }
@@ -75,12 +80,15 @@ public class LocalBinLogConnection implements ErosaConnection {
     public void dump(String binlogfilename, Long binlogPosition, SinkFunction func) throws IOException {
         File current = new File(directory, binlogfilename);
 
-        FileLogFetcher fetcher = new FileLogFetcher(bufferSize);
+        FileLogFetcher fetcher = new FileLogFetcher(bufferSize, mappedWindowSize);
         LogDecoder decoder = new LogDecoder(LogEvent.UNKNOWN_EVENT, LogEvent.ENUM_END_EVENT);
         LogContext context = new LogContext();
         try {
             fetcher.open(current, binlogPosition);
+            prefetchNextFile(current);
             context.setLogPosition(new LogPosition(binlogfilename, binlogPosition));
+            boolean needRotate = true;// 新打开的文件先发一个rotate事件
+            boolean drained = false;// 下一个文件出现之后，是否已经读完当前文件的尾部
             while (running) {
                 boolean needContinue = true;
                 LogEvent event = null;
@@ -92,7 +100,8 @@ public class LocalBinLogConnection implements ErosaConnection {
                      */
 
                     do {
-                        if (event == null) {
+                        if (needRotate) {
+                            needRotate = false;
                             event = new RotateLogEvent(context.getLogPosition().getFileName(), context.getLogPosition()
                                 .getPosition());
                         } else {
@@ -107,11 +116,17 @@ public class LocalBinLogConnection implements ErosaConnection {
                 }
 
                 if (needContinue) {// 读取下一个
-                    fetcher.close(); // 关闭上一个文件
-
                     File nextFile;
                     if (needWait) {
-                        nextFile = binlogs.waitForNextFile(current);
+                        // 跟随当前文件的增长，没有下一个文件时继续读取当前文件新写入的内容
+                        nextFile = binlogs.waitForNextFile(current, tailWaitMillis, TimeUnit.MILLISECONDS);
+                        if (nextFile == null) {
+                            continue;
+                        } else if (!drained) {
+                            // 下一个文件出现后再读一次当前文件，避免遗漏等待期间写入的rotate之前的内容
+                            drained = true;
+                            continue;
+                        }
                     } else {
                         nextFile = binlogs.getNextFile(current);
                     }
@@ -120,9 +135,13 @@ public class LocalBinLogConnection implements ErosaConnection {
                         break;
                     }
 
+                    fetcher.close(); // 关闭上一个文件
                     current = nextFile;
 
                     fetcher.open(current);
+                    prefetchNextFile(current);
+                    needRotate = true;
+                    drained = false;
                     context.setLogPosition(new LogPosition(nextFile.getName()));
                 } else {
                     break;// 跳出
@@ -145,7 +164,7 @@ public class LocalBinLogConnection implements ErosaConnection {
         String binlogFilename = null;
         long binlogFileOffset = 0;
 
-        FileLogFetcher fetcher = new FileLogFetcher(bufferSize);
+        FileLogFetcher fetcher = new FileLogFetcher(bufferSize, mappedWindowSize);
         LogDecoder decoder = new LogDecoder();
         decoder.handle(LogEvent.FORMAT_DESCRIPTION_EVENT);
         decoder.handle(LogEvent.QUERY_EVENT);
@@ -211,10 +230,28 @@ public class LocalBinLogConnection implements ErosaConnection {
         dump(binlogFilename, binlogFileOffset, func);
     }
 
+    /**
+     * mmap读取时预读下一个文件的头部，回放历史文件时切换文件不用等待磁盘
+     */
+    private void prefetchNextFile(File current) {
+        if (mappedWindowSize > 0) {
+            binlogs.prefetchNextFile(current, mappedWindowSize);
+        }
+    }
+
+    /**
+     * 当前目录下按顺序排列的binlog文件
+     */
+    public List<File> currentBinlogs() {
+        return binlogs.currentBinlogs();
+    }
+
     public ErosaConnection fork() {
         LocalBinLogConnection connection = new LocalBinLogConnection();
 
         connection.setBufferSize(this.bufferSize);
+        connection.setMappedWindowSize(this.mappedWindowSize);
+        connection.setTailWaitMillis(this.tailWaitMillis);
         connection.setDirectory(this.directory);
         connection.setNeedWait(this.needWait);
         return connection;
@@ -244,4 +281,20 @@ public class LocalBinLogConnection implements ErosaConnection {
         this.bufferSize = bufferSize;
     }
 
+    public int getMappedWindowSize() {
+        return mappedWindowSize;
+    }
+
+    public void setMappedWindowSize(int mappedWindowSize) {
+        this.mappedWindowSize = mappedWindowSize;
+    }
+
+    public long getTailWaitMillis() {
+        return tailWaitMillis;
+    }
+
+    public void setTailWaitMillis(long tailWaitMillis) {
+        this.tailWaitMillis = tailWaitMillis;
+    }
+
 }
@@ -1,18 +1,28 @@
 package com.alibaba.otter.canal.parse.inbound.mysql;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
 
 import com.alibaba.otter.canal.parse.CanalEventParser;
 import com.alibaba.otter.canal.parse.exception.CanalParseException;
+import com.alibaba.otter.canal.parse.inbound.BinlogParser;
 import com.alibaba.otter.canal.parse.inbound.ErosaConnection;
+import com.alibaba.otter.canal.parse.inbound.SinkFunction;
 import com.alibaba.otter.canal.parse.inbound.mysql.dbsync.LogEventConvert;
 import com.alibaba.otter.canal.parse.inbound.mysql.dbsync.TableMetaCache;
+import com.alibaba.otter.canal.parse.inbound.mysql.local.ParallelBinLogFileDumper;
+import com.alibaba.otter.canal.parse.inbound.mysql.local.ParallelBinLogFileDumper.BinlogParserFactory;
 import com.alibaba.otter.canal.parse.index.CanalLogPositionManager;
 import com.alibaba.otter.canal.parse.support.AuthenticationInfo;
+import com.alibaba.otter.canal.protocol.CanalEntry;
 import com.alibaba.otter.canal.protocol.position.EntryPosition;
 import com.alibaba.otter.canal.protocol.position.LogPosition;
+import com.taobao.tddl.dbsync.binlog.LogEvent;
 
 /**
  * 基于本地binlog文件的复制
@@ -28,9 +38,13 @@ public class LocalBinlogEventParser extends AbstractMysqlEventParser implements
     private MysqlConnection    metaConnection;        // 查询meta信息的链接
     private TableMetaCache     tableMetaCache;        // 对应meta
 
-    private String             directory;
-    private boolean            needWait   = false;
-    private int                bufferSize = 16 * 1024;
+    private String                            directory;
+    private boolean                           needWait         = false;
+    private int                               bufferSize       = 16 * 1024;
+    private int                               mappedWindowSize = 0;
+    // 历史binlog文件按文件并行解析，线程数和缓冲大小使用parallelThreadSize/parallelBufferSize
+    private boolean                           parallelBackfill = false;
+    private volatile ParallelBinLogFileDumper backfillDumper;
 
     public LocalBinlogEventParser(){
         // this.runningInfo = new AuthenticationInfo();
@@ -50,12 +64,16 @@ public class LocalBinlogEventParser extends AbstractMysqlEventParser implements
             throw new CanalParseException(e);
         }
 
-        tableMetaCache = new TableMetaCache(metaConnection);
+        tableMetaCache = buildTableMetaCache(metaConnection);
         ((LogEventConvert) binlogParser).setTableMetaCache(tableMetaCache);
     }
 
     @Override
     protected void afterDump(ErosaConnection connection) {
+        if (tableMetaCache != null) {
+            tableMetaCache.close();
+        }
+
         if (metaConnection != null) {
             try {
                 metaConnection.disconnect();
@@ -66,6 +84,100 @@ public class LocalBinlogEventParser extends AbstractMysqlEventParser implements
         }
     }
 
+    /**
+     * 开启parallelBackfill时，除了最新的一个文件(可能还在写入)，其余的文件并行解析，按文件顺序输出
+     */
+    @Override
+    protected EntryPosition backfill(ErosaConnection connection, EntryPosition startPosition,
+                                     SinkFunction<CanalEntry.Entry> entrySink) throws IOException {
+        if (!parallelBackfill) {
+            return startPosition;
+        }
+
+        List<File> files = ((LocalBinLogConnection) connection).currentBinlogs();
+        int start = -1;
+        for (int i = 0; i < files.size(); i++) {
+            if (files.get(i).getName().equals(startPosition.getJournalName())) {
+                start = i;
+                break;
+            }
+        }
+
+        if (start < 0 || start >= files.size() - 1) {
+            return startPosition;
+        }
+
+        List<File> backfillFiles = files.subList(start, files.size() - 1);
+        logger.info("parallel backfill {} binlog files from {}", backfillFiles.size(), startPosition);
+        // 每个回放线程使用独立的meta链接和table meta cache，避免多线程共享同一个链接；
+        // cache从串行解析已经加载的结果拷贝，不再各自preload和开启异步刷新
+        final Map<BinlogParser<LogEvent>, MysqlConnection> connections = new HashMap<BinlogParser<LogEvent>, MysqlConnection>();
+        final Map<BinlogParser<LogEvent>, TableMetaCache> tableMetaCaches = new HashMap<BinlogParser<LogEvent>, TableMetaCache>();
+        backfillDumper = new ParallelBinLogFileDumper(parallelThreadSize,
+            parallelBufferSize,
+            bufferSize,
+            new BinlogParserFactory() {
+
+                public BinlogParser<LogEvent> create() {
+                    MysqlConnection connection = buildMysqlConnection();
+                    try {
+                        connection.connect();
+                    } catch (IOException e) {
+                        throw new CanalParseException(e);
+                    }
+
+                    LogEventConvert convert = (LogEventConvert) buildParser();
+                    TableMetaCache tableMetaCache = buildBackfillTableMetaCache(connection);
+                    convert.setTableMetaCache(tableMetaCache);
+                    convert.start();
+                    connections.put(convert, connection);
+                    tableMetaCaches.put(convert, tableMetaCache);
+                    return convert;
+                }
+
+                public void destroy(BinlogParser<LogEvent> parser) {
+                    parser.stop();
+                    TableMetaCache tableMetaCache = tableMetaCaches.remove(parser);
+                    if (tableMetaCache != null) {
+                        tableMetaCache.close();
+                    }
+                    MysqlConnection connection = connections.remove(parser);
+                    if (connection != null) {
+                        try {
+                            connection.disconnect();
+                        } catch (IOException e) {
+                            logger.warn("disconnect backfill meta connection failed", e);
+                        }
+                    }
+                }
+            },
+            destination);
+        backfillDumper.setMappedWindowSize(mappedWindowSize);
+        try {
+            if (!running || !backfillDumper.dump(backfillFiles, startPosition.getPosition(), entrySink)) {
+                return null;
+            }
+        } finally {
+            backfillDumper = null;
+        }
+
+        return new EntryPosition(files.get(files.size() - 1).getName(), BINLOG_START_OFFEST);
+    }
+
+    /**
+     * 回放线程使用的table meta，和串行解析共享同一份history，同一批文件的解析结果不受并行开关影响
+     */
+    private TableMetaCache buildBackfillTableMetaCache(MysqlConnection connection) {
+        TableMetaCache backfillTableMetaCache = new TableMetaCache(connection);
+        if (tableMetaCache != null) {
+            backfillTableMetaCache.copyFrom(tableMetaCache);
+        }
+        if (tableMetaHistory != null && tableMetaHistory.isStart()) {
+            backfillTableMetaCache.setHistory(tableMetaHistory);
+        }
+        return backfillTableMetaCache;
+    }
+
     public void start() throws CanalParseException {
         if (runningInfo == null) { // 第一次链接主库
             runningInfo = masterInfo;
@@ -76,6 +188,11 @@ public class LocalBinlogEventParser extends AbstractMysqlEventParser implements
 
     @Override
     public void stop() {
+        ParallelBinLogFileDumper dumper = backfillDumper;
+        if (dumper != null) {
+            dumper.stop();
+        }
+
         if (metaConnection != null) {
             try {
                 metaConnection.disconnect();
@@ -86,6 +203,7 @@ public class LocalBinlogEventParser extends AbstractMysqlEventParser implements
         }
 
         if (tableMetaCache != null) {
+            tableMetaCache.close();
             tableMetaCache.clearTableMeta();
         }
 
@@ -96,6 +214,7 @@ public class LocalBinlogEventParser extends AbstractMysqlEventParser implements
         LocalBinLogConnection connection = new LocalBinLogConnection();
 
         connection.setBufferSize(this.bufferSize);
+        connection.setMappedWindowSize(this.mappedWindowSize);
         connection.setDirectory(this.directory);
         connection.setNeedWait(this.needWait);
 
@@ -177,4 +296,12 @@ public class LocalBinlogEventParser extends AbstractMysqlEventParser implements
     public void setNeedWait(boolean needWait) {
         this.needWait = needWait;
     }
+
+    public void setMappedWindowSize(int mappedWindowSize) {
+        this.mappedWindowSize = mappedWindowSize;
+    }
+
+    public void setParallelBackfill(boolean parallelBackfill) {
+        this.parallelBackfill = parallelBackfill;
+    }
 }
@@ -1,6 +1,8 @@
 package com.alibaba.otter.canal.parse.inbound.mysql;
 
+import java.io.File;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.SocketTimeoutException;
 import java.util.HashMap;
 import java.util.List;
@@ -27,6 +29,7 @@ import com.alibaba.otter.canal.parse.inbound.mysql.MysqlConnection.BinlogFormat;
 import com.alibaba.otter.canal.parse.inbound.mysql.MysqlConnection.BinlogImage;
 import com.alibaba.otter.canal.parse.inbound.mysql.dbsync.LogEventConvert;
 import com.alibaba.otter.canal.parse.inbound.mysql.dbsync.TableMetaCache;
+import com.alibaba.otter.canal.parse.inbound.mysql.dbsync.TableMetaHistory;
 import com.alibaba.otter.canal.parse.support.AuthenticationInfo;
 import com.alibaba.otter.canal.protocol.CanalEntry;
 import com.alibaba.otter.canal.protocol.position.EntryPosition;
@@ -71,6 +74,10 @@ public class MysqlEventParser extends AbstractMysqlEventParser implements CanalE
     private int                dumpErrorCount                    = 0;        // binlogDump失败异常计数
     private int                dumpErrorCountThreshold           = 2;        // binlogDump失败异常计数阀值
 
+    // 按时间戳查找位点的索引，每个数据库地址一个目录
+    private String             timestampIndexDir;                            // 索引目录，为空时不开启
+    private Map<String, BinlogTimestampIndex> timestampIndexes;
+
     protected ErosaConnection buildErosaConnection() {
         return buildMysqlConnection(this.runningInfo);
     }
@@ -118,7 +125,7 @@ public class MysqlEventParser extends AbstractMysqlEventParser implements CanalE
                 }
             }
 
-            tableMetaCache = new TableMetaCache(metaConnection);
+            tableMetaCache = buildTableMetaCache(metaConnection);
             ((LogEventConvert) binlogParser).setTableMetaCache(tableMetaCache);
         }
     }
@@ -130,6 +137,10 @@ public class MysqlEventParser extends AbstractMysqlEventParser implements CanalE
             throw new CanalParseException("Unsupported connection type : " + connection.getClass().getSimpleName());
         }
 
+        if (tableMetaCache != null) {
+            tableMetaCache.close();
+        }
+
         if (metaConnection != null) {
             try {
                 metaConnection.disconnect();
@@ -159,10 +170,61 @@ public class MysqlEventParser extends AbstractMysqlEventParser implements CanalE
         }
 
         if (tableMetaCache != null) {
+            tableMetaCache.close();
             tableMetaCache.clearTableMeta();
         }
 
         super.stop();
+
+        synchronized (this) {
+            if (timestampIndexes != null) {
+                for (BinlogTimestampIndex timestampIndex : timestampIndexes.values()) {
+                    timestampIndex.stop();
+                }
+                timestampIndexes = null;
+            }
+        }
+    }
+
+    protected void afterTransactionFlush(LogPosition position) {
+        if (position.getIdentity() == null || position.getPostion().getTimestamp() == null) {
+            return;
+        }
+
+        BinlogTimestampIndex timestampIndex = getTimestampIndex(position.getIdentity().getSourceAddress());
+        if (timestampIndex != null) {
+            EntryPosition entryPosition = position.getPostion();
+            try {
+                timestampIndex.mark(entryPosition.getJournalName(),
+                    entryPosition.getPosition(),
+                    entryPosition.getTimestamp());
+            } catch (Throwable e) {
+                // 索引只用于加速查找，失败不影响数据同步
+                logger.warn("mark binlog timestamp index failed : " + entryPosition, e);
+            }
+        }
+    }
+
+    /**
+     * 获取数据库地址对应的时间戳索引，不同的库binlog文件不同，索引按照地址分目录保存
+     */
+    private synchronized BinlogTimestampIndex getTimestampIndex(InetSocketAddress address) {
+        if (StringUtils.isBlank(timestampIndexDir) || address == null || !isStart()) {
+            return null;
+        }
+
+        if (timestampIndexes == null) {
+            timestampIndexes = new HashMap<String, BinlogTimestampIndex>();
+        }
+
+        String key = address.toString().replaceAll("[^0-9a-zA-Z.\\-]", "_");
+        BinlogTimestampIndex timestampIndex = timestampIndexes.get(key);
+        if (timestampIndex == null) {
+            timestampIndex = new BinlogTimestampIndex(new File(timestampIndexDir, key));
+            timestampIndex.start();
+            timestampIndexes.put(key, timestampIndex);
+        }
+        return timestampIndex;
     }
 
     protected TimerTask buildHeartBeatTimeTask(ErosaConnection connection) {
@@ -564,6 +626,15 @@ public class MysqlEventParser extends AbstractMysqlEventParser implements CanalE
         String maxBinlogFileName = endPosition.getJournalName();
         String minBinlogFileName = startPosition.getJournalName();
         logger.info("show master status to set search end condition:{} ", endPosition);
+        EntryPosition indexPosition = findByTimestampIndex(mysqlConnection,
+            startTimestamp,
+            startPosition,
+            endPosition);
+        if (indexPosition != null) {
+            logger.info("found and return:{} in findByStartTimeStamp operation by timestamp index.", indexPosition);
+            return indexPosition;
+        }
+
         String startSearchBinlogFile = endPosition.getJournalName();
         boolean shouldBreak = false;
         while (running && !shouldBreak) {
@@ -618,6 +689,37 @@ public class MysqlEventParser extends AbstractMysqlEventParser implements CanalE
         return null;
     }
 
+    /**
+     * 根据时间戳索引直接定位到binlog文件和文件内的offset，再从该位置开始扫描，找不到时返回null由调用方逐个文件查找
+     */
+    private EntryPosition findByTimestampIndex(MysqlConnection mysqlConnection, Long startTimestamp,
+                                               EntryPosition startPosition, EntryPosition endPosition) {
+        BinlogTimestampIndex timestampIndex = getTimestampIndex(mysqlConnection.getConnector().getAddress());
+        if (timestampIndex == null) {
+            return null;
+        }
+
+        try {
+            timestampIndex.prune(startPosition.getJournalName());
+            EntryPosition checkpoint = timestampIndex.floor(startTimestamp);
+            if (checkpoint == null
+                || TableMetaHistory.compareJournalName(checkpoint.getJournalName(), endPosition.getJournalName()) > 0) {
+                return null;
+            }
+
+            logger.info("find start position from timestamp index checkpoint:{}", checkpoint);
+            // 索引可能已经过期(比如reset master)，扫描时会校验事务的时间戳，扫描失败时返回null
+            return findAsPerTimestampInSpecificLogFile(mysqlConnection,
+                startTimestamp,
+                endPosition,
+                checkpoint.getJournalName(),
+                checkpoint.getPosition());
+        } catch (Exception e) {
+            logger.warn("find start position by timestamp index failed, fallback to search binlog files one by one", e);
+            return null;
+        }
+    }
+
     /**
      * 查询当前db的serverId信息
      */
@@ -720,12 +822,31 @@ public class MysqlEventParser extends AbstractMysqlEventParser implements CanalE
                                                               final Long startTimestamp,
                                                               final EntryPosition endPosition,
                                                               final String searchBinlogFile) {
+        return findAsPerTimestampInSpecificLogFile(mysqlConnection,
+            startTimestamp,
+            endPosition,
+            searchBinlogFile,
+            BINLOG_START_OFFEST);
+    }
+
+    /**
+     * 从指定binlog的searchPosition开始查找，searchPosition不能落在事务中间
+     * 
+     * <pre>
+     * 可以是一个事务的边界，也可以是事务结束事件(xid/commit)自身的offset(时间戳索引中记录的位点)，从结束事件开始扫描只会多解析这一个事件
+     * </pre>
+     */
+    private EntryPosition findAsPerTimestampInSpecificLogFile(MysqlConnection mysqlConnection,
+                                                              final Long startTimestamp,
+                                                              final EntryPosition endPosition,
+                                                              final String searchBinlogFile,
+                                                              final Long searchPosition) {
 
         final LogPosition logPosition = new LogPosition();
         try {
             mysqlConnection.reconnect();
             // 开始遍历文件
-            mysqlConnection.seek(searchBinlogFile, 4L, new SinkFunction<LogEvent>() {
+            mysqlConnection.seek(searchBinlogFile, searchPosition, new SinkFunction<LogEvent>() {
 
                 private LogPosition lastPosition;
 
@@ -776,7 +897,7 @@ public class MysqlEventParser extends AbstractMysqlEventParser implements CanalE
 
                         lastPosition = buildLastPosition(entry);
                     } catch (Throwable e) {
-                        processSinkError(e, lastPosition, searchBinlogFile, 4L);
+                        processSinkError(e, lastPosition, searchBinlogFile, searchPosition);
                     }
 
                     return running;
@@ -895,4 +1016,8 @@ public class MysqlEventParser extends AbstractMysqlEventParser implements CanalE
         this.dumpErrorCountThreshold = dumpErrorCountThreshold;
     }
 
+    public void setTimestampIndexDir(String timestampIndexDir) {
+        this.timestampIndexDir = timestampIndexDir;
+    }
+
 }
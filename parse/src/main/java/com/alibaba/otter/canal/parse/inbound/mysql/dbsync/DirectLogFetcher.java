@@ -15,6 +15,13 @@ import com.taobao.tddl.dbsync.binlog.LogFetcher;
 /**
  * 基于socket的logEvent实现
  * 
+ * <pre>
+ * 采用预读的方式：每次从socket中尽可能多的读取数据到buffer中，后续的fetch优先从buffer中切分出完整的packet，
+ * 只有buffer中的数据不足一个packet时才会再次读取socket，避免每个packet的header/body各一次阻塞read
+ * 
+ * buffer布局： [已消费的数据 | packetStart ... readLimit 预读未消费的数据 | 空闲空间]
+ * </pre>
+ * 
  * @author jianghang 2013-1-14 下午07:39:30
  * @version 1.0.0
  */
@@ -38,6 +45,10 @@ public class DirectLogFetcher extends LogFetcher {
 
     private SocketChannel         channel;
 
+    // 预读buffer的下标，下一个packet的起始位置以及socket已读取数据的结束位置
+    private int                   packetStart       = 0;
+    private int                   readLimit         = 0;
+
     // private BufferedInputStream input;
 
     public DirectLogFetcher(){
@@ -54,6 +65,8 @@ public class DirectLogFetcher extends LogFetcher {
 
     public void start(SocketChannel channel) throws IOException {
         this.channel = channel;
+        this.packetStart = 0;
+        this.readLimit = 0;
         // 和mysql driver一样，提供buffer机制，提升读取binlog速度
         // this.input = new
         // BufferedInputStream(channel.socket().getInputStream(), 16384);
@@ -66,8 +79,17 @@ public class DirectLogFetcher extends LogFetcher {
      */
     public boolean fetch() throws IOException {
         try {
+            // 已经消费完了所有的预读数据，直接从头开始写，不需要拷贝
+            if (packetStart == readLimit) {
+                packetStart = 0;
+                readLimit = 0;
+            } else if (packetStart > buffer.length / 2) {
+                // 预读数据已经移动到buffer后半段，整理一下，保证后续有足够的空间预读
+                compact();
+            }
+
             // Fetching packet header from input.
-            if (!fetch0(0, NET_HEADER_SIZE)) {
+            if (!fetch0(NET_HEADER_SIZE)) {
                 logger.warn("Reached end of input stream while fetching header");
                 return false;
             }
@@ -75,7 +97,12 @@ public class DirectLogFetcher extends LogFetcher {
             // Fetching the first packet(may a multi-packet).
             int netlen = getUint24(PACKET_LEN_OFFSET);
             int netnum = getUint8(PACKET_SEQ_OFFSET);
-            if (!fetch0(NET_HEADER_SIZE, netlen)) {
+            if (packetStart > 0 && packetStart + NET_HEADER_SIZE + netlen > buffer.length) {
+                // 剩余空间放不下当前packet，先整理再考虑扩容
+                compact();
+            }
+
+            if (!fetch0(NET_HEADER_SIZE + netlen)) {
                 logger.warn("Reached end of input stream: packet #" + netnum + ", len = " + netlen);
                 return false;
             }
@@ -88,10 +115,10 @@ public class DirectLogFetcher extends LogFetcher {
                     // Indicates an error, for example trying to fetch from
                     // wrong
                     // binlog position.
-                    position = NET_HEADER_SIZE + 1;
+                    position = origin + NET_HEADER_SIZE + 1;
                     final int errno = getInt16();
                     String sqlstate = forward(1).getFixString(SQLSTATE_LENGTH);
-                    String errmsg = getFixString(limit - position);
+                    String errmsg = getFixString(limit - (position - origin));
                     throw new IOException("Received error packet:" + " errno = " + errno + ", sqlstate = " + sqlstate
                                           + " errmsg = " + errmsg);
                 } else if (mark == 254) {
@@ -108,24 +135,35 @@ public class DirectLogFetcher extends LogFetcher {
             }
 
             // The first packet is a multi-packet, concatenate the packets.
+            int packetLen = NET_HEADER_SIZE + netlen;
             while (netlen == MAX_PACKET_LENGTH) {
-                if (!fetch0(0, NET_HEADER_SIZE)) {
+                if (!fetch0(packetLen + NET_HEADER_SIZE)) {
                     logger.warn("Reached end of input stream while fetching header");
                     return false;
                 }
 
-                netlen = getUint24(PACKET_LEN_OFFSET);
-                netnum = getUint8(PACKET_SEQ_OFFSET);
-                if (!fetch0(limit, netlen)) {
+                netlen = getUint24(packetLen + PACKET_LEN_OFFSET);
+                netnum = getUint8(packetLen + PACKET_SEQ_OFFSET);
+                // 去掉后续packet的header，只需要移动header之后已经预读的数据，packet剩余部分直接读到对应位置
+                final int headerPos = packetStart + packetLen;
+                System.arraycopy(buffer,
+                    headerPos + NET_HEADER_SIZE,
+                    buffer,
+                    headerPos,
+                    readLimit - headerPos - NET_HEADER_SIZE);
+                readLimit -= NET_HEADER_SIZE;
+                if (!fetch0(packetLen + netlen)) {
                     logger.warn("Reached end of input stream: packet #" + netnum + ", len = " + netlen);
                     return false;
                 }
+                packetLen += netlen;
             }
 
             // Preparing buffer variables to decoding.
-            origin = NET_HEADER_SIZE + 1;
+            origin = packetStart + NET_HEADER_SIZE + 1;
             position = origin;
-            limit -= origin;
+            limit = packetLen - NET_HEADER_SIZE - 1;
+            packetStart += packetLen;
             return true;
         } catch (SocketTimeoutException e) {
             close(); /* Do cleanup */
@@ -146,28 +184,39 @@ public class DirectLogFetcher extends LogFetcher {
         }
     }
 
-    private final boolean fetch0(final int off, final int len) throws IOException {
-        ensureCapacity(off + len);
+    /**
+     * 保证当前packet起始位置之后至少有len个字节的数据，不足时从socket中尽可能多的预读
+     */
+    private final boolean fetch0(final int len) throws IOException {
+        final int end = packetStart + len;
+        ensureCapacity(end);
 
-        ByteBuffer buffer = ByteBuffer.wrap(this.buffer, off, len);
-        while (buffer.hasRemaining()) {
+        while (readLimit < end) {
+            ByteBuffer buffer = ByteBuffer.wrap(this.buffer, readLimit, this.buffer.length - readLimit);
             int readNum = channel.read(buffer);
             if (readNum == -1) {
                 throw new IOException("Unexpected End Stream");
             }
+            readLimit += readNum;
         }
 
-        // for (int count, n = 0; n < len; n += count) {
-        // if (0 > (count = input.read(buffer, off + n, len - n))) {
-        // // Reached end of input stream
-        // return false;
-        // }
-        // }
-
-        if (limit < off + len) limit = off + len;
+        // 切换到当前packet的视图，方便读取header
+        origin = packetStart;
+        position = packetStart;
+        limit = len;
         return true;
     }
 
+    /**
+     * 将未消费的预读数据移动到buffer头部
+     */
+    private final void compact() {
+        final int remaining = readLimit - packetStart;
+        System.arraycopy(buffer, packetStart, buffer, 0, remaining);
+        packetStart = 0;
+        readLimit = remaining;
+    }
+
     /**
      * {@inheritDoc}
      * 
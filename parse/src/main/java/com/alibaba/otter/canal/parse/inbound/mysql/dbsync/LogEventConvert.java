@@ -1,13 +1,14 @@
 package com.alibaba.otter.canal.parse.inbound.mysql.dbsync;
 
-import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
-import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.nio.charset.Charset;
 import java.sql.Types;
 import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.exception.ExceptionUtils;
@@ -18,10 +19,11 @@ import com.alibaba.otter.canal.common.AbstractCanalLifeCycle;
 import com.alibaba.otter.canal.filter.aviater.AviaterRegexFilter;
 import com.alibaba.otter.canal.parse.exception.CanalParseException;
 import com.alibaba.otter.canal.parse.exception.TableIdNotFoundException;
-import com.alibaba.otter.canal.parse.inbound.BinlogParser;
+import com.alibaba.otter.canal.parse.inbound.MultiStageBinlogParser;
 import com.alibaba.otter.canal.parse.inbound.TableMeta;
 import com.alibaba.otter.canal.parse.inbound.TableMeta.FieldMeta;
 import com.alibaba.otter.canal.parse.inbound.mysql.dbsync.SimpleDdlParser.DdlResult;
+import com.alibaba.otter.canal.parse.inbound.mysql.dbsync.TableColumnPlan.ColumnPlan;
 import com.alibaba.otter.canal.protocol.CanalEntry.Column;
 import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
 import com.alibaba.otter.canal.protocol.CanalEntry.EntryType;
@@ -33,6 +35,7 @@ import com.alibaba.otter.canal.protocol.CanalEntry.RowData;
 import com.alibaba.otter.canal.protocol.CanalEntry.TransactionBegin;
 import com.alibaba.otter.canal.protocol.CanalEntry.TransactionEnd;
 import com.alibaba.otter.canal.protocol.CanalEntry.Type;
+import com.alibaba.otter.canal.protocol.position.EntryPosition;
 import com.google.protobuf.ByteString;
 import com.taobao.tddl.dbsync.binlog.LogEvent;
 import com.taobao.tddl.dbsync.binlog.event.DeleteRowsLogEvent;
@@ -59,7 +62,7 @@ import com.taobao.tddl.dbsync.binlog.event.mariadb.AnnotateRowsEvent;
  * @author jianghang 2013-1-17 下午02:41:14
  * @version 1.0.0
  */
-public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogParser<LogEvent> {
+public class LogEventConvert extends AbstractCanalLifeCycle implements MultiStageBinlogParser<LogEvent> {
 
     public static final String          ISO_8859_1          = "ISO-8859-1";
     public static final String          UTF_8               = "UTF-8";
@@ -86,6 +89,8 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
     private boolean                     filterTableError    = false;
     // 新增rows过滤，用于仅订阅除rows以外的数据
     private boolean                     filterRows          = false;
+    // 按照tableId缓存列解析计划，只在有序阶段访问
+    private Map<Long, TableColumnPlan>  columnPlans         = new HashMap<Long, TableColumnPlan>();
 
     public Entry parse(LogEvent logEvent) throws CanalParseException {
         if (logEvent == null || logEvent instanceof UnknownLogEvent) {
@@ -96,6 +101,8 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
         switch (eventType) {
             case LogEvent.ROTATE_EVENT:
                 binlogFileName = ((RotateLogEvent) logEvent).getFilename();
+                // 切换文件之后tableId可能重新分配，顺便控制缓存大小
+                columnPlans.clear();
                 break;
             case LogEvent.QUERY_EVENT:
                 return parseQueryEvent((QueryLogEvent) logEvent);
@@ -129,9 +136,51 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
         return null;
     }
 
+    public Callable<Entry> prepare(LogEvent logEvent) throws CanalParseException {
+        if (logEvent == null || logEvent instanceof UnknownLogEvent) {
+            return null;
+        }
+
+        int eventType = logEvent.getHeader().getType();
+        switch (eventType) {
+            case LogEvent.WRITE_ROWS_EVENT_V1:
+            case LogEvent.WRITE_ROWS_EVENT:
+            case LogEvent.UPDATE_ROWS_EVENT_V1:
+            case LogEvent.UPDATE_ROWS_EVENT:
+            case LogEvent.DELETE_ROWS_EVENT_V1:
+            case LogEvent.DELETE_ROWS_EVENT:
+                // rows事件只做有序部分的处理，行数据的解析交给并行线程
+                final RowsEventContext context = prepareRowsEvent((RowsLogEvent) logEvent);
+                if (context == null) {
+                    return null;
+                }
+
+                return new Callable<Entry>() {
+
+                    public Entry call() throws Exception {
+                        return buildRowsEntry(context);
+                    }
+                };
+            default:
+                // 其余事件(rotate/query/xid等)会修改解析上下文，直接在有序阶段完成解析
+                final Entry entry = parse(logEvent);
+                if (entry == null) {
+                    return null;
+                }
+
+                return new Callable<Entry>() {
+
+                    public Entry call() throws Exception {
+                        return entry;
+                    }
+                };
+        }
+    }
+
     public void reset() {
         // do nothing
         binlogFileName = "mysql-bin.000001";
+        columnPlans.clear();
         if (tableMetaCache != null) {
             tableMetaCache.clearTableMeta();
         }
@@ -217,6 +266,7 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
             // 更新下table meta cache
             if (tableMetaCache != null
                 && (result.getType() == EventType.ALTER || result.getType() == EventType.ERASE || result.getType() == EventType.RENAME)) {
+                EntryPosition position = createPosition(event.getHeader());
                 for (DdlResult renameResult = result; renameResult != null; renameResult = renameResult.getRenameTableResult()) {
                     String schemaName0 = event.getDbName(); // 防止rename语句后产生schema变更带来影响
                     if (StringUtils.isNotEmpty(renameResult.getSchemaName())) {
@@ -224,12 +274,23 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
                     }
 
                     tableName = renameResult.getTableName();
-                    if (StringUtils.isNotEmpty(tableName)) {
-                        // 如果解析到了正确的表信息，则根据全名进行清除
-                        tableMetaCache.clearTableMeta(schemaName0, tableName);
-                    } else {
+                    if (StringUtils.isEmpty(tableName)) {
                         // 如果无法解析正确的表信息，则根据schema进行清除
                         tableMetaCache.clearTableMetaWithSchemaName(schemaName0);
+                    } else if (result.getType() == EventType.ERASE) {
+                        // 如果解析到了正确的表信息，则根据全名进行清除
+                        tableMetaCache.dropTableMeta(schemaName0, tableName, position);
+                    } else {
+                        // alter/rename之后表依然存在，直接刷新，开启异步刷新时后台提前desc
+                        tableMetaCache.refreshTableMeta(schemaName0, tableName, position);
+                        if (StringUtils.isNotEmpty(renameResult.getOriTableName())) {
+                            // rename的源表已经不存在
+                            String oriSchemaName = event.getDbName();
+                            if (StringUtils.isNotEmpty(renameResult.getOriSchemaName())) {
+                                oriSchemaName = renameResult.getOriSchemaName();
+                            }
+                            tableMetaCache.dropTableMeta(oriSchemaName, renameResult.getOriTableName(), position);
+                        }
                     }
                 }
             }
@@ -307,6 +368,18 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
     }
 
     private Entry parseRowsEvent(RowsLogEvent event) {
+        RowsEventContext context = prepareRowsEvent(event);
+        if (context == null) {
+            return null;
+        }
+
+        return buildRowsEntry(context);
+    }
+
+    /**
+     * 有序阶段：完成rows事件的过滤、header构造、table meta的查找及校验，依赖binlogFileName/tableMetaCache等上下文，必须按binlog顺序执行
+     */
+    private RowsEventContext prepareRowsEvent(RowsLogEvent event) {
         if (filterRows) {
             return null;
         }
@@ -343,76 +416,39 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
                 throw new CanalParseException("unsupport event type :" + event.getHeader().getType());
             }
 
-            Header header = createHeader(binlogFileName,
+            RowsEventContext context = new RowsEventContext();
+            context.event = event;
+            context.eventType = eventType;
+            context.header = createHeader(binlogFileName,
                 event.getHeader(),
                 table.getDbName(),
                 table.getTableName(),
                 eventType);
-            RowChange.Builder rowChangeBuider = RowChange.newBuilder();
-            rowChangeBuider.setTableId(event.getTableId());
-            rowChangeBuider.setIsDdl(false);
-
-            rowChangeBuider.setEventType(eventType);
-            RowsLogBuffer buffer = event.getRowsBuf(charset.name());
-            BitSet columns = event.getColumns();
-            BitSet changeColumns = event.getChangeColumns();
-            boolean tableError = false;
-            TableMeta tableMeta = null;
             if (tableMetaCache != null) {// 入错存在table meta cache
-                tableMeta = getTableMeta(table.getDbName(), table.getTableName(), true);
-                if (tableMeta == null) {
-                    tableError = true;
+                context.tableMeta = getTableMeta(table.getDbName(), table.getTableName(), true, event.getHeader());
+                if (context.tableMeta == null) {
+                    context.tableError = true;
                     if (!filterTableError) {
                         throw new CanalParseException("not found [" + fullname + "] in db , pls check!");
                     }
                 }
             }
 
-            while (buffer.nextOneRow(columns)) {
-                // 处理row记录
-                RowData.Builder rowDataBuilder = RowData.newBuilder();
-                if (EventType.INSERT == eventType) {
-                    // insert的记录放在before字段中
-                    tableError |= parseOneRow(rowDataBuilder, event, buffer, columns, true, tableMeta);
-                } else if (EventType.DELETE == eventType) {
-                    // delete的记录放在before字段中
-                    tableError |= parseOneRow(rowDataBuilder, event, buffer, columns, false, tableMeta);
-                } else {
-                    // update需要处理before/after
-                    tableError |= parseOneRow(rowDataBuilder, event, buffer, columns, false, tableMeta);
-                    if (!buffer.nextOneRow(changeColumns)) {
-                        rowChangeBuider.addRowDatas(rowDataBuilder.build());
-                        break;
-                    }
-
-                    tableError |= parseOneRow(rowDataBuilder, event, buffer, changeColumns, true, tableMeta);
-                }
-
-                rowChangeBuider.addRowDatas(rowDataBuilder.build());
-            }
-
-            RowChange rowChange = rowChangeBuider.build();
-            if (tableError) {
-                Entry entry = createEntry(header, EntryType.ROWDATA, ByteString.EMPTY);
-                logger.warn("table parser error : {}storeValue: {}", entry.toString(), rowChange.toString());
-                return null;
-            } else {
-                Entry entry = createEntry(header, EntryType.ROWDATA, rowChangeBuider.build().toByteString());
-                return entry;
-            }
+            checkTableMeta(context);
+            context.plan = getColumnPlan(event.getTableId(), context);
+            return context;
         } catch (Exception e) {
             throw new CanalParseException("parse row data failed.", e);
         }
     }
 
-    private boolean parseOneRow(RowData.Builder rowDataBuilder, RowsLogEvent event, RowsLogBuffer buffer, BitSet cols,
-                                boolean isAfter, TableMeta tableMeta) throws UnsupportedEncodingException {
-        int columnCnt = event.getTable().getColumnCnt();
-        ColumnInfo[] columnInfo = event.getTable().getColumnInfo();
-
-        boolean tableError = false;
-        // check table fileds count，只能处理加字段
-        boolean existRDSNoPrimaryKey = false;
+    /**
+     * check table fileds count，只能处理加字段
+     */
+    private void checkTableMeta(RowsEventContext context) {
+        TableMeta tableMeta = context.tableMeta;
+        TableMapLogEvent table = context.event.getTable();
+        ColumnInfo[] columnInfo = table.getColumnInfo();
         if (tableMeta != null && columnInfo.length > tableMeta.getFileds().size()) {
             if (tableMetaCache.isOnRDS()) {
                 // 特殊处理下RDS的场景
@@ -420,145 +456,177 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
                 if (primaryKeys == null || primaryKeys.isEmpty()) {
                     if (columnInfo.length == tableMeta.getFileds().size() + 1
                         && columnInfo[columnInfo.length - 1].type == LogEvent.MYSQL_TYPE_LONGLONG) {
-                        existRDSNoPrimaryKey = true;
+                        context.existRDSNoPrimaryKey = true;
                     }
                 }
             }
 
-            if (!existRDSNoPrimaryKey) {
+            if (!context.existRDSNoPrimaryKey) {
                 // online ddl增加字段操作步骤：
                 // 1. 新增一张临时表，将需要做ddl表的数据全量导入
                 // 2. 在老表上建立I/U/D的trigger，增量的将数据插入到临时表
                 // 3. 锁住应用请求，将临时表rename为老表的名字，完成增加字段的操作
                 // 尝试做一次reload，可能因为ddl没有正确解析，或者使用了类似online ddl的操作
                 // 因为online ddl没有对应表名的alter语法，所以不会有clear cache的操作
-                tableMeta = getTableMeta(event.getTable().getDbName(), event.getTable().getTableName(), false);// 强制重新获取一次
+                tableMeta = getTableMeta(table.getDbName(), table.getTableName(), false, context.event.getHeader());// 强制重新获取一次
+                context.tableMeta = tableMeta;
                 if (tableMeta == null) {
-                    tableError = true;
+                    context.tableError = true;
                     if (!filterTableError) {
-                        throw new CanalParseException("not found [" + event.getTable().getDbName() + "."
-                                                      + event.getTable().getTableName() + "] in db , pls check!");
+                        throw new CanalParseException("not found [" + table.getDbName() + "." + table.getTableName()
+                                                      + "] in db , pls check!");
                     }
                 }
 
                 // 在做一次判断
                 if (tableMeta != null && columnInfo.length > tableMeta.getFileds().size()) {
-                    tableError = true;
+                    context.tableError = true;
                     if (!filterTableError) {
                         throw new CanalParseException("column size is not match for table:" + tableMeta.getFullName()
                                                       + "," + columnInfo.length + " vs " + tableMeta.getFileds().size());
                     }
                 }
             } else {
-                logger.warn("[" + event.getTable().getDbName() + "." + event.getTable().getTableName()
+                logger.warn("[" + table.getDbName() + "." + table.getTableName()
                             + "] is no primary key , skip alibaba_rds_row_id column");
             }
         }
+    }
+
+    /**
+     * 获取tableId对应的列解析计划，table map或者table meta发生变化时重新构建
+     */
+    private TableColumnPlan getColumnPlan(long tableId, RowsEventContext context) {
+        TableMapLogEvent table = context.event.getTable();
+        Long key = Long.valueOf(tableId);
+        TableColumnPlan plan = columnPlans.get(key);
+        if (plan == null || !plan.matches(table, context.tableMeta, context.tableError, context.existRDSNoPrimaryKey)) {
+            plan = new TableColumnPlan(table, context.tableMeta, context.tableError, context.existRDSNoPrimaryKey);
+            columnPlans.put(key, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * 解析阶段：只依赖{@linkplain RowsEventContext}中的数据，可以在多线程中并行执行
+     */
+    private Entry buildRowsEntry(RowsEventContext context) {
+        try {
+            RowsLogEvent event = context.event;
+            EventType eventType = context.eventType;
+            RowChange.Builder rowChangeBuider = RowChange.newBuilder();
+            rowChangeBuider.setTableId(event.getTableId());
+            rowChangeBuider.setIsDdl(false);
+
+            rowChangeBuider.setEventType(eventType);
+            RowsLogBuffer buffer = event.getRowsBuf(charset.name());
+            BitSet columns = event.getColumns();
+            BitSet changeColumns = event.getChangeColumns();
+            while (buffer.nextOneRow(columns)) {
+                // 处理row记录
+                RowData.Builder rowDataBuilder = RowData.newBuilder();
+                if (EventType.INSERT == eventType) {
+                    // insert的记录放在before字段中
+                    parseOneRow(rowDataBuilder, context, buffer, columns, true);
+                } else if (EventType.DELETE == eventType) {
+                    // delete的记录放在before字段中
+                    parseOneRow(rowDataBuilder, context, buffer, columns, false);
+                } else {
+                    // update需要处理before/after
+                    parseOneRow(rowDataBuilder, context, buffer, columns, false);
+                    if (!buffer.nextOneRow(changeColumns)) {
+                        rowChangeBuider.addRowDatas(rowDataBuilder.build());
+                        break;
+                    }
+
+                    parseOneRow(rowDataBuilder, context, buffer, changeColumns, true);
+                }
+
+                rowChangeBuider.addRowDatas(rowDataBuilder.build());
+            }
+
+            RowChange rowChange = rowChangeBuider.build();
+            if (context.tableError) {
+                Entry entry = createEntry(context.header, EntryType.ROWDATA, ByteString.EMPTY);
+                logger.warn("table parser error : {}storeValue: {}", entry.toString(), rowChange.toString());
+                return null;
+            } else {
+                Entry entry = createEntry(context.header, EntryType.ROWDATA, rowChangeBuider.build().toByteString());
+                return entry;
+            }
+        } catch (Exception e) {
+            throw new CanalParseException("parse row data failed.", e);
+        }
+    }
+
+    private void parseOneRow(RowData.Builder rowDataBuilder, RowsEventContext context, RowsLogBuffer buffer,
+                             BitSet cols, boolean isAfter) throws UnsupportedEncodingException {
+        ColumnPlan[] columns = context.plan.columns;
+        StringBuilder text = new StringBuilder(32); // 数值类型直接输出文本，避免装箱
 
-        for (int i = 0; i < columnCnt; i++) {
-            ColumnInfo info = columnInfo[i];
+        for (int i = 0; i < columns.length; i++) {
+            ColumnPlan column = columns[i];
             // mysql 5.6开始支持nolob/mininal类型,并不一定记录所有的列,需要进行判断
             if (!cols.get(i)) {
                 continue;
             }
 
-            if (existRDSNoPrimaryKey && i == columnCnt - 1 && info.type == LogEvent.MYSQL_TYPE_LONGLONG) {
+            if (column.skip) {
                 // 不解析最后一列
-                buffer.nextValue(info.type, info.meta, false);
+                buffer.readValue(column.type, column.meta, false);
                 continue;
             }
 
             Column.Builder columnBuilder = Column.newBuilder();
-
-            FieldMeta fieldMeta = null;
-            if (tableMeta != null && !tableError) {
+            if (column.name != null) {
                 // 处理file meta
-                fieldMeta = tableMeta.getFileds().get(i);
-                columnBuilder.setName(fieldMeta.getColumnName());
-                columnBuilder.setIsKey(fieldMeta.isKey());
+                columnBuilder.setName(column.name);
+                columnBuilder.setIsKey(column.isKey);
                 // 增加mysql type类型,issue 73
-                columnBuilder.setMysqlType(fieldMeta.getColumnType());
+                columnBuilder.setMysqlType(column.mysqlType);
             }
             columnBuilder.setIndex(i);
             columnBuilder.setIsNull(false);
 
-            // fixed issue
-            // https://github.com/alibaba/canal/issues/66，特殊处理binary/varbinary，不能做编码处理
-            boolean isBinary = false;
-            if (fieldMeta != null) {
-                if (StringUtils.containsIgnoreCase(fieldMeta.getColumnType(), "VARBINARY")) {
-                    isBinary = true;
-                } else if (StringUtils.containsIgnoreCase(fieldMeta.getColumnType(), "BINARY")) {
-                    isBinary = true;
-                }
-            }
-            buffer.nextValue(info.type, info.meta, isBinary);
-            if (existRDSNoPrimaryKey && i == columnCnt - 1 && info.type == LogEvent.MYSQL_TYPE_LONGLONG) {
-                // 不解析最后一列
-                continue;
-            }
-
+            buffer.readValue(column.type, column.meta, column.binary);
             int javaType = buffer.getJavaType();
             if (buffer.isNull()) {
                 columnBuilder.setIsNull(true);
             } else {
-                final Serializable value = buffer.getValue();
                 // 处理各种类型
                 switch (javaType) {
                     case Types.INTEGER:
                     case Types.TINYINT:
                     case Types.SMALLINT:
                     case Types.BIGINT:
-                        // 处理unsigned类型
-                        Number number = (Number) value;
-                        if (fieldMeta != null && fieldMeta.isUnsigned() && number.longValue() < 0) {
+                        // 处理unsigned类型，直接基于long值输出文本，不经过装箱以及BigInteger
+                        boolean unsigned = column.unsigned && buffer.getLong() < 0;
+                        if (unsigned) {
                             switch (buffer.getLength()) {
                                 case 1: /* MYSQL_TYPE_TINY */
-                                    columnBuilder.setValue(String.valueOf(Integer.valueOf(TINYINT_MAX_VALUE
-                                                                                          + number.intValue())));
                                     javaType = Types.SMALLINT; // 往上加一个量级
                                     break;
-
                                 case 2: /* MYSQL_TYPE_SHORT */
-                                    columnBuilder.setValue(String.valueOf(Integer.valueOf(SMALLINT_MAX_VALUE
-                                                                                          + number.intValue())));
-                                    javaType = Types.INTEGER; // 往上加一个量级
-                                    break;
-
                                 case 3: /* MYSQL_TYPE_INT24 */
-                                    columnBuilder.setValue(String.valueOf(Integer.valueOf(MEDIUMINT_MAX_VALUE
-                                                                                          + number.intValue())));
                                     javaType = Types.INTEGER; // 往上加一个量级
                                     break;
-
                                 case 4: /* MYSQL_TYPE_LONG */
-                                    columnBuilder.setValue(String.valueOf(Long.valueOf(INTEGER_MAX_VALUE
-                                                                                       + number.longValue())));
                                     javaType = Types.BIGINT; // 往上加一个量级
                                     break;
-
                                 case 8: /* MYSQL_TYPE_LONGLONG */
-                                    columnBuilder.setValue(BIGINT_MAX_VALUE.add(BigInteger.valueOf(number.longValue()))
-                                        .toString());
                                     javaType = Types.DECIMAL; // 往上加一个量级，避免执行出错
                                     break;
                             }
-                        } else {
-                            // 对象为number类型，直接valueof即可
-                            columnBuilder.setValue(String.valueOf(value));
                         }
+                        text.setLength(0);
+                        columnBuilder.setValue(buffer.writeTo(text, unsigned).toString());
                         break;
                     case Types.REAL: // float
                     case Types.DOUBLE: // double
-                        // 对象为number类型，直接valueof即可
-                        columnBuilder.setValue(String.valueOf(value));
-                        break;
                     case Types.BIT:// bit
-                        // 对象为number类型
-                        columnBuilder.setValue(String.valueOf(value));
-                        break;
                     case Types.DECIMAL:
-                        columnBuilder.setValue(((BigDecimal) value).toPlainString());
+                        text.setLength(0);
+                        columnBuilder.setValue(buffer.writeTo(text, false).toString());
                         break;
                     case Types.TIMESTAMP:
                         // 修复时间边界值
@@ -569,7 +637,7 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
                     case Types.TIME:
                     case Types.DATE:
                         // 需要处理year
-                        columnBuilder.setValue(value.toString());
+                        columnBuilder.setValue(buffer.getValue().toString());
                         break;
                     case Types.BINARY:
                     case Types.VARBINARY:
@@ -578,21 +646,22 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
                         // https://github.com/AlibabaTech/canal/issues/18
                         // mysql binlog中blob/text都处理为blob类型，需要反查table
                         // meta，按编码解析text
-                        if (fieldMeta != null && isText(fieldMeta.getColumnType())) {
-                            columnBuilder.setValue(new String((byte[]) value, charset));
+                        final byte[] value = (byte[]) buffer.getValue();
+                        if (column.text) {
+                            columnBuilder.setValue(new String(value, charset));
                             javaType = Types.CLOB;
                         } else {
                             // byte数组，直接使用iso-8859-1保留对应编码，浪费内存
-                            columnBuilder.setValue(new String((byte[]) value, ISO_8859_1));
+                            columnBuilder.setValue(new String(value, ISO_8859_1));
                             javaType = Types.BLOB;
                         }
                         break;
                     case Types.CHAR:
                     case Types.VARCHAR:
-                        columnBuilder.setValue(value.toString());
+                        columnBuilder.setValue(buffer.getValue().toString());
                         break;
                     default:
-                        columnBuilder.setValue(value.toString());
+                        columnBuilder.setValue(buffer.getValue().toString());
                 }
 
             }
@@ -609,9 +678,6 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
                 rowDataBuilder.addBeforeColumns(columnBuilder.build());
             }
         }
-
-        return tableError;
-
     }
 
     private Entry buildQueryEntry(String queryString, LogHeader logHeader) {
@@ -646,6 +712,15 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
         return headerBuilder.build();
     }
 
+    /**
+     * 事件的起始位点，用于table meta history
+     */
+    private EntryPosition createPosition(LogHeader logHeader) {
+        return new EntryPosition(binlogFileName,
+            logHeader.getLogPos() - logHeader.getEventLen(),
+            logHeader.getWhen() * 1000L);
+    }
+
     private boolean isUpdate(List<Column> bfColumns, String newValue, int index) {
         if (bfColumns == null) {
             throw new CanalParseException("ERROR ## the bfColumns is null");
@@ -672,9 +747,9 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
         return true;
     }
 
-    private TableMeta getTableMeta(String dbName, String tbName, boolean useCache) {
+    private TableMeta getTableMeta(String dbName, String tbName, boolean useCache, LogHeader logHeader) {
         try {
-            return tableMetaCache.getTableMeta(dbName, tbName, useCache);
+            return tableMetaCache.getTableMeta(dbName, tbName, useCache, createPosition(logHeader));
         } catch (Exception e) {
             String message = ExceptionUtils.getRootCauseMessage(e);
             if (filterTableError) {
@@ -687,11 +762,6 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
         }
     }
 
-    private boolean isText(String columnType) {
-        return "LONGTEXT".equalsIgnoreCase(columnType) || "MEDIUMTEXT".equalsIgnoreCase(columnType)
-               || "TEXT".equalsIgnoreCase(columnType) || "TINYTEXT".equalsIgnoreCase(columnType);
-    }
-
     public static TransactionBegin createTransactionBegin(long threadId) {
         TransactionBegin.Builder beginBuilder = TransactionBegin.newBuilder();
         beginBuilder.setThreadId(threadId);
@@ -755,4 +825,18 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
         this.filterRows = filterRows;
     }
 
+    /**
+     * rows事件在有序阶段准备好的上下文
+     */
+    private static class RowsEventContext {
+
+        RowsLogEvent    event;
+        EventType       eventType;
+        Header          header;
+        TableMeta       tableMeta;
+        boolean         tableError           = false;
+        boolean         existRDSNoPrimaryKey = false;
+        TableColumnPlan plan;
+    }
+
 }
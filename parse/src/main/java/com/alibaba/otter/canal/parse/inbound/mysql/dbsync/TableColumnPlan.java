@@ -0,0 +1,98 @@
+package com.alibaba.otter.canal.parse.inbound.mysql.dbsync;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.alibaba.otter.canal.parse.inbound.TableMeta;
+import com.alibaba.otter.canal.parse.inbound.TableMeta.FieldMeta;
+import com.taobao.tddl.dbsync.binlog.LogEvent;
+import com.taobao.tddl.dbsync.binlog.event.TableMapLogEvent;
+import com.taobao.tddl.dbsync.binlog.event.TableMapLogEvent.ColumnInfo;
+
+/**
+ * 基于{@linkplain TableMapLogEvent}和{@linkplain TableMeta}预先计算好的列解析计划
+ *
+ * <pre>
+ * 1. 每一列的binary/text/unsigned判断、name/isKey/mysqlType只在构建时计算一次，行解析时直接使用
+ * 2. 按照tableId缓存，table map中的列定义或者table meta发生变化时(比如ddl之后重新获取)需要重新构建
+ * </pre>
+ *
+ * @author yzy
+ * @version 1.0.24
+ */
+class TableColumnPlan {
+
+    final TableMeta    tableMeta;
+    final boolean      tableError;
+    final boolean      existRDSNoPrimaryKey;
+    final ColumnPlan[] columns;
+
+    TableColumnPlan(TableMapLogEvent table, TableMeta tableMeta, boolean tableError, boolean existRDSNoPrimaryKey){
+        this.tableMeta = tableMeta;
+        this.tableError = tableError;
+        this.existRDSNoPrimaryKey = existRDSNoPrimaryKey;
+
+        ColumnInfo[] columnInfo = table.getColumnInfo();
+        int columnCnt = table.getColumnCnt();
+        this.columns = new ColumnPlan[columnCnt];
+        for (int i = 0; i < columnCnt; i++) {
+            ColumnInfo info = columnInfo[i];
+            ColumnPlan column = new ColumnPlan();
+            column.type = info.type;
+            column.meta = info.meta;
+            // 不解析最后一列
+            column.skip = existRDSNoPrimaryKey && i == columnCnt - 1 && info.type == LogEvent.MYSQL_TYPE_LONGLONG;
+            // rds隐藏的主键列在table meta中没有对应的字段
+            if (tableMeta != null && !tableError && !column.skip && i < tableMeta.getFileds().size()) {
+                FieldMeta fieldMeta = tableMeta.getFileds().get(i);
+                column.name = fieldMeta.getColumnName();
+                column.isKey = fieldMeta.isKey();
+                column.mysqlType = fieldMeta.getColumnType();
+                column.unsigned = fieldMeta.isUnsigned();
+                column.text = isText(fieldMeta.getColumnType());
+                // fixed issue
+                // https://github.com/alibaba/canal/issues/66，特殊处理binary/varbinary，不能做编码处理
+                column.binary = StringUtils.containsIgnoreCase(fieldMeta.getColumnType(), "BINARY");
+            }
+            columns[i] = column;
+        }
+    }
+
+    /**
+     * 判断当前的table map以及table meta是否还能使用该计划
+     */
+    boolean matches(TableMapLogEvent table, TableMeta tableMeta, boolean tableError, boolean existRDSNoPrimaryKey) {
+        if (this.tableMeta != tableMeta || this.tableError != tableError
+            || this.existRDSNoPrimaryKey != existRDSNoPrimaryKey || columns.length != table.getColumnCnt()) {
+            return false;
+        }
+
+        ColumnInfo[] columnInfo = table.getColumnInfo();
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].type != columnInfo[i].type || columns[i].meta != columnInfo[i].meta) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isText(String columnType) {
+        return "LONGTEXT".equalsIgnoreCase(columnType) || "MEDIUMTEXT".equalsIgnoreCase(columnType)
+               || "TEXT".equalsIgnoreCase(columnType) || "TINYTEXT".equalsIgnoreCase(columnType);
+    }
+
+    /**
+     * 单列的解析计划，没有table meta时name/mysqlType为null
+     */
+    static class ColumnPlan {
+
+        int     type;
+        int     meta;
+        boolean skip;
+        String  name;
+        boolean isKey;
+        String  mysqlType;
+        boolean unsigned;
+        boolean binary;
+        boolean text;
+    }
+}
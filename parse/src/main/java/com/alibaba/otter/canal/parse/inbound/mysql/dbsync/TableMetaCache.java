@@ -5,17 +5,30 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import com.alibaba.otter.canal.common.cache.CanalCache;
+import com.alibaba.otter.canal.common.cache.CompositeKey;
+import com.alibaba.otter.canal.common.utils.NamedThreadFactory;
+import com.alibaba.otter.canal.filter.aviater.AviaterRegexFilter;
 import com.alibaba.otter.canal.parse.driver.mysql.packets.server.FieldPacket;
 import com.alibaba.otter.canal.parse.driver.mysql.packets.server.ResultSetPacket;
 import com.alibaba.otter.canal.parse.exception.CanalParseException;
 import com.alibaba.otter.canal.parse.inbound.TableMeta;
 import com.alibaba.otter.canal.parse.inbound.TableMeta.FieldMeta;
 import com.alibaba.otter.canal.parse.inbound.mysql.MysqlConnection;
+import com.alibaba.otter.canal.protocol.position.EntryPosition;
 import com.google.common.base.Function;
-import com.google.common.collect.MigrateMap;
 
 /**
  * 处理table meta解析和缓存
@@ -24,42 +37,63 @@ import com.google.common.collect.MigrateMap;
  *   yzy: 建立table id到TableMeta的元数据映射关系
  * </p>
  * 
+ * <pre>
+ * 1. preload : 通过一次information_schema.COLUMNS查询批量加载所有订阅的表，避免冷启动时逐个desc，白名单可以下推时只查询订阅的表
+ * 2. asyncRefresh : ddl之后在独立的链接上异步desc，解析线程只在真正用到该表时才等待结果
+ * 3. 统计请求/未命中/加载次数以及加载耗时
+ * 4. history : 设置{@linkplain TableMetaHistory}之后按照binlog位点查询，ddl以及第一次desc的结果会记录到history中
+ * 5. 缓存key为schema + table的{@linkplain CompositeKey}，查询时使用线程内复用的key，不再每次拼接`schema`.`table`
+ * </pre>
+ * 
  * @author jianghang 2013-1-17 下午10:15:16
  * @version 1.0.0
  */
 public class TableMetaCache {
 
-    public static final String     COLUMN_NAME    = "COLUMN_NAME";
-    public static final String     COLUMN_TYPE    = "COLUMN_TYPE";
-    public static final String     IS_NULLABLE    = "IS_NULLABLE";
-    public static final String     COLUMN_KEY     = "COLUMN_KEY";
-    public static final String     COLUMN_DEFAULT = "COLUMN_DEFAULT";
-    public static final String     EXTRA          = "EXTRA";
-    private MysqlConnection        connection;
-    private boolean                isOnRDS        = false;
+    public static final String                   COLUMN_NAME    = "COLUMN_NAME";
+    public static final String                   COLUMN_TYPE    = "COLUMN_TYPE";
+    public static final String                   IS_NULLABLE    = "IS_NULLABLE";
+    public static final String                   COLUMN_KEY     = "COLUMN_KEY";
+    public static final String                   COLUMN_DEFAULT = "COLUMN_DEFAULT";
+    public static final String                   EXTRA          = "EXTRA";
+    public static final String                   TABLE_SCHEMA   = "TABLE_SCHEMA";
+    public static final String                   TABLE_NAME     = "TABLE_NAME";
+    private static final Logger                  logger         = LoggerFactory.getLogger(TableMetaCache.class);
+    private static final String                  PRELOAD_SQL    = "select TABLE_SCHEMA,TABLE_NAME,COLUMN_NAME,COLUMN_TYPE,IS_NULLABLE,COLUMN_KEY,COLUMN_DEFAULT,EXTRA"
+                                                                  + " from information_schema.COLUMNS"
+                                                                  + " where TABLE_SCHEMA not in ('information_schema','performance_schema','mysql','sys')";
+    private static final String                  PRELOAD_ORDER  = " order by TABLE_SCHEMA,TABLE_NAME,ORDINAL_POSITION";
+    private MysqlConnection                      connection;
+    private boolean                              isOnRDS        = false;
 
     // 第一层tableId,第二层schema.table,解决tableId重复，对应多张表
-    private Map<String, TableMeta> tableMetaCache;
+    private CanalCache<CompositeKey, TableMeta>  tableMetaCache;
+
+    // 异步刷新，使用独立的链接，结果只在解析线程中写回cache
+    private MysqlConnection                      refreshConnection;
+    private ExecutorService                      refreshExecutor;
+    private Map<CompositeKey, Future<TableMeta>> refreshing     = new ConcurrentHashMap<CompositeKey, Future<TableMeta>>();
+    // 按照位点记录的table meta历史，可以为空
+    private TableMetaHistory                     history;
+
+    // 统计信息
+    private AtomicLong                           requestCount   = new AtomicLong(0);
+    private AtomicLong                           missCount      = new AtomicLong(0);
+    private AtomicLong                           loadTime       = new AtomicLong(0);
+    private AtomicLong                           preloadCount   = new AtomicLong(0);
+    private AtomicLong                           refreshCount   = new AtomicLong(0);
 
     public TableMetaCache(MysqlConnection con){
         this.connection = con;
-        tableMetaCache = MigrateMap.makeComputingMap(new Function<String, TableMeta>() {
+        tableMetaCache = new CanalCache<CompositeKey, TableMeta>("tableMetaCache",
+            new Function<CompositeKey, TableMeta>() {
 
-            public TableMeta apply(String name) {
-                try {
-                    return getTableMeta0(name);
-                } catch (IOException e) {
-                    // 尝试做一次retry操作
-                    try {
-                        connection.reconnect();
-                        return getTableMeta0(name);
-                    } catch (IOException e1) {
-                        throw new CanalParseException("fetch failed by table meta:" + name, e1);
-                    }
+                public TableMeta apply(CompositeKey key) {
+                    missCount.incrementAndGet();
+                    return loadTableMeta(connection, getFullName(key));
                 }
-            }
 
-        });
+            });
 
         try {
             ResultSetPacket packet = connection.query("show global variables  like 'rds\\_%'");
@@ -75,24 +109,246 @@ public class TableMetaCache {
     }
 
     public TableMeta getTableMeta(String schema, String table, boolean useCache) {
+        requestCount.incrementAndGet();
+        CompositeKey key = CompositeKey.probe(schema, table);
+        Future<TableMeta> future = refreshing.isEmpty() ? null : refreshing.remove(key);
         if (!useCache) {
-            tableMetaCache.remove(getFullName(schema, table));
+            if (future != null) {
+                future.cancel(false);
+            }
+            tableMetaCache.remove(key);
+        } else if (future != null) {
+            TableMeta tableMeta = waitRefresh(key, future);
+            if (tableMeta != null) {
+                tableMetaCache.put(key, tableMeta);
+                return tableMeta;
+            }
+        }
+
+        return tableMetaCache.get(key);
+    }
+
+    /**
+     * 查询binlog位点对应的table meta，优先使用history，history中不存在时desc并记录到history
+     */
+    public TableMeta getTableMeta(String schema, String table, boolean useCache, EntryPosition position) {
+        if (history == null || position == null) {
+            return getTableMeta(schema, table, useCache);
+        }
+
+        // 按照CompositeKey查询history，命中时不需要拼接`schema`.`table`
+        if (useCache && !refreshing.containsKey(CompositeKey.probe(schema, table))) {
+            TableMeta tableMeta = history.find(schema, table, position);
+            if (tableMeta != null) {
+                requestCount.incrementAndGet();
+                return tableMeta;
+            }
         }
 
-        return tableMetaCache.get(getFullName(schema, table));
+        TableMeta tableMeta = getTableMeta(schema, table, useCache);
+        if (tableMeta != null) {
+            history.apply(schema, table, position, tableMeta);
+        }
+        return tableMeta;
     }
 
     public void clearTableMeta(String schema, String table) {
-        tableMetaCache.remove(getFullName(schema, table));
+        CompositeKey key = CompositeKey.probe(schema, table);
+        cancelRefresh(key);
+        tableMetaCache.remove(key);
+    }
+
+    /**
+     * ddl之后刷新table meta，开启异步刷新时立即在后台desc，否则等同于clearTableMeta
+     * 
+     * @param position ddl所在的位点，开启history时以该位点记录新的版本
+     */
+    public void refreshTableMeta(final String schema, final String table, final EntryPosition position) {
+        final String fullName = getFullName(schema, table);
+        if (refreshExecutor == null) {
+            clearTableMeta(schema, table);
+            if (history != null && position != null) {
+                try {
+                    history.apply(schema, table, position, tableMetaCache.get(CompositeKey.probe(schema, table)));
+                } catch (Exception e) {
+                    // 比如回放时表已经不存在，等到使用时再处理
+                    logger.warn("refresh table meta failed : " + fullName, e);
+                }
+            }
+            return;
+        }
+
+        CompositeKey key = new CompositeKey(schema, table);
+        cancelRefresh(key);
+        tableMetaCache.remove(key);
+        refreshCount.incrementAndGet();
+        refreshing.put(key, refreshExecutor.submit(new Callable<TableMeta>() {
+
+            public TableMeta call() throws Exception {
+                if (!refreshConnection.isConnected()) {
+                    refreshConnection.connect();
+                }
+                TableMeta tableMeta = loadTableMeta(refreshConnection, fullName);
+                if (history != null && position != null) {
+                    history.apply(schema, table, position, tableMeta);
+                }
+                return tableMeta;
+            }
+        }));
+    }
+
+    /**
+     * drop table之后清除table meta，开启history时记录表在该位点之后已经不存在
+     */
+    public void dropTableMeta(String schema, String table, EntryPosition position) {
+        clearTableMeta(schema, table);
+        if (history != null && position != null) {
+            history.apply(schema, table, position, null);
+        }
+    }
+
+    /**
+     * 通过一次information_schema.COLUMNS查询批量加载table meta，只加载满足filter的表
+     * 
+     * @return 加载的表数量
+     */
+    public int preload(AviaterRegexFilter filter, AviaterRegexFilter blackFilter) throws IOException {
+        long start = System.nanoTime();
+        ResultSetPacket packet = connection.query(buildPreloadSql(filter));
+        Map<String, Integer> nameMaps = getNameMaps(packet);
+        int schemaIndex = nameMaps.get(TABLE_SCHEMA);
+        int tableIndex = nameMaps.get(TABLE_NAME);
+
+        List<String> values = packet.getFieldValues();
+        int size = packet.getFieldDescriptors().size();
+        int count = values.size() / size;
+        int tables = 0;
+        String schema = null;
+        String table = null;
+        List<FieldMeta> fields = null;
+        for (int i = 0; i <= count; i++) {
+            String currentSchema = i < count ? values.get(schemaIndex + i * size) : null;
+            String currentTable = i < count ? values.get(tableIndex + i * size) : null;
+            if (i == count || !StringUtils.equals(schema, currentSchema) || !StringUtils.equals(table, currentTable)) {
+                // 切换到下一张表，保存上一张表的结果
+                if (fields != null) {
+                    tableMetaCache.put(new CompositeKey(schema, table),
+                        new TableMeta(getFullName(schema, table), fields));
+                    tables++;
+                }
+
+                schema = currentSchema;
+                table = currentTable;
+                fields = null;
+                if (i < count) {
+                    String name = schema + "." + table;
+                    if ((filter == null || filter.filter(name)) && (blackFilter == null || !blackFilter.filter(name))) {
+                        fields = new ArrayList<FieldMeta>();
+                    }
+                }
+            }
+
+            if (fields != null) {
+                fields.add(buildFieldMeta(values, i * size, nameMaps));
+            }
+        }
+
+        preloadCount.addAndGet(tables);
+        loadTime.addAndGet(System.nanoTime() - start);
+        return tables;
+    }
+
+    /**
+     * 白名单都是精确的表名或者前缀匹配时，把条件下推到information_schema的查询中，只读取订阅的表
+     * 
+     * <pre>
+     * 包含其他正则规则时无法转换，仍然读取全部的表在客户端过滤
+     * 查询结果依然会经过filter，服务端大小写规则不同导致漏掉的表会在使用时desc
+     * </pre>
+     */
+    static String buildPreloadSql(AviaterRegexFilter filter) {
+        List<String> conditions = new ArrayList<String>();
+        if (filter != null && filter.isLiteral()) {
+            for (String name : filter.getExactNames()) {
+                int index = name.indexOf('.');
+                if (index > 0) {
+                    conditions.add("(TABLE_SCHEMA = '" + name.substring(0, index) + "' and TABLE_NAME = '"
+                                   + name.substring(index + 1) + "')");
+                }
+            }
+
+            for (String prefix : filter.getPrefixes()) {
+                int index = prefix.indexOf('.');
+                if (index < 0) {
+                    conditions.add("TABLE_SCHEMA like '" + escapeLike(prefix) + "%'");
+                } else if (index == prefix.length() - 1) {
+                    conditions.add("TABLE_SCHEMA = '" + prefix.substring(0, index) + "'");
+                } else {
+                    conditions.add("(TABLE_SCHEMA = '" + prefix.substring(0, index) + "' and TABLE_NAME like '"
+                                   + escapeLike(prefix.substring(index + 1)) + "%')");
+                }
+            }
+        }
+
+        if (conditions.isEmpty()) {
+            return PRELOAD_SQL + PRELOAD_ORDER;
+        } else {
+            return PRELOAD_SQL + " and (" + StringUtils.join(conditions, " or ") + ")" + PRELOAD_ORDER;
+        }
+    }
+
+    /**
+     * filter的字面值只包含字母、数字、_、-、.，like中只需要转义_
+     */
+    private static String escapeLike(String value) {
+        return StringUtils.replace(value, "_", "\\_");
+    }
+
+    /**
+     * 沿用另一个cache中已经加载的table meta，重连时不需要再次preload
+     */
+    public void copyFrom(TableMetaCache other) {
+        for (Map.Entry<CompositeKey, TableMeta> entry : other.tableMetaCache.entrySet()) {
+            tableMetaCache.put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * 开启ddl之后的异步刷新，需要调用{@linkplain #close()}释放资源
+     */
+    public void enableAsyncRefresh(String name) {
+        if (refreshExecutor == null) {
+            refreshConnection = connection.fork();
+            refreshExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory(name + " , TableMetaRefresh"));
+        }
+    }
+
+    public void close() {
+        logger.info("close table meta cache , statistics : {}", this);
+        if (refreshExecutor != null) {
+            refreshExecutor.shutdownNow();
+            refreshExecutor = null;
+        }
+        refreshing.clear();
+
+        if (refreshConnection != null) {
+            try {
+                refreshConnection.disconnect();
+            } catch (IOException e) {
+                logger.warn("disconnect table meta refresh connection failed", e);
+            }
+            refreshConnection = null;
+        }
     }
 
     public void clearTableMetaWithSchemaName(String schema) {
+        cancelRefresh(null);
         // Set<String> removeNames = new HashSet<String>(); //
         // 存一份临时变量，避免在遍历的时候进行删除
-        for (String name : tableMetaCache.keySet()) {
-            if (StringUtils.startsWithIgnoreCase(name, schema + ".")) {
+        for (CompositeKey key : tableMetaCache.keySet()) {
+            if (StringUtils.equalsIgnoreCase((String) key.getFirst(), schema)) {
                 // removeNames.add(name);
-                tableMetaCache.remove(name);
+                tableMetaCache.remove(key);
             }
         }
 
@@ -102,42 +358,105 @@ public class TableMetaCache {
     }
 
     public void clearTableMeta() {
+        cancelRefresh(null);
         tableMetaCache.clear();
     }
 
-    private TableMeta getTableMeta0(String fullname) throws IOException {
+    private TableMeta loadTableMeta(MysqlConnection connection, String fullname) {
+        long start = System.nanoTime();
+        try {
+            return getTableMeta0(connection, fullname);
+        } catch (IOException e) {
+            // 尝试做一次retry操作
+            try {
+                connection.reconnect();
+                return getTableMeta0(connection, fullname);
+            } catch (IOException e1) {
+                throw new CanalParseException("fetch failed by table meta:" + fullname, e1);
+            }
+        } finally {
+            loadTime.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    private TableMeta getTableMeta0(MysqlConnection connection, String fullname) throws IOException {
         ResultSetPacket packet = connection.query("desc " + fullname);
         return new TableMeta(fullname, parserTableMeta(packet));
     }
 
-    private List<FieldMeta> parserTableMeta(ResultSetPacket packet) {
-        Map<String, Integer> nameMaps = new HashMap<String, Integer>(6, 1f);
+    /**
+     * 等待异步刷新的结果，失败时返回null，由调用方重新同步获取
+     */
+    private TableMeta waitRefresh(CompositeKey key, Future<TableMeta> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            logger.warn("refresh table meta failed , fetch again : " + getFullName(key), e.getCause());
+            return null;
+        } catch (Exception e) {
+            // 比如被cancel
+            return null;
+        }
+    }
 
-        int index = 0;
-        for (FieldPacket fieldPacket : packet.getFieldDescriptors()) {
-            nameMaps.put(fieldPacket.getOriginalName(), index++);
+    /**
+     * 取消异步刷新，key为null时取消所有
+     */
+    private void cancelRefresh(CompositeKey key) {
+        if (key == null) {
+            for (Future<TableMeta> future : refreshing.values()) {
+                future.cancel(false);
+            }
+            refreshing.clear();
+        } else {
+            Future<TableMeta> future = refreshing.remove(key);
+            if (future != null) {
+                future.cancel(false);
+            }
         }
+    }
 
+    private List<FieldMeta> parserTableMeta(ResultSetPacket packet) {
+        Map<String, Integer> nameMaps = getNameMaps(packet);
         int size = packet.getFieldDescriptors().size();
         int count = packet.getFieldValues().size() / packet.getFieldDescriptors().size();
         List<FieldMeta> result = new ArrayList<FieldMeta>();
         for (int i = 0; i < count; i++) {
-            FieldMeta meta = new FieldMeta();
-            // 做一个优化，使用String.intern()，共享String对象，减少内存使用
-            meta.setColumnName(packet.getFieldValues().get(nameMaps.get(COLUMN_NAME) + i * size).intern());
-            meta.setColumnType(packet.getFieldValues().get(nameMaps.get(COLUMN_TYPE) + i * size));
-            meta.setIsNullable(packet.getFieldValues().get(nameMaps.get(IS_NULLABLE) + i * size));
-            meta.setIskey(packet.getFieldValues().get(nameMaps.get(COLUMN_KEY) + i * size));
-            meta.setDefaultValue(packet.getFieldValues().get(nameMaps.get(COLUMN_DEFAULT) + i * size));
-            meta.setExtra(packet.getFieldValues().get(nameMaps.get(EXTRA) + i * size));
-
-            result.add(meta);
+            result.add(buildFieldMeta(packet.getFieldValues(), i * size, nameMaps));
         }
 
         return result;
     }
 
-    private String getFullName(String schema, String table) {
+    private Map<String, Integer> getNameMaps(ResultSetPacket packet) {
+        Map<String, Integer> nameMaps = new HashMap<String, Integer>(8, 1f);
+        int index = 0;
+        for (FieldPacket fieldPacket : packet.getFieldDescriptors()) {
+            nameMaps.put(fieldPacket.getOriginalName(), index++);
+        }
+        return nameMaps;
+    }
+
+    private FieldMeta buildFieldMeta(List<String> values, int offset, Map<String, Integer> nameMaps) {
+        FieldMeta meta = new FieldMeta();
+        // 做一个优化，使用String.intern()，共享String对象，减少内存使用
+        meta.setColumnName(values.get(nameMaps.get(COLUMN_NAME) + offset).intern());
+        meta.setColumnType(values.get(nameMaps.get(COLUMN_TYPE) + offset));
+        meta.setIsNullable(values.get(nameMaps.get(IS_NULLABLE) + offset));
+        meta.setIskey(values.get(nameMaps.get(COLUMN_KEY) + offset));
+        meta.setDefaultValue(values.get(nameMaps.get(COLUMN_DEFAULT) + offset));
+        meta.setExtra(values.get(nameMaps.get(EXTRA) + offset));
+        return meta;
+    }
+
+    private String getFullName(CompositeKey key) {
+        return getFullName((String) key.getFirst(), (String) key.getSecond());
+    }
+
+    static String getFullName(String schema, String table) {
         StringBuilder builder = new StringBuilder();
         return builder.append('`')
             .append(schema)
@@ -157,4 +476,41 @@ public class TableMetaCache {
         this.isOnRDS = isOnRDS;
     }
 
+    public void setHistory(TableMetaHistory history) {
+        this.history = history;
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    public long getHitCount() {
+        return requestCount.get() - missCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getPreloadCount() {
+        return preloadCount.get();
+    }
+
+    public long getRefreshCount() {
+        return refreshCount.get();
+    }
+
+    /**
+     * desc/preload的累计耗时，单位ms
+     */
+    public long getLoadTimeMillis() {
+        return loadTime.get() / 1000000;
+    }
+
+    public String toString() {
+        return "TableMetaCache [requestCount=" + getRequestCount() + ", hitCount=" + getHitCount() + ", missCount="
+               + getMissCount() + ", preloadCount=" + getPreloadCount() + ", refreshCount=" + getRefreshCount()
+               + ", loadTimeMillis=" + getLoadTimeMillis() + ", cache=" + tableMetaCache + "]";
+    }
+
 }
@@ -0,0 +1,327 @@
+package com.alibaba.otter.canal.parse.inbound.mysql.dbsync;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alibaba.otter.canal.common.AbstractCanalLifeCycle;
+import com.alibaba.otter.canal.common.cache.CompositeKey;
+import com.alibaba.otter.canal.common.utils.JsonUtils;
+import com.alibaba.otter.canal.parse.exception.CanalParseException;
+import com.alibaba.otter.canal.parse.inbound.TableMeta;
+import com.alibaba.otter.canal.parse.inbound.TableMeta.FieldMeta;
+import com.alibaba.otter.canal.protocol.position.EntryPosition;
+
+/**
+ * 基于本地文件的table meta历史，按照binlog位点记录每张表的版本
+ *
+ * <pre>
+ * 1. 每次ddl(或者第一次desc)之后，以ddl所在的位点记录一个新版本，drop表记录为空版本
+ * 2. 查询时按照位点找到不大于该位点的最近版本，基于TreeMap，复杂度O(log n)
+ * 3. 文件格式为json行：snapshot文件为checkpoint时的全量数据，delta文件为之后追加的版本，启动时先加载snapshot再回放delta
+ * 4. delta数量超过阀值或者stop时做一次checkpoint，通过临时文件rename保证snapshot的完整
+ * 5. 按照schema + table的{@linkplain CompositeKey}索引，查询时不需要拼接`schema`.`table`
+ * </pre>
+ *
+ * 线程安全，异步刷新table meta的线程也会写入
+ *
+ * @author yzy
+ * @version 1.0.24
+ */
+public class TableMetaHistory extends AbstractCanalLifeCycle {
+
+    private static final Logger                            logger              = LoggerFactory.getLogger(TableMetaHistory.class);
+    private static final Charset                           charset             = Charset.forName("UTF-8");
+    private static final String                            SNAPSHOT_FILE       = "tablemeta.snapshot";
+    private static final String                            DELTA_FILE          = "tablemeta.delta";
+
+    private File                                           dataDir;
+    // delta超过该数量时做checkpoint
+    private int                                            checkpointThreshold = 1000;
+    private Map<CompositeKey, TreeMap<EntryPosition, TableMeta>> histories = new HashMap<CompositeKey, TreeMap<EntryPosition, TableMeta>>();
+    private OutputStream                                   deltaOutput;
+    private int                                            deltaCount          = 0;
+
+    public TableMetaHistory(){
+    }
+
+    public TableMetaHistory(File dataDir){
+        this.dataDir = dataDir;
+    }
+
+    public synchronized void start() {
+        super.start();
+        try {
+            FileUtils.forceMkdir(dataDir);
+            deltaCount = 0;
+            load(new File(dataDir, SNAPSHOT_FILE));
+            deltaCount = load(new File(dataDir, DELTA_FILE));
+            checkpoint();
+        } catch (IOException e) {
+            throw new CanalParseException("load table meta history failed , dir : " + dataDir.getPath(), e);
+        }
+    }
+
+    public synchronized void stop() {
+        super.stop();
+        try {
+            checkpoint();
+        } catch (IOException e) {
+            logger.warn("checkpoint table meta history failed , dir : " + dataDir.getPath(), e);
+        }
+        IOUtils.closeQuietly(deltaOutput);
+        deltaOutput = null;
+        histories.clear();
+    }
+
+    /**
+     * 查询位点对应的table meta，没有记录或者表已经被drop时返回null
+     */
+    public synchronized TableMeta find(String schema, String table, EntryPosition position) {
+        TreeMap<EntryPosition, TableMeta> history = histories.get(CompositeKey.probe(schema, table));
+        if (history == null) {
+            return null;
+        }
+
+        Map.Entry<EntryPosition, TableMeta> entry = history.floorEntry(position);
+        return entry == null ? null : entry.getValue();
+    }
+
+    /**
+     * 记录位点之后生效的table meta，tableMeta为null代表表被drop，和当前版本一致时忽略
+     */
+    public synchronized void apply(String schema, String table, EntryPosition position, TableMeta tableMeta) {
+        TreeMap<EntryPosition, TableMeta> history = histories.get(CompositeKey.probe(schema, table));
+        if (history != null) {
+            Map.Entry<EntryPosition, TableMeta> entry = history.floorEntry(position);
+            if (entry != null && isSame(entry.getValue(), tableMeta)) {
+                return;
+            }
+        }
+
+        Record record = new Record(schema, table, position, tableMeta);
+        put(record);
+        try {
+            if (deltaOutput == null) {
+                deltaOutput = new FileOutputStream(new File(dataDir, DELTA_FILE), true);
+            }
+            deltaOutput.write((JsonUtils.marshalToString(record) + "\n").getBytes(charset));
+            deltaOutput.flush();
+            if (++deltaCount >= checkpointThreshold) {
+                checkpoint();
+            }
+        } catch (IOException e) {
+            throw new CanalParseException("write table meta history failed , dir : " + dataDir.getPath(), e);
+        }
+    }
+
+    /**
+     * 将所有版本写入snapshot文件，并清空delta文件
+     */
+    public synchronized void checkpoint() throws IOException {
+        IOUtils.closeQuietly(deltaOutput);
+        deltaOutput = null;
+        if (deltaCount == 0 && new File(dataDir, SNAPSHOT_FILE).exists()) {
+            return;
+        }
+
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<CompositeKey, TreeMap<EntryPosition, TableMeta>> history : histories.entrySet()) {
+            String schema = (String) history.getKey().getFirst();
+            String table = (String) history.getKey().getSecond();
+            for (Map.Entry<EntryPosition, TableMeta> entry : history.getValue().entrySet()) {
+                builder.append(JsonUtils.marshalToString(new Record(schema, table, entry.getKey(), entry.getValue())))
+                    .append('\n');
+            }
+        }
+
+        File tmp = new File(dataDir, SNAPSHOT_FILE + ".tmp");
+        File snapshot = new File(dataDir, SNAPSHOT_FILE);
+        FileUtils.writeStringToFile(tmp, builder.toString(), charset.name());
+        if (snapshot.exists() && !snapshot.delete()) {
+            throw new IOException("delete file failed : " + snapshot.getPath());
+        }
+        if (!tmp.renameTo(snapshot)) {
+            throw new IOException("rename file failed : " + tmp.getPath());
+        }
+
+        FileUtils.deleteQuietly(new File(dataDir, DELTA_FILE));
+        deltaCount = 0;
+    }
+
+    private int load(File file) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+
+        int count = 0;
+        List<String> lines = FileUtils.readLines(file, charset.name());
+        for (String line : lines) {
+            if (StringUtils.isBlank(line)) {
+                continue;
+            }
+
+            try {
+                put(JsonUtils.unmarshalFromString(line, Record.class));
+                count++;
+            } catch (Exception e) {
+                // 最后一行可能因为进程退出没有写完整
+                logger.warn("skip broken table meta history in " + file.getName() + " : " + line, e);
+            }
+        }
+        return count;
+    }
+
+    private void put(Record record) {
+        CompositeKey key = new CompositeKey(record.getSchema(), record.getTable());
+        TreeMap<EntryPosition, TableMeta> history = histories.get(key);
+        if (history == null) {
+            history = new TreeMap<EntryPosition, TableMeta>(new PositionComparator());
+            histories.put(key, history);
+        }
+
+        EntryPosition position = new EntryPosition(record.getJournalName(), record.getPosition(), record.getTimestamp());
+        TableMeta tableMeta = null;
+        if (record.getFields() != null) {
+            tableMeta = new TableMeta(TableMetaCache.getFullName(record.getSchema(), record.getTable()),
+                record.getFields());
+        }
+        history.put(position, tableMeta);
+    }
+
+    private boolean isSame(TableMeta source, TableMeta target) {
+        if (source == null || target == null) {
+            return source == target;
+        }
+        return JsonUtils.marshalToString(source.getFileds()).equals(JsonUtils.marshalToString(target.getFileds()));
+    }
+
+    /**
+     * binlog文件名按照后缀的数字比较，兼容mysql-bin.999999之后变为7位的情况
+     */
+    public static int compareJournalName(String name1, String name2) {
+        int index1 = name1.lastIndexOf('.');
+        int index2 = name2.lastIndexOf('.');
+        if (index1 > 0 && index1 == index2 && name1.regionMatches(0, name2, 0, index1)) {
+            String suffix1 = name1.substring(index1 + 1);
+            String suffix2 = name2.substring(index2 + 1);
+            if (StringUtils.isNumeric(suffix1) && StringUtils.isNumeric(suffix2) && suffix1.length() != suffix2.length()) {
+                return suffix1.length() - suffix2.length();
+            }
+        }
+        return name1.compareTo(name2);
+    }
+
+    public void setDataDir(File dataDir) {
+        this.dataDir = dataDir;
+    }
+
+    public void setDataDir(String dataDir) {
+        this.dataDir = new File(dataDir);
+    }
+
+    public void setCheckpointThreshold(int checkpointThreshold) {
+        this.checkpointThreshold = checkpointThreshold;
+    }
+
+    /**
+     * 按照binlog文件名以及文件内的offset排序
+     */
+    static class PositionComparator implements Comparator<EntryPosition> {
+
+        public int compare(EntryPosition o1, EntryPosition o2) {
+            int result = compareJournalName(o1.getJournalName(), o2.getJournalName());
+            if (result != 0) {
+                return result;
+            }
+            return o1.getPosition().compareTo(o2.getPosition());
+        }
+    }
+
+    /**
+     * 文件中的一条记录，fields为null代表表被drop
+     */
+    public static class Record {
+
+        private String          schema;
+        private String          table;
+        private String          journalName;
+        private Long            position;
+        private Long            timestamp;
+        private List<FieldMeta> fields;
+
+        public Record(){
+        }
+
+        public Record(String schema, String table, EntryPosition position, TableMeta tableMeta){
+            this.schema = schema;
+            this.table = table;
+            this.journalName = position.getJournalName();
+            this.position = position.getPosition();
+            this.timestamp = position.getTimestamp();
+            this.fields = tableMeta == null ? null : new ArrayList<FieldMeta>(tableMeta.getFileds());
+        }
+
+        public String getSchema() {
+            return schema;
+        }
+
+        public void setSchema(String schema) {
+            this.schema = schema;
+        }
+
+        public String getTable() {
+            return table;
+        }
+
+        public void setTable(String table) {
+            this.table = table;
+        }
+
+        public String getJournalName() {
+            return journalName;
+        }
+
+        public void setJournalName(String journalName) {
+            this.journalName = journalName;
+        }
+
+        public Long getPosition() {
+            return position;
+        }
+
+        public void setPosition(Long position) {
+            this.position = position;
+        }
+
+        public Long getTimestamp() {
+            return timestamp;
+        }
+
+        public void setTimestamp(Long timestamp) {
+            this.timestamp = timestamp;
+        }
+
+        public List<FieldMeta> getFields() {
+            return fields;
+        }
+
+        public void setFields(List<FieldMeta> fields) {
+            this.fields = fields;
+        }
+    }
+}
@@ -1,12 +1,13 @@
 package com.alibaba.otter.canal.parse.inbound.mysql.local;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Matcher;
@@ -14,8 +15,12 @@ import java.util.regex.Pattern;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.filefilter.IOFileFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import com.alibaba.otter.canal.common.utils.CanalScheduler;
 import com.alibaba.otter.canal.parse.exception.CanalParseException;
+import com.taobao.tddl.dbsync.binlog.FileLogFetcher;
 
 /**
  * 维护binlog文件列表
@@ -25,13 +30,16 @@ import com.alibaba.otter.canal.parse.exception.CanalParseException;
  */
 public class BinLogFileQueue {
 
-    private String        baseName       = "mysql-bin.";
-    private List<File>    binlogs        = new ArrayList<File>();
-    private File          directory;
-    private ReentrantLock lock           = new ReentrantLock();
-    private Condition     nextCondition  = lock.newCondition();
-    private Timer         timer          = new Timer(true);
-    private long          reloadInterval = 10 * 1000L;           // 10秒
+    private static final Logger logger = LoggerFactory.getLogger(BinLogFileQueue.class);
+
+    private String             baseName       = "mysql-bin.";
+    private List<File>         binlogs        = new ArrayList<File>();
+    private File               directory;
+    private ReentrantLock      lock           = new ReentrantLock();
+    private Condition          nextCondition  = lock.newCondition();
+    private ScheduledFuture<?> reloadFuture;                          // 定时扫描目录，使用共享的调度线程
+    private long               reloadInterval = 10 * 1000L;           // 10秒
+    private BinLogFileWatcher  watcher;                               // 监听目录变化，定时扫描作为兜底
 
     public BinLogFileQueue(String directory){
         this(new File(directory));
@@ -49,15 +57,22 @@ public class BinLogFileQueue {
             offer(file);
         }
 
-        timer.scheduleAtFixedRate(new TimerTask() {
+        try {
+            watcher = new BinLogFileWatcher(directory, this);
+            watcher.start();
+        } catch (Throwable e) {
+            // 不支持java.nio.file或者文件系统不支持监听，只依赖定时扫描
+            watcher = null;
+            logger.warn("watch binlog directory failed, fallback to polling every " + reloadInterval + "ms : "
+                        + directory.getAbsolutePath(), e);
+        }
+
+        reloadFuture = CanalScheduler.scheduleAtFixedRate(new Runnable() {
 
             public void run() {
-                List<File> files = listBinlogFiles();
-                for (File file : files) {
-                    offer(file);
-                }
+                reload();
             }
-        }, reloadInterval, reloadInterval);
+        }, reloadInterval, reloadInterval, TimeUnit.MILLISECONDS);
     }
 
     /**
@@ -146,6 +161,53 @@ public class BinLogFileQueue {
         }
     }
 
+    /**
+     * 等待下一个binlog文件，有新文件或者目录下的文件有写入时被唤醒，最多等待timeout
+     * 
+     * @param pre
+     * @return 下一个binlog文件，没有时返回null，由调用方继续读取当前文件新写入的内容
+     * @throws InterruptedException
+     */
+    public File waitForNextFile(File pre, long timeout, TimeUnit unit) throws InterruptedException {
+        try {
+            lock.lockInterruptibly();
+            File next = nextFile(pre);
+            if (next == null) {
+                nextCondition.await(timeout, unit);
+                next = nextFile(pre);
+            }
+
+            return next;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 异步将下一个binlog文件的头部加载到page cache，避免切换文件时阻塞在磁盘读取上
+     *
+     * <pre>
+     * 磁盘读取会阻塞，在阻塞任务线程池中执行，不占用共享的调度线程；只加载文件头部，最多{@linkplain FileLogFetcher#PREFETCH_SIZE}
+     * </pre>
+     */
+    public void prefetchNextFile(File pre, final long length) {
+        final File next = getNextFile(pre);
+        if (next == null) {
+            return;
+        }
+
+        CanalScheduler.getBlockingExecutor().execute(new Runnable() {
+
+            public void run() {
+                try {
+                    FileLogFetcher.prefetch(next, length);
+                } catch (IOException e) {
+                    logger.warn("prefetch binlog file failed : " + next.getName(), e);
+                }
+            }
+        });
+    }
+
     /**
      * 获取当前所有binlog文件
      */
@@ -156,7 +218,10 @@ public class BinLogFileQueue {
     public void destory() {
         try {
             lock.lockInterruptibly();
-            timer.cancel();
+            CanalScheduler.cancel(reloadFuture);
+            if (watcher != null) {
+                watcher.stop();
+            }
             binlogs.clear();
 
             nextCondition.signalAll();// 唤醒线程，通知退出
@@ -167,6 +232,39 @@ public class BinLogFileQueue {
         }
     }
 
+    /**
+     * 重新扫描目录，加入新出现的binlog文件
+     */
+    void reload() {
+        List<File> files = listBinlogFiles();
+        for (File file : files) {
+            offer(file);
+        }
+    }
+
+    /**
+     * 目录下的文件有写入，唤醒等待的线程读取当前文件新写入的内容
+     */
+    void signalChanged() {
+        lock.lock();
+        try {
+            nextCondition.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private File nextFile(File pre) {
+        if (binlogs.size() == 0) {
+            return null;
+        } else if (pre == null) {// 第一次
+            return binlogs.get(0);
+        } else {
+            int index = seek(pre);
+            return index < binlogs.size() - 1 ? binlogs.get(index + 1) : null;
+        }
+    }
+
     private boolean offer(File file) {
         try {
             lock.lockInterruptibly();
@@ -0,0 +1,105 @@
+package com.alibaba.otter.canal.parse.inbound.mysql.local;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 基于WatchService监听binlog目录的变化，新文件创建时立即通知{@link BinLogFileQueue}重新加载文件列表，文件写入时唤醒等待的读取线程
+ *
+ * <pre>
+ * 单独成类，运行环境不支持java.nio.file时只影响这个类的加载，BinLogFileQueue可以退回到定时扫描
+ * </pre>
+ *
+ * @author yzy
+ * @version 1.0.24
+ */
+class BinLogFileWatcher {
+
+    private static final Logger   logger = LoggerFactory.getLogger(BinLogFileWatcher.class);
+
+    private final File            directory;
+    private final BinLogFileQueue queue;
+    private WatchService          watchService;
+    private Thread                thread;
+
+    BinLogFileWatcher(File directory, BinLogFileQueue queue){
+        this.directory = directory;
+        this.queue = queue;
+    }
+
+    void start() throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+        Path path = directory.toPath();
+        path.register(watchService,
+            StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY,
+            StandardWatchEventKinds.ENTRY_DELETE);
+
+        thread = new Thread(new Runnable() {
+
+            public void run() {
+                watch();
+            }
+        }, "binlog-watcher-" + directory.getName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void stop() {
+        if (watchService != null) {
+            try {
+                watchService.close();// take()会抛出ClosedWatchServiceException退出
+            } catch (IOException e) {
+                logger.warn("close binlog watch service failed", e);
+            }
+        }
+    }
+
+    private void watch() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (ClosedWatchServiceException e) {
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            boolean reload = false;
+            for (WatchEvent<?> event : key.pollEvents()) {
+                // 文件写入只需要唤醒读取线程，创建/删除/事件丢失才需要重新扫描目录
+                if (event.kind() != StandardWatchEventKinds.ENTRY_MODIFY) {
+                    reload = true;
+                }
+            }
+
+            try {
+                if (reload) {
+                    queue.reload();
+                } else {
+                    queue.signalChanged();
+                }
+            } catch (Throwable e) {
+                logger.warn("reload binlog files failed : " + directory.getAbsolutePath(), e);
+            }
+
+            if (!key.reset()) {
+                logger.warn("binlog directory is no longer watchable, fallback to polling : "
+                            + directory.getAbsolutePath());
+                return;
+            }
+        }
+    }
+}
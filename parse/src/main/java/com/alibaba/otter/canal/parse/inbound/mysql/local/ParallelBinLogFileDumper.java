@@ -0,0 +1,246 @@
+package com.alibaba.otter.canal.parse.inbound.mysql.local;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import com.alibaba.otter.canal.common.CanalException;
+import com.alibaba.otter.canal.common.utils.NamedThreadFactory;
+import com.alibaba.otter.canal.parse.exception.CanalParseException;
+import com.alibaba.otter.canal.parse.inbound.BinlogParser;
+import com.alibaba.otter.canal.parse.inbound.SinkFunction;
+import com.alibaba.otter.canal.protocol.CanalEntry;
+import com.taobao.tddl.dbsync.binlog.FileLogFetcher;
+import com.taobao.tddl.dbsync.binlog.LogContext;
+import com.taobao.tddl.dbsync.binlog.LogDecoder;
+import com.taobao.tddl.dbsync.binlog.LogEvent;
+import com.taobao.tddl.dbsync.binlog.LogPosition;
+import com.taobao.tddl.dbsync.binlog.event.RotateLogEvent;
+
+/**
+ * 本地binlog文件的并行回放，用于历史binlog的补数据
+ *
+ * <pre>
+ * 1. 每个binlog文件一个任务，从文件头的format description开始独立decode + 解析，文件之间没有解析上下文的依赖
+ * 2. 每个任务的解析结果放入各自的有界队列，调用线程严格按照文件顺序消费，输出的顺序和串行解析完全一致
+ * 3. 同时在途的文件数量为threadSize * 2，每个文件最多缓存bufferSize个entry，保证内存可控
+ * 4. 每个工作线程使用独立的{@linkplain BinlogParser}(独立的table meta链接)，通过{@linkplain BinlogParserFactory}创建
+ * </pre>
+ *
+ * @author yzy
+ * @version 1.0.24
+ */
+public class ParallelBinLogFileDumper {
+
+    private static final Logger                   logger      = LoggerFactory.getLogger(ParallelBinLogFileDumper.class);
+    private static final long                     POLL_MILLS  = 100L;
+    private static final long                     AWAIT_SECS  = 30L;
+    private static final Object                   END_OF_FILE = new Object();
+
+    private final int                             threadSize;
+    private final int                             bufferSize;
+    private final int                             readBufferSize;
+    private final BinlogParserFactory             parserFactory;
+    private final String                          destination;
+    private int                                   mappedWindowSize;
+    private volatile boolean                      running     = true;
+    private BlockingQueue<BinlogParser<LogEvent>> parsers;
+    private List<BinlogParser<LogEvent>>          createdParsers;
+
+    public ParallelBinLogFileDumper(int threadSize, int bufferSize, int readBufferSize,
+                                    BinlogParserFactory parserFactory, String destination){
+        this.threadSize = threadSize;
+        this.bufferSize = bufferSize;
+        this.readBufferSize = readBufferSize;
+        this.parserFactory = parserFactory;
+        this.destination = destination;
+    }
+
+    /**
+     * 按顺序回放files，第一个文件从startPosition开始，其余文件从文件头开始
+     *
+     * @return false代表entrySink要求停止或者已经被stop
+     */
+    public boolean dump(List<File> files, long startPosition, SinkFunction<CanalEntry.Entry> entrySink) {
+        if (files.isEmpty()) {
+            return true;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadSize,
+            new NamedThreadFactory("destination = " + destination + " , ParallelBinLogFileDumper"));
+        parsers = new LinkedBlockingQueue<BinlogParser<LogEvent>>();
+        createdParsers = new ArrayList<BinlogParser<LogEvent>>();
+        LinkedList<FileTask> tasks = new LinkedList<FileTask>();
+        int next = 0;
+        try {
+            for (int i = 0; i < threadSize; i++) {
+                BinlogParser<LogEvent> parser = parserFactory.create();
+                createdParsers.add(parser);
+                parsers.add(parser);
+            }
+
+            while (running) {
+                // 提交任务直到在途的文件数量达到上限，线程池按照提交顺序执行，队首的文件总是最先开始
+                while (next < files.size() && tasks.size() < threadSize * 2) {
+                    FileTask task = new FileTask(files.get(next), next == 0 ? startPosition : 4L);
+                    executor.execute(task);
+                    tasks.add(task);
+                    next++;
+                }
+
+                if (tasks.isEmpty()) {
+                    return true;
+                }
+
+                if (!drain(tasks.peek(), entrySink)) {
+                    return false;
+                }
+                tasks.poll();
+            }
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            executor.shutdownNow();
+            // 等待工作线程退出之后再销毁parser，避免工作线程还在parse/desc时链接被断开
+            try {
+                if (!executor.awaitTermination(AWAIT_SECS, TimeUnit.SECONDS)) {
+                    logger.warn("parallel dump workers not terminated in {} seconds", AWAIT_SECS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (BinlogParser<LogEvent> parser : createdParsers) {
+                try {
+                    parserFactory.destroy(parser);
+                } catch (Throwable e) {
+                    logger.warn("destroy binlog parser failed", e);
+                }
+            }
+        }
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * 按顺序消费一个文件的解析结果
+     */
+    private boolean drain(FileTask task, SinkFunction<CanalEntry.Entry> entrySink) throws InterruptedException {
+        while (running) {
+            Object item = task.queue.poll(POLL_MILLS, TimeUnit.MILLISECONDS);
+            if (item == null) {
+                continue;
+            }
+
+            if (item == END_OF_FILE) {
+                if (task.exception instanceof CanalException) {
+                    // 保持异常类型，比如TableIdNotFoundException需要上层特殊处理
+                    throw (CanalException) task.exception;
+                } else if (task.exception != null) {
+                    throw new CanalParseException("parallel dump failed , file : " + task.file.getName(),
+                        task.exception);
+                }
+                return true;
+            }
+
+            if (!entrySink.sink((CanalEntry.Entry) item)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 单个binlog文件的decode + 解析任务
+     */
+    private class FileTask implements Runnable {
+
+        private final File                  file;
+        private final long                  position;
+        private final BlockingQueue<Object> queue;
+        private volatile Throwable          exception;
+
+        FileTask(File file, long position){
+            this.file = file;
+            this.position = position;
+            this.queue = new ArrayBlockingQueue<Object>(bufferSize);
+        }
+
+        public void run() {
+            MDC.put("destination", String.valueOf(destination));
+            BinlogParser<LogEvent> parser = null;
+            FileLogFetcher fetcher = new FileLogFetcher(readBufferSize, mappedWindowSize);
+            try {
+                parser = parsers.take();
+                LogDecoder decoder = new LogDecoder(LogEvent.UNKNOWN_EVENT, LogEvent.ENUM_END_EVENT);
+                LogContext context = new LogContext();
+                fetcher.open(file, position);
+                context.setLogPosition(new LogPosition(file.getName(), position));
+                // 和串行dump一致，先模拟一个rotate事件设置文件名
+                parser.parse(new RotateLogEvent(file.getName(), position));
+                while (running && fetcher.fetch()) {
+                    LogEvent event;
+                    while ((event = decoder.decode(fetcher, context)) != null) {
+                        CanalEntry.Entry entry = parser.parse(event);
+                        if (entry != null) {
+                            queue.put(entry);
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                // 被stop或者消费方退出
+                return;
+            } catch (Throwable e) {
+                exception = e;
+            } finally {
+                try {
+                    fetcher.close();
+                } catch (IOException e) {
+                    logger.warn("close file failed : " + file.getName(), e);
+                }
+                if (parser != null) {
+                    parsers.add(parser);
+                }
+                MDC.remove("destination");
+            }
+
+            try {
+                queue.put(END_OF_FILE);
+            } catch (InterruptedException e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * 读取文件时使用的mmap窗口大小，0代表通过FileInputStream读取
+     */
+    public void setMappedWindowSize(int mappedWindowSize) {
+        this.mappedWindowSize = mappedWindowSize;
+    }
+
+    /**
+     * 为每个工作线程创建独立的parser，parser以及依赖的table meta链接不能在线程之间共享
+     */
+    public interface BinlogParserFactory {
+
+        BinlogParser<LogEvent> create();
+
+        void destroy(BinlogParser<LogEvent> parser);
+    }
+}
@@ -9,8 +9,6 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.io.FileUtils;
@@ -19,6 +17,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
 
 import com.alibaba.otter.canal.common.utils.JsonUtils;
+import com.alibaba.otter.canal.common.utils.SerialExecutor;
 import com.alibaba.otter.canal.meta.exception.CanalMetaManagerException;
 import com.alibaba.otter.canal.protocol.position.LogPosition;
 import com.google.common.base.Function;
@@ -43,7 +42,7 @@ public class FileMixedLogPositionManager extends MemoryLogPositionManager {
     private File                     dataDir;
     private String                   dataFileName = "parse.dat";
     private Map<String, File>        dataFileCaches;
-    private ScheduledExecutorService executor;
+    private SerialExecutor           executor;
     @SuppressWarnings("serial")
     private final LogPosition        nullPosition = new LogPosition() {
                                                   };
@@ -74,7 +73,7 @@ public class FileMixedLogPositionManager extends MemoryLogPositionManager {
             }
         });
 
-        executor = Executors.newScheduledThreadPool(1);
+        executor = new SerialExecutor();
         positions = MigrateMap.makeComputingMap(new Function<String, LogPosition>() {
 
             public LogPosition apply(String destination) {
@@ -1,12 +1,11 @@
 package com.alibaba.otter.canal.parse.index;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
 
+import com.alibaba.otter.canal.common.utils.CanalScheduler;
+import com.alibaba.otter.canal.common.utils.SerialExecutor;
 import com.alibaba.otter.canal.protocol.position.LogPosition;
 import com.google.common.base.Function;
 import com.google.common.collect.MigrateMap;
@@ -21,7 +20,7 @@ public class MixedLogPositionManager extends MemoryLogPositionManager implements
 
     private static final Logger         logger       = LoggerFactory.getLogger(MixedLogPositionManager.class);
     private ZooKeeperLogPositionManager zooKeeperLogPositionManager;
-    private ExecutorService             executor;
+    private SerialExecutor              executor;
     @SuppressWarnings("serial")
     private final LogPosition           nullPosition = new LogPosition() {
                                                      };
@@ -33,7 +32,8 @@ public class MixedLogPositionManager extends MemoryLogPositionManager implements
         if (!zooKeeperLogPositionManager.isStart()) {
             zooKeeperLogPositionManager.start();
         }
-        executor = Executors.newFixedThreadPool(1);
+        // zookeeper写入会阻塞，不占用共享的调度线程
+        executor = new SerialExecutor(CanalScheduler.getBlockingExecutor());
         positions = MigrateMap.makeComputingMap(new Function<String, LogPosition>() {
 
             public LogPosition apply(String destination) {
@@ -59,7 +59,7 @@ public class MixedLogPositionManager extends MemoryLogPositionManager implements
 
     public void persistLogPosition(final String destination, final LogPosition logPosition) {
         super.persistLogPosition(destination, logPosition);
-        executor.submit(new Runnable() {
+        executor.execute(new Runnable() {
 
             public void run() {
                 try {
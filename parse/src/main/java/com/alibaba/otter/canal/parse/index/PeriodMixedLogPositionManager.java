@@ -5,14 +5,14 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
 
+import com.alibaba.otter.canal.common.utils.CanalScheduler;
+import com.alibaba.otter.canal.common.utils.SerialExecutor;
 import com.alibaba.otter.canal.protocol.position.LogPosition;
 import com.google.common.base.Function;
 import com.google.common.collect.MigrateMap;
@@ -27,7 +27,7 @@ public class PeriodMixedLogPositionManager extends MemoryLogPositionManager impl
 
     private static final Logger         logger       = LoggerFactory.getLogger(PeriodMixedLogPositionManager.class);
     private ZooKeeperLogPositionManager zooKeeperLogPositionManager;
-    private ScheduledExecutorService    executor;
+    private SerialExecutor              executor;
     @SuppressWarnings("serial")
     private final LogPosition           nullPosition = new LogPosition() {
                                                      };
@@ -42,7 +42,8 @@ public class PeriodMixedLogPositionManager extends MemoryLogPositionManager impl
         if (!zooKeeperLogPositionManager.isStart()) {
             zooKeeperLogPositionManager.start();
         }
-        executor = Executors.newScheduledThreadPool(1);
+        // zookeeper写入会阻塞，不占用共享的调度线程
+        executor = new SerialExecutor(CanalScheduler.getBlockingExecutor());
         positions = MigrateMap.makeComputingMap(new Function<String, LogPosition>() {
 
             public LogPosition apply(String destination) {
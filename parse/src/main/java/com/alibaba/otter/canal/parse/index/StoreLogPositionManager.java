@@ -0,0 +1,43 @@
+package com.alibaba.otter.canal.parse.index;
+
+import org.springframework.util.Assert;
+
+import com.alibaba.otter.canal.common.AbstractCanalLifeCycle;
+import com.alibaba.otter.canal.parse.exception.CanalParseException;
+import com.alibaba.otter.canal.protocol.position.LogPosition;
+import com.alibaba.otter.canal.store.CanalEventStore;
+
+/**
+ * 基于持久化store的实现，parser从store中最后一条数据的位置继续解析
+ * 
+ * <pre>
+ * 应用场景：配合FileEventStore使用，重启之后store中未被消费的数据依然存在，parser只需要从store的最后位置继续dump，不需要从meta的消费位点重新dump
+ * 对于内存store，重启之后getLatestPosition为null，会交给failback继续查找
+ * </pre>
+ * 
+ * @author yzy
+ * @version 1.0.24
+ */
+public class StoreLogPositionManager extends AbstractCanalLifeCycle implements CanalLogPositionManager {
+
+    private CanalEventStore eventStore;
+
+    public void start() {
+        super.start();
+        Assert.notNull(eventStore);
+    }
+
+    public LogPosition getLatestIndexBy(String destination) {
+        // store的生命周期由instance管理，启动顺序在parser之前
+        return (LogPosition) eventStore.getLatestPosition();
+    }
+
+    public void persistLogPosition(String destination, LogPosition logPosition) throws CanalParseException {
+        // do nothing，位点随着数据一起写入了store
+    }
+
+    public void setEventStore(CanalEventStore eventStore) {
+        this.eventStore = eventStore;
+    }
+
+}
@@ -0,0 +1,205 @@
+package com.alibaba.otter.canal.parse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.parse.inbound.mysql.dbsync.DirectLogFetcher;
+
+/**
+ * 基于本地socket回放dump数据流，验证预读模式下packet的切分以及multi-packet的拼接
+ *
+ * <pre>
+ * 回放吞吐测试默认不运行：
+ * 1. 回放抓取的真实dump流：-Dcanal.dump.file=xxx，文件内容为COM_BINLOG_DUMP之后mysql返回的原始字节流
+ * 2. 回放模拟的小事件dump流：-Dcanal.dump.benchmark=true
+ * </pre>
+ *
+ * @author yzy
+ * @version 1.0.24
+ */
+public class DirectLogFetcherReadAheadTest {
+
+    private Random random = new Random();
+
+    @Test
+    public void testFetch() throws Exception {
+        List<byte[]> events = new ArrayList<byte[]>();
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (int i = 0; i < 2000; i++) {
+            byte[] event = randomBytes(1 + random.nextInt(i % 100 == 0 ? 100000 : 200));
+            events.add(event);
+            writePacket(stream, event);
+        }
+
+        DirectLogFetcher fetcher = new DirectLogFetcher(1024);
+        Replayer replayer = new Replayer(stream.toByteArray(), 1 + random.nextInt(8192));
+        SocketChannel channel = replayer.connect();
+        try {
+            fetcher.start(channel);
+            for (byte[] event : events) {
+                Assert.assertTrue(fetcher.fetch());
+                Assert.assertTrue(Arrays.equals(event, fetcher.getData()));
+            }
+        } finally {
+            channel.close();
+            replayer.close();
+        }
+    }
+
+    @Test
+    public void testMultiPacket() throws Exception {
+        byte[] small = randomBytes(100);
+        byte[] big = randomBytes(DirectLogFetcher.MAX_PACKET_LENGTH + 1000);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        writePacket(stream, small);
+        writePacket(stream, big);
+        writePacket(stream, small);
+
+        DirectLogFetcher fetcher = new DirectLogFetcher();
+        Replayer replayer = new Replayer(stream.toByteArray(), 64 * 1024);
+        SocketChannel channel = replayer.connect();
+        try {
+            fetcher.start(channel);
+            Assert.assertTrue(fetcher.fetch());
+            Assert.assertTrue(Arrays.equals(small, fetcher.getData()));
+            Assert.assertTrue(fetcher.fetch());
+            Assert.assertTrue(Arrays.equals(big, fetcher.getData()));
+            Assert.assertTrue(fetcher.fetch());
+            Assert.assertTrue(Arrays.equals(small, fetcher.getData()));
+        } finally {
+            channel.close();
+            replayer.close();
+        }
+    }
+
+    @Test
+    public void testReplayThroughput() throws Exception {
+        byte[] data;
+        String file = System.getProperty("canal.dump.file");
+        if (file == null && !Boolean.getBoolean("canal.dump.benchmark")) {
+            return;
+        }
+
+        if (file != null) {
+            InputStream input = new FileInputStream(new File(file));
+            try {
+                data = IOUtils.toByteArray(input);
+            } finally {
+                IOUtils.closeQuietly(input);
+            }
+        } else {
+            // 模拟一下小事件为主的dump流
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            for (int i = 0; i < 500000; i++) {
+                writePacket(stream, randomBytes(20 + random.nextInt(200)));
+            }
+            data = stream.toByteArray();
+        }
+
+        DirectLogFetcher fetcher = new DirectLogFetcher(16384);
+        Replayer replayer = new Replayer(data, 64 * 1024);
+        SocketChannel channel = replayer.connect();
+        long start = System.currentTimeMillis();
+        long count = 0;
+        long bytes = 0;
+        try {
+            fetcher.start(channel);
+            // 最后一个packet读完之后，对端关闭会抛出异常
+            while (bytes < data.length - 1024 && fetcher.fetch()) {
+                count++;
+                bytes += fetcher.limit() + DirectLogFetcher.NET_HEADER_SIZE + 1;
+            }
+        } finally {
+            channel.close();
+            replayer.close();
+        }
+
+        long cost = Math.max(System.currentTimeMillis() - start, 1);
+        System.out.println("replay " + count + " packets , " + bytes + " bytes , cost " + cost + "ms , "
+                           + (bytes * 1000 / cost / 1024 / 1024) + "MB/s");
+    }
+
+    private byte[] randomBytes(int len) {
+        byte[] bytes = new byte[len];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * 按照mysql协议写入一个dump的packet，第一个字节为0的标记位，超过MAX_PACKET_LENGTH时切分为多个packet
+     */
+    private void writePacket(ByteArrayOutputStream stream, byte[] event) {
+        byte[] payload = new byte[event.length + 1];
+        System.arraycopy(event, 0, payload, 1, event.length);
+        int seq = 0;
+        int offset = 0;
+        int len;
+        do {
+            len = Math.min(DirectLogFetcher.MAX_PACKET_LENGTH, payload.length - offset);
+            stream.write(len & 0xff);
+            stream.write((len >>> 8) & 0xff);
+            stream.write((len >>> 16) & 0xff);
+            stream.write(seq++ & 0xff);
+            stream.write(payload, offset, len);
+            offset += len;
+        } while (len == DirectLogFetcher.MAX_PACKET_LENGTH);
+    }
+
+    /**
+     * 本地socket服务端，按照指定的chunk大小写出数据，模拟网络分包
+     */
+    private static class Replayer extends Thread {
+
+        private final byte[]       data;
+        private final int          chunkSize;
+        private final ServerSocket serverSocket;
+
+        public Replayer(byte[] data, int chunkSize) throws IOException{
+            this.data = data;
+            this.chunkSize = chunkSize;
+            this.serverSocket = new ServerSocket(0);
+            setDaemon(true);
+        }
+
+        public SocketChannel connect() throws IOException {
+            start();
+            return SocketChannel.open(new InetSocketAddress("127.0.0.1", serverSocket.getLocalPort()));
+        }
+
+        public void run() {
+            Socket socket = null;
+            try {
+                socket = serverSocket.accept();
+                OutputStream output = socket.getOutputStream();
+                for (int offset = 0; offset < data.length; offset += chunkSize) {
+                    output.write(data, offset, Math.min(chunkSize, data.length - offset));
+                    output.flush();
+                }
+            } catch (IOException e) {
+                // 客户端提前关闭
+            } finally {
+                IOUtils.closeQuietly(socket);
+            }
+        }
+
+        public void close() throws IOException {
+            serverSocket.close();
+        }
+    }
+}
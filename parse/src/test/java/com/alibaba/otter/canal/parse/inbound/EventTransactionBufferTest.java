@@ -2,12 +2,14 @@ package com.alibaba.otter.canal.parse.inbound;
 
 import java.text.MessageFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.alibaba.otter.canal.parse.inbound.EventTransactionBuffer.TransactionChunk;
 import com.alibaba.otter.canal.parse.inbound.EventTransactionBuffer.TransactionFlushCallback;
 import com.alibaba.otter.canal.protocol.CanalEntry;
 import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
@@ -116,6 +118,59 @@ public class EventTransactionBufferTest {
         buffer.stop();
     }
 
+    @Test
+    public void testStreaming() {
+        final int bufferSize = 8;
+        final List<Integer> sizes = new ArrayList<Integer>();
+        final List<Boolean> partials = new ArrayList<Boolean>();
+        final List<Long> offsets = new ArrayList<Long>();
+        final List<List<Entry>> chunks = new ArrayList<List<Entry>>();
+        EventTransactionBuffer buffer = new EventTransactionBuffer();
+        buffer.setBufferSize(bufferSize);
+        buffer.setStreaming(true);
+        buffer.setFlushCallback(new TransactionFlushCallback() {
+
+            public void flush(List<Entry> transaction) throws InterruptedException {
+                sizes.add(transaction.size());
+                partials.add(((TransactionChunk) transaction).isPartial());
+                for (Entry entry : transaction) {
+                    offsets.add(entry.getHeader().getLogfileOffset());
+                }
+                chunks.add(transaction);
+            }
+        });
+        buffer.start();
+
+        try {
+            // 一个20条数据的大事务，以及一个正好在buffer写满时结束的事务
+            long offset = 0;
+            buffer.add(buildEntry("1", offset++, 40L, EntryType.TRANSACTIONBEGIN));
+            for (int i = 0; i < 18; i++) {
+                buffer.add(buildEntry("1", offset++, 40L));
+            }
+            buffer.add(buildEntry("1", offset++, 40L, EntryType.TRANSACTIONEND));
+            buffer.add(buildEntry("1", offset++, 40L, EntryType.TRANSACTIONBEGIN));
+            for (int i = 0; i < 7; i++) {
+                buffer.add(buildEntry("1", offset++, 40L));
+            }
+            buffer.add(buildEntry("1", offset++, 40L, EntryType.TRANSACTIONEND));
+
+            Assert.assertEquals("[8, 8, 4, 8, 1]", sizes.toString());
+            Assert.assertEquals("[true, true, false, true, false]", partials.toString());
+            Assert.assertEquals(offset, offsets.size());
+            for (int i = 0; i < offsets.size(); i++) {
+                Assert.assertEquals(Long.valueOf(i), offsets.get(i));
+            }
+            // 直接复用ring buffer，不做拷贝
+            Assert.assertSame(chunks.get(0), chunks.get(4));
+            Assert.assertEquals(EntryType.TRANSACTIONEND, chunks.get(4).get(0).getEntryType());
+        } catch (InterruptedException e) {
+            Assert.fail(e.getMessage());
+        }
+
+        buffer.stop();
+    }
+
     private static Entry buildEntry(String binlogFile, long offset, long timestamp) {
         Header.Builder headerBuilder = Header.newBuilder();
         headerBuilder.setLogfileName(binlogFile);
@@ -0,0 +1,187 @@
+package com.alibaba.otter.canal.parse.inbound;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.common.AbstractCanalLifeCycle;
+import com.alibaba.otter.canal.parse.exception.CanalParseException;
+import com.alibaba.otter.canal.parse.exception.TableIdNotFoundException;
+import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
+import com.alibaba.otter.canal.protocol.CanalEntry.EntryType;
+import com.alibaba.otter.canal.protocol.CanalEntry.Header;
+
+public class MultiStageCoprocessorTest {
+
+    @Test
+    public void testOrder() throws Exception {
+        final int count = 2000;
+        final List<Long> result = Collections.synchronizedList(new ArrayList<Long>());
+        final CountDownLatch latch = new CountDownLatch(count / 2);
+        MultiStageCoprocessor<Long> coprocessor = new MultiStageCoprocessor<Long>(16,
+            4,
+            new RandomDelayParser(-1L),
+            new SinkFunction<Entry>() {
+
+                public boolean sink(Entry entry) {
+                    result.add(entry.getHeader().getLogfileOffset());
+                    latch.countDown();
+                    return true;
+                }
+            },
+            "test");
+        coprocessor.start();
+        for (long i = 0; i < count; i++) {
+            Assert.assertTrue(coprocessor.publish(i));
+        }
+
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        coprocessor.stop();
+
+        // 奇数被过滤，偶数按照顺序输出
+        Assert.assertEquals(count / 2, result.size());
+        for (int i = 0; i < result.size(); i++) {
+            Assert.assertEquals(i * 2L, result.get(i).longValue());
+        }
+    }
+
+    @Test
+    public void testException() throws Exception {
+        MultiStageCoprocessor<Long> coprocessor = new MultiStageCoprocessor<Long>(4,
+            2,
+            new RandomDelayParser(10L),
+            new SinkFunction<Entry>() {
+
+                public boolean sink(Entry entry) {
+                    return true;
+                }
+            },
+            "test");
+        coprocessor.start();
+        try {
+            for (long i = 0; i < 1000; i++) {
+                coprocessor.publish(i);
+            }
+            Assert.fail();
+        } catch (CanalParseException e) {
+            // expect
+        } finally {
+            coprocessor.stop();
+        }
+    }
+
+    @Test
+    public void testExceptionWhenIdle() throws Exception {
+        MultiStageCoprocessor<Long> coprocessor = new MultiStageCoprocessor<Long>(4,
+            2,
+            new RandomDelayParser(-1L),
+            new SinkFunction<Entry>() {
+
+                public boolean sink(Entry entry) {
+                    throw new TableIdNotFoundException("not found tableId");
+                }
+            },
+            "test");
+        coprocessor.start();
+        try {
+            Assert.assertTrue(coprocessor.publish(0L));
+            try {
+                // 模拟binlog空闲时dump线程阻塞在读取上，sink出错后会被中断
+                Thread.sleep(10000);
+                Assert.fail();
+            } catch (InterruptedException e) {
+                // expect
+            }
+
+            try {
+                coprocessor.checkException();
+                Assert.fail();
+            } catch (TableIdNotFoundException e) {
+                // 保留原始的异常类型
+            }
+        } finally {
+            coprocessor.stop();
+            Thread.interrupted();
+        }
+    }
+
+    @Test
+    public void testStopWaitsForSink() throws Exception {
+        final CountDownLatch sinking = new CountDownLatch(1);
+        final AtomicBoolean completed = new AtomicBoolean(false);
+        MultiStageCoprocessor<Long> coprocessor = new MultiStageCoprocessor<Long>(4,
+            2,
+            new RandomDelayParser(-1L),
+            new SinkFunction<Entry>() {
+
+                public boolean sink(Entry entry) {
+                    sinking.countDown();
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException e) {
+                        return false;
+                    }
+                    completed.set(true);
+                    return true;
+                }
+            },
+            "test");
+        coprocessor.start();
+        Assert.assertTrue(coprocessor.publish(0L));
+        Assert.assertTrue(sinking.await(5, TimeUnit.SECONDS));
+        // stop时不中断正在sink的entry
+        coprocessor.stop();
+        Assert.assertTrue(completed.get());
+    }
+
+    private static class RandomDelayParser extends AbstractCanalLifeCycle implements MultiStageBinlogParser<Long> {
+
+        private final Random random = new Random();
+        private final long   errorAt;
+
+        public RandomDelayParser(long errorAt){
+            this.errorAt = errorAt;
+        }
+
+        public Callable<Entry> prepare(final Long event) throws CanalParseException {
+            if (event % 2 == 1) {
+                return null;
+            }
+
+            final int delay = random.nextInt(100);
+            return new Callable<Entry>() {
+
+                public Entry call() throws Exception {
+                    if (event == errorAt) {
+                        throw new CanalParseException("error at " + event);
+                    }
+                    if (delay < 5) {
+                        Thread.sleep(1);
+                    }
+                    return parse(event);
+                }
+            };
+        }
+
+        public Entry parse(Long event) throws CanalParseException {
+            Header.Builder headerBuilder = Header.newBuilder();
+            headerBuilder.setLogfileName("mysql-bin.000001");
+            headerBuilder.setLogfileOffset(event);
+            Entry.Builder entryBuilder = Entry.newBuilder();
+            entryBuilder.setHeader(headerBuilder.build());
+            entryBuilder.setEntryType(EntryType.ROWDATA);
+            return entryBuilder.build();
+        }
+
+        public void reset() {
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.alibaba.otter.canal.parse.inbound;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.parse.inbound.TableMeta.FieldMeta;
+import com.alibaba.otter.canal.parse.inbound.mysql.dbsync.TableMetaHistory;
+import com.alibaba.otter.canal.protocol.position.EntryPosition;
+
+public class TableMetaHistoryTest {
+
+    private static final String SCHEMA = "test";
+    private static final String TABLE  = "history";
+    private File                dataDir;
+
+    @Before
+    public void setUp() {
+        dataDir = new File(System.getProperty("java.io.tmpdir"), "tablemeta_" + System.currentTimeMillis());
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(dataDir);
+    }
+
+    @Test
+    public void testFindByPosition() {
+        TableMetaHistory history = new TableMetaHistory(dataDir);
+        history.start();
+        history.apply(SCHEMA, TABLE, position("mysql-bin.000001", 100L), buildTableMeta("id", "name"));
+        history.apply(SCHEMA, TABLE, position("mysql-bin.000002", 400L), buildTableMeta("id", "name", "age"));
+        history.apply(SCHEMA, TABLE, position("mysql-bin.000003", 4L), null);
+
+        Assert.assertNull(history.find(SCHEMA, TABLE, position("mysql-bin.000001", 4L)));
+        Assert.assertEquals(2, history.find(SCHEMA, TABLE, position("mysql-bin.000001", 100L)).getFileds().size());
+        Assert.assertEquals(2, history.find(SCHEMA, TABLE, position("mysql-bin.000002", 399L)).getFileds().size());
+        Assert.assertEquals(3, history.find(SCHEMA, TABLE, position("mysql-bin.000002", 400L)).getFileds().size());
+        Assert.assertEquals(3, history.find(SCHEMA, TABLE, position("mysql-bin.000002", 9999L)).getFileds().size());
+        // drop之后不存在
+        Assert.assertNull(history.find(SCHEMA, TABLE, position("mysql-bin.000003", 100L)));
+        Assert.assertNull(history.find(SCHEMA, "other", position("mysql-bin.000002", 400L)));
+        history.stop();
+    }
+
+    @Test
+    public void testRestart() {
+        TableMetaHistory history = new TableMetaHistory(dataDir);
+        history.setCheckpointThreshold(2);
+        history.start();
+        history.apply(SCHEMA, TABLE, position("mysql-bin.000001", 100L), buildTableMeta("id"));
+        history.apply(SCHEMA, TABLE, position("mysql-bin.000001", 200L), buildTableMeta("id", "name")); // 触发checkpoint
+        history.apply(SCHEMA, TABLE, position("mysql-bin.000001", 300L), buildTableMeta("id", "name", "age")); // 只在delta中
+        TableMeta same = history.find(SCHEMA, TABLE, position("mysql-bin.000001", 300L));
+        history.apply(SCHEMA, TABLE, position("mysql-bin.000001", 350L), same); // 和当前版本一致，忽略
+
+        // 模拟进程退出，不做stop
+        TableMetaHistory reload = new TableMetaHistory(dataDir);
+        reload.start();
+        Assert.assertEquals(1, reload.find(SCHEMA, TABLE, position("mysql-bin.000001", 150L)).getFileds().size());
+        Assert.assertEquals(2, reload.find(SCHEMA, TABLE, position("mysql-bin.000001", 250L)).getFileds().size());
+        TableMeta tableMeta = reload.find(SCHEMA, TABLE, position("mysql-bin.000001", 400L));
+        Assert.assertEquals(3, tableMeta.getFileds().size());
+        Assert.assertEquals("age", tableMeta.getFileds().get(2).getColumnName());
+        Assert.assertTrue(tableMeta.getFileds().get(0).isKey());
+        reload.stop();
+    }
+
+    @Test
+    public void testJournalNameOrder() {
+        TableMetaHistory history = new TableMetaHistory(dataDir);
+        history.start();
+        history.apply(SCHEMA, TABLE, position("mysql-bin.999999", 4L), buildTableMeta("id"));
+        history.apply(SCHEMA, TABLE, position("mysql-bin.1000000", 4L), buildTableMeta("id", "name"));
+
+        Assert.assertEquals(1, history.find(SCHEMA, TABLE, position("mysql-bin.999999", 100L)).getFileds().size());
+        Assert.assertEquals(2, history.find(SCHEMA, TABLE, position("mysql-bin.1000001", 100L)).getFileds().size());
+        history.stop();
+    }
+
+    private EntryPosition position(String journalName, Long position) {
+        return new EntryPosition(journalName, position, System.currentTimeMillis());
+    }
+
+    private TableMeta buildTableMeta(String... columns) {
+        List<FieldMeta> fields = new ArrayList<FieldMeta>();
+        for (int i = 0; i < columns.length; i++) {
+            FieldMeta field = new FieldMeta();
+            field.setColumnName(columns[i]);
+            field.setColumnType(i == 0 ? "bigint(20)" : "varchar(32)");
+            field.setIsNullable(i == 0 ? "NO" : "YES");
+            field.setIskey(i == 0 ? "PRI" : "");
+            fields.add(field);
+        }
+        return new TableMeta("`test`.`history`", fields);
+    }
+}
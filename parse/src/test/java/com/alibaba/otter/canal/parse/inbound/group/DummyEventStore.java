@@ -11,6 +11,7 @@ import com.alibaba.otter.canal.protocol.CanalEntry;
 import com.alibaba.otter.canal.protocol.CanalEntry.EntryType;
 import com.alibaba.otter.canal.protocol.position.Position;
 import com.alibaba.otter.canal.store.CanalEventStore;
+import com.alibaba.otter.canal.store.CanalEventStoreListener;
 import com.alibaba.otter.canal.store.CanalStoreException;
 import com.alibaba.otter.canal.store.model.Event;
 import com.alibaba.otter.canal.store.model.Events;
@@ -24,6 +25,10 @@ public class DummyEventStore implements CanalEventStore<Event> {
 
     }
 
+    public void ack(Position position, long seqId) throws CanalStoreException {
+
+    }
+
     public Events get(Position start, int batchSize) throws InterruptedException, CanalStoreException {
         return null;
     }
@@ -49,6 +54,16 @@ public class DummyEventStore implements CanalEventStore<Event> {
         return null;
     }
 
+    public boolean hasAvailable(Position start, int batchSize) throws CanalStoreException {
+        return false;
+    }
+
+    public void addListener(CanalEventStoreListener listener) {
+    }
+
+    public void removeListener(CanalEventStoreListener listener) {
+    }
+
     public boolean isStart() {
         return false;
     }
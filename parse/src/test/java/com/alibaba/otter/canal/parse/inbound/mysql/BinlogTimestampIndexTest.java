@@ -0,0 +1,114 @@
+package com.alibaba.otter.canal.parse.inbound.mysql;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.protocol.position.EntryPosition;
+
+public class BinlogTimestampIndexTest {
+
+    private File dataDir;
+
+    @Before
+    public void setUp() {
+        dataDir = new File(System.getProperty("java.io.tmpdir"), "timestamp_" + System.currentTimeMillis());
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(dataDir);
+    }
+
+    @Test
+    public void testFloor() {
+        BinlogTimestampIndex index = new BinlogTimestampIndex(dataDir);
+        index.setIndexInterval(1000L);
+        index.start();
+        // 每个文件10000字节，每100字节一个事务，时间戳每个事务加1
+        long timestamp = 1000L;
+        for (int file = 1; file <= 5; file++) {
+            for (long position = 4L; position < 10000L; position += 100L) {
+                index.mark(journalName(file), position, timestamp++);
+            }
+        }
+
+        Assert.assertEquals(5, index.getFileCount());
+        // 比最小的时间戳还小
+        Assert.assertNull(index.floor(1000L));
+        assertPosition(index.floor(1001L), 1, 4L, 1000L);
+
+        // mysql-bin.000003的第一个事务时间戳为1200
+        assertPosition(index.floor(1200L), 2, 9904L, 1199L); // 上一个文件的最后一个位点
+        assertPosition(index.floor(1201L), 3, 4L, 1200L);
+        assertPosition(index.floor(1215L), 3, 1004L, 1210L); // 稀疏索引，间隔1000字节
+        assertPosition(index.floor(Long.MAX_VALUE), 5, 9004L, 1490L);
+        index.stop();
+    }
+
+    @Test
+    public void testRestartAndPrune() {
+        BinlogTimestampIndex index = new BinlogTimestampIndex(dataDir);
+        index.setIndexInterval(1000L);
+        index.setCheckpointThreshold(3);
+        index.start();
+        index.mark(journalName(1), 4L, 100L);
+        index.mark(journalName(1), 1004L, 150L);
+        index.mark(journalName(1), 1504L, 180L); // 间隔不够
+        index.mark(journalName(2), 4L, 300L); // 补充mysql-bin.000001的最后一个位点，触发checkpoint
+        index.mark(journalName(2), 504L, 400L);
+        index.mark(journalName(1), 1004L, 150L); // 从旧位点重新dump，补充mysql-bin.000002的最后一个位点，已经记录过的部分忽略
+        index.stop();
+
+        index = new BinlogTimestampIndex(dataDir);
+        index.start();
+        Assert.assertEquals(2, index.getFileCount());
+        assertPosition(index.floor(150L), 1, 4L, 100L);
+        assertPosition(index.floor(200L), 1, 1504L, 180L);
+        assertPosition(index.floor(301L), 2, 4L, 300L);
+        assertPosition(index.floor(401L), 2, 504L, 400L);
+
+        // mysql-bin.000001已经被purge
+        index.prune(journalName(2));
+        Assert.assertEquals(1, index.getFileCount());
+        Assert.assertNull(index.floor(250L));
+        index.stop();
+
+        index = new BinlogTimestampIndex(dataDir);
+        index.start();
+        Assert.assertEquals(1, index.getFileCount());
+        index.stop();
+    }
+
+    @Test
+    public void testMaxFileCount() {
+        BinlogTimestampIndex index = new BinlogTimestampIndex(dataDir);
+        index.setMaxFileCount(3);
+        index.start();
+        for (int file = 999998; file <= 1000002; file++) {
+            index.mark(journalName(file), 4L, (file - 999990) * 10L);
+        }
+
+        // mysql-bin.999999之后变为7位，按照数字顺序淘汰最早的文件
+        Assert.assertEquals(3, index.getFileCount());
+        Assert.assertNull(index.floor(100L));
+        assertPosition(index.floor(101L), 1000000, 4L, 100L);
+        assertPosition(index.floor(Long.MAX_VALUE), 1000002, 4L, 120L);
+        index.stop();
+    }
+
+    private String journalName(int file) {
+        return "mysql-bin." + String.format("%06d", file);
+    }
+
+    private void assertPosition(EntryPosition position, int file, long offset, long timestamp) {
+        Assert.assertNotNull(position);
+        Assert.assertEquals(journalName(file), position.getJournalName());
+        Assert.assertEquals(Long.valueOf(offset), position.getPosition());
+        Assert.assertEquals(Long.valueOf(timestamp), position.getTimestamp());
+    }
+}
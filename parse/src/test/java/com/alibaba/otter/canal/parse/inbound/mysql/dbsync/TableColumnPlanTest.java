@@ -0,0 +1,82 @@
+package com.alibaba.otter.canal.parse.inbound.mysql.dbsync;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.parse.inbound.TableMeta;
+import com.alibaba.otter.canal.parse.inbound.TableMeta.FieldMeta;
+import com.taobao.tddl.dbsync.binlog.LogBuffer;
+import com.taobao.tddl.dbsync.binlog.LogEvent;
+import com.taobao.tddl.dbsync.binlog.event.FormatDescriptionLogEvent;
+import com.taobao.tddl.dbsync.binlog.event.LogHeader;
+import com.taobao.tddl.dbsync.binlog.event.TableMapLogEvent;
+
+public class TableColumnPlanTest {
+
+    @Test
+    public void testRDSNoPrimaryKey() {
+        // rds无主键表，binlog中多一个隐藏的bigint主键列，table meta中没有该列
+        TableMapLogEvent table = buildTableMap(LogEvent.MYSQL_TYPE_LONG, LogEvent.MYSQL_TYPE_VARCHAR,
+            LogEvent.MYSQL_TYPE_LONGLONG);
+        List<FieldMeta> fields = new ArrayList<FieldMeta>();
+        fields.add(buildField("id", "int(11)"));
+        fields.add(buildField("name", "varbinary(64)"));
+        TableMeta tableMeta = new TableMeta("test.rds", fields);
+
+        TableColumnPlan plan = new TableColumnPlan(table, tableMeta, false, true);
+        Assert.assertEquals(3, plan.columns.length);
+        Assert.assertEquals("id", plan.columns[0].name);
+        Assert.assertFalse(plan.columns[0].skip);
+        Assert.assertEquals("name", plan.columns[1].name);
+        Assert.assertTrue(plan.columns[1].binary);
+        Assert.assertTrue(plan.columns[2].skip);
+        Assert.assertNull(plan.columns[2].name);
+        Assert.assertTrue(plan.matches(table, tableMeta, false, true));
+        Assert.assertFalse(plan.matches(table, tableMeta, false, false));
+    }
+
+    private FieldMeta buildField(String name, String type) {
+        FieldMeta fieldMeta = new FieldMeta();
+        fieldMeta.setColumnName(name);
+        fieldMeta.setColumnType(type);
+        fieldMeta.setIsNullable("YES");
+        return fieldMeta;
+    }
+
+    private TableMapLogEvent buildTableMap(int... types) {
+        FormatDescriptionLogEvent descriptionEvent = FormatDescriptionLogEvent.FORMAT_DESCRIPTION_EVENT_5_x;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[descriptionEvent.getCommonHeaderLen()], 0, descriptionEvent.getCommonHeaderLen());
+        out.write(new byte[] { 1, 0, 0, 0, 0, 0 }, 0, 6); // table id
+        out.write(new byte[] { 1, 0 }, 0, 2); // flags
+        writeName(out, "test");
+        writeName(out, "rds");
+        out.write(types.length);
+        ByteArrayOutputStream meta = new ByteArrayOutputStream();
+        for (int type : types) {
+            out.write(type);
+            if (type == LogEvent.MYSQL_TYPE_VARCHAR) {
+                meta.write(64);
+                meta.write(0);
+            }
+        }
+        out.write(meta.size());
+        out.write(meta.toByteArray(), 0, meta.size());
+        out.write(0xff); // null bits
+
+        byte[] data = out.toByteArray();
+        return new TableMapLogEvent(new LogHeader(LogEvent.TABLE_MAP_EVENT),
+            new LogBuffer(data, 0, data.length),
+            descriptionEvent);
+    }
+
+    private void writeName(ByteArrayOutputStream out, String name) {
+        out.write(name.length());
+        out.write(name.getBytes(), 0, name.length());
+        out.write(0);
+    }
+}
@@ -0,0 +1,256 @@
+package com.alibaba.otter.canal.parse.inbound.mysql.dbsync;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.filter.aviater.AviaterRegexFilter;
+import com.alibaba.otter.canal.parse.driver.mysql.packets.server.FieldPacket;
+import com.alibaba.otter.canal.parse.driver.mysql.packets.server.ResultSetPacket;
+import com.alibaba.otter.canal.parse.inbound.TableMeta;
+import com.alibaba.otter.canal.parse.inbound.mysql.MysqlConnection;
+
+public class TableMetaCacheTest {
+
+    private static final List<String> DESC_COLUMNS    = Arrays.asList(TableMetaCache.COLUMN_NAME,
+                                                          TableMetaCache.COLUMN_TYPE,
+                                                          TableMetaCache.IS_NULLABLE,
+                                                          TableMetaCache.COLUMN_KEY,
+                                                          TableMetaCache.COLUMN_DEFAULT,
+                                                          TableMetaCache.EXTRA);
+    private static final List<String> PRELOAD_COLUMNS = Arrays.asList(TableMetaCache.TABLE_SCHEMA,
+                                                          TableMetaCache.TABLE_NAME,
+                                                          TableMetaCache.COLUMN_NAME,
+                                                          TableMetaCache.COLUMN_TYPE,
+                                                          TableMetaCache.IS_NULLABLE,
+                                                          TableMetaCache.COLUMN_KEY,
+                                                          TableMetaCache.COLUMN_DEFAULT,
+                                                          TableMetaCache.EXTRA);
+
+    @Test
+    public void testPreload() throws Exception {
+        FakeConnection connection = new FakeConnection();
+        connection.preload = new String[][] { { "test", "a", "id", "int(11)" }, { "test", "a", "name", "varchar(32)" },
+                { "test", "b", "id", "int(11)" }, { "other", "c", "id", "int(11)" }, { "test", "d", "id", "int(11)" },
+                { "test", "d", "value", "text" } };
+        connection.desc("`test`.`b`", "id", "bigint(20)");
+        TableMetaCache cache = new TableMetaCache(connection);
+
+        int tables = cache.preload(new AviaterRegexFilter("test\\..*"), new AviaterRegexFilter("test\\.b"));
+        // other.c不满足filter，test.b在黑名单中
+        Assert.assertEquals(2, tables);
+        Assert.assertEquals(2, cache.getPreloadCount());
+
+        // 相邻的行按照schema + table分组，列的顺序不变
+        TableMeta a = cache.getTableMeta("test", "a");
+        Assert.assertEquals("`test`.`a`", a.getFullName());
+        Assert.assertEquals(2, a.getFileds().size());
+        Assert.assertEquals("id", a.getFileds().get(0).getColumnName());
+        Assert.assertEquals("name", a.getFileds().get(1).getColumnName());
+        TableMeta d = cache.getTableMeta("test", "d");
+        Assert.assertEquals(2, d.getFileds().size());
+        Assert.assertEquals("text", d.getFileds().get(1).getColumnType());
+        Assert.assertEquals(0, connection.descCount.get());
+
+        // 没有预加载的表desc获取
+        Assert.assertEquals("bigint(20)", cache.getTableMeta("test", "b").getFileds().get(0).getColumnType());
+        Assert.assertEquals(1, connection.descCount.get());
+        Assert.assertEquals(1, cache.getMissCount());
+        cache.close();
+    }
+
+    @Test
+    public void testPreloadSql() {
+        // 精确的表名和前缀匹配下推到查询中
+        String sql = TableMetaCache.buildPreloadSql(new AviaterRegexFilter("test\\.a,test\\..*,other\\.t_.*,tmp.*"));
+        Assert.assertTrue(sql.contains("(TABLE_SCHEMA = 'test' and TABLE_NAME = 'a')"));
+        Assert.assertTrue(sql.contains("TABLE_SCHEMA = 'test'"));
+        Assert.assertTrue(sql.contains("(TABLE_SCHEMA = 'other' and TABLE_NAME like 't\\_%')"));
+        Assert.assertTrue(sql.contains("TABLE_SCHEMA like 'tmp%'"));
+        Assert.assertTrue(sql.endsWith(" order by TABLE_SCHEMA,TABLE_NAME,ORDINAL_POSITION"));
+
+        // 包含其他正则时在客户端过滤
+        Assert.assertFalse(TableMetaCache.buildPreloadSql(new AviaterRegexFilter("test\\.a,.*\\.b[0-9]"))
+            .contains(" and ("));
+        Assert.assertFalse(TableMetaCache.buildPreloadSql(null).contains(" and ("));
+    }
+
+    @Test
+    public void testCopyFrom() throws Exception {
+        FakeConnection connection = new FakeConnection();
+        connection.preload = new String[][] { { "test", "a", "id", "int(11)" } };
+        TableMetaCache cache = new TableMetaCache(connection);
+        Assert.assertEquals(1, cache.preload(null, null));
+        cache.close();
+
+        // 重连时沿用上一次的结果，不需要再次preload或者desc
+        TableMetaCache reconnected = new TableMetaCache(connection);
+        reconnected.copyFrom(cache);
+        Assert.assertEquals("int(11)", reconnected.getTableMeta("test", "a").getFileds().get(0).getColumnType());
+        Assert.assertEquals(0, connection.descCount.get());
+        reconnected.close();
+    }
+
+    @Test
+    public void testAsyncRefresh() throws Exception {
+        FakeConnection connection = new FakeConnection();
+        connection.desc("`test`.`a`", "id", "int(11)");
+        connection.forked.desc("`test`.`a`", "id", "bigint(20)");
+        TableMetaCache cache = new TableMetaCache(connection);
+        cache.enableAsyncRefresh("test");
+
+        Assert.assertEquals("int(11)", cache.getTableMeta("test", "a").getFileds().get(0).getColumnType());
+        cache.refreshTableMeta("test", "a", null);
+        // 使用异步刷新的结果，不在解析线程的链接上desc
+        Assert.assertEquals("bigint(20)", cache.getTableMeta("test", "a").getFileds().get(0).getColumnType());
+        Assert.assertEquals(1, connection.descCount.get());
+        Assert.assertEquals(1, connection.forked.descCount.get());
+        Assert.assertEquals(1, cache.getRefreshCount());
+
+        // 刷新的结果写回cache
+        Assert.assertEquals("bigint(20)", cache.getTableMeta("test", "a").getFileds().get(0).getColumnType());
+        Assert.assertEquals(1, connection.forked.descCount.get());
+        cache.close();
+    }
+
+    @Test
+    public void testAsyncRefreshFailed() throws Exception {
+        FakeConnection connection = new FakeConnection();
+        connection.desc("`test`.`a`", "id", "int(11)");
+        connection.forked.failed = true;
+        TableMetaCache cache = new TableMetaCache(connection);
+        cache.enableAsyncRefresh("test");
+
+        cache.refreshTableMeta("test", "a", null);
+        // 异步刷新失败，退化为同步desc
+        Assert.assertEquals("int(11)", cache.getTableMeta("test", "a").getFileds().get(0).getColumnType());
+        Assert.assertEquals(1, connection.descCount.get());
+        cache.close();
+    }
+
+    @Test
+    public void testAsyncRefreshCanceled() throws Exception {
+        FakeConnection connection = new FakeConnection();
+        connection.desc("`test`.`a`", "id", "int(11)");
+        connection.forked.desc("`test`.`a`", "id", "bigint(20)");
+        connection.forked.block = new CountDownLatch(1);
+        TableMetaCache cache = new TableMetaCache(connection);
+        cache.enableAsyncRefresh("test");
+
+        try {
+            cache.refreshTableMeta("test", "a", null);
+            Assert.assertTrue(connection.forked.blocked.await(5, TimeUnit.SECONDS));
+            // 不使用缓存时取消异步刷新，同步desc
+            Assert.assertEquals("int(11)", cache.getTableMeta("test", "a", false).getFileds().get(0).getColumnType());
+            Assert.assertEquals(1, connection.descCount.get());
+
+            cache.refreshTableMeta("test", "a", null);
+            cache.clearTableMeta("test", "a");
+            // 被取消的刷新结果不会写回cache
+            connection.forked.block.countDown();
+            Assert.assertEquals("int(11)", cache.getTableMeta("test", "a").getFileds().get(0).getColumnType());
+            Assert.assertEquals(2, connection.descCount.get());
+        } finally {
+            connection.forked.block.countDown();
+            cache.close();
+        }
+    }
+
+    /**
+     * 根据预设的结果返回desc/preload查询，不需要真实的mysql
+     */
+    private static class FakeConnection extends MysqlConnection {
+
+        private Map<String, String[]> tables    = new HashMap<String, String[]>();
+        private String[][]            preload   = new String[0][];
+        private AtomicInteger         descCount = new AtomicInteger(0);
+        private volatile boolean      failed    = false;
+        private CountDownLatch        block;
+        private CountDownLatch        blocked   = new CountDownLatch(1);
+        private FakeConnection        forked;
+
+        public FakeConnection(){
+            this(true);
+        }
+
+        private FakeConnection(boolean fork){
+            if (fork) {
+                forked = new FakeConnection(false);
+            }
+        }
+
+        public void desc(String fullName, String column, String type) {
+            tables.put(fullName, new String[] { column, type });
+        }
+
+        public ResultSetPacket query(String cmd) throws IOException {
+            if (cmd.startsWith("desc ")) {
+                if (block != null) {
+                    blocked.countDown();
+                    try {
+                        block.await();
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                }
+                if (failed) {
+                    throw new IOException("desc failed");
+                }
+
+                descCount.incrementAndGet();
+                String[] column = tables.get(cmd.substring("desc ".length()));
+                List<String> values = new ArrayList<String>();
+                values.addAll(Arrays.asList(column[0], column[1], "YES", "", null, ""));
+                return buildPacket(DESC_COLUMNS, values);
+            } else if (cmd.startsWith("select TABLE_SCHEMA")) {
+                List<String> values = new ArrayList<String>();
+                for (String[] row : preload) {
+                    values.addAll(Arrays.asList(row[0], row[1], row[2], row[3], "YES", "", null, ""));
+                }
+                return buildPacket(PRELOAD_COLUMNS, values);
+            } else {
+                return new ResultSetPacket();
+            }
+        }
+
+        public MysqlConnection fork() {
+            return forked;
+        }
+
+        public void connect() throws IOException {
+        }
+
+        public void reconnect() throws IOException {
+        }
+
+        public void disconnect() throws IOException {
+        }
+
+        public boolean isConnected() {
+            return true;
+        }
+
+        private ResultSetPacket buildPacket(List<String> columns, List<String> values) {
+            List<FieldPacket> fields = new ArrayList<FieldPacket>();
+            for (String column : columns) {
+                FieldPacket field = new FieldPacket();
+                field.setOriginalName(column);
+                fields.add(field);
+            }
+
+            ResultSetPacket packet = new ResultSetPacket();
+            packet.setFieldDescriptors(fields);
+            packet.setFieldValues(values);
+            return packet;
+        }
+    }
+}
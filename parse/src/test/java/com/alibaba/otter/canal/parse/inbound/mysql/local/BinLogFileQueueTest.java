@@ -0,0 +1,50 @@
+package com.alibaba.otter.canal.parse.inbound.mysql.local;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BinLogFileQueueTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("binlog", "");
+        directory.delete();
+        directory.mkdirs();
+        new File(directory, "mysql-bin.000001").createNewFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void testNewFile() throws Exception {
+        BinLogFileQueue queue = new BinLogFileQueue(directory);
+        try {
+            File first = queue.getNextFile(null);
+            Assert.assertEquals("mysql-bin.000001", first.getName());
+            Assert.assertNull(queue.waitForNextFile(first, 100, TimeUnit.MILLISECONDS));
+
+            new File(directory, "mysql-bin.000002").createNewFile();
+            // 目录监听生效时不需要等到10秒一次的定时扫描
+            File next = null;
+            long deadline = System.currentTimeMillis() + 5000;
+            while (next == null && System.currentTimeMillis() < deadline) {
+                next = queue.waitForNextFile(first, 500, TimeUnit.MILLISECONDS);
+            }
+            Assert.assertNotNull(next);
+            Assert.assertEquals("mysql-bin.000002", next.getName());
+        } finally {
+            queue.destory();
+        }
+    }
+}
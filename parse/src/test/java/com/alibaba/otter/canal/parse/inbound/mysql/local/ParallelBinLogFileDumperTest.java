@@ -0,0 +1,173 @@
+package com.alibaba.otter.canal.parse.inbound.mysql.local;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.common.AbstractCanalLifeCycle;
+import com.alibaba.otter.canal.parse.exception.CanalParseException;
+import com.alibaba.otter.canal.parse.inbound.BinlogParser;
+import com.alibaba.otter.canal.parse.inbound.SinkFunction;
+import com.alibaba.otter.canal.parse.inbound.mysql.local.ParallelBinLogFileDumper.BinlogParserFactory;
+import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
+import com.alibaba.otter.canal.protocol.CanalEntry.EntryType;
+import com.alibaba.otter.canal.protocol.CanalEntry.Header;
+import com.taobao.tddl.dbsync.binlog.FileLogFetcher;
+import com.taobao.tddl.dbsync.binlog.LogContext;
+import com.taobao.tddl.dbsync.binlog.LogDecoder;
+import com.taobao.tddl.dbsync.binlog.LogEvent;
+import com.taobao.tddl.dbsync.binlog.LogPosition;
+import com.taobao.tddl.dbsync.binlog.event.RotateLogEvent;
+
+public class ParallelBinLogFileDumperTest {
+
+    private List<File> files;
+
+    @Before
+    public void setUp() {
+        URL url = Thread.currentThread().getContextClassLoader().getResource("dummy.txt");
+        File directory = new File(new File(url.getFile()).getParent() + "/binlog");
+        files = Arrays.asList(new File(directory, "mysql-bin.000001"), new File(directory, "mysql-bin.000002"));
+    }
+
+    @Test
+    public void testOrder() throws Exception {
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < files.size(); i++) {
+            serialDump(files.get(i), i == 0 ? 6163L : 4L, expected);
+        }
+
+        final List<String> result = new ArrayList<String>();
+        ParallelBinLogFileDumper dumper = new ParallelBinLogFileDumper(2, 4, 16 * 1024, new SimpleParserFactory(), "test");
+        Assert.assertTrue(dumper.dump(files, 6163L, new SinkFunction<Entry>() {
+
+            public boolean sink(Entry entry) {
+                result.add(entry.getHeader().getLogfileName() + ":" + entry.getHeader().getLogfileOffset());
+                return true;
+            }
+        }));
+
+        // 并行解析的输出和串行解析完全一致
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(expected, result);
+    }
+
+    @Test
+    public void testSinkStop() throws Exception {
+        final List<Entry> result = new ArrayList<Entry>();
+        ParallelBinLogFileDumper dumper = new ParallelBinLogFileDumper(2, 1, 16 * 1024, new SimpleParserFactory(), "test");
+        Assert.assertFalse(dumper.dump(files, 4L, new SinkFunction<Entry>() {
+
+            public boolean sink(Entry entry) {
+                result.add(entry);
+                return result.size() < 10;
+            }
+        }));
+        Assert.assertEquals(10, result.size());
+    }
+
+    @Test
+    public void testException() throws Exception {
+        ParallelBinLogFileDumper dumper = new ParallelBinLogFileDumper(2, 4, 16 * 1024, new BinlogParserFactory() {
+
+            public BinlogParser<LogEvent> create() {
+                return new SimpleParser() {
+
+                    public Entry parse(LogEvent event) throws CanalParseException {
+                        if (event.getHeader().getType() == LogEvent.QUERY_EVENT) {
+                            throw new CanalParseException("error at " + event.getHeader().getLogPos());
+                        }
+                        return super.parse(event);
+                    }
+                };
+            }
+
+            public void destroy(BinlogParser<LogEvent> parser) {
+            }
+        }, "test");
+
+        try {
+            dumper.dump(files, 4L, new SinkFunction<Entry>() {
+
+                public boolean sink(Entry entry) {
+                    return true;
+                }
+            });
+            Assert.fail();
+        } catch (CanalParseException e) {
+            // expect
+        }
+    }
+
+    private void serialDump(File file, long position, List<String> result) throws Exception {
+        SimpleParser parser = new SimpleParser();
+        FileLogFetcher fetcher = new FileLogFetcher(16 * 1024);
+        LogDecoder decoder = new LogDecoder(LogEvent.UNKNOWN_EVENT, LogEvent.ENUM_END_EVENT);
+        LogContext context = new LogContext();
+        fetcher.open(file, position);
+        context.setLogPosition(new LogPosition(file.getName(), position));
+        parser.parse(new RotateLogEvent(file.getName(), position));
+        while (fetcher.fetch()) {
+            LogEvent event;
+            while ((event = decoder.decode(fetcher, context)) != null) {
+                Entry entry = parser.parse(event);
+                if (entry != null) {
+                    result.add(entry.getHeader().getLogfileName() + ":" + entry.getHeader().getLogfileOffset());
+                }
+            }
+        }
+        fetcher.close();
+    }
+
+    private static class SimpleParserFactory implements BinlogParserFactory {
+
+        public BinlogParser<LogEvent> create() {
+            return new SimpleParser();
+        }
+
+        public void destroy(BinlogParser<LogEvent> parser) {
+        }
+    }
+
+    /**
+     * 每个query/rows事件输出一个entry，记录文件名和位点
+     */
+    private static class SimpleParser extends AbstractCanalLifeCycle implements BinlogParser<LogEvent> {
+
+        private String logfileName;
+
+        public Entry parse(LogEvent event) throws CanalParseException {
+            switch (event.getHeader().getType()) {
+                case LogEvent.ROTATE_EVENT:
+                    logfileName = ((RotateLogEvent) event).getFilename();
+                    return null;
+                case LogEvent.QUERY_EVENT:
+                case LogEvent.XID_EVENT:
+                case LogEvent.WRITE_ROWS_EVENT_V1:
+                case LogEvent.UPDATE_ROWS_EVENT_V1:
+                case LogEvent.DELETE_ROWS_EVENT_V1:
+                case LogEvent.WRITE_ROWS_EVENT:
+                case LogEvent.UPDATE_ROWS_EVENT:
+                case LogEvent.DELETE_ROWS_EVENT:
+                    Header.Builder headerBuilder = Header.newBuilder();
+                    headerBuilder.setLogfileName(logfileName);
+                    headerBuilder.setLogfileOffset(event.getHeader().getLogPos() - event.getHeader().getEventLen());
+                    Entry.Builder entryBuilder = Entry.newBuilder();
+                    entryBuilder.setHeader(headerBuilder.build());
+                    entryBuilder.setEntryType(EntryType.ROWDATA);
+                    return entryBuilder.build();
+                default:
+                    return null;
+            }
+        }
+
+        public void reset() {
+        }
+    }
+}
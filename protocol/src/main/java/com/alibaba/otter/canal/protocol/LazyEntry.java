@@ -0,0 +1,154 @@
+package com.alibaba.otter.canal.protocol;
+
+import java.io.IOException;
+
+import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
+import com.alibaba.otter.canal.protocol.CanalEntry.EntryType;
+import com.alibaba.otter.canal.protocol.CanalEntry.Header;
+import com.alibaba.otter.canal.protocol.CanalEntry.RowChange;
+import com.alibaba.otter.canal.protocol.exception.CanalClientException;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.WireFormat;
+
+/**
+ * 延迟反序列化的Entry，基于entry序列化之后的数据
+ *
+ * <pre>
+ * 1. getHeader/getEntryType只解析header和entryType字段，storeValue只记录位置，不做复制
+ * 2. getStoreValue/getRowChange直接基于原始数据的切片，不需要先构造完整的Entry
+ * 3. getEntry才做完整的反序列化，结果会被缓存
+ * </pre>
+ *
+ * 非线程安全
+ *
+ * @author yzy
+ * @version 1.0.24
+ */
+public class LazyEntry {
+
+    private ByteString rawEntry;
+    private Entry      entry;
+    private Header     header;
+    private EntryType  entryType;
+    private int        storeValueOffset = -1;
+    private int        storeValueLength = 0;
+
+    public LazyEntry(ByteString rawEntry){
+        this.rawEntry = rawEntry;
+    }
+
+    public LazyEntry(Entry entry){
+        this.entry = entry;
+    }
+
+    public Header getHeader() {
+        if (header == null) {
+            if (entry != null) {
+                header = entry.getHeader();
+            } else {
+                parsePartial();
+            }
+        }
+        return header;
+    }
+
+    public EntryType getEntryType() {
+        if (entryType == null) {
+            if (entry != null) {
+                entryType = entry.getEntryType();
+            } else {
+                parsePartial();
+            }
+        }
+        return entryType;
+    }
+
+    /**
+     * 返回storeValue，基于原始数据的切片，不做复制
+     */
+    public ByteString getStoreValue() {
+        if (entry != null) {
+            return entry.getStoreValue();
+        }
+
+        getHeader();
+        if (storeValueOffset < 0) {
+            return ByteString.EMPTY;
+        }
+        return rawEntry.substring(storeValueOffset, storeValueOffset + storeValueLength);
+    }
+
+    /**
+     * 解析storeValue为RowChange，每次调用都会重新解析，需要时调用方自行缓存
+     */
+    public RowChange getRowChange() {
+        try {
+            return RowChange.parseFrom(getStoreValue());
+        } catch (InvalidProtocolBufferException e) {
+            throw new CanalClientException("parse RowChange failed", e);
+        }
+    }
+
+    public Entry getEntry() {
+        if (entry == null) {
+            try {
+                entry = Entry.parseFrom(rawEntry);
+            } catch (InvalidProtocolBufferException e) {
+                throw new CanalClientException("parse Entry failed", e);
+            }
+        }
+        return entry;
+    }
+
+    public ByteString getRawEntry() {
+        if (rawEntry == null) {
+            rawEntry = entry.toByteString();
+        }
+        return rawEntry;
+    }
+
+    /**
+     * 只解析header和entryType，跳过storeValue
+     */
+    private void parsePartial() {
+        Header.Builder headerBuilder = Header.newBuilder();
+        EntryType type = EntryType.ROWDATA; // proto中的默认值
+        try {
+            CodedInputStream input = rawEntry.newCodedInput();
+            while (true) {
+                int tag = input.readTag();
+                if (tag == 0) {
+                    break;
+                }
+
+                int fieldNumber = WireFormat.getTagFieldNumber(tag);
+                int wireType = WireFormat.getTagWireType(tag);
+                if (fieldNumber == Entry.HEADER_FIELD_NUMBER && wireType == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+                    int limit = input.pushLimit(input.readRawVarint32());
+                    headerBuilder.mergeFrom(input);
+                    input.popLimit(limit);
+                } else if (fieldNumber == Entry.ENTRYTYPE_FIELD_NUMBER && wireType == WireFormat.WIRETYPE_VARINT) {
+                    EntryType value = EntryType.valueOf(input.readEnum());
+                    if (value != null) {
+                        type = value;
+                    }
+                } else if (fieldNumber == Entry.STOREVALUE_FIELD_NUMBER
+                           && wireType == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+                    storeValueLength = input.readRawVarint32();
+                    storeValueOffset = input.getTotalBytesRead();
+                    input.skipRawBytes(storeValueLength);
+                } else if (!input.skipField(tag)) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            throw new CanalClientException("parse Entry header failed", e);
+        }
+
+        header = headerBuilder.build();
+        entryType = type;
+    }
+
+}
@@ -1,5 +1,7 @@
 package com.alibaba.otter.canal.protocol;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
@@ -8,6 +10,7 @@ import org.apache.commons.lang.builder.ToStringBuilder;
 
 import com.alibaba.otter.canal.common.utils.CanalToStringStyle;
 import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
+import com.google.protobuf.ByteString;
 
 /**
  * @author zebin.xuzb @ 2012-6-19
@@ -15,10 +18,12 @@ import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
  */
 public class Message implements Serializable {
 
-    private static final long      serialVersionUID = 1234034768477580009L;
+    private static final long          serialVersionUID = 1234034768477580009L;
 
-    private long                   id;
-    private List<CanalEntry.Entry> entries          = new ArrayList<CanalEntry.Entry>();
+    private long                       id;
+    private List<CanalEntry.Entry>     entries          = new ArrayList<CanalEntry.Entry>();
+    private transient List<ByteString> rawEntries;                                           // entries序列化之后的数据，server端输出时直接使用
+    private transient List<LazyEntry>  lazyEntries;                                          // 延迟反序列化的entries
 
     public Message(long id, List<Entry> entries){
         this.id = id;
@@ -29,6 +34,22 @@ public class Message implements Serializable {
         this.id = id;
     }
 
+    private Message(long id, List<ByteString> rawEntries, boolean lazyParse){
+        this.id = id;
+        this.rawEntries = rawEntries == null ? new ArrayList<ByteString>() : rawEntries;
+        this.entries = null;
+        if (!lazyParse) {
+            getEntries();
+        }
+    }
+
+    /**
+     * 基于序列化之后的数据构造，lazyParse为true时entries延迟到第一次访问时才反序列化
+     */
+    public static Message fromRawEntries(long id, List<ByteString> rawEntries, boolean lazyParse) {
+        return new Message(id, rawEntries, lazyParse);
+    }
+
     public long getId() {
         return id;
     }
@@ -38,19 +59,65 @@ public class Message implements Serializable {
     }
 
     public List<Entry> getEntries() {
+        if (entries == null && rawEntries != null) {
+            List<Entry> result = new ArrayList<Entry>();
+            for (LazyEntry entry : getLazyEntries()) {
+                result.add(entry.getEntry());
+            }
+            entries = result;
+        }
         return entries;
     }
 
     public void setEntries(List<CanalEntry.Entry> entries) {
         this.entries = entries;
+        this.rawEntries = null;
+        this.lazyEntries = null;
     }
 
     public void addEntry(CanalEntry.Entry entry) {
-        this.entries.add(entry);
+        getEntries().add(entry);
+        // entries已经变化，序列化之后的数据不再一致
+        rawEntries = null;
+        lazyEntries = null;
+    }
+
+    public List<ByteString> getRawEntries() {
+        return rawEntries;
+    }
+
+    public void setRawEntries(List<ByteString> rawEntries) {
+        this.rawEntries = rawEntries;
+    }
+
+    /**
+     * 返回延迟反序列化的entries，只关心header的场景可以避免解析完整的Entry
+     */
+    public List<LazyEntry> getLazyEntries() {
+        if (lazyEntries == null) {
+            List<LazyEntry> result = new ArrayList<LazyEntry>();
+            if (entries == null) {
+                for (ByteString rawEntry : rawEntries) {
+                    result.add(new LazyEntry(rawEntry));
+                }
+            } else {
+                for (Entry entry : entries) {
+                    result.add(new LazyEntry(entry));
+                }
+            }
+            lazyEntries = result;
+        }
+        return lazyEntries;
     }
 
     public String toString() {
+        getEntries();
         return ToStringBuilder.reflectionToString(this, CanalToStringStyle.DEFAULT_STYLE);
     }
 
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        getEntries(); // rawEntries不参与序列化
+        out.defaultWriteObject();
+    }
+
 }
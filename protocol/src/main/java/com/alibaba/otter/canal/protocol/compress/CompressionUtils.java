@@ -0,0 +1,345 @@
+package com.alibaba.otter.canal.protocol.compress;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.alibaba.otter.canal.protocol.CanalPacket.Compression;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+
+/**
+ * Packet body的压缩/解压工具
+ *
+ * <pre>
+ * 1. ZLIB : 标准的zlib格式
+ * 2. GZIP : 标准的gzip格式
+ * 3. LZF : 4字节big-endian的原始长度 + lzf数据块
+ *
+ * 读写的buffer按照线程进行复用，避免每个batch都分配对象；Deflater/Inflater持有native内存，放在全局的有界池中复用，
+ * 每次压缩/解压结束之后归还，池满时直接end()释放，不依赖线程退出之后的gc
+ * </pre>
+ *
+ * @author yzy
+ * @version 1.0.24
+ */
+public class CompressionUtils {
+
+    public static final List<Compression>     SUPPORTED_COMPRESSIONS = Collections.unmodifiableList(Arrays.asList(Compression.ZLIB,
+                                                                          Compression.GZIP,
+                                                                          Compression.LZF));
+
+    private static final int                  COMPRESSION_LEVEL      = Deflater.BEST_SPEED;
+    private static final int                  INIT_BUFFER_SIZE       = 64 * 1024;
+    private static final int                  MAX_POOLED_BUFFER_SIZE = 8 * 1024 * 1024;                  // 超过该大小的buffer用完之后不再保留
+    private static final int                  GZIP_MAGIC             = 0x8b1f;
+    private static final int                  GZIP_HEADER_SIZE       = 10;
+    private static final int                  GZIP_TRAILER_SIZE      = 8;
+    private static final int                  FHCRC                  = 2;
+    private static final int                  FEXTRA                 = 4;
+    private static final int                  FNAME                  = 8;
+    private static final int                  FCOMMENT               = 16;
+    private static final int                  MAX_DECOMPRESSED_SIZE  = 256 * 1024 * 1024;                // 解压之后的最大长度，防止错误的数据导致超大的内存分配
+    private static final int                  MAX_POOLED_CODECS      = Runtime.getRuntime().availableProcessors() * 2;
+
+    private static final BlockingQueue<Deflater> deflaters    = new ArrayBlockingQueue<Deflater>(MAX_POOLED_CODECS);
+    private static final BlockingQueue<Deflater> rawDeflaters = new ArrayBlockingQueue<Deflater>(MAX_POOLED_CODECS);
+    private static final BlockingQueue<Inflater> inflaters    = new ArrayBlockingQueue<Inflater>(MAX_POOLED_CODECS);
+    private static final BlockingQueue<Inflater> rawInflaters = new ArrayBlockingQueue<Inflater>(MAX_POOLED_CODECS);
+
+    private static final ThreadLocal<Context> contexts               = new ThreadLocal<Context>() {
+
+                                                                          protected Context initialValue() {
+                                                                              return new Context();
+                                                                          }
+                                                                      };
+
+    public static boolean isSupported(Compression compression) {
+        return compression == Compression.NONE || SUPPORTED_COMPRESSIONS.contains(compression);
+    }
+
+    /**
+     * 压缩数据，返回的ByteString可以直接作为Packet的body
+     */
+    public static ByteString compress(Compression compression, byte[] data) {
+        Context context = contexts.get();
+        try {
+            switch (compression) {
+                case NONE:
+                    return ByteString.copyFrom(data);
+                case ZLIB: {
+                    int pos = deflate(context, false, data, 0);
+                    return ByteString.copyFrom(context.output, 0, pos);
+                }
+                case GZIP: {
+                    byte[] output = context.ensureOutput(GZIP_HEADER_SIZE);
+                    writeGzipHeader(output);
+                    int pos = deflate(context, true, data, GZIP_HEADER_SIZE);
+                    context.crc.reset();
+                    context.crc.update(data, 0, data.length);
+                    output = context.ensureOutput(pos + GZIP_TRAILER_SIZE);
+                    writeIntLE(output, pos, (int) context.crc.getValue());
+                    writeIntLE(output, pos + 4, data.length);
+                    return ByteString.copyFrom(output, 0, pos + GZIP_TRAILER_SIZE);
+                }
+                case LZF: {
+                    byte[] output = context.ensureOutput(4 + LZFCodec.maxCompressedLength(data.length));
+                    writeIntBE(output, 0, data.length);
+                    int pos = context.lzf.compress(data, data.length, output, 4);
+                    return ByteString.copyFrom(output, 0, pos);
+                }
+                default:
+                    throw new IllegalArgumentException("unsupported compression : " + compression);
+            }
+        } finally {
+            context.shrink();
+        }
+    }
+
+    /**
+     * 解压数据，返回的CodedInputStream基于当前线程复用的buffer，需要在同一线程的下一次解压之前完成解析
+     */
+    public static CodedInputStream decompress(Compression compression, ByteString body) throws IOException {
+        if (compression == Compression.NONE) {
+            return body.newCodedInput();
+        }
+
+        Context context = contexts.get();
+        int length = body.size();
+        byte[] input = context.ensureInput(length);
+        body.copyTo(input, 0);
+        switch (compression) {
+            case ZLIB: {
+                Inflater inflater = borrowInflater(false);
+                int size = 0;
+                try {
+                    size = inflate(context, inflater, input, 0, length);
+                } finally {
+                    returnInflater(inflater, false);
+                }
+                return CodedInputStream.newInstance(context.output, 0, size);
+            }
+            case GZIP: {
+                int pos = readGzipHeader(input, length);
+                Inflater inflater = borrowInflater(true);
+                int size = 0;
+                int trailer = 0;
+                try {
+                    size = inflate(context, inflater, input, pos, length - pos);
+                    trailer = length - inflater.getRemaining();
+                } finally {
+                    returnInflater(inflater, true);
+                }
+                if (trailer + GZIP_TRAILER_SIZE > length) {
+                    throw new IOException("corrupt gzip data, trailer is missing");
+                }
+
+                context.crc.reset();
+                context.crc.update(context.output, 0, size);
+                if (readIntLE(input, trailer) != (int) context.crc.getValue() || readIntLE(input, trailer + 4) != size) {
+                    throw new IOException("corrupt gzip data, crc or size mismatch");
+                }
+                return CodedInputStream.newInstance(context.output, 0, size);
+            }
+            case LZF: {
+                if (length < 4) {
+                    throw new IOException("corrupt lzf data, length is missing");
+                }
+
+                int size = readIntBE(input, 0);
+                // 先校验原始长度再分配，长度不可能超过压缩数据的最大展开比例
+                if (size < 0 || size > MAX_DECOMPRESSED_SIZE || size > LZFCodec.maxDecompressedLength(length - 4)) {
+                    throw new IOException("corrupt lzf data, invalid length : " + size);
+                }
+                byte[] output = context.ensureOutput(size);
+                LZFCodec.decompress(input, 4, length, output, size);
+                return CodedInputStream.newInstance(output, 0, size);
+            }
+            default:
+                throw new IOException("unsupported compression : " + compression);
+        }
+    }
+
+    /**
+     * 释放当前线程缓存的大buffer
+     */
+    public static void release() {
+        contexts.get().shrink();
+    }
+
+    private static int deflate(Context context, boolean nowrap, byte[] data, int offset) {
+        byte[] output = context.ensureOutput(offset + (data.length >>> 1) + 64);
+        int pos = offset;
+        Deflater deflater = borrowDeflater(nowrap);
+        try {
+            deflater.setInput(data, 0, data.length);
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (pos == output.length) {
+                    output = context.ensureOutput(output.length << 1);
+                }
+                pos += deflater.deflate(output, pos, output.length - pos);
+            }
+        } finally {
+            returnDeflater(deflater, nowrap);
+        }
+        return pos;
+    }
+
+    private static int inflate(Context context, Inflater inflater, byte[] input, int offset, int length)
+                                                                                                        throws IOException {
+        byte[] output = context.ensureOutput((int) Math.min((long) length << 2, MAX_DECOMPRESSED_SIZE));
+        int pos = 0;
+        inflater.setInput(input, offset, length);
+        try {
+            while (!inflater.finished()) {
+                if (pos == output.length) {
+                    if (output.length >= MAX_DECOMPRESSED_SIZE) {
+                        throw new IOException("decompressed data exceeds " + MAX_DECOMPRESSED_SIZE + " bytes");
+                    }
+                    output = context.ensureOutput(Math.min(output.length << 1, MAX_DECOMPRESSED_SIZE));
+                }
+                int n = inflater.inflate(output, pos, output.length - pos);
+                if (n == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("corrupt compressed data, unexpected end of input");
+                }
+                pos += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("corrupt compressed data : " + e.getMessage());
+        }
+        return pos;
+    }
+
+    private static Deflater borrowDeflater(boolean nowrap) {
+        Deflater deflater = (nowrap ? rawDeflaters : deflaters).poll();
+        return deflater != null ? deflater : new Deflater(COMPRESSION_LEVEL, nowrap);
+    }
+
+    private static void returnDeflater(Deflater deflater, boolean nowrap) {
+        deflater.reset();
+        if (!(nowrap ? rawDeflaters : deflaters).offer(deflater)) {
+            deflater.end(); // 池已满，立即释放native内存
+        }
+    }
+
+    private static Inflater borrowInflater(boolean nowrap) {
+        Inflater inflater = (nowrap ? rawInflaters : inflaters).poll();
+        return inflater != null ? inflater : new Inflater(nowrap);
+    }
+
+    private static void returnInflater(Inflater inflater, boolean nowrap) {
+        inflater.reset();
+        if (!(nowrap ? rawInflaters : inflaters).offer(inflater)) {
+            inflater.end(); // 池已满，立即释放native内存
+        }
+    }
+
+    private static void writeGzipHeader(byte[] output) {
+        output[0] = (byte) GZIP_MAGIC;
+        output[1] = (byte) (GZIP_MAGIC >> 8);
+        output[2] = Deflater.DEFLATED;
+        output[3] = 0; // flags
+        output[4] = 0; // mtime
+        output[5] = 0;
+        output[6] = 0;
+        output[7] = 0;
+        output[8] = 0; // extra flags
+        output[9] = (byte) 0xff; // os unknown
+    }
+
+    private static int readGzipHeader(byte[] input, int length) throws IOException {
+        if (length < GZIP_HEADER_SIZE || (input[0] & 0xff) != (GZIP_MAGIC & 0xff)
+            || (input[1] & 0xff) != (GZIP_MAGIC >> 8) || input[2] != Deflater.DEFLATED) {
+            throw new IOException("not in gzip format");
+        }
+
+        int flags = input[3] & 0xff;
+        int pos = GZIP_HEADER_SIZE;
+        if ((flags & FEXTRA) != 0) {
+            pos += 2 + ((input[pos] & 0xff) | ((input[pos + 1] & 0xff) << 8));
+        }
+        if ((flags & FNAME) != 0) {
+            while (pos < length && input[pos++] != 0) {
+            }
+        }
+        if ((flags & FCOMMENT) != 0) {
+            while (pos < length && input[pos++] != 0) {
+            }
+        }
+        if ((flags & FHCRC) != 0) {
+            pos += 2;
+        }
+
+        if (pos >= length) {
+            throw new IOException("corrupt gzip data, header is truncated");
+        }
+        return pos;
+    }
+
+    private static void writeIntLE(byte[] b, int pos, int v) {
+        b[pos] = (byte) v;
+        b[pos + 1] = (byte) (v >>> 8);
+        b[pos + 2] = (byte) (v >>> 16);
+        b[pos + 3] = (byte) (v >>> 24);
+    }
+
+    private static int readIntLE(byte[] b, int pos) {
+        return (b[pos] & 0xff) | ((b[pos + 1] & 0xff) << 8) | ((b[pos + 2] & 0xff) << 16) | ((b[pos + 3] & 0xff) << 24);
+    }
+
+    private static void writeIntBE(byte[] b, int pos, int v) {
+        b[pos] = (byte) (v >>> 24);
+        b[pos + 1] = (byte) (v >>> 16);
+        b[pos + 2] = (byte) (v >>> 8);
+        b[pos + 3] = (byte) v;
+    }
+
+    private static int readIntBE(byte[] b, int pos) {
+        return ((b[pos] & 0xff) << 24) | ((b[pos + 1] & 0xff) << 16) | ((b[pos + 2] & 0xff) << 8) | (b[pos + 3] & 0xff);
+    }
+
+    /**
+     * 每个线程复用的压缩上下文，只包含堆内存，线程退出之后直接被gc回收
+     */
+    private static class Context {
+
+        private final LZFCodec lzf    = new LZFCodec();
+        private final CRC32    crc    = new CRC32();
+        private byte[]         input  = new byte[INIT_BUFFER_SIZE];
+        private byte[]         output = new byte[INIT_BUFFER_SIZE];
+
+        private byte[] ensureInput(int size) {
+            if (input.length < size) {
+                input = new byte[size];
+            }
+            return input;
+        }
+
+        /**
+         * 扩容时保留已经写入的数据
+         */
+        private byte[] ensureOutput(int size) {
+            if (output.length < size) {
+                output = Arrays.copyOf(output, Math.max(size, output.length << 1));
+            }
+            return output;
+        }
+
+        private void shrink() {
+            if (input.length > MAX_POOLED_BUFFER_SIZE) {
+                input = new byte[INIT_BUFFER_SIZE];
+            }
+            if (output.length > MAX_POOLED_BUFFER_SIZE) {
+                output = new byte[INIT_BUFFER_SIZE];
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.alibaba.otter.canal.protocol.compress;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * lzf格式的压缩/解压，编码格式和liblzf保持一致
+ *
+ * <pre>
+ * 000LLLLL &lt;L+1个字节的literal&gt;
+ * LLLooooo oooooooo : 回溯引用，长度为L+2，偏移为o+1
+ * 111ooooo LLLLLLLL oooooooo : 回溯引用，长度为L+7+2，偏移为o+1
+ * </pre>
+ *
+ * 压缩速度远快于deflate，压缩率略低，适合cpu敏感的场景
+ *
+ * @author yzy
+ * @version 1.0.24
+ */
+public class LZFCodec {
+
+    private static final int HASH_LOG  = 13;
+    private static final int HASH_SIZE = 1 << HASH_LOG;
+    private static final int MAX_LIT   = 1 << 5;
+    private static final int MAX_OFF   = 1 << 13;
+    private static final int MAX_REF   = (1 << 8) + (1 << 3);
+
+    private final int[]      hashTab   = new int[HASH_SIZE];
+
+    /**
+     * 压缩结果的最大长度
+     */
+    public static int maxCompressedLength(int length) {
+        return length + (length >>> 5) + 16;
+    }
+
+    /**
+     * 解压结果的最大长度，3个字节的回溯引用最多展开为MAX_REF个字节
+     */
+    public static long maxDecompressedLength(int length) {
+        return (long) length * MAX_REF / 3 + MAX_LIT;
+    }
+
+    /**
+     * 压缩in[0, inLen)，写入out的outPos位置，返回写入之后的位置，out的剩余空间需要不小于{@linkplain #maxCompressedLength}
+     */
+    public int compress(byte[] in, int inLen, byte[] out, int outPos) {
+        Arrays.fill(hashTab, -1);
+        int ip = 0;
+        int literalStart = 0;
+        int op = outPos;
+        while (ip + 2 < inLen) {
+            int h = hash(in, ip);
+            int ref = hashTab[h];
+            hashTab[h] = ip;
+            int off = ip - ref - 1;
+            if (ref >= 0 && off < MAX_OFF && in[ref] == in[ip] && in[ref + 1] == in[ip + 1]
+                && in[ref + 2] == in[ip + 2]) {
+                op = writeLiterals(in, literalStart, ip - literalStart, out, op);
+                int maxLen = Math.min(MAX_REF, inLen - ip);
+                int len = 3;
+                while (len < maxLen && in[ref + len] == in[ip + len]) {
+                    len++;
+                }
+
+                int l = len - 2;
+                if (l < 7) {
+                    out[op++] = (byte) ((l << 5) + (off >>> 8));
+                } else {
+                    out[op++] = (byte) ((7 << 5) + (off >>> 8));
+                    out[op++] = (byte) (l - 7);
+                }
+                out[op++] = (byte) off;
+
+                ip += len;
+                literalStart = ip;
+                // 补一下匹配末尾的hash，提高后续的命中率
+                if (ip + 2 < inLen) {
+                    hashTab[hash(in, ip - 1)] = ip - 1;
+                }
+            } else {
+                ip++;
+            }
+        }
+
+        return writeLiterals(in, literalStart, inLen - literalStart, out, op);
+    }
+
+    /**
+     * 解压in[inPos, inEnd)，写入out[0, outLen)，outLen为压缩前的原始长度
+     */
+    public static void decompress(byte[] in, int inPos, int inEnd, byte[] out, int outLen) throws IOException {
+        int ip = inPos;
+        int op = 0;
+        while (ip < inEnd) {
+            int ctrl = in[ip++] & 0xff;
+            if (ctrl < MAX_LIT) {
+                int len = ctrl + 1;
+                if (op + len > outLen || ip + len > inEnd) {
+                    throw new IOException("corrupt lzf data, literal out of range");
+                }
+                System.arraycopy(in, ip, out, op, len);
+                ip += len;
+                op += len;
+            } else {
+                int len = ctrl >>> 5;
+                if (ip + (len == 7 ? 2 : 1) > inEnd) {
+                    throw new IOException("corrupt lzf data, truncated back reference");
+                }
+                if (len == 7) {
+                    len += in[ip++] & 0xff;
+                }
+                len += 2;
+                int ref = op - ((ctrl & 0x1f) << 8) - (in[ip++] & 0xff) - 1;
+                if (ref < 0 || op + len > outLen) {
+                    throw new IOException("corrupt lzf data, back reference out of range");
+                }
+                // 引用可能和当前输出重叠，逐字节复制
+                for (int i = 0; i < len; i++) {
+                    out[op++] = out[ref++];
+                }
+            }
+        }
+
+        if (op != outLen) {
+            throw new IOException("corrupt lzf data, expect " + outLen + " bytes but got " + op);
+        }
+    }
+
+    private static int writeLiterals(byte[] in, int start, int count, byte[] out, int op) {
+        while (count > 0) {
+            int len = Math.min(MAX_LIT, count);
+            out[op++] = (byte) (len - 1);
+            System.arraycopy(in, start, out, op, len);
+            op += len;
+            start += len;
+            count -= len;
+        }
+        return op;
+    }
+
+    private static int hash(byte[] in, int ip) {
+        int v = ((in[ip] & 0xff) << 16) | ((in[ip + 1] & 0xff) << 8) | (in[ip + 2] & 0xff);
+        return (v * 0x9E3779B1) >>> (32 - HASH_LOG);
+    }
+}
@@ -22,6 +22,8 @@ public class PositionRange<T extends Position> implements Serializable {
      */
     private T                 ack;
     private T                 end;
+    // store内部end对应的sequence，ack时直接定位，避免按position逐条查找。只在当前store的生命周期内有效，不参与equals
+    private long              endSeq           = -1L;
 
     public PositionRange(){
     }
@@ -47,6 +49,14 @@ public class PositionRange<T extends Position> implements Serializable {
         this.end = end;
     }
 
+    public long getEndSeq() {
+        return endSeq;
+    }
+
+    public void setEndSeq(long endSeq) {
+        this.endSeq = endSeq;
+    }
+
     public T getAck() {
         return ack;
     }
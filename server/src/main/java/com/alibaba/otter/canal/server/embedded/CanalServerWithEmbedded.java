@@ -12,6 +12,7 @@ import org.slf4j.MDC;
 import org.springframework.util.CollectionUtils;
 
 import com.alibaba.otter.canal.common.AbstractCanalLifeCycle;
+import com.alibaba.otter.canal.common.cache.CanalCache;
 import com.alibaba.otter.canal.instance.core.CanalInstance;
 import com.alibaba.otter.canal.instance.core.CanalInstanceGenerator;
 import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
@@ -24,12 +25,13 @@ import com.alibaba.otter.canal.server.CanalServer;
 import com.alibaba.otter.canal.server.CanalService;
 import com.alibaba.otter.canal.server.exception.CanalServerException;
 import com.alibaba.otter.canal.store.CanalEventStore;
+import com.alibaba.otter.canal.store.CanalEventStoreListener;
 import com.alibaba.otter.canal.store.model.Event;
 import com.alibaba.otter.canal.store.model.Events;
 import com.google.common.base.Function;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.collect.MigrateMap;
+import com.google.protobuf.ByteString;
 
 /**
  * 嵌入式版本实现
@@ -40,10 +42,10 @@ import com.google.common.collect.MigrateMap;
  */
 public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements CanalServer, CanalService {
 
-    private static final Logger        logger = LoggerFactory.getLogger(CanalServerWithEmbedded.class);
-    private Map<String, CanalInstance> canalInstances;
+    private static final Logger               logger = LoggerFactory.getLogger(CanalServerWithEmbedded.class);
+    private CanalCache<String, CanalInstance> canalInstances;
     // private Map<ClientIdentity, Position> lastRollbackPostions;
-    private CanalInstanceGenerator     canalInstanceGenerator;
+    private CanalInstanceGenerator            canalInstanceGenerator;
 
     private static class SingletonHolder {
 
@@ -65,12 +67,13 @@ public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements C
         if (!isStart()) {
             super.start();
 
-            canalInstances = MigrateMap.makeComputingMap(new Function<String, CanalInstance>() {
+            canalInstances = new CanalCache<String, CanalInstance>("canalInstances",
+                new Function<String, CanalInstance>() {
 
-                public CanalInstance apply(String destination) {
-                    return canalInstanceGenerator.generate(destination);
-                }
-            });
+                    public CanalInstance apply(String destination) {
+                        return canalInstanceGenerator.generate(destination);
+                    }
+                });
 
             // lastRollbackPostions = new MapMaker().makeMap();
         }
@@ -327,9 +330,59 @@ public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements C
                     entrys.size(),
                     batchId,
                     events.getPositionRange());
-                return new Message(batchId, entrys);
+                Message message = new Message(batchId, entrys);
+                message.setRawEntries(Lists.transform(events.getEvents(), new Function<Event, ByteString>() {
+
+                    public ByteString apply(Event input) {
+                        return input.getRawEntry() != null ? input.getRawEntry() : input.getEntry().toByteString();
+                    }
+                }));
+                return message;
+            }
+
+        }
+    }
+
+    /**
+     * 检查client下一次getWithoutAck是否已经有足够batchSize的数据，不会产生batch，主要用于异步的get请求判断是否需要继续等待
+     */
+    public boolean hasAvailable(ClientIdentity clientIdentity, int batchSize) throws CanalServerException {
+        checkStart(clientIdentity.getDestination());
+        checkSubscribe(clientIdentity);
+
+        CanalInstance canalInstance = canalInstances.get(clientIdentity.getDestination());
+        synchronized (canalInstance) {
+            // 和getWithoutAck保持一致的起始位置
+            PositionRange<LogPosition> positionRanges = canalInstance.getMetaManager().getLastestBatch(clientIdentity);
+            Position start = null;
+            if (positionRanges != null) {
+                start = positionRanges.getStart();
+            } else {
+                start = canalInstance.getMetaManager().getCursor(clientIdentity);
+                if (start == null) {
+                    start = canalInstance.getEventStore().getFirstPosition();
+                }
             }
 
+            return canalInstance.getEventStore().hasAvailable(start, batchSize);
+        }
+    }
+
+    /**
+     * 注册destination对应store的数据写入监听，异步的get请求据此等待数据，不需要定时检查
+     */
+    public void addListener(ClientIdentity clientIdentity, CanalEventStoreListener listener)
+                                                                                            throws CanalServerException {
+        checkStart(clientIdentity.getDestination());
+
+        CanalInstance canalInstance = canalInstances.get(clientIdentity.getDestination());
+        canalInstance.getEventStore().addListener(listener);
+    }
+
+    public void removeListener(ClientIdentity clientIdentity, CanalEventStoreListener listener) {
+        CanalInstance canalInstance = canalInstances.getIfPresent(clientIdentity.getDestination());
+        if (canalInstance != null) {
+            canalInstance.getEventStore().removeListener(listener);
         }
     }
 
@@ -405,7 +458,7 @@ public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements C
         }
 
         // 可定时清理数据
-        canalInstance.getEventStore().ack(positionRanges.getEnd());
+        canalInstance.getEventStore().ack(positionRanges.getEnd(), positionRanges.getEndSeq());
 
     }
 
@@ -488,7 +541,7 @@ public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements C
     }
 
     public Map<String, CanalInstance> getCanalInstances() {
-        return Maps.newHashMap(canalInstances);
+        return Maps.newHashMap(canalInstances.asMap());
     }
 
     // ======================== helper method =======================
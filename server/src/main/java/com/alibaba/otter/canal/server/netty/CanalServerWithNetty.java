@@ -1,7 +1,10 @@
 package com.alibaba.otter.canal.server.netty;
 
 import java.net.InetSocketAddress;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang.StringUtils;
 import org.jboss.netty.bootstrap.ServerBootstrap;
@@ -12,6 +15,7 @@ import org.jboss.netty.channel.Channels;
 import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
 
 import com.alibaba.otter.canal.common.AbstractCanalLifeCycle;
+import com.alibaba.otter.canal.common.utils.NamedThreadFactory;
 import com.alibaba.otter.canal.server.CanalServer;
 import com.alibaba.otter.canal.server.embedded.CanalServerWithEmbedded;
 import com.alibaba.otter.canal.server.netty.handler.ClientAuthenticationHandler;
@@ -27,11 +31,15 @@ import com.alibaba.otter.canal.server.netty.handler.SessionHandler;
  */
 public class CanalServerWithNetty extends AbstractCanalLifeCycle implements CanalServer {
 
-    private CanalServerWithEmbedded embeddedServer;      // 嵌入式server
+    private CanalServerWithEmbedded embeddedServer;                                                        // 嵌入式server
     private String                  ip;
     private int                     port;
-    private Channel                 serverChannel = null;
-    private ServerBootstrap         bootstrap     = null;
+    private Channel                 serverChannel        = null;
+    private ServerBootstrap         bootstrap            = null;
+    private int                     workerThreads        = Runtime.getRuntime().availableProcessors() * 2; // get请求的业务线程数
+    private int                     workerQueueSize      = 1024;                                           // 业务线程池的队列大小
+    private ThreadPoolExecutor      workerExecutor       = null;
+    private int                     compressionThreshold = 1024;                                           // 数据压缩的阈值，客户端协商了压缩方式时生效
 
     private static class SingletonHolder {
 
@@ -53,6 +61,15 @@ public class CanalServerWithNetty extends AbstractCanalLifeCycle implements Cana
             embeddedServer.start();
         }
 
+        // get请求的数据获取和序列化在业务线程池中执行，不阻塞netty的io线程，队列满时拒绝并返回错误，不会退回到调用线程执行
+        this.workerExecutor = new ThreadPoolExecutor(workerThreads,
+            workerThreads,
+            60L,
+            TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(workerQueueSize),
+            new NamedThreadFactory("CanalServerWithNetty-worker"),
+            new ThreadPoolExecutor.AbortPolicy());
+
         this.bootstrap = new ServerBootstrap(new NioServerSocketChannelFactory(Executors.newCachedThreadPool(),
             Executors.newCachedThreadPool()));
 
@@ -66,7 +83,8 @@ public class CanalServerWithNetty extends AbstractCanalLifeCycle implements Cana
                 pipelines.addLast(ClientAuthenticationHandler.class.getName(),
                     new ClientAuthenticationHandler(embeddedServer));
 
-                SessionHandler sessionHandler = new SessionHandler(embeddedServer);
+                SessionHandler sessionHandler = new SessionHandler(embeddedServer, workerExecutor);
+                sessionHandler.setCompressionThreshold(compressionThreshold);
                 pipelines.addLast(SessionHandler.class.getName(), sessionHandler);
                 return pipelines;
             }
@@ -91,6 +109,10 @@ public class CanalServerWithNetty extends AbstractCanalLifeCycle implements Cana
             this.bootstrap.releaseExternalResources();
         }
 
+        if (this.workerExecutor != null) {
+            this.workerExecutor.shutdownNow();
+        }
+
         if (embeddedServer.isStart()) {
             embeddedServer.stop();
         }
@@ -104,6 +126,18 @@ public class CanalServerWithNetty extends AbstractCanalLifeCycle implements Cana
         this.port = port;
     }
 
+    public void setWorkerThreads(int workerThreads) {
+        this.workerThreads = workerThreads;
+    }
+
+    public void setWorkerQueueSize(int workerQueueSize) {
+        this.workerQueueSize = workerQueueSize;
+    }
+
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
     public void setEmbeddedServer(CanalServerWithEmbedded embeddedServer) {
         this.embeddedServer = embeddedServer;
     }
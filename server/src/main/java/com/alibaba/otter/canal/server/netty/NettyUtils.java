@@ -1,8 +1,11 @@
 package com.alibaba.otter.canal.server.netty;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.List;
 
+import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFutureListener;
@@ -15,6 +18,10 @@ import org.slf4j.LoggerFactory;
 import com.alibaba.otter.canal.protocol.CanalPacket;
 import com.alibaba.otter.canal.protocol.CanalPacket.Ack;
 import com.alibaba.otter.canal.protocol.CanalPacket.Packet;
+import com.alibaba.otter.canal.protocol.CanalPacket.PacketType;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
 
 public class NettyUtils {
 
@@ -22,6 +29,12 @@ public class NettyUtils {
     private static int          HEADER_LENGTH    = 4;
     public static Timer         hashedWheelTimer = new HashedWheelTimer();
 
+    // CanalProtocol.proto中Packet/Messages的字段编号
+    private static final int    PACKET_TYPE       = 3;
+    private static final int    PACKET_BODY       = 5;
+    private static final int    MESSAGES_BATCH_ID = 1;
+    private static final int    MESSAGES_MESSAGES = 2;
+
     public static void write(Channel channel, byte[] body, ChannelFutureListener channelFutureListner) {
         byte[] header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.BIG_ENDIAN).putInt(body.length).array();
         if (channelFutureListner == null) {
@@ -31,6 +44,85 @@ public class NettyUtils {
         }
     }
 
+    /**
+     * 输出Packet(type=MESSAGES)，直接按照protobuf的编码拼装Packet/Messages的头部，entry引用已经序列化好的数据，不再重新序列化和复制
+     */
+    public static void writeMessages(Channel channel, long batchId, List<ByteString> entries,
+                                     ChannelFutureListener channelFutureListner) throws IOException {
+        ChannelBuffer buffer = encodeMessages(batchId, entries);
+        if (channelFutureListner == null) {
+            Channels.write(channel, buffer);
+        } else {
+            Channels.write(channel, buffer).addListener(channelFutureListner);
+        }
+    }
+
+    /**
+     * 编码带长度头的Packet(type=MESSAGES)，结果和Packet.newBuilder().setType(MESSAGES).setBody(messages.toByteString())一致
+     */
+    public static ChannelBuffer encodeMessages(long batchId, List<ByteString> entries) throws IOException {
+        ByteString[] items = entries.toArray(new ByteString[entries.size()]);
+        int bodySize = CodedOutputStream.computeInt64Size(MESSAGES_BATCH_ID, batchId);
+        int prefixSize = bodySize;
+        for (ByteString item : items) {
+            int itemPrefix = CodedOutputStream.computeTagSize(MESSAGES_MESSAGES)
+                             + CodedOutputStream.computeRawVarint32Size(item.size());
+            bodySize += itemPrefix + item.size();
+            prefixSize += itemPrefix;
+        }
+        int packetHeadSize = CodedOutputStream.computeEnumSize(PACKET_TYPE, PacketType.MESSAGES_VALUE)
+                             + CodedOutputStream.computeTagSize(PACKET_BODY)
+                             + CodedOutputStream.computeRawVarint32Size(bodySize);
+        prefixSize += HEADER_LENGTH + packetHeadSize;
+
+        // 所有的头部信息写到一个数组中，entry数据直接wrap，组成composite buffer
+        byte[] prefix = new byte[prefixSize];
+        CodedOutputStream output = CodedOutputStream.newInstance(prefix);
+        int packetSize = packetHeadSize + bodySize;
+        output.writeRawByte(packetSize >>> 24);
+        output.writeRawByte(packetSize >>> 16);
+        output.writeRawByte(packetSize >>> 8);
+        output.writeRawByte(packetSize);
+        output.writeEnum(PACKET_TYPE, PacketType.MESSAGES_VALUE);
+        output.writeTag(PACKET_BODY, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        output.writeRawVarint32(bodySize);
+        output.writeInt64(MESSAGES_BATCH_ID, batchId);
+
+        ChannelBuffer[] buffers = new ChannelBuffer[items.length * 2 + 1];
+        int start = 0;
+        int index = 0;
+        for (ByteString item : items) {
+            output.writeTag(MESSAGES_MESSAGES, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            output.writeRawVarint32(item.size());
+            int end = prefixSize - output.spaceLeft();
+            buffers[index++] = ChannelBuffers.wrappedBuffer(prefix, start, end - start);
+            buffers[index++] = ChannelBuffers.wrappedBuffer(item.asReadOnlyByteBuffer());
+            start = end;
+        }
+        output.checkNoSpaceLeft();
+        buffers[index++] = ChannelBuffers.wrappedBuffer(prefix, start, prefixSize - start);
+        return ChannelBuffers.wrappedBuffer(buffers);
+    }
+
+    /**
+     * 编码Messages，用于需要压缩的场景
+     */
+    public static byte[] encodeMessagesBody(long batchId, List<ByteString> entries) throws IOException {
+        int bodySize = CodedOutputStream.computeInt64Size(MESSAGES_BATCH_ID, batchId);
+        for (ByteString entry : entries) {
+            bodySize += CodedOutputStream.computeBytesSize(MESSAGES_MESSAGES, entry);
+        }
+
+        byte[] body = new byte[bodySize];
+        CodedOutputStream output = CodedOutputStream.newInstance(body);
+        output.writeInt64(MESSAGES_BATCH_ID, batchId);
+        for (ByteString entry : entries) {
+            output.writeBytes(MESSAGES_MESSAGES, entry);
+        }
+        output.checkNoSpaceLeft();
+        return body;
+    }
+
     public static void ack(Channel channel, ChannelFutureListener channelFutureListner) {
         write(channel,
             Packet.newBuilder()
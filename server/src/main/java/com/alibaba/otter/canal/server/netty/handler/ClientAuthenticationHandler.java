@@ -17,8 +17,10 @@ import org.slf4j.MDC;
 import com.alibaba.otter.canal.common.zookeeper.running.ServerRunningMonitor;
 import com.alibaba.otter.canal.common.zookeeper.running.ServerRunningMonitors;
 import com.alibaba.otter.canal.protocol.CanalPacket.ClientAuth;
+import com.alibaba.otter.canal.protocol.CanalPacket.Compression;
 import com.alibaba.otter.canal.protocol.CanalPacket.Packet;
 import com.alibaba.otter.canal.protocol.ClientIdentity;
+import com.alibaba.otter.canal.protocol.compress.CompressionUtils;
 import com.alibaba.otter.canal.server.embedded.CanalServerWithEmbedded;
 import com.alibaba.otter.canal.server.netty.NettyUtils;
 
@@ -72,6 +74,15 @@ public class ClientAuthenticationHandler extends SimpleChannelHandler {
                     }
                 }
 
+                // 客户端在auth包的compression中指定期望的数据压缩方式
+                Compression compression = packet.getCompression();
+                if (compression != Compression.NONE && CompressionUtils.isSupported(compression)) {
+                    SessionHandler sessionHandler = ctx.getPipeline().get(SessionHandler.class);
+                    if (sessionHandler != null) {
+                        sessionHandler.setCompression(compression);
+                    }
+                }
+
                 NettyUtils.ack(ctx.getChannel(), new ChannelFutureListener() {
 
                     public void operationComplete(ChannelFuture future) throws Exception {
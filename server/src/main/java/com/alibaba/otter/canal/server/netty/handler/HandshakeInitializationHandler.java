@@ -9,6 +9,7 @@ import org.slf4j.LoggerFactory;
 import com.alibaba.otter.canal.protocol.CanalPacket;
 import com.alibaba.otter.canal.protocol.CanalPacket.Handshake;
 import com.alibaba.otter.canal.protocol.CanalPacket.Packet;
+import com.alibaba.otter.canal.protocol.compress.CompressionUtils;
 import com.alibaba.otter.canal.server.netty.NettyUtils;
 
 /**
@@ -24,7 +25,10 @@ public class HandshakeInitializationHandler extends SimpleChannelHandler {
     public void channelOpen(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
         byte[] body = Packet.newBuilder()
             .setType(CanalPacket.PacketType.HANDSHAKE)
-            .setBody(Handshake.newBuilder().build().toByteString())
+            .setBody(Handshake.newBuilder()
+                .addAllSupportedCompressions(CompressionUtils.SUPPORTED_COMPRESSIONS)
+                .build()
+                .toByteString())
             .build()
             .toByteArray();
         NettyUtils.write(ctx.getChannel(), body, null);
@@ -1,16 +1,24 @@
 package com.alibaba.otter.canal.server.netty.handler;
 
+import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.exception.ExceptionUtils;
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.ChannelStateEvent;
 import org.jboss.netty.channel.ExceptionEvent;
 import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.channel.SimpleChannelHandler;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.TimerTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
@@ -23,16 +31,19 @@ import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
 import com.alibaba.otter.canal.protocol.CanalPacket;
 import com.alibaba.otter.canal.protocol.CanalPacket.ClientAck;
 import com.alibaba.otter.canal.protocol.CanalPacket.ClientRollback;
+import com.alibaba.otter.canal.protocol.CanalPacket.Compression;
 import com.alibaba.otter.canal.protocol.CanalPacket.Get;
-import com.alibaba.otter.canal.protocol.CanalPacket.Messages;
 import com.alibaba.otter.canal.protocol.CanalPacket.Packet;
 import com.alibaba.otter.canal.protocol.CanalPacket.PacketType;
 import com.alibaba.otter.canal.protocol.CanalPacket.Sub;
 import com.alibaba.otter.canal.protocol.CanalPacket.Unsub;
 import com.alibaba.otter.canal.protocol.ClientIdentity;
 import com.alibaba.otter.canal.protocol.Message;
+import com.alibaba.otter.canal.protocol.compress.CompressionUtils;
 import com.alibaba.otter.canal.server.embedded.CanalServerWithEmbedded;
 import com.alibaba.otter.canal.server.netty.NettyUtils;
+import com.alibaba.otter.canal.store.CanalEventStoreListener;
+import com.google.protobuf.ByteString;
 
 /**
  * 处理具体的客户端请求
@@ -42,8 +53,12 @@ import com.alibaba.otter.canal.server.netty.NettyUtils;
  */
 public class SessionHandler extends SimpleChannelHandler {
 
-    private static final Logger     logger = LoggerFactory.getLogger(SessionHandler.class);
-    private CanalServerWithEmbedded embeddedServer;
+    private static final Logger       logger               = LoggerFactory.getLogger(SessionHandler.class);
+    private CanalServerWithEmbedded   embeddedServer;
+    private Executor                  executor;                                         // 业务线程池，为空时在当前线程执行
+    private final LinkedList<GetTask> pendingGets          = new LinkedList<GetTask>(); // 当前channel上排队的get请求
+    private volatile Compression      compression          = Compression.NONE;          // auth时和客户端协商的压缩方式
+    private int                       compressionThreshold = 1024;                      // 小于该大小的数据不压缩
 
     public SessionHandler(){
     }
@@ -52,6 +67,11 @@ public class SessionHandler extends SimpleChannelHandler {
         this.embeddedServer = embeddedServer;
     }
 
+    public SessionHandler(CanalServerWithEmbedded embeddedServer, Executor executor){
+        this.embeddedServer = embeddedServer;
+        this.executor = executor;
+    }
+
     public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
         logger.info("message receives in session handler...");
         ChannelBuffer buffer = (ChannelBuffer) e.getMessage();
@@ -107,41 +127,18 @@ public class SessionHandler extends SimpleChannelHandler {
                     if (StringUtils.isNotEmpty(get.getDestination()) && StringUtils.isNotEmpty(get.getClientId())) {
                         clientIdentity = new ClientIdentity(get.getDestination(), Short.valueOf(get.getClientId()));
                         MDC.put("destination", clientIdentity.getDestination());
-                        Message message = null;
-
-                        // if (get.getAutoAck()) {
-                        // if (get.getTimeout() == -1) {//是否是初始值
-                        // message = embeddedServer.get(clientIdentity,
-                        // get.getFetchSize());
-                        // } else {
-                        // TimeUnit unit = convertTimeUnit(get.getUnit());
-                        // message = embeddedServer.get(clientIdentity,
-                        // get.getFetchSize(), get.getTimeout(), unit);
-                        // }
-                        // } else {
+                        // 不在io线程中阻塞等待数据，提交异步任务，由业务线程池完成数据获取和序列化
+                        GetTask task = null;
                         if (get.getTimeout() == -1) {// 是否是初始值
-                            message = embeddedServer.getWithoutAck(clientIdentity, get.getFetchSize());
+                            task = new GetTask(ctx.getChannel(), clientIdentity, get.getFetchSize(), -1L);
                         } else {
                             TimeUnit unit = convertTimeUnit(get.getUnit());
-                            message = embeddedServer.getWithoutAck(clientIdentity,
+                            task = new GetTask(ctx.getChannel(),
+                                clientIdentity,
                                 get.getFetchSize(),
-                                get.getTimeout(),
-                                unit);
+                                unit.toNanos(get.getTimeout()));
                         }
-                        // }
-
-                        Packet.Builder packetBuilder = CanalPacket.Packet.newBuilder();
-                        packetBuilder.setType(PacketType.MESSAGES);
-
-                        Messages.Builder messageBuilder = CanalPacket.Messages.newBuilder();
-                        messageBuilder.setBatchId(message.getId());
-                        if (message.getId() != -1 && !CollectionUtils.isEmpty(message.getEntries())) {
-                            for (Entry entry : message.getEntries()) {
-                                messageBuilder.addMessages(entry.toByteString());
-                            }
-                        }
-                        packetBuilder.setBody(messageBuilder.build().toByteString());
-                        NettyUtils.write(ctx.getChannel(), packetBuilder.build().toByteArray(), null);// 输出数据
+                        submitGet(task);
                     } else {
                         NettyUtils.error(401,
                             MessageFormatter.format("destination or clientId is null", get.toString()).getMessage(),
@@ -217,6 +214,15 @@ public class SessionHandler extends SimpleChannelHandler {
     }
 
     public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+        // 唤醒等待数据的get，释放store上的监听
+        GetTask task = null;
+        synchronized (pendingGets) {
+            task = pendingGets.peekFirst();
+        }
+        if (task != null) {
+            task.wakeup();
+        }
+
         // logger.info("remove binding subscription value object if any...");
         // ClientIdentity clientIdentity = (ClientIdentity) ctx.getAttachment();
         // // 如果唯一的订阅者都取消了订阅，直接关闭服务，针对内部版本模式下可以减少资源浪费
@@ -235,6 +241,193 @@ public class SessionHandler extends SimpleChannelHandler {
         }
     }
 
+    /**
+     * 同一个channel上的get请求按照顺序依次执行，保证batch的顺序
+     */
+    private void submitGet(GetTask task) {
+        synchronized (pendingGets) {
+            pendingGets.addLast(task);
+            if (pendingGets.size() > 1) {
+                return; // 等待前一个get完成之后再执行
+            }
+        }
+
+        execute(task);
+    }
+
+    private void completeGet(GetTask task) {
+        GetTask next = null;
+        synchronized (pendingGets) {
+            pendingGets.remove(task);
+            next = pendingGets.peekFirst();
+        }
+
+        if (next != null) {
+            execute(next);
+        }
+    }
+
+    private void execute(GetTask task) {
+        if (executor == null) {
+            task.run();
+            return;
+        }
+
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // 业务线程池已满或者server已经关闭，不能在io/timer线程中执行阻塞的get，直接返回错误由客户端重试
+            NettyUtils.error(400,
+                MessageFormatter.format("server is busy, get request is rejected, destination={}",
+                    task.clientIdentity.getDestination()).getMessage(),
+                task.channel,
+                null);
+            task.done();
+        }
+    }
+
+    /**
+     * 异步的get请求，数据不足batchSize时不占用线程，在store上注册监听，由数据写入或者超时唤醒后重新检查
+     */
+    private class GetTask implements Runnable, TimerTask, CanalEventStoreListener {
+
+        private final Channel        channel;
+        private final ClientIdentity clientIdentity;
+        private final int            batchSize;
+        private final long           deadline;                            // 超时的时间点，0代表一直等待直到有足够的数据，-1代表不等待
+        private final AtomicBoolean  waiting = new AtomicBoolean(false); // 是否在等待数据写入或者超时
+        private volatile Timeout     timeout;
+
+        public GetTask(Channel channel, ClientIdentity clientIdentity, int batchSize, long timeoutNanos){
+            this.channel = channel;
+            this.clientIdentity = clientIdentity;
+            this.batchSize = batchSize;
+            if (timeoutNanos < 0) {
+                this.deadline = -1;
+            } else if (timeoutNanos == 0) {
+                this.deadline = 0;
+            } else {
+                this.deadline = System.nanoTime() + timeoutNanos;
+            }
+        }
+
+        public void run(Timeout timeout) throws Exception {
+            wakeup();
+        }
+
+        public void onAvailable() {
+            wakeup();
+        }
+
+        /**
+         * 数据写入、超时或者channel关闭时唤醒，只有第一次唤醒会重新提交任务
+         */
+        void wakeup() {
+            if (!waiting.compareAndSet(true, false)) {
+                return;
+            }
+
+            embeddedServer.removeListener(clientIdentity, this);
+            execute(this);
+        }
+
+        private void await() {
+            waiting.set(true);
+            embeddedServer.addListener(clientIdentity, this);
+            if (deadline > 0 && (timeout == null || timeout.isExpired())) {
+                // 每个get只保留一个超时的timer，之前的timer已经触发过时重新计时
+                timeout = NettyUtils.hashedWheelTimer.newTimeout(this,
+                    Math.max(deadline - System.nanoTime(), 0),
+                    TimeUnit.NANOSECONDS);
+            }
+
+            // 注册监听之前可能已经有数据写入、超时或者channel关闭，重新检查一次，避免丢失唤醒
+            if (!channel.isOpen() || isExpired() || embeddedServer.hasAvailable(clientIdentity, batchSize)) {
+                wakeup();
+            }
+        }
+
+        private boolean isExpired() {
+            return deadline > 0 && System.nanoTime() - deadline >= 0;
+        }
+
+        private void done() {
+            if (waiting.compareAndSet(true, false)) {
+                embeddedServer.removeListener(clientIdentity, this);
+            }
+            if (timeout != null) {
+                timeout.cancel();
+            }
+            completeGet(this);
+        }
+
+        public void run() {
+            MDC.put("destination", clientIdentity.getDestination());
+            try {
+                if (!channel.isOpen()) {
+                    done();
+                    return;
+                }
+
+                if (deadline >= 0 && !isExpired() && !embeddedServer.hasAvailable(clientIdentity, batchSize)) {
+                    // 数据不足，等待数据写入或者超时
+                    await();
+                    return;
+                }
+
+                // 数据足够或者已经超时，有多少取多少
+                Message message = embeddedServer.getWithoutAck(clientIdentity, batchSize);
+                List<ByteString> entries = getRawEntries(message);
+                if (compression != Compression.NONE && sizeOf(entries) >= compressionThreshold) {
+                    byte[] body = NettyUtils.encodeMessagesBody(message.getId(), entries);
+                    Packet.Builder packetBuilder = CanalPacket.Packet.newBuilder();
+                    packetBuilder.setType(PacketType.MESSAGES);
+                    packetBuilder.setCompression(compression);
+                    packetBuilder.setBody(CompressionUtils.compress(compression, body));
+                    NettyUtils.write(channel, packetBuilder.build().toByteArray(), null);// 输出数据
+                } else {
+                    // 直接输出sink阶段序列化好的entry数据
+                    NettyUtils.writeMessages(channel, message.getId(), entries, null);
+                }
+                done();
+            } catch (Throwable exception) {
+                NettyUtils.error(400,
+                    MessageFormatter.format("something goes wrong with channel:{}, exception={}",
+                        channel,
+                        ExceptionUtils.getStackTrace(exception)).getMessage(),
+                    channel,
+                    null);
+                done();
+            } finally {
+                MDC.remove("destination");
+            }
+        }
+    }
+
+    private List<ByteString> getRawEntries(Message message) {
+        List<ByteString> result = new ArrayList<ByteString>();
+        if (message.getId() == -1) {
+            return result;
+        }
+
+        if (message.getRawEntries() != null) {
+            result.addAll(message.getRawEntries());
+        } else if (!CollectionUtils.isEmpty(message.getEntries())) {
+            for (Entry entry : message.getEntries()) {
+                result.add(entry.toByteString());
+            }
+        }
+        return result;
+    }
+
+    private long sizeOf(List<ByteString> entries) {
+        long size = 0;
+        for (ByteString entry : entries) {
+            size += entry.size();
+        }
+        return size;
+    }
+
     private TimeUnit convertTimeUnit(int unit) {
         switch (unit) {
             case 0:
@@ -256,6 +449,14 @@ public class SessionHandler extends SimpleChannelHandler {
         }
     }
 
+    public void setCompression(Compression compression) {
+        this.compression = compression;
+    }
+
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
     public void setEmbeddedServer(CanalServerWithEmbedded embeddedServer) {
         this.embeddedServer = embeddedServer;
     }
@@ -0,0 +1,66 @@
+package com.alibaba.otter.canal.server.netty;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
+import com.alibaba.otter.canal.protocol.CanalEntry.EntryType;
+import com.alibaba.otter.canal.protocol.CanalEntry.Header;
+import com.alibaba.otter.canal.protocol.CanalPacket.Messages;
+import com.alibaba.otter.canal.protocol.CanalPacket.Packet;
+import com.alibaba.otter.canal.protocol.CanalPacket.PacketType;
+import com.google.protobuf.ByteString;
+
+public class NettyUtilsTest {
+
+    @Test
+    public void testEncodeMessages() throws IOException {
+        for (int count : new int[] { 0, 1, 10, 1000 }) {
+            List<ByteString> entries = buildEntries(count);
+            long batchId = count * 1000L + 1;
+
+            Messages.Builder messagesBuilder = Messages.newBuilder();
+            messagesBuilder.setBatchId(batchId);
+            messagesBuilder.addAllMessages(entries);
+            byte[] body = Packet.newBuilder()
+                .setType(PacketType.MESSAGES)
+                .setBody(messagesBuilder.build().toByteString())
+                .build()
+                .toByteArray();
+            byte[] expected = ByteBuffer.allocate(4 + body.length).putInt(body.length).put(body).array();
+
+            ChannelBuffer buffer = NettyUtils.encodeMessages(batchId, entries);
+            byte[] actual = new byte[buffer.readableBytes()];
+            buffer.readBytes(actual);
+            Assert.assertTrue(Arrays.equals(expected, actual));
+
+            Assert.assertTrue(Arrays.equals(messagesBuilder.build().toByteArray(),
+                NettyUtils.encodeMessagesBody(batchId, entries)));
+        }
+    }
+
+    private List<ByteString> buildEntries(int count) {
+        List<ByteString> entries = new ArrayList<ByteString>();
+        for (int i = 0; i < count; i++) {
+            Header.Builder headerBuilder = Header.newBuilder();
+            headerBuilder.setLogfileName("mysql-bin.000001");
+            headerBuilder.setLogfileOffset(1024L * i);
+            headerBuilder.setSchemaName("canal_test");
+            headerBuilder.setTableName("table_" + i);
+
+            Entry.Builder entryBuilder = Entry.newBuilder();
+            entryBuilder.setHeader(headerBuilder.build());
+            entryBuilder.setEntryType(EntryType.ROWDATA);
+            entryBuilder.setStoreValue(ByteString.copyFrom(new byte[i % 300]));
+            entries.add(entryBuilder.build().toByteString());
+        }
+        return entries;
+    }
+}
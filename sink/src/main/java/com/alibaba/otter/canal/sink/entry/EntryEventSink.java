@@ -39,6 +39,7 @@ public class EntryEventSink extends AbstractCanalEventSink<List<CanalEntry.Entry
     protected long                 emptyTransctionThresold       = 8192;                                         // 超过1024个事务头，输出一个
     protected volatile long        lastEmptyTransactionTimestamp = 0L;
     protected AtomicLong           lastEmptyTransactionCount     = new AtomicLong(0L);
+    protected boolean              raw                           = false;                                         // 是否在sink时生成entry的序列化数据，server直接输出
 
     public EntryEventSink(){
         addHandler(new HeartBeatEntryEventHandler());
@@ -148,6 +149,15 @@ public class EntryEventSink extends AbstractCanalEventSink<List<CanalEntry.Entry
             events = handler.before(events);
         }
 
+        if (raw) {
+            // 只序列化一次，后续server输出时直接复用
+            for (Event event : events) {
+                if (event.getRawEntry() == null) {
+                    event.setRawEntry(event.getEntry().toByteString());
+                }
+            }
+        }
+
         int fullTimes = 0;
         do {
             if (eventStore.tryPut(events)) {
@@ -202,4 +212,8 @@ public class EntryEventSink extends AbstractCanalEventSink<List<CanalEntry.Entry
         this.emptyTransctionThresold = emptyTransctionThresold;
     }
 
+    public void setRaw(boolean raw) {
+        this.raw = raw;
+    }
+
 }
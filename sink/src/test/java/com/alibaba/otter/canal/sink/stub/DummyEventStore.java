@@ -5,6 +5,7 @@ import java.util.concurrent.TimeUnit;
 
 import com.alibaba.otter.canal.protocol.position.Position;
 import com.alibaba.otter.canal.store.CanalEventStore;
+import com.alibaba.otter.canal.store.CanalEventStoreListener;
 import com.alibaba.otter.canal.store.CanalStoreException;
 import com.alibaba.otter.canal.store.model.Event;
 import com.alibaba.otter.canal.store.model.Events;
@@ -15,6 +16,10 @@ public class DummyEventStore implements CanalEventStore<Event> {
 
     }
 
+    public void ack(Position position, long seqId) throws CanalStoreException {
+
+    }
+
     public Events get(Position start, int batchSize) throws InterruptedException, CanalStoreException {
         return null;
     }
@@ -40,6 +45,16 @@ public class DummyEventStore implements CanalEventStore<Event> {
         return null;
     }
 
+    public boolean hasAvailable(Position start, int batchSize) throws CanalStoreException {
+        return false;
+    }
+
+    public void addListener(CanalEventStoreListener listener) {
+    }
+
+    public void removeListener(CanalEventStoreListener listener) {
+    }
+
     public boolean isStart() {
         return false;
     }
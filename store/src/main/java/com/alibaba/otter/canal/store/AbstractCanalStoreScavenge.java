@@ -1,6 +1,7 @@
 package com.alibaba.otter.canal.store;
 
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.springframework.util.CollectionUtils;
 
@@ -24,6 +25,7 @@ public abstract class AbstractCanalStoreScavenge extends AbstractCanalLifeCycle
     protected boolean          onFull           = false;
     protected boolean          onSchedule       = false;
     protected String           scavengeSchedule = null;
+    protected final List<CanalEventStoreListener> listeners = new CopyOnWriteArrayList<CanalEventStoreListener>();
 
     public void scavenge() {
         Position position = getLatestAckPosition(destination);
@@ -85,6 +87,27 @@ public abstract class AbstractCanalStoreScavenge extends AbstractCanalLifeCycle
         }
     }
 
+    public void addListener(CanalEventStoreListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(CanalEventStoreListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * 通知有新的数据写入，没有监听时不产生额外开销
+     */
+    protected void notifyListeners() {
+        if (listeners.isEmpty()) {
+            return;
+        }
+
+        for (CanalEventStoreListener listener : listeners) {
+            listener.onAvailable();
+        }
+    }
+
     public void setOnAck(boolean onAck) {
         this.onAck = onAck;
     }
@@ -5,6 +5,7 @@ import java.util.concurrent.TimeUnit;
 
 import com.alibaba.otter.canal.common.CanalLifeCycle;
 import com.alibaba.otter.canal.protocol.position.Position;
+import com.alibaba.otter.canal.protocol.position.PositionRange;
 import com.alibaba.otter.canal.store.model.Events;
 
 /**
@@ -61,6 +62,21 @@ public interface CanalEventStore<T> extends CanalLifeCycle, CanalStoreScavenge {
      */
     Events<T> tryGet(Position start, int batchSize) throws CanalStoreException;
 
+    /**
+     * 检查指定位置之后是否已经有足够batchSize的数据，不会改变get的位置 (异步get时用于判断是否需要继续等待)
+     */
+    boolean hasAvailable(Position start, int batchSize) throws CanalStoreException;
+
+    /**
+     * 注册数据写入的监听，每次put成功之后回调
+     */
+    void addListener(CanalEventStoreListener listener);
+
+    /**
+     * 取消数据写入的监听
+     */
+    void removeListener(CanalEventStoreListener listener);
+
     /**
      * 获取最后一条数据的position
      */
@@ -76,6 +92,12 @@ public interface CanalEventStore<T> extends CanalLifeCycle, CanalStoreScavenge {
      */
     void ack(Position position) throws CanalStoreException;
 
+    /**
+     * 删除{@linkplain Position}之前的数据，seqId为get时返回的{@linkplain PositionRange#getEndSeq()}，可以直接定位到ack的位置.
+     * seqId无效时(比如store重启过)退化为{@linkplain #ack(Position)}
+     */
+    void ack(Position position, long seqId) throws CanalStoreException;
+
     /**
      * 出错时执行回滚操作(未提交ack的所有状态信息重新归位，减少出错时数据全部重来的成本)
      */
@@ -0,0 +1,19 @@
+package com.alibaba.otter.canal.store;
+
+/**
+ * store数据写入的监听，异步的get请求通过该接口等待数据，不需要定时检查store
+ *
+ * <pre>
+ * 回调在put线程(sink)中执行，并且可能持有store的锁，实现中不能阻塞，只做唤醒/提交任务之类的轻量操作
+ * </pre>
+ *
+ * @author yzy
+ * @version 1.0.24
+ */
+public interface CanalEventStoreListener {
+
+    /**
+     * store中有新的数据写入
+     */
+    void onAvailable();
+}
@@ -0,0 +1,840 @@
+package com.alibaba.otter.canal.store.file;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alibaba.otter.canal.protocol.CanalEntry;
+import com.alibaba.otter.canal.protocol.CanalEntry.EventType;
+import com.alibaba.otter.canal.protocol.position.LogIdentity;
+import com.alibaba.otter.canal.protocol.position.LogPosition;
+import com.alibaba.otter.canal.protocol.position.Position;
+import com.alibaba.otter.canal.protocol.position.PositionRange;
+import com.alibaba.otter.canal.store.AbstractCanalStoreScavenge;
+import com.alibaba.otter.canal.store.CanalEventStore;
+import com.alibaba.otter.canal.store.CanalStoreException;
+import com.alibaba.otter.canal.store.CanalStoreScavenge;
+import com.alibaba.otter.canal.store.helper.CanalEventUtils;
+import com.alibaba.otter.canal.store.model.BatchMode;
+import com.alibaba.otter.canal.store.model.Event;
+import com.alibaba.otter.canal.store.model.Events;
+import com.google.protobuf.ByteString;
+
+/**
+ * 基于本地文件的store，数据序列化之后append到分段的mmap文件中，不占用堆内存
+ *
+ * <pre>
+ * 1. put/get/ack三个sequence的语义和{@linkplain com.alibaba.otter.canal.store.memory.MemoryEventStoreWithBuffer}一致，支持ITEMSIZE/MEMSIZE以及ddlIsolation
+ * 2. 数据按segmentSize切分为多个段文件，段内维护sequence -> offset的索引，ack之后整段都被确认的文件会被删除
+ * 3. ack位置写入checkpoint文件，重启时扫描段文件恢复索引，未被ack的数据直接从本地文件提供，不需要重新从mysql dump
+ * 4. 最后一个事务尾/ddl的sequence单独记录(不依赖ack的进度)，作为{@linkplain #getLatestPosition()}返回的parser启动位点，
+ *    它所在的段即使已经被ack也会保留；重启时截断之后未完成的事务，已经被ack的部分会在parser重新dump之后再投递一次
+ * 5. 只有在磁盘占用超过maxDiskSize时，put才会被阻塞，parser可以远远跑在consumer前面
+ * </pre>
+ *
+ * @author yzy
+ * @version 1.0.24
+ */
+public class FileEventStore extends AbstractCanalStoreScavenge implements CanalEventStore<Event>, CanalStoreScavenge {
+
+    private static final Logger  logger          = LoggerFactory.getLogger(FileEventStore.class);
+    private static final long    INIT_SQEUENCE   = -1;
+    private static final String  CHECKPOINT_FILE = "checkpoint";
+    private static final Charset CHARSET         = Charset.forName("UTF-8");
+
+    private String              dataDir;
+    private int                 segmentSize     = 64 * 1024 * 1024;                            // 单个段文件的大小，默认64MB
+    private long                maxDiskSize     = 8L * 1024 * 1024 * 1024;                    // 最大磁盘占用，默认8GB
+    private int                 bufferMemUnit   = 1024;                                         // memsize的单位，默认为1kb大小
+    private boolean             forceOnAck      = false;                                        // ack时是否强制刷盘，默认只依赖os page cache
+    private BatchMode           batchMode       = BatchMode.ITEMSIZE;
+    private boolean             ddlIsolation    = false;
+
+    private File                storeDir;
+    private List<FileSegment>   segments        = new ArrayList<FileSegment>();
+    private MappedByteBuffer    checkpoint;
+    private RandomAccessFile    checkpointFile;
+
+    private long                putSequence     = INIT_SQEUENCE;
+    private long                getSequence     = INIT_SQEUENCE;
+    private long                ackSequence     = INIT_SQEUENCE;
+    private long                lastBoundary    = INIT_SQEUENCE;                                // 最后一个事务尾/ddl，parser从这里恢复
+    private long                putMemSize      = 0;
+    private long                getMemSize      = 0;
+    private long                ackMemSize      = 0;
+
+    private ReentrantLock       lock            = new ReentrantLock();
+    private Condition           notFull         = lock.newCondition();
+    private Condition           notEmpty        = lock.newCondition();
+
+    public FileEventStore(){
+
+    }
+
+    public FileEventStore(String dataDir){
+        this.dataDir = dataDir;
+    }
+
+    public void start() throws CanalStoreException {
+        super.start();
+        if (StringUtils.isBlank(dataDir)) {
+            throw new IllegalArgumentException("dataDir is required");
+        }
+
+        storeDir = StringUtils.isBlank(destination) ? new File(dataDir) : new File(dataDir, destination);
+        if (!storeDir.exists() && !storeDir.mkdirs()) {
+            throw new CanalStoreException("create dir " + storeDir.getPath() + " failed");
+        }
+
+        lock.lock();
+        try {
+            loadCheckpoint();
+            loadSegments();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void stop() throws CanalStoreException {
+        super.stop();
+
+        lock.lock();
+        try {
+            for (FileSegment segment : segments) {
+                segment.close();
+            }
+            segments.clear();
+            closeCheckpoint();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void put(List<Event> data) throws InterruptedException, CanalStoreException {
+        if (data == null || data.isEmpty()) {
+            return;
+        }
+
+        final ReentrantLock lock = this.lock;
+        lock.lockInterruptibly();
+        try {
+            try {
+                while (!checkFreeSpace()) {
+                    notFull.await();
+                }
+            } catch (InterruptedException ie) {
+                notFull.signal(); // propagate to non-interrupted thread
+                throw ie;
+            }
+            doPut(data);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean put(List<Event> data, long timeout, TimeUnit unit) throws InterruptedException, CanalStoreException {
+        if (data == null || data.isEmpty()) {
+            return true;
+        }
+
+        long nanos = unit.toNanos(timeout);
+        final ReentrantLock lock = this.lock;
+        lock.lockInterruptibly();
+        try {
+            for (;;) {
+                if (checkFreeSpace()) {
+                    doPut(data);
+                    return true;
+                }
+                if (nanos <= 0) {
+                    return false;
+                }
+
+                try {
+                    nanos = notFull.awaitNanos(nanos);
+                } catch (InterruptedException ie) {
+                    notFull.signal(); // propagate to non-interrupted thread
+                    throw ie;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean tryPut(List<Event> data) throws CanalStoreException {
+        if (data == null || data.isEmpty()) {
+            return true;
+        }
+
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            if (!checkFreeSpace()) {
+                return false;
+            } else {
+                doPut(data);
+                return true;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void put(Event data) throws InterruptedException, CanalStoreException {
+        put(Arrays.asList(data));
+    }
+
+    public boolean put(Event data, long timeout, TimeUnit unit) throws InterruptedException, CanalStoreException {
+        return put(Arrays.asList(data), timeout, unit);
+    }
+
+    public boolean tryPut(Event data) throws CanalStoreException {
+        return tryPut(Arrays.asList(data));
+    }
+
+    private void doPut(List<Event> data) {
+        long size = 0;
+        for (Event event : data) {
+            byte[] payload = encode(event);
+            FileSegment segment = getWriteSegment(payload.length);
+            long memsize = calculateSize(event);
+            byte flags = flags(event);
+            putSequence = segment.append(flags, memsize, payload);
+            if ((flags & FileSegment.FLAG_BOUNDARY) != 0) {
+                lastBoundary = putSequence;
+            }
+            size += memsize;
+        }
+
+        putMemSize += size;
+        notEmpty.signal();
+        notifyListeners();
+    }
+
+    public Events<Event> get(Position start, int batchSize) throws InterruptedException, CanalStoreException {
+        final ReentrantLock lock = this.lock;
+        lock.lockInterruptibly();
+        try {
+            try {
+                while (!checkUnGetSlotAt((LogPosition) start, batchSize))
+                    notEmpty.await();
+            } catch (InterruptedException ie) {
+                notEmpty.signal(); // propagate to non-interrupted thread
+                throw ie;
+            }
+
+            return doGet(start, batchSize);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Events<Event> get(Position start, int batchSize, long timeout, TimeUnit unit) throws InterruptedException,
+                                                                                        CanalStoreException {
+        long nanos = unit.toNanos(timeout);
+        final ReentrantLock lock = this.lock;
+        lock.lockInterruptibly();
+        try {
+            for (;;) {
+                if (checkUnGetSlotAt((LogPosition) start, batchSize)) {
+                    return doGet(start, batchSize);
+                }
+
+                if (nanos <= 0) {
+                    // 如果时间到了，有多少取多少
+                    return doGet(start, batchSize);
+                }
+
+                try {
+                    nanos = notEmpty.awaitNanos(nanos);
+                } catch (InterruptedException ie) {
+                    notEmpty.signal(); // propagate to non-interrupted thread
+                    throw ie;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Events<Event> tryGet(Position start, int batchSize) throws CanalStoreException {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            return doGet(start, batchSize);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean hasAvailable(Position start, int batchSize) throws CanalStoreException {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            return checkUnGetSlotAt((LogPosition) start, batchSize);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Events<Event> doGet(Position start, int batchSize) throws CanalStoreException {
+        LogPosition startPosition = (LogPosition) start;
+
+        long current = getSequence;
+        long maxAbleSequence = putSequence;
+        long next = current;
+        long end = current;
+        // 如果startPosition为null，说明是第一次，默认+1处理
+        if (startPosition == null || !startPosition.getPostion().isIncluded()) { // 第一次订阅之后，需要包含一下start位置，防止丢失第一条记录
+            next = next + 1;
+        }
+
+        if (current >= maxAbleSequence) {
+            return new Events<Event>();
+        }
+
+        Events<Event> result = new Events<Event>();
+        List<Event> entrys = result.getEvents();
+        long memsize = 0;
+        long maxMemSize = batchSize * bufferMemUnit;
+        long maxEnd = batchMode.isItemSize() ? Math.min(next + batchSize - 1, maxAbleSequence) : maxAbleSequence;
+        for (; next <= maxEnd && (batchMode.isItemSize() || memsize <= maxMemSize); next++) {
+            FileSegment segment = findSegment(next);
+            if (ddlIsolation && (segment.flags(next) & FileSegment.FLAG_DDL) != 0) {
+                // 如果是ddl隔离，直接返回
+                if (entrys.size() == 0) {
+                    entrys.add(decode(segment.read(next)));// 如果没有DML事件，加入当前的DDL事件
+                    memsize += segment.memsizeUntil(next) - segment.memsizeBefore(next);
+                    end = next; // 更新end为当前
+                }
+                break;
+            }
+
+            entrys.add(decode(segment.read(next)));
+            memsize += segment.memsizeUntil(next) - segment.memsizeBefore(next);
+            end = next;// 记录end位点
+        }
+
+        PositionRange<LogPosition> range = new PositionRange<LogPosition>();
+        result.setPositionRange(range);
+        range.setEndSeq(end);
+
+        range.setStart(CanalEventUtils.createPosition(entrys.get(0)));
+        range.setEnd(CanalEventUtils.createPosition(entrys.get(entrys.size() - 1)));
+        // 记录一下是否存在可以被ack的点
+        for (int i = entrys.size() - 1; i >= 0; i--) {
+            Event event = entrys.get(i);
+            if (CanalEntry.EntryType.TRANSACTIONBEGIN == event.getEntry().getEntryType()
+                || CanalEntry.EntryType.TRANSACTIONEND == event.getEntry().getEntryType()
+                || isDdl(event.getEntry().getHeader().getEventType())) {
+                // 将事务头/尾设置可被为ack的点
+                range.setAck(CanalEventUtils.createPosition(event));
+                break;
+            }
+        }
+
+        getSequence = end;
+        if (batchMode.isMemSize()) {
+            getMemSize += memsize;
+        }
+        return result;
+    }
+
+    public LogPosition getFirstPosition() throws CanalStoreException {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            long firstSeqeuence = ackSequence;
+            if (firstSeqeuence < putSequence && hasSequence(firstSeqeuence + 1)) {
+                // ack未追上put操作，第一次ack之前included = false
+                Event event = read(firstSeqeuence + 1);
+                return CanalEventUtils.createPosition(event, firstSeqeuence != INIT_SQEUENCE);
+            } else if (firstSeqeuence > INIT_SQEUENCE && firstSeqeuence == putSequence && hasSequence(firstSeqeuence)) {
+                // 已经追上，store中没有数据
+                return CanalEventUtils.createPosition(read(firstSeqeuence), false);
+            } else {
+                // 没有任何数据
+                return null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public LogPosition getLatestPosition() throws CanalStoreException {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            // 只能从事务尾/ddl恢复，ack可能已经越过了最后一个事务尾(比如MEMSIZE模式下按batch ack)，不能使用put/ack的位置
+            if (lastBoundary > INIT_SQEUENCE && hasSequence(lastBoundary)) {
+                // ack已经追上了put操作，included = false
+                return CanalEventUtils.createPosition(read(lastBoundary), putSequence != ackSequence);
+            } else {
+                // 没有任何数据
+                return null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void ack(Position position) throws CanalStoreException {
+        cleanUntil(position);
+    }
+
+    public void cleanUntil(Position position) throws CanalStoreException {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            long sequence = ackSequence;
+            long maxSequence = getSequence;
+
+            for (long next = sequence + 1; next <= maxSequence; next++) {
+                if (CanalEventUtils.checkPosition(read(next), (LogPosition) position)) {
+                    doAck(sequence, next);
+                    return;
+                }
+            }
+
+            // 找不到对应需要ack的position
+            throw new CanalStoreException("no match ack position" + position.toString());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void ack(Position position, long seqId) throws CanalStoreException {
+        cleanUntil(position, seqId);
+    }
+
+    /**
+     * 根据get时记录的sequence直接ack，只反序列化seqId对应的一条数据做校验，不一致时退化为按position查找
+     */
+    public void cleanUntil(Position position, long seqId) throws CanalStoreException {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            long sequence = ackSequence;
+            if (seqId > sequence && seqId <= getSequence
+                && CanalEventUtils.checkPosition(read(seqId), (LogPosition) position)) {
+                doAck(sequence, seqId);
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        cleanUntil(position);
+    }
+
+    /**
+     * 移动ack位点，memsize通过索引中的累计值相减得到，不需要读取记录
+     */
+    private void doAck(long sequence, long next) {
+        ackSequence = next;
+        ackMemSize += memsizeBetween(sequence, next);
+        saveCheckpoint();
+        deleteAckedSegments();
+        notFull.signal();
+    }
+
+    public void rollback() throws CanalStoreException {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            getSequence = ackSequence;
+            getMemSize = ackMemSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 清空所有的本地数据，包括checkpoint
+     */
+    public void cleanAll() throws CanalStoreException {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            for (FileSegment segment : segments) {
+                segment.delete();
+            }
+            segments.clear();
+
+            putSequence = INIT_SQEUENCE;
+            getSequence = INIT_SQEUENCE;
+            ackSequence = INIT_SQEUENCE;
+            lastBoundary = INIT_SQEUENCE;
+            putMemSize = 0;
+            getMemSize = 0;
+            ackMemSize = 0;
+            if (checkpoint != null) {
+                saveCheckpoint();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // =================== segment & checkpoint =================
+
+    private void loadCheckpoint() {
+        try {
+            checkpointFile = new RandomAccessFile(new File(storeDir, CHECKPOINT_FILE), "rw");
+            boolean exist = checkpointFile.length() >= 16;
+            FileChannel channel = checkpointFile.getChannel();
+            checkpoint = channel.map(MapMode.READ_WRITE, 0, 16);
+            if (exist) {
+                ackSequence = checkpoint.getLong(0);
+                ackMemSize = checkpoint.getLong(8);
+            } else {
+                saveCheckpoint();
+            }
+        } catch (IOException e) {
+            throw new CanalStoreException("load checkpoint failed", e);
+        }
+    }
+
+    private void saveCheckpoint() {
+        checkpoint.putLong(0, ackSequence);
+        checkpoint.putLong(8, ackMemSize);
+        if (forceOnAck) {
+            checkpoint.force();
+        }
+    }
+
+    private void closeCheckpoint() {
+        try {
+            if (checkpoint != null) {
+                checkpoint.force();
+                checkpoint = null;
+            }
+            if (checkpointFile != null) {
+                checkpointFile.close();
+                checkpointFile = null;
+            }
+        } catch (IOException e) {
+            throw new CanalStoreException("close checkpoint failed", e);
+        }
+    }
+
+    /**
+     * 加载段文件，恢复put/get/ack的状态
+     */
+    private void loadSegments() {
+        File[] files = storeDir.listFiles(new FilenameFilter() {
+
+            public boolean accept(File dir, String name) {
+                return name.endsWith(FileSegment.SUFFIX);
+            }
+        });
+        Arrays.sort(files);
+
+        for (File file : files) {
+            long baseMemSize = segments.isEmpty() ? 0 : segments.get(segments.size() - 1).getEndMemSize();
+            FileSegment segment = FileSegment.load(file, baseMemSize);
+            if (!segments.isEmpty() && segment.getBaseSequence() != segments.get(segments.size() - 1).getLastSequence() + 1) {
+                // 不连续，说明上一次关闭时文件已经被破坏，后续的数据全部丢弃
+                logger.warn("segment {} is not continuous, drop it", file.getPath());
+                segment.delete();
+                continue;
+            }
+            segments.add(segment);
+        }
+
+        if (segments.isEmpty()) {
+            putSequence = ackSequence;
+        } else {
+            putSequence = segments.get(segments.size() - 1).getLastSequence();
+            truncateToBoundary();
+        }
+
+        getSequence = ackSequence;
+        getMemSize = ackMemSize;
+        putMemSize = ackMemSize;
+        if (putSequence > ackSequence) {
+            putMemSize += memsizeBetween(ackSequence, putSequence);
+        }
+
+        deleteAckedSegments();
+        logger.info("load {} segments from {}, ack sequence:{} put sequence:{}", new Object[] { segments.size(),
+                storeDir.getPath(), ackSequence, putSequence });
+    }
+
+    /**
+     * 截断到最后一个事务尾/ddl，保证parser从getLatestPosition重新dump时不会出现半个事务，已经被ack的数据不能截断
+     */
+    private void truncateToBoundary() {
+        lastBoundary = INIT_SQEUENCE;
+        for (long sequence = putSequence; hasSequence(sequence); sequence--) {
+            if ((findSegment(sequence).flags(sequence) & FileSegment.FLAG_BOUNDARY) != 0) {
+                lastBoundary = sequence;
+                break;
+            }
+        }
+
+        long boundary = Math.max(lastBoundary, ackSequence);
+
+        if (boundary == putSequence) {
+            return;
+        }
+
+        logger.warn("truncate uncompleted transaction from sequence {} to {}", boundary + 1, putSequence);
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            FileSegment segment = segments.get(i);
+            if (segment.getBaseSequence() > boundary && i > 0) {
+                segment.delete();
+                segments.remove(i);
+            } else {
+                segment.truncate(boundary);
+                break;
+            }
+        }
+        putSequence = boundary;
+    }
+
+    /**
+     * 删除已经全部被ack的段文件，当前正在写入的段以及最后一个事务尾/ddl所在的段保留
+     */
+    private void deleteAckedSegments() {
+        while (segments.size() > 1 && segments.get(0).getLastSequence() <= ackSequence
+               && (lastBoundary == INIT_SQEUENCE || segments.get(0).getLastSequence() < lastBoundary)) {
+            FileSegment segment = segments.remove(0);
+            segment.delete();
+            logger.info("delete acked segment {}", segment.getFile().getPath());
+        }
+    }
+
+    private FileSegment getWriteSegment(int length) {
+        FileSegment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (segment == null || !segment.hasRoom(length)) {
+            if (segment != null) {
+                segment.force();
+            }
+
+            // 超大的记录单独使用一个段
+            int capacity = Math.max(segmentSize, FileSegment.HEADER_SIZE + length);
+            long baseMemSize = segment == null ? 0 : segment.getEndMemSize();
+            segment = FileSegment.create(storeDir, putSequence + 1, capacity, baseMemSize);
+            segments.add(segment);
+        }
+        return segment;
+    }
+
+    private FileSegment findSegment(long sequence) {
+        int low = 0;
+        int high = segments.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            FileSegment segment = segments.get(mid);
+            if (sequence < segment.getBaseSequence()) {
+                high = mid - 1;
+            } else if (sequence > segment.getLastSequence()) {
+                low = mid + 1;
+            } else {
+                return segment;
+            }
+        }
+
+        throw new CanalStoreException("sequence " + sequence + " not found in store");
+    }
+
+    /**
+     * (from, to]之间记录的memsize之和
+     */
+    private long memsizeBetween(long from, long to) {
+        return findSegment(to).memsizeUntil(to) - findSegment(from + 1).memsizeBefore(from + 1);
+    }
+
+    private boolean hasSequence(long sequence) {
+        return !segments.isEmpty() && sequence >= segments.get(0).getBaseSequence()
+               && sequence <= segments.get(segments.size() - 1).getLastSequence();
+    }
+
+    private Event read(long sequence) {
+        return decode(findSegment(sequence).read(sequence));
+    }
+
+    // =================== helper method =================
+
+    /**
+     * 未被ack的段文件大小，只为保留事务尾而存在的段不计算在内，否则超大的事务会一直阻塞put
+     */
+    private long diskSize() {
+        long size = 0;
+        for (FileSegment segment : segments) {
+            if (segment.getLastSequence() > ackSequence) {
+                size += segment.getCapacity();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 查询磁盘是否有空间，第一段文件永远允许写入，避免死锁
+     */
+    private boolean checkFreeSpace() {
+        return segments.size() <= 1 || diskSize() < maxDiskSize;
+    }
+
+    /**
+     * 检查是否存在需要get的数据,并且数量>=batchSize
+     */
+    private boolean checkUnGetSlotAt(LogPosition startPosition, int batchSize) {
+        if (batchMode.isItemSize()) {
+            long current = getSequence;
+            long maxAbleSequence = putSequence;
+            long next = current;
+            if (startPosition == null || !startPosition.getPostion().isIncluded()) { // 第一次订阅之后，需要包含一下start位置，防止丢失第一条记录
+                next = next + 1;// 少一条数据
+            }
+
+            return current < maxAbleSequence && next + batchSize - 1 <= maxAbleSequence;
+        } else {
+            // 处理内存大小判断
+            return putMemSize - getMemSize >= batchSize * bufferMemUnit;
+        }
+    }
+
+    private byte flags(Event event) {
+        CanalEntry.Entry entry = event.getEntry();
+        byte flags = 0;
+        if (isDdl(entry.getHeader().getEventType())) {
+            flags |= FileSegment.FLAG_DDL | FileSegment.FLAG_BOUNDARY;
+        }
+        if (entry.getEntryType() == CanalEntry.EntryType.TRANSACTIONEND) {
+            flags |= FileSegment.FLAG_BOUNDARY;
+        }
+        return flags;
+    }
+
+    /**
+     * 序列化格式：[short host长度][host][int port][long slaveId][entry]，host长度为-1代表没有LogIdentity
+     */
+    private byte[] encode(Event event) {
+        // 优先使用sink已经序列化好的数据
+        ByteString entry = event.getRawEntry();
+        if (entry == null) {
+            entry = event.getEntry().toByteString();
+        }
+        LogIdentity identity = event.getLogIdentity();
+        byte[] host = null;
+        int port = 0;
+        if (identity != null && identity.getSourceAddress() != null) {
+            InetSocketAddress address = identity.getSourceAddress();
+            String hostName = address.getAddress() != null ? address.getAddress().getHostAddress() : address.getHostName();
+            host = hostName.getBytes(CHARSET);
+            port = address.getPort();
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(2 + (host == null ? 0 : host.length) + 4 + 8 + entry.size());
+        if (identity == null) {
+            buffer.putShort((short) -1);
+        } else {
+            buffer.putShort((short) (host == null ? 0 : host.length));
+            if (host != null) {
+                buffer.put(host);
+            }
+        }
+        buffer.putInt(port);
+        buffer.putLong(identity == null || identity.getSlaveId() == null ? -1L : identity.getSlaveId());
+        entry.copyTo(buffer);
+        return buffer.array();
+    }
+
+    /**
+     * 直接从段文件的buffer中解析，entry部分只拷贝一次作为rawEntry
+     */
+    private Event decode(ByteBuffer buffer) {
+        short hostLength = buffer.getShort();
+        byte[] host = null;
+        if (hostLength > 0) {
+            host = new byte[hostLength];
+            buffer.get(host);
+        }
+        int port = buffer.getInt();
+        long slaveId = buffer.getLong();
+
+        LogIdentity identity = null;
+        if (hostLength >= 0) {
+            identity = new LogIdentity();
+            if (host != null) {
+                identity.setSourceAddress(new InetSocketAddress(new String(host, CHARSET), port));
+            }
+            identity.setSlaveId(slaveId);
+        }
+
+        try {
+            // 文件中已经是序列化之后的数据，直接保留
+            ByteString rawEntry = ByteString.copyFrom(buffer);
+            Event event = new Event(identity, CanalEntry.Entry.parseFrom(rawEntry));
+            event.setRawEntry(rawEntry);
+            return event;
+        } catch (IOException e) {
+            throw new CanalStoreException("decode event failed", e);
+        }
+    }
+
+    private long calculateSize(Event event) {
+        // 直接返回binlog中的事件大小
+        return event.getEntry().getHeader().getEventLength();
+    }
+
+    private boolean isDdl(EventType type) {
+        return type == EventType.ALTER || type == EventType.CREATE || type == EventType.ERASE
+               || type == EventType.RENAME || type == EventType.TRUNCATE || type == EventType.CINDEX
+               || type == EventType.DINDEX;
+    }
+
+    // ================ setter / getter ==================
+
+    public void setDataDir(String dataDir) {
+        this.dataDir = dataDir;
+    }
+
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    public void setMaxDiskSize(long maxDiskSize) {
+        this.maxDiskSize = maxDiskSize;
+    }
+
+    public void setBufferMemUnit(int bufferMemUnit) {
+        this.bufferMemUnit = bufferMemUnit;
+    }
+
+    public void setForceOnAck(boolean forceOnAck) {
+        this.forceOnAck = forceOnAck;
+    }
+
+    public void setBatchMode(BatchMode batchMode) {
+        this.batchMode = batchMode;
+    }
+
+    public void setDdlIsolation(boolean ddlIsolation) {
+        this.ddlIsolation = ddlIsolation;
+    }
+
+}
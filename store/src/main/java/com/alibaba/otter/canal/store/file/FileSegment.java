@@ -0,0 +1,271 @@
+package com.alibaba.otter.canal.store.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import com.alibaba.otter.canal.store.CanalStoreException;
+
+/**
+ * 一个append-only的数据段文件，整个文件通过mmap映射到内存
+ * 
+ * <pre>
+ * 文件名为该段第一条记录的sequence，记录格式：
+ *   [int payload长度][byte flags][long memsize][payload]
+ * payload长度为0代表文件结束(新文件全部为0)，所以payload必须先于长度写入，保证进程crash之后不会读到半条记录
+ * 
+ * 每个段在内存中维护一个sequence -> offset的索引，以及截止到每条记录的累计memsize(ack时直接相减，不需要逐条读取记录头)，
+ * 启动时通过扫描记录头重建
+ * </pre>
+ * 
+ * @author yzy
+ * @version 1.0.24
+ */
+public class FileSegment {
+
+    static final String SUFFIX           = ".seg";
+    static final int    HEADER_SIZE      = 4 + 1 + 8;
+    static final byte   FLAG_BOUNDARY    = 1;         // 事务尾或者ddl，可以作为恢复的截断点
+    static final byte   FLAG_DDL         = 2;
+
+    private final File  file;
+    private final long  baseSequence;
+    private final int   capacity;
+    private RandomAccessFile raf;
+    private FileChannel      channel;
+    private MappedByteBuffer buffer;
+
+    private int[]       offsets          = new int[1024];
+    private long[]      memsizes         = new long[1024]; // 累计memsize，包含baseMemSize
+    private final long  baseMemSize;                       // 该段之前所有记录的累计memsize
+    private int         count            = 0;
+    private int         writePosition    = 0;
+
+    private FileSegment(File file, long baseSequence, int capacity, long baseMemSize){
+        this.file = file;
+        this.baseSequence = baseSequence;
+        this.capacity = capacity;
+        this.baseMemSize = baseMemSize;
+    }
+
+    /**
+     * 创建一个新的段文件，baseMemSize为上一个段的累计memsize
+     */
+    public static FileSegment create(File dir, long baseSequence, int capacity, long baseMemSize) {
+        File file = new File(dir, String.format("%020d", baseSequence) + SUFFIX);
+        FileSegment segment = new FileSegment(file, baseSequence, capacity, baseMemSize);
+        segment.map();
+        return segment;
+    }
+
+    /**
+     * 加载已有的段文件，扫描记录头重建索引
+     */
+    public static FileSegment load(File file, long baseMemSize) {
+        String name = file.getName();
+        long baseSequence = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+        FileSegment segment = new FileSegment(file, baseSequence, (int) file.length(), baseMemSize);
+        segment.map();
+        segment.recover();
+        return segment;
+    }
+
+    private void map() {
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            channel = raf.getChannel();
+            buffer = channel.map(MapMode.READ_WRITE, 0, capacity);
+        } catch (IOException e) {
+            throw new CanalStoreException("map segment " + file.getPath() + " failed", e);
+        }
+    }
+
+    private void recover() {
+        int position = 0;
+        while (position + HEADER_SIZE <= capacity) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + HEADER_SIZE + length > capacity) {
+                break;
+            }
+
+            addOffset(position, buffer.getLong(position + 5));
+            position += HEADER_SIZE + length;
+        }
+
+        writePosition = position;
+    }
+
+    public boolean hasRoom(int length) {
+        return writePosition + HEADER_SIZE + length <= capacity;
+    }
+
+    /**
+     * 追加一条记录，返回对应的sequence
+     */
+    public long append(byte flags, long memsize, byte[] payload) {
+        int position = writePosition;
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(position + 4);
+        slice.put(flags);
+        slice.putLong(memsize);
+        slice.put(payload);
+        // 最后写入长度，代表这条记录完整可见
+        buffer.putInt(position, payload.length);
+
+        addOffset(position, memsize);
+        writePosition = position + HEADER_SIZE + payload.length;
+        return baseSequence + count - 1;
+    }
+
+    /**
+     * 返回payload对应的只读视图，不做拷贝，只能在段文件关闭之前使用
+     */
+    public ByteBuffer read(long sequence) {
+        int position = offsets[index(sequence)];
+        int length = buffer.getInt(position);
+        ByteBuffer slice = buffer.asReadOnlyBuffer();
+        slice.position(position + HEADER_SIZE);
+        slice.limit(position + HEADER_SIZE + length);
+        return slice;
+    }
+
+    public byte flags(long sequence) {
+        return buffer.get(offsets[index(sequence)] + 4);
+    }
+
+    /**
+     * 截止到sequence(包含)的累计memsize
+     */
+    public long memsizeUntil(long sequence) {
+        return memsizes[index(sequence)];
+    }
+
+    /**
+     * sequence之前(不包含)的累计memsize
+     */
+    public long memsizeBefore(long sequence) {
+        int index = index(sequence);
+        return index == 0 ? baseMemSize : memsizes[index - 1];
+    }
+
+    /**
+     * 截断到指定的sequence(包含)，之后的记录全部丢弃
+     */
+    public void truncate(long lastSequence) {
+        // lastSequence在该段之前时整段清空
+        int newCount = (int) Math.max(lastSequence - baseSequence + 1, 0);
+        if (newCount >= count) {
+            return;
+        }
+
+        int oldWritePosition = writePosition;
+        writePosition = newCount > 0 ? offsets[newCount] : 0;
+        count = newCount;
+        // 整个尾部清零，否则之后追加较短的记录时，recover会把残留的旧记录当成有效记录
+        zero(writePosition, oldWritePosition);
+    }
+
+    private void zero(int from, int to) {
+        byte[] zeros = new byte[Math.min(to - from, 64 * 1024)];
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(from);
+        while (slice.position() < to) {
+            slice.put(zeros, 0, Math.min(zeros.length, to - slice.position()));
+        }
+    }
+
+    public void force() {
+        buffer.force();
+    }
+
+    public void close() {
+        try {
+            force();
+            unmap(buffer);
+            buffer = null;
+            channel.close();
+            raf.close();
+        } catch (IOException e) {
+            throw new CanalStoreException("close segment " + file.getPath() + " failed", e);
+        }
+    }
+
+    public void delete() {
+        close();
+        if (!file.delete()) {
+            throw new CanalStoreException("delete segment " + file.getPath() + " failed");
+        }
+    }
+
+    private void addOffset(int position, long memsize) {
+        if (count == offsets.length) {
+            int[] newOffsets = new int[offsets.length * 2];
+            System.arraycopy(offsets, 0, newOffsets, 0, count);
+            offsets = newOffsets;
+            long[] newMemsizes = new long[memsizes.length * 2];
+            System.arraycopy(memsizes, 0, newMemsizes, 0, count);
+            memsizes = newMemsizes;
+        }
+        memsizes[count] = (count == 0 ? baseMemSize : memsizes[count - 1]) + memsize;
+        offsets[count++] = position;
+    }
+
+    private int index(long sequence) {
+        return (int) (sequence - baseSequence);
+    }
+
+    /**
+     * 尽量及时释放mmap，否则文件删除之后磁盘空间要等到gc之后才会释放，失败时交给gc处理
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                Method cleanMethod = cleaner.getClass().getMethod("clean");
+                cleanMethod.setAccessible(true);
+                cleanMethod.invoke(cleaner);
+            }
+        } catch (Exception e) {
+            // ignore
+        }
+    }
+
+    // ================ getter ==================
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getBaseSequence() {
+        return baseSequence;
+    }
+
+    /**
+     * 最后一条记录的sequence，没有记录时为baseSequence - 1
+     */
+    public long getLastSequence() {
+        return baseSequence + count - 1;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * 该段最后一条记录的累计memsize，作为下一个段的baseMemSize
+     */
+    public long getEndMemSize() {
+        return count == 0 ? baseMemSize : memsizes[count - 1];
+    }
+}
@@ -40,6 +40,7 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
     private int               bufferMemUnit = 1024;                         // memsize的单位，默认为1kb大小
     private int               indexMask;
     private Event[]           entries;
+    private long[]            memSizes;                                 // 每个slot写入之后putMemSize的累计值，ack时直接计算ackMemSize
 
     // 记录下put/get/ack操作的三个下标
     private AtomicLong        putSequence   = new AtomicLong(INIT_SQEUENCE); // 代表当前put操作最后一次写操作发生的位置
@@ -80,6 +81,9 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
 
         indexMask = bufferSize - 1;
         entries = new Event[bufferSize];
+        if (batchMode.isMemSize()) {
+            memSizes = new long[bufferSize];
+        }
     }
 
     public void stop() throws CanalStoreException {
@@ -190,16 +194,18 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
 
         // 记录一下gets memsize信息，方便快速检索
         if (batchMode.isMemSize()) {
-            long size = 0;
-            for (Event event : data) {
-                size += calculateSize(event);
+            long size = putMemSize.get();
+            for (long next = current + 1; next <= end; next++) {
+                size += calculateSize(entries[getIndex(next)]);
+                memSizes[getIndex(next)] = size;
             }
 
-            putMemSize.getAndAdd(size);
+            putMemSize.set(size);
         }
 
         // tell other threads that store is not empty
         notEmpty.signal();
+        notifyListeners();
     }
 
     public Events<Event> get(Position start, int batchSize) throws InterruptedException, CanalStoreException {
@@ -259,6 +265,16 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
         }
     }
 
+    public boolean hasAvailable(Position start, int batchSize) throws CanalStoreException {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            return checkUnGetSlotAt((LogPosition) start, batchSize);
+        } finally {
+            lock.unlock();
+        }
+    }
+
     private Events<Event> doGet(Position start, int batchSize) throws CanalStoreException {
         LogPosition startPosition = (LogPosition) start;
 
@@ -323,6 +339,7 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
 
         PositionRange<LogPosition> range = new PositionRange<LogPosition>();
         result.setPositionRange(range);
+        range.setEndSeq(end);
 
         range.setStart(CanalEventUtils.createPosition(entrys.get(0)));
         range.setEnd(CanalEventUtils.createPosition(entrys.get(result.getEvents().size() - 1)));
@@ -404,6 +421,10 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
         cleanUntil(position);
     }
 
+    public void ack(Position position, long seqId) throws CanalStoreException {
+        cleanUntil(position, seqId);
+    }
+
     public void cleanUntil(Position position) throws CanalStoreException {
         final ReentrantLock lock = this.lock;
         lock.lock();
@@ -412,27 +433,13 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
             long maxSequence = getSequence.get();
 
             boolean hasMatch = false;
-            long memsize = 0;
             for (long next = sequence + 1; next <= maxSequence; next++) {
                 Event event = entries[getIndex(next)];
-                memsize += calculateSize(event);
                 boolean match = CanalEventUtils.checkPosition(event, (LogPosition) position);
                 if (match) {// 找到对应的position，更新ack seq
                     hasMatch = true;
 
-                    if (batchMode.isMemSize()) {
-                        ackMemSize.addAndGet(memsize);
-                        // 尝试清空buffer中的内存，将ack之前的内存全部释放掉
-                        for (long index = sequence + 1; index < next; index++) {
-                            /*
-                             * yzy: 这个循环应该放在外面，无论是MEMSIZE还是ITEMSIZE，都应该设置为NULL
-                             * */
-                            entries[getIndex(index)] = null;// 设置为null
-                        }
-                    }
-
-                    if (ackSequence.compareAndSet(sequence, next)) {// 避免并发ack
-                        notFull.signal();
+                    if (doAck(sequence, next)) {
                         return;
                     }
                 }
@@ -446,6 +453,51 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
         }
     }
 
+    /**
+     * 根据get时记录的sequence直接ack，只需要校验一次seqId对应的数据和position是否一致(防止store重启之后seqId失效)，不需要逐条查找
+     */
+    public void cleanUntil(Position position, long seqId) throws CanalStoreException {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            long sequence = ackSequence.get();
+            long maxSequence = getSequence.get();
+            if (seqId > sequence && seqId <= maxSequence
+                && CanalEventUtils.checkPosition(entries[getIndex(seqId)], (LogPosition) position)) {
+                if (doAck(sequence, seqId)) {
+                    return;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        // seqId无效，退化为按position查找
+        cleanUntil(position);
+    }
+
+    /**
+     * 将ack位置从sequence移动到next，memsize直接取put时记录的累计值
+     */
+    private boolean doAck(long sequence, long next) {
+        if (batchMode.isMemSize()) {
+            ackMemSize.set(memSizes[getIndex(next)]);
+            // 尝试清空buffer中的内存，将ack之前的内存全部释放掉
+            for (long index = sequence + 1; index < next; index++) {
+                /*
+                 * yzy: 这个循环应该放在外面，无论是MEMSIZE还是ITEMSIZE，都应该设置为NULL
+                 * */
+                entries[getIndex(index)] = null;// 设置为null
+            }
+        }
+
+        if (ackSequence.compareAndSet(sequence, next)) {// 避免并发ack
+            notFull.signal();
+            return true;
+        }
+        return false;
+    }
+
     public void rollback() throws CanalStoreException {
         final ReentrantLock lock = this.lock;
         lock.lock();
@@ -469,6 +521,7 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
             getMemSize.set(0);
             ackMemSize.set(0);
             entries = null;
+            memSizes = null;
             // for (int i = 0; i < entries.length; i++) {
             // entries[i] = null;
             // }
@@ -544,8 +597,12 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
     }
 
     private long calculateSize(Event event) {
-        // 直接返回binlog中的事件大小
-        return event.getEntry().getHeader().getEventLength();
+        // 直接返回binlog中的事件大小，保留了序列化数据时一并计算，避免内存流控少算
+        long size = event.getEntry().getHeader().getEventLength();
+        if (event.getRawEntry() != null) {
+            size += event.getRawEntry().size();
+        }
+        return size;
     }
 
     private int getIndex(long sequcnce) {
@@ -0,0 +1,580 @@
+package com.alibaba.otter.canal.store.memory;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.alibaba.otter.canal.protocol.CanalEntry;
+import com.alibaba.otter.canal.protocol.CanalEntry.EventType;
+import com.alibaba.otter.canal.protocol.position.LogPosition;
+import com.alibaba.otter.canal.protocol.position.Position;
+import com.alibaba.otter.canal.protocol.position.PositionRange;
+import com.alibaba.otter.canal.store.AbstractCanalStoreScavenge;
+import com.alibaba.otter.canal.store.CanalEventStore;
+import com.alibaba.otter.canal.store.CanalStoreException;
+import com.alibaba.otter.canal.store.CanalStoreScavenge;
+import com.alibaba.otter.canal.store.helper.CanalEventUtils;
+import com.alibaba.otter.canal.store.memory.ring.Sequence;
+import com.alibaba.otter.canal.store.memory.ring.WaitMode;
+import com.alibaba.otter.canal.store.memory.ring.WaitStrategy;
+import com.alibaba.otter.canal.store.model.BatchMode;
+import com.alibaba.otter.canal.store.model.Event;
+import com.alibaba.otter.canal.store.model.Events;
+
+/**
+ * 单生产者无锁版本的内存memory store，语义和{@linkplain MemoryEventStoreWithBuffer}保持一致(包括ddlIsolation和MEMSIZE模式)
+ *
+ * <pre>
+ * 和MemoryEventStoreWithBuffer的区别：
+ * 1. put/get/ack三个下标以及对应的memsize使用带cache line填充的{@linkplain Sequence}，避免伪共享
+ * 2. put操作不再加锁，写完slot之后通过volatile写putSequence发布数据，parse线程不会再和server的get线程争用同一把锁
+ * 3. get/ack/rollback之间仍然使用一把消费端的锁保证互斥(server端对同一个instance本身就是串行调用，基本无竞争)，等待时不持有该锁
+ * 4. 等待采用Disruptor风格的等待策略，可选BLOCKING/YIELDING/BUSYSPIN，通过waitMode配置
+ *
+ * 注意：put操作只允许单线程调用(EntryEventSink的parse线程)，group模式下多个parser同时写入请继续使用MemoryEventStoreWithBuffer
+ * </pre>
+ *
+ * @author yzy
+ * @version 1.0.24
+ */
+public class MemoryEventStoreWithLockFreeBuffer extends AbstractCanalStoreScavenge implements CanalEventStore<Event>, CanalStoreScavenge {
+
+    private static final long INIT_SQEUENCE = -1;
+    private int               bufferSize    = 16 * 1024;
+    private int               bufferMemUnit = 1024;                      // memsize的单位，默认为1kb大小
+    private int               indexMask;
+    private Event[]           entries;
+    private long[]            memSizes;                                  // 每个slot写入之后putMemSize的累计值，ack时直接计算ackMemSize
+
+    // 记录下put/get/ack操作的三个下标
+    private final Sequence    putSequence   = new Sequence(INIT_SQEUENCE); // 代表当前put操作最后一次写操作发生的位置
+    private final Sequence    getSequence   = new Sequence(INIT_SQEUENCE); // 代表当前get操作读取的最后一条的位置
+    private final Sequence    ackSequence   = new Sequence(INIT_SQEUENCE); // 代表当前ack操作的最后一条的位置
+
+    // 记录下put/get/ack操作的三个memsize大小
+    private final Sequence    putMemSize    = new Sequence(0);
+    private final Sequence    getMemSize    = new Sequence(0);
+    private final Sequence    ackMemSize    = new Sequence(0);
+
+    // 消费端(get/ack/rollback)之间的互斥，生产者不使用
+    private ReentrantLock     consumerLock  = new ReentrantLock();
+
+    private WaitMode          waitMode      = WaitMode.BLOCKING;
+    private WaitStrategy      notFull;
+    private WaitStrategy      notEmpty;
+
+    private BatchMode         batchMode     = BatchMode.ITEMSIZE;
+    private boolean           ddlIsolation  = false;
+
+    public MemoryEventStoreWithLockFreeBuffer(){
+
+    }
+
+    public MemoryEventStoreWithLockFreeBuffer(BatchMode batchMode){
+        this.batchMode = batchMode;
+    }
+
+    public void start() throws CanalStoreException {
+        super.start();
+        if (Integer.bitCount(bufferSize) != 1) {
+            throw new IllegalArgumentException("bufferSize must be a power of 2");
+        }
+
+        indexMask = bufferSize - 1;
+        entries = new Event[bufferSize];
+        if (batchMode.isMemSize()) {
+            memSizes = new long[bufferSize];
+        }
+        notFull = waitMode.newWaitStrategy();
+        notEmpty = waitMode.newWaitStrategy();
+    }
+
+    public void stop() throws CanalStoreException {
+        super.stop();
+
+        cleanAll();
+    }
+
+    public void put(List<Event> data) throws InterruptedException, CanalStoreException {
+        if (data == null || data.isEmpty()) {
+            return;
+        }
+
+        notFull.waitFor(freeSlotBarrier(data.size()), false, 0L);
+        doPut(data);
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+
+    public boolean put(List<Event> data, long timeout, TimeUnit unit) throws InterruptedException, CanalStoreException {
+        if (data == null || data.isEmpty()) {
+            return true;
+        }
+
+        WaitStrategy.Barrier barrier = freeSlotBarrier(data.size());
+        if (!barrier.isReady()) {
+            notFull.waitFor(barrier, true, unit.toNanos(timeout));
+            if (!barrier.isReady()) {
+                return false;
+            }
+        }
+
+        doPut(data);
+        return true;
+    }
+
+    public boolean tryPut(List<Event> data) throws CanalStoreException {
+        if (data == null || data.isEmpty()) {
+            return true;
+        }
+
+        if (!checkFreeSlotAt(putSequence.get() + data.size())) {
+            return false;
+        } else {
+            doPut(data);
+            return true;
+        }
+    }
+
+    public void put(Event data) throws InterruptedException, CanalStoreException {
+        put(Arrays.asList(data));
+    }
+
+    public boolean put(Event data, long timeout, TimeUnit unit) throws InterruptedException, CanalStoreException {
+        return put(Arrays.asList(data), timeout, unit);
+    }
+
+    public boolean tryPut(Event data) throws CanalStoreException {
+        return tryPut(Arrays.asList(data));
+    }
+
+    /**
+     * 执行具体的put操作，只有单个生产者，不需要加锁
+     */
+    private void doPut(List<Event> data) {
+        long current = putSequence.get();
+        long end = current + data.size();
+
+        // 先写数据，再更新对应的cursor，putSequence的volatile写保证get线程看到的slot一定是新值
+        long size = putMemSize.get();
+        for (long next = current + 1; next <= end; next++) {
+            Event event = data.get((int) (next - current - 1));
+            entries[getIndex(next)] = event;
+            if (batchMode.isMemSize()) {
+                size += calculateSize(event);
+                memSizes[getIndex(next)] = size;
+            }
+        }
+
+        putSequence.set(end);
+
+        // 先发布putSequence，再发布putMemSize，保证get线程看到memsize满足时，对应的数据一定已经可见
+        if (batchMode.isMemSize()) {
+            putMemSize.set(size);
+        }
+
+        // tell other threads that store is not empty
+        notEmpty.signalAll();
+        notifyListeners();
+    }
+
+    public Events<Event> get(Position start, int batchSize) throws InterruptedException, CanalStoreException {
+        final WaitStrategy.Barrier barrier = unGetSlotBarrier((LogPosition) start, batchSize);
+        for (;;) {
+            notEmpty.waitFor(barrier, false, 0L);
+
+            final ReentrantLock lock = this.consumerLock;
+            lock.lockInterruptibly();
+            try {
+                // 等待过程中不持有锁，需要再检查一次，避免被其他的get/rollback改变了状态
+                if (barrier.isReady()) {
+                    return doGet(start, batchSize);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    public Events<Event> get(Position start, int batchSize, long timeout, TimeUnit unit) throws InterruptedException,
+                                                                                        CanalStoreException {
+        WaitStrategy.Barrier barrier = unGetSlotBarrier((LogPosition) start, batchSize);
+        if (!barrier.isReady()) {
+            notEmpty.waitFor(barrier, true, unit.toNanos(timeout));
+        }
+
+        // 如果时间到了，有多少取多少
+        final ReentrantLock lock = this.consumerLock;
+        lock.lockInterruptibly();
+        try {
+            return doGet(start, batchSize);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Events<Event> tryGet(Position start, int batchSize) throws CanalStoreException {
+        final ReentrantLock lock = this.consumerLock;
+        lock.lock();
+        try {
+            return doGet(start, batchSize);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean hasAvailable(Position start, int batchSize) throws CanalStoreException {
+        final ReentrantLock lock = this.consumerLock;
+        lock.lock();
+        try {
+            return checkUnGetSlotAt((LogPosition) start, batchSize);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Events<Event> doGet(Position start, int batchSize) throws CanalStoreException {
+        LogPosition startPosition = (LogPosition) start;
+
+        long current = getSequence.get();
+        long maxAbleSequence = putSequence.get();
+        long next = current;
+        long end = current;
+        // 如果startPosition为null，说明是第一次，默认+1处理
+        if (startPosition == null || !startPosition.getPostion().isIncluded()) { // 第一次订阅之后，需要包含一下start位置，防止丢失第一条记录
+            next = next + 1;
+        }
+
+        if (current >= maxAbleSequence) {
+            return new Events<Event>();
+        }
+
+        Events<Event> result = new Events<Event>();
+        List<Event> entrys = result.getEvents();
+        long memsize = 0;
+        if (batchMode.isItemSize()) {
+            end = (next + batchSize - 1) < maxAbleSequence ? (next + batchSize - 1) : maxAbleSequence;
+            // 提取数据并返回
+            for (; next <= end; next++) {
+                Event event = entries[getIndex(next)];
+                if (ddlIsolation && isDdl(event.getEntry().getHeader().getEventType())) {
+                    // 如果是ddl隔离，直接返回
+                    if (entrys.size() == 0) {
+                        entrys.add(event);// 如果没有DML事件，加入当前的DDL事件
+                        end = next; // 更新end为当前
+                    } else {
+                        // 如果之前已经有DML事件，直接返回了，因为不包含当前next这记录，需要回退一个位置
+                        end = next - 1; // next-1一定大于current，不需要判断
+                    }
+                    break;
+                } else {
+                    entrys.add(event);
+                }
+            }
+        } else {
+            long maxMemSize = batchSize * bufferMemUnit;
+            for (; memsize <= maxMemSize && next <= maxAbleSequence; next++) {
+                // 永远保证可以取出第一条的记录，避免死锁
+                Event event = entries[getIndex(next)];
+                if (ddlIsolation && isDdl(event.getEntry().getHeader().getEventType())) {
+                    // 如果是ddl隔离，直接返回
+                    if (entrys.size() == 0) {
+                        entrys.add(event);// 如果没有DML事件，加入当前的DDL事件
+                        end = next; // 更新end为当前
+                    } else {
+                        // 如果之前已经有DML事件，直接返回了，因为不包含当前next这记录，需要回退一个位置
+                        end = next - 1; // next-1一定大于current，不需要判断
+                    }
+                    break;
+                } else {
+                    entrys.add(event);
+                    memsize += calculateSize(event);
+                    end = next;// 记录end位点
+                }
+            }
+
+        }
+
+        PositionRange<LogPosition> range = new PositionRange<LogPosition>();
+        result.setPositionRange(range);
+        range.setEndSeq(end);
+
+        range.setStart(CanalEventUtils.createPosition(entrys.get(0)));
+        range.setEnd(CanalEventUtils.createPosition(entrys.get(result.getEvents().size() - 1)));
+        // 记录一下是否存在可以被ack的点
+
+        for (int i = entrys.size() - 1; i >= 0; i--) {
+            Event event = entrys.get(i);
+            if (CanalEntry.EntryType.TRANSACTIONBEGIN == event.getEntry().getEntryType()
+                || CanalEntry.EntryType.TRANSACTIONEND == event.getEntry().getEntryType()
+                || isDdl(event.getEntry().getHeader().getEventType())) {
+                // 将事务头/尾设置可被为ack的点
+                range.setAck(CanalEventUtils.createPosition(event));
+                break;
+            }
+        }
+
+        if (getSequence.compareAndSet(current, end)) {
+            getMemSize.set(getMemSize.get() + memsize);
+            notFull.signalAll();
+            return result;
+        } else {
+            return new Events<Event>();
+        }
+    }
+
+    public LogPosition getFirstPosition() throws CanalStoreException {
+        final ReentrantLock lock = this.consumerLock;
+        lock.lock();
+        try {
+            long firstSeqeuence = ackSequence.get();
+            long putSeqeuence = putSequence.get();
+            if (firstSeqeuence == INIT_SQEUENCE && firstSeqeuence < putSeqeuence) {
+                // 没有ack过数据
+                Event event = entries[getIndex(firstSeqeuence + 1)]; // 最后一次ack为-1，需要移动到下一条,included
+                                                                     // = false
+                return CanalEventUtils.createPosition(event, false);
+            } else if (firstSeqeuence > INIT_SQEUENCE && firstSeqeuence < putSeqeuence) {
+                // ack未追上put操作
+                Event event = entries[getIndex(firstSeqeuence + 1)]; // 最后一次ack的位置数据
+                                                                     // + 1
+                return CanalEventUtils.createPosition(event, true);
+            } else if (firstSeqeuence > INIT_SQEUENCE && firstSeqeuence == putSeqeuence) {
+                // 已经追上，store中没有数据
+                Event event = entries[getIndex(firstSeqeuence)]; // 最后一次ack的位置数据，和last为同一条，included
+                                                                 // = false
+                return CanalEventUtils.createPosition(event, false);
+            } else {
+                // 没有任何数据
+                return null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public LogPosition getLatestPosition() throws CanalStoreException {
+        final ReentrantLock lock = this.consumerLock;
+        lock.lock();
+        try {
+            long latestSequence = putSequence.get();
+            if (latestSequence > INIT_SQEUENCE && latestSequence != ackSequence.get()) {
+                Event event = entries[getIndex(latestSequence)]; // 最后一次写入的数据，最后一条未消费的数据
+                return CanalEventUtils.createPosition(event, true);
+            } else if (latestSequence > INIT_SQEUENCE && latestSequence == ackSequence.get()) {
+                // ack已经追上了put操作
+                Event event = entries[getIndex(latestSequence)]; // 最后一次写入的数据，included = false
+                return CanalEventUtils.createPosition(event, false);
+            } else {
+                // 没有任何数据
+                return null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void ack(Position position) throws CanalStoreException {
+        cleanUntil(position);
+    }
+
+    public void cleanUntil(Position position) throws CanalStoreException {
+        final ReentrantLock lock = this.consumerLock;
+        lock.lock();
+        try {
+            long sequence = ackSequence.get();
+            long maxSequence = getSequence.get();
+
+            for (long next = sequence + 1; next <= maxSequence; next++) {
+                Event event = entries[getIndex(next)];
+                if (CanalEventUtils.checkPosition(event, (LogPosition) position)) {// 找到对应的position，更新ack seq
+                    doAck(sequence, next);
+                    return;
+                }
+            }
+
+            // 找不到对应需要ack的position
+            throw new CanalStoreException("no match ack position" + position.toString());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void ack(Position position, long seqId) throws CanalStoreException {
+        cleanUntil(position, seqId);
+    }
+
+    /**
+     * 根据get时记录的sequence直接ack，只需要校验一次seqId对应的数据和position是否一致，不一致时退化为按position查找
+     */
+    public void cleanUntil(Position position, long seqId) throws CanalStoreException {
+        final ReentrantLock lock = this.consumerLock;
+        lock.lock();
+        try {
+            long sequence = ackSequence.get();
+            if (seqId > sequence && seqId <= getSequence.get()
+                && CanalEventUtils.checkPosition(entries[getIndex(seqId)], (LogPosition) position)) {
+                doAck(sequence, seqId);
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        cleanUntil(position);
+    }
+
+    private void doAck(long sequence, long next) {
+        // 尝试清空buffer中的内存，将ack之前的内存全部释放掉，slot的清理必须在ackSequence发布之前完成
+        for (long index = sequence + 1; index < next; index++) {
+            entries[getIndex(index)] = null;// 设置为null
+        }
+
+        if (batchMode.isMemSize()) {
+            ackMemSize.set(memSizes[getIndex(next)]);
+        }
+
+        ackSequence.set(next);
+        notFull.signalAll();
+    }
+
+    public void rollback() throws CanalStoreException {
+        final ReentrantLock lock = this.consumerLock;
+        lock.lock();
+        try {
+            getSequence.set(ackSequence.get());
+            getMemSize.set(ackMemSize.get());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void cleanAll() throws CanalStoreException {
+        final ReentrantLock lock = this.consumerLock;
+        lock.lock();
+        try {
+            putSequence.set(INIT_SQEUENCE);
+            getSequence.set(INIT_SQEUENCE);
+            ackSequence.set(INIT_SQEUENCE);
+
+            putMemSize.set(0);
+            getMemSize.set(0);
+            ackMemSize.set(0);
+            entries = null;
+            memSizes = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // =================== helper method =================
+
+    private long getMinimumGetOrAck() {
+        long get = getSequence.get();
+        long ack = ackSequence.get();
+        return ack <= get ? ack : get;
+    }
+
+    /**
+     * 查询是否有空位
+     */
+    private boolean checkFreeSlotAt(final long sequence) {
+        final long wrapPoint = sequence - bufferSize;
+        final long minPoint = getMinimumGetOrAck();
+        if (wrapPoint > minPoint) { // 刚好追上一轮
+            return false;
+        } else {
+            // 在bufferSize模式上，再增加memSize控制
+            if (batchMode.isMemSize()) {
+                final long memsize = putMemSize.get() - ackMemSize.get();
+                return memsize < bufferSize * bufferMemUnit;
+            } else {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 检查是否存在需要get的数据,并且数量>=batchSize
+     */
+    private boolean checkUnGetSlotAt(LogPosition startPosition, int batchSize) {
+        if (batchMode.isItemSize()) {
+            long current = getSequence.get();
+            long maxAbleSequence = putSequence.get();
+            long next = current;
+            if (startPosition == null || !startPosition.getPostion().isIncluded()) { // 第一次订阅之后，需要包含一下start位置，防止丢失第一条记录
+                next = next + 1;// 少一条数据
+            }
+
+            return current < maxAbleSequence && next + batchSize - 1 <= maxAbleSequence;
+        } else {
+            // 处理内存大小判断
+            long currentSize = getMemSize.get();
+            long maxAbleSize = putMemSize.get();
+
+            return maxAbleSize - currentSize >= batchSize * bufferMemUnit;
+        }
+    }
+
+    private WaitStrategy.Barrier freeSlotBarrier(final int size) {
+        return new WaitStrategy.Barrier() {
+
+            public boolean isReady() {
+                return checkFreeSlotAt(putSequence.get() + size);
+            }
+        };
+    }
+
+    private WaitStrategy.Barrier unGetSlotBarrier(final LogPosition startPosition, final int batchSize) {
+        return new WaitStrategy.Barrier() {
+
+            public boolean isReady() {
+                return checkUnGetSlotAt(startPosition, batchSize);
+            }
+        };
+    }
+
+    private long calculateSize(Event event) {
+        // 直接返回binlog中的事件大小，保留了序列化数据时一并计算，避免内存流控少算
+        long size = event.getEntry().getHeader().getEventLength();
+        if (event.getRawEntry() != null) {
+            size += event.getRawEntry().size();
+        }
+        return size;
+    }
+
+    private int getIndex(long sequcnce) {
+        return (int) sequcnce & indexMask;
+    }
+
+    private boolean isDdl(EventType type) {
+        return type == EventType.ALTER || type == EventType.CREATE || type == EventType.ERASE
+               || type == EventType.RENAME || type == EventType.TRUNCATE || type == EventType.CINDEX
+               || type == EventType.DINDEX;
+    }
+
+    // ================ setter / getter ==================
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public void setBufferMemUnit(int bufferMemUnit) {
+        this.bufferMemUnit = bufferMemUnit;
+    }
+
+    public void setBatchMode(BatchMode batchMode) {
+        this.batchMode = batchMode;
+    }
+
+    public void setDdlIsolation(boolean ddlIsolation) {
+        this.ddlIsolation = ddlIsolation;
+    }
+
+    public void setWaitMode(WaitMode waitMode) {
+        this.waitMode = waitMode;
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.alibaba.otter.canal.store.memory.ring;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 基于lock/condition的阻塞等待策略，cpu占用最低
+ * 
+ * <pre>
+ * 和MemoryEventStoreWithBuffer的区别在于锁只在真正需要挂起时才使用：
+ * 1. 等待方先判断条件，满足则直接返回，不加锁
+ * 2. 唤醒方只有在存在等待线程时才加锁signal，没有等待者时只是一次volatile读
+ * 
+ * 等待方先登记waiters再检查条件，唤醒方先更新cursor再检查waiters，两边都是volatile操作，不会丢失唤醒
+ * </pre>
+ * 
+ * @author yzy
+ * @version 1.0.24
+ */
+public class BlockingWaitStrategy implements WaitStrategy {
+
+    private final ReentrantLock lock      = new ReentrantLock();
+    private final Condition     condition = lock.newCondition();
+    private final AtomicInteger waiters   = new AtomicInteger(0);
+
+    public long waitFor(Barrier barrier, boolean timed, long nanos) throws InterruptedException {
+        if (barrier.isReady()) {
+            return nanos;
+        }
+
+        lock.lockInterruptibly();
+        try {
+            waiters.incrementAndGet();
+            try {
+                while (!barrier.isReady()) {
+                    if (timed) {
+                        if (nanos <= 0) {
+                            return nanos;
+                        }
+                        nanos = condition.awaitNanos(nanos);
+                    } else {
+                        condition.await();
+                    }
+                }
+            } catch (InterruptedException ie) {
+                condition.signal(); // propagate to non-interrupted thread
+                throw ie;
+            } finally {
+                waiters.decrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        return nanos;
+    }
+
+    public void signalAll() {
+        if (waiters.get() > 0) {
+            lock.lock();
+            try {
+                condition.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.alibaba.otter.canal.store.memory.ring;
+
+/**
+ * 忙等策略，延迟最低，但会占满一个cpu，适合线程绑核且cpu充足的场景
+ * 
+ * @author yzy
+ * @version 1.0.24
+ */
+public class BusySpinWaitStrategy implements WaitStrategy {
+
+    public long waitFor(Barrier barrier, boolean timed, long nanos) throws InterruptedException {
+        final long deadline = timed ? System.nanoTime() + nanos : 0L;
+        while (!barrier.isReady()) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+
+            if (timed) {
+                nanos = deadline - System.nanoTime();
+                if (nanos <= 0) {
+                    return nanos;
+                }
+            }
+        }
+
+        return timed ? deadline - System.nanoTime() : nanos;
+    }
+
+    public void signalAll() {
+        // 没有挂起的线程，不需要唤醒
+    }
+}
@@ -0,0 +1,72 @@
+package com.alibaba.otter.canal.store.memory.ring;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+class LhsPadding {
+
+    protected long p1, p2, p3, p4, p5, p6, p7;
+}
+
+class Value extends LhsPadding {
+
+    protected volatile long value;
+}
+
+class RhsPadding extends Value {
+
+    protected long p9, p10, p11, p12, p13, p14, p15;
+}
+
+/**
+ * 带cache line填充的序列号，避免put/get/ack三个cursor落在同一个cache line上产生伪共享(false sharing)
+ * 
+ * <pre>
+ * 左右各填充7个long，保证value前后至少各有56字节，在64字节cache line的机器上独占一行
+ * </pre>
+ * 
+ * @author yzy
+ * @version 1.0.24
+ */
+public class Sequence extends RhsPadding {
+
+    private static final AtomicLongFieldUpdater<Value> UPDATER = AtomicLongFieldUpdater.newUpdater(Value.class,
+                                                                   "value");
+
+    public Sequence(){
+        this(-1L);
+    }
+
+    public Sequence(long initialValue){
+        UPDATER.lazySet(this, initialValue);
+    }
+
+    public long get() {
+        return value;
+    }
+
+    /**
+     * volatile写，保证之前的所有写操作对读取到该值的线程可见
+     */
+    public void set(long value) {
+        this.value = value;
+    }
+
+    /**
+     * 有序写(store-store屏障)，只保证写入顺序，不保证立即可见，适合单写者场景
+     */
+    public void lazySet(long value) {
+        UPDATER.lazySet(this, value);
+    }
+
+    public boolean compareAndSet(long expect, long update) {
+        return UPDATER.compareAndSet(this, expect, update);
+    }
+
+    public long addAndGet(long delta) {
+        return UPDATER.addAndGet(this, delta);
+    }
+
+    public String toString() {
+        return Long.toString(get());
+    }
+}
@@ -0,0 +1,30 @@
+package com.alibaba.otter.canal.store.memory.ring;
+
+/**
+ * 等待策略类型，方便在spring配置中直接使用字符串指定
+ * 
+ * @author yzy
+ * @version 1.0.24
+ */
+public enum WaitMode {
+
+    /** 阻塞，基于lock/condition */
+    BLOCKING,
+
+    /** 自旋 + yield */
+    YIELDING,
+
+    /** 忙等 */
+    BUSYSPIN;
+
+    public WaitStrategy newWaitStrategy() {
+        switch (this) {
+            case BUSYSPIN:
+                return new BusySpinWaitStrategy();
+            case YIELDING:
+                return new YieldingWaitStrategy();
+            default:
+                return new BlockingWaitStrategy();
+        }
+    }
+}
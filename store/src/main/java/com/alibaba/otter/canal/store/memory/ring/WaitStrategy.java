@@ -0,0 +1,33 @@
+package com.alibaba.otter.canal.store.memory.ring;
+
+/**
+ * 等待策略，决定生产者/消费者在条件不满足时如何等待
+ * 
+ * @author yzy
+ * @version 1.0.24
+ */
+public interface WaitStrategy {
+
+    /**
+     * 等待直到barrier满足条件，或者超时
+     * 
+     * @param barrier 等待的条件
+     * @param timed 是否有超时限制，false代表一直等待到条件满足
+     * @param nanos 超时时间，单位纳秒，timed=false时忽略
+     * @return 剩余的等待时间(纳秒)，小于等于0代表已经超时
+     */
+    long waitFor(Barrier barrier, boolean timed, long nanos) throws InterruptedException;
+
+    /**
+     * 条件可能发生变化，唤醒等待中的线程
+     */
+    void signalAll();
+
+    /**
+     * 等待条件
+     */
+    public static interface Barrier {
+
+        boolean isReady();
+    }
+}
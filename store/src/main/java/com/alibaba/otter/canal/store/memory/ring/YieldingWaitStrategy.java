@@ -0,0 +1,41 @@
+package com.alibaba.otter.canal.store.memory.ring;
+
+/**
+ * 先自旋一定次数，之后每次检查失败都让出cpu，在延迟和cpu占用之间取一个折中
+ * 
+ * @author yzy
+ * @version 1.0.24
+ */
+public class YieldingWaitStrategy implements WaitStrategy {
+
+    private static final int SPIN_TRIES = 100;
+
+    public long waitFor(Barrier barrier, boolean timed, long nanos) throws InterruptedException {
+        final long deadline = timed ? System.nanoTime() + nanos : 0L;
+        int counter = SPIN_TRIES;
+        while (!barrier.isReady()) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+
+            if (timed) {
+                nanos = deadline - System.nanoTime();
+                if (nanos <= 0) {
+                    return nanos;
+                }
+            }
+
+            if (counter > 0) {
+                --counter;
+            } else {
+                Thread.yield();
+            }
+        }
+
+        return timed ? deadline - System.nanoTime() : nanos;
+    }
+
+    public void signalAll() {
+        // 没有挂起的线程，不需要唤醒
+    }
+}
@@ -7,6 +7,7 @@ import org.apache.commons.lang.builder.ToStringBuilder;
 import com.alibaba.otter.canal.common.utils.CanalToStringStyle;
 import com.alibaba.otter.canal.protocol.CanalEntry;
 import com.alibaba.otter.canal.protocol.position.LogIdentity;
+import com.google.protobuf.ByteString;
 
 /**
  * store存储数据对象
@@ -15,10 +16,11 @@ import com.alibaba.otter.canal.protocol.position.LogIdentity;
  */
 public class Event implements Serializable {
 
-    private static final long serialVersionUID = 1333330351758762739L;
+    private static final long    serialVersionUID = 1333330351758762739L;
 
-    private LogIdentity       logIdentity;                            // 记录数据产生的来源
-    private CanalEntry.Entry  entry;
+    private LogIdentity          logIdentity;                             // 记录数据产生的来源
+    private CanalEntry.Entry     entry;
+    private transient ByteString rawEntry;                                // entry序列化之后的数据，由sink生成一次，server输出时直接复用
 
     public Event(){
     }
@@ -44,6 +46,14 @@ public class Event implements Serializable {
         this.entry = entry;
     }
 
+    public ByteString getRawEntry() {
+        return rawEntry;
+    }
+
+    public void setRawEntry(ByteString rawEntry) {
+        this.rawEntry = rawEntry;
+    }
+
     public String toString() {
         return ToStringBuilder.reflectionToString(this, CanalToStringStyle.DEFAULT_STYLE);
     }
@@ -0,0 +1,139 @@
+package com.alibaba.otter.cancel.store.file;
+
+import java.io.File;
+import java.io.FilenameFilter;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.protocol.CanalEntry.EntryType;
+import com.alibaba.otter.canal.protocol.position.LogPosition;
+import com.alibaba.otter.canal.protocol.position.Position;
+import com.alibaba.otter.canal.store.helper.CanalEventUtils;
+import com.alibaba.otter.canal.store.file.FileEventStore;
+import com.alibaba.otter.canal.store.model.Event;
+import com.alibaba.otter.canal.store.model.Events;
+import com.alibaba.otter.cancel.store.memory.buffer.MemoryEventStoreBase;
+
+/**
+ * 文件store的put/get/ack以及重启恢复测试
+ * 
+ * @author yzy
+ * @version 1.0.24
+ */
+public class FileEventStoreTest extends MemoryEventStoreBase {
+
+    private File dataDir;
+
+    @Before
+    public void setUp() {
+        dataDir = new File(System.getProperty("java.io.tmpdir"), "canal_file_store_" + System.currentTimeMillis());
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(dataDir);
+    }
+
+    @Test
+    public void testPutGetAck() {
+        FileEventStore eventStore = buildStore();
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(eventStore.tryPut(buildEvent("1", i, i)));
+        }
+
+        Position first = eventStore.getFirstPosition();
+        Assert.assertEquals(first, CanalEventUtils.createPosition(buildEvent("1", 0L, 0L)));
+        Events<Event> events = eventStore.tryGet(first, 60);
+        Assert.assertEquals(60, events.getEvents().size());
+        Assert.assertEquals(59L, events.getEvents().get(59).getEntry().getHeader().getLogfileOffset());
+
+        eventStore.rollback();
+        events = eventStore.tryGet(first, 60);
+        Assert.assertEquals(60, events.getEvents().size());
+        eventStore.ack(events.getPositionRange().getEnd());
+
+        events = eventStore.tryGet(events.getPositionRange().getEnd(), 60);
+        Assert.assertEquals(40, events.getEvents().size());
+        eventStore.ack(events.getPositionRange().getEnd());
+        // 所有数据都被ack，只保留最后一个段文件
+        Assert.assertEquals(1, segmentFiles().length);
+        eventStore.stop();
+    }
+
+    @Test
+    public void testRestart() {
+        FileEventStore eventStore = buildStore();
+        for (int i = 0; i < 100; i++) {
+            eventStore.tryPut(buildEvent("1", i, i, i % 10 == 9 ? EntryType.TRANSACTIONEND : EntryType.ROWDATA));
+        }
+        Events<Event> events = eventStore.tryGet(null, 30);
+        eventStore.ack(events.getPositionRange().getEnd());
+        // 写了一半的事务，重启之后需要被截断
+        eventStore.tryPut(buildEvent("1", 100L, 100L));
+        eventStore.stop();
+
+        eventStore = buildStore();
+        LogPosition latest = eventStore.getLatestPosition();
+        Assert.assertEquals(99L, latest.getPostion().getPosition().longValue());
+
+        events = eventStore.tryGet(null, 100);
+        Assert.assertEquals(70, events.getEvents().size());
+        Assert.assertEquals(30L, events.getEvents().get(0).getEntry().getHeader().getLogfileOffset());
+        Assert.assertEquals(events.getEvents().get(0).getLogIdentity(), buildEvent("1", 0L, 0L).getLogIdentity());
+        eventStore.stop();
+    }
+
+    @Test
+    public void testResumeFromBoundary() {
+        FileEventStore eventStore = buildStore();
+        for (int i = 0; i < 100; i++) {
+            eventStore.tryPut(buildEvent("1", i, i, i % 10 == 9 ? EntryType.TRANSACTIONEND : EntryType.ROWDATA));
+        }
+        // 未完成的事务也被get并ack，ack越过了最后一个事务尾
+        for (int i = 100; i < 105; i++) {
+            eventStore.tryPut(buildEvent("1", i, i));
+        }
+        Events<Event> events = eventStore.tryGet(null, 105);
+        Assert.assertEquals(105, events.getEvents().size());
+        eventStore.ack(events.getPositionRange().getEnd());
+        Assert.assertEquals(99L, eventStore.getLatestPosition().getPostion().getPosition().longValue());
+        eventStore.stop();
+
+        eventStore = buildStore();
+        Assert.assertEquals(99L, eventStore.getLatestPosition().getPostion().getPosition().longValue());
+        Assert.assertEquals(0, eventStore.tryGet(null, 10).getEvents().size());
+
+        // parser从事务尾重新dump，新的事务尾之后恢复位点跟着前进
+        for (int i = 100; i < 110; i++) {
+            eventStore.tryPut(buildEvent("1", i, i, i == 109 ? EntryType.TRANSACTIONEND : EntryType.ROWDATA));
+        }
+        Assert.assertEquals(109L, eventStore.getLatestPosition().getPostion().getPosition().longValue());
+        eventStore.stop();
+    }
+
+    private FileEventStore buildStore() {
+        FileEventStore eventStore = new FileEventStore(dataDir.getPath());
+        eventStore.setSegmentSize(4 * 1024); // 小文件，覆盖多个段的场景
+        eventStore.start();
+        return eventStore;
+    }
+
+    private File[] segmentFiles() {
+        return dataDir.listFiles(new FilenameFilter() {
+
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".seg");
+            }
+        });
+    }
+
+    private Event buildEvent(String binlogFile, long offset, long timestamp, EntryType entryType) {
+        Event event = buildEvent(binlogFile, offset, timestamp);
+        event.setEntry(event.getEntry().toBuilder().setEntryType(entryType).build());
+        return event;
+    }
+}
@@ -0,0 +1,110 @@
+package com.alibaba.otter.cancel.store.file;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.store.file.FileSegment;
+
+/**
+ * 段文件的截断和恢复测试
+ * 
+ * @author yzy
+ * @version 1.0.24
+ */
+public class FileSegmentTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() {
+        dir = new File(System.getProperty("java.io.tmpdir"), "canal_file_segment_" + System.currentTimeMillis());
+        dir.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(dir);
+    }
+
+    @Test
+    public void testTruncate() {
+        FileSegment segment = FileSegment.create(dir, 0L, 4 * 1024, 0L);
+        for (int i = 0; i < 5; i++) {
+            segment.append((byte) 0, 1L, payload(i));
+        }
+        segment.truncate(1L);
+        Assert.assertEquals(1L, segment.getLastSequence());
+
+        // 追加一条和被截断记录等长的数据，后面残留的旧记录不能在恢复时被当成有效记录
+        segment.append((byte) 0, 1L, payload(9));
+        segment.close();
+
+        segment = FileSegment.load(segment.getFile(), 0L);
+        Assert.assertEquals(3, segment.getCount());
+        Assert.assertArrayEquals(payload(9), toBytes(segment.read(2L)));
+        segment.close();
+    }
+
+    @Test
+    public void testTruncateBeforeBase() {
+        FileSegment segment = FileSegment.create(dir, 10L, 4 * 1024, 0L);
+        for (int i = 0; i < 3; i++) {
+            segment.append((byte) 0, 1L, payload(i));
+        }
+
+        // 截断点在该段之前，整段清空，count不能变成负数
+        segment.truncate(5L);
+        Assert.assertEquals(0, segment.getCount());
+        Assert.assertEquals(9L, segment.getLastSequence());
+
+        segment.append((byte) 0, 1L, payload(9));
+        Assert.assertEquals(10L, segment.getLastSequence());
+        segment.close();
+
+        segment = FileSegment.load(segment.getFile(), 0L);
+        Assert.assertEquals(1, segment.getCount());
+        Assert.assertArrayEquals(payload(9), toBytes(segment.read(10L)));
+        segment.close();
+    }
+
+    @Test
+    public void testMemsize() {
+        FileSegment segment = FileSegment.create(dir, 0L, 4 * 1024, 100L);
+        for (int i = 0; i < 5; i++) {
+            segment.append((byte) 0, i + 1, payload(i));
+        }
+        Assert.assertEquals(100L, segment.memsizeBefore(0L));
+        Assert.assertEquals(103L, segment.memsizeUntil(1L));
+        Assert.assertEquals(115L, segment.getEndMemSize());
+        Assert.assertEquals(12L, segment.memsizeUntil(4L) - segment.memsizeBefore(2L));
+
+        segment.truncate(2L);
+        Assert.assertEquals(106L, segment.getEndMemSize());
+        segment.close();
+
+        // 重启之后通过扫描记录头重建累计值
+        segment = FileSegment.load(segment.getFile(), 100L);
+        Assert.assertEquals(106L, segment.getEndMemSize());
+        Assert.assertEquals(5L, segment.memsizeUntil(2L) - segment.memsizeBefore(1L));
+        segment.close();
+    }
+
+    private byte[] toBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private byte[] payload(int value) {
+        byte[] payload = new byte[100];
+        Arrays.fill(payload, (byte) (value + 1));
+        return payload;
+    }
+}
@@ -0,0 +1,113 @@
+package com.alibaba.otter.cancel.store.memory.buffer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.alibaba.otter.canal.protocol.position.Position;
+import com.alibaba.otter.canal.store.CanalEventStore;
+import com.alibaba.otter.canal.store.memory.MemoryEventStoreWithBuffer;
+import com.alibaba.otter.canal.store.memory.MemoryEventStoreWithLockFreeBuffer;
+import com.alibaba.otter.canal.store.memory.ring.WaitMode;
+import com.alibaba.otter.canal.store.model.BatchMode;
+import com.alibaba.otter.canal.store.model.Event;
+import com.alibaba.otter.canal.store.model.Events;
+
+/**
+ * 1个生产者(模拟EntryEventSink.tryPut) + 1个消费者(模拟server的get+ack)，对比加锁版本和无锁版本的吞吐
+ * 
+ * <pre>
+ * 数据提前构造好，避免测试的是protobuf的构造开销
+ * </pre>
+ * 
+ * @author yzy
+ * @version 1.0.24
+ */
+public class MemoryEventStoreContentionNoRunTest extends MemoryEventStoreBase {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int TOTAL       = 5 * 1000 * 1000;
+    private static final int PUT_BATCH   = 4;                // 一个小事务
+    private static final int GET_BATCH   = 1000;
+
+    @Test
+    public void testContention() throws Exception {
+        List<Event> events = new ArrayList<Event>(BUFFER_SIZE);
+        for (int i = 0; i < BUFFER_SIZE; i++) {
+            events.add(buildEvent("mysql-bin.000001", i, i, 100));
+        }
+
+        for (int round = 0; round < 3; round++) {
+            MemoryEventStoreWithBuffer lockStore = new MemoryEventStoreWithBuffer();
+            lockStore.setBufferSize(BUFFER_SIZE);
+            lockStore.setBatchMode(BatchMode.ITEMSIZE);
+            report("lock", run(lockStore, events));
+
+            for (WaitMode mode : WaitMode.values()) {
+                MemoryEventStoreWithLockFreeBuffer lockFreeStore = new MemoryEventStoreWithLockFreeBuffer();
+                lockFreeStore.setBufferSize(BUFFER_SIZE);
+                lockFreeStore.setBatchMode(BatchMode.ITEMSIZE);
+                lockFreeStore.setWaitMode(mode);
+                report("lockfree-" + mode, run(lockFreeStore, events));
+            }
+        }
+    }
+
+    private long run(final CanalEventStore<Event> store, final List<Event> events) throws Exception {
+        store.start();
+        final CountDownLatch latch = new CountDownLatch(2);
+        Thread producer = new Thread(new Runnable() {
+
+            public void run() {
+                int offset = 0;
+                for (int i = 0; i < TOTAL; i += PUT_BATCH) {
+                    List<Event> batch = events.subList(offset, offset + PUT_BATCH);
+                    while (!store.tryPut(batch)) {
+                        Thread.yield();
+                    }
+                    offset = (offset + PUT_BATCH) % events.size();
+                }
+                latch.countDown();
+            }
+        });
+
+        Thread consumer = new Thread(new Runnable() {
+
+            public void run() {
+                int count = 0;
+                Position position = null;
+                try {
+                    while (count < TOTAL) {
+                        Events<Event> result = store.get(position, GET_BATCH, 100, TimeUnit.MILLISECONDS);
+                        if (!result.getEvents().isEmpty()) {
+                            count += result.getEvents().size();
+                            position = result.getPositionRange().getEnd();
+                            store.ack(position);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+                latch.countDown();
+            }
+        });
+
+        long start = System.nanoTime();
+        producer.start();
+        consumer.start();
+        latch.await();
+        long cost = System.nanoTime() - start;
+        store.stop();
+        return cost;
+    }
+
+    private void report(String name, long nanos) {
+        System.out.println(String.format("%-20s cost %6d ms , tps %10d",
+            name,
+            TimeUnit.NANOSECONDS.toMillis(nanos),
+            TOTAL * 1000L * 1000 * 1000 / nanos));
+    }
+}
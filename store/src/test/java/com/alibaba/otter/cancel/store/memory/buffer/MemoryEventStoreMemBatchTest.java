@@ -16,6 +16,7 @@ import com.alibaba.otter.canal.store.memory.MemoryEventStoreWithBuffer;
 import com.alibaba.otter.canal.store.model.BatchMode;
 import com.alibaba.otter.canal.store.model.Event;
 import com.alibaba.otter.canal.store.model.Events;
+import com.google.protobuf.ByteString;
 
 public class MemoryEventStoreMemBatchTest extends MemoryEventStoreBase {
 
@@ -314,4 +315,32 @@ public class MemoryEventStoreMemBatchTest extends MemoryEventStoreBase {
 
         eventStore.stop();
     }
+
+    @Test
+    public void testRawEntryMemSize() {
+        int bufferSize = 16;
+        MemoryEventStoreWithBuffer eventStore = new MemoryEventStoreWithBuffer();
+        eventStore.setBufferSize(bufferSize);
+        eventStore.setBatchMode(BatchMode.MEMSIZE);
+        eventStore.start();
+
+        // 保留了序列化数据，每条记录按照2倍大小计算
+        for (int i = 0; i < bufferSize / 2; i++) {
+            Event event = buildEvent("1", 1L, 1L + i);
+            event.setRawEntry(ByteString.copyFrom(new byte[1024]));
+            boolean result = eventStore.tryPut(event);
+            Assert.assertTrue(result);
+        }
+
+        boolean result = eventStore.tryPut(buildEvent("1", 1L, 1L + bufferSize));
+        Assert.assertFalse(result);
+
+        Events<Event> entrys = eventStore.tryGet(eventStore.getFirstPosition(), bufferSize);
+        Assert.assertEquals(bufferSize / 2, entrys.getEvents().size());
+        // ack时同样扣除序列化数据的大小
+        eventStore.cleanUntil(entrys.getPositionRange().getEnd());
+        result = eventStore.tryPut(buildEvent("1", 1L, 1L + bufferSize));
+        Assert.assertTrue(result);
+        eventStore.stop();
+    }
 }
@@ -3,11 +3,13 @@ package com.alibaba.otter.cancel.store.memory.buffer;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Assert;
 import org.junit.Test;
 
 import com.alibaba.otter.canal.protocol.position.Position;
+import com.alibaba.otter.canal.store.CanalEventStoreListener;
 import com.alibaba.otter.canal.store.CanalStoreException;
 import com.alibaba.otter.canal.store.helper.CanalEventUtils;
 import com.alibaba.otter.canal.store.memory.MemoryEventStoreWithBuffer;
@@ -92,6 +94,52 @@ public class MemoryEventStorePutAndGetTest extends MemoryEventStoreBase {
         eventStore.stop();
     }
 
+    @Test
+    public void testHasAvailable() {
+        MemoryEventStoreWithBuffer eventStore = new MemoryEventStoreWithBuffer();
+        eventStore.start();
+
+        Assert.assertFalse(eventStore.hasAvailable(null, 1));
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L, 1L + i)));
+        }
+
+        Assert.assertTrue(eventStore.hasAvailable(null, 5));
+        Assert.assertFalse(eventStore.hasAvailable(null, 6));
+        // 检查不会改变get的位置
+        Assert.assertTrue(eventStore.hasAvailable(null, 5));
+        Events<Event> entrys = eventStore.tryGet(null, 5);
+        Assert.assertTrue(entrys.getEvents().size() == 5);
+        Assert.assertFalse(eventStore.hasAvailable(entrys.getPositionRange().getEnd(), 1));
+
+        eventStore.stop();
+    }
+
+    @Test
+    public void testListener() {
+        MemoryEventStoreWithBuffer eventStore = new MemoryEventStoreWithBuffer();
+        eventStore.start();
+
+        final AtomicInteger count = new AtomicInteger(0);
+        CanalEventStoreListener listener = new CanalEventStoreListener() {
+
+            public void onAvailable() {
+                count.incrementAndGet();
+            }
+        };
+        eventStore.addListener(listener);
+        // 每次put成功回调一次
+        Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L, 1L)));
+        Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L, 2L)));
+        Assert.assertEquals(2, count.get());
+
+        eventStore.removeListener(listener);
+        Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L, 3L)));
+        Assert.assertEquals(2, count.get());
+
+        eventStore.stop();
+    }
+
     @Test
     public void testFullPutBatchGet() {
         int bufferSize = 16;
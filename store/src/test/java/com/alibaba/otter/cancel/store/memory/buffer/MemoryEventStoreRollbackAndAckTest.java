@@ -7,8 +7,10 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import com.alibaba.otter.canal.protocol.position.Position;
+import com.alibaba.otter.canal.store.CanalStoreException;
 import com.alibaba.otter.canal.store.helper.CanalEventUtils;
 import com.alibaba.otter.canal.store.memory.MemoryEventStoreWithBuffer;
+import com.alibaba.otter.canal.store.model.BatchMode;
 import com.alibaba.otter.canal.store.model.Event;
 import com.alibaba.otter.canal.store.model.Events;
 
@@ -138,4 +140,50 @@ public class MemoryEventStoreRollbackAndAckTest extends MemoryEventStoreBase {
         eventStore.stop();
     }
 
+    @Test
+    public void testAckBySeq() {
+        int bufferSize = 16;
+        MemoryEventStoreWithBuffer eventStore = new MemoryEventStoreWithBuffer(BatchMode.MEMSIZE);
+        eventStore.setBufferSize(bufferSize);
+        eventStore.setBufferMemUnit(10);
+        eventStore.start();
+
+        // 每条40，总共160，4条即满
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L, 1L + i, 40)));
+        }
+        Assert.assertFalse(eventStore.tryPut(buildEvent("1", 1L, 5L, 40)));
+
+        Events<Event> entrys1 = eventStore.tryGet(null, 4);
+        Assert.assertEquals(2, entrys1.getEvents().size());
+        Assert.assertEquals(1L, entrys1.getPositionRange().getEndSeq());
+
+        // 按照seq直接ack，释放2条的内存
+        eventStore.ack(entrys1.getPositionRange().getEnd(), entrys1.getPositionRange().getEndSeq());
+        Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L, 5L, 40)));
+        Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L, 6L, 40)));
+        Assert.assertFalse(eventStore.tryPut(buildEvent("1", 1L, 7L, 40)));
+
+        // seq和position不一致时，退化为按position查找
+        Events<Event> entrys2 = eventStore.tryGet(entrys1.getPositionRange().getEnd(), 4);
+        Assert.assertEquals(2, entrys2.getEvents().size());
+        eventStore.ack(entrys2.getPositionRange().getEnd(), entrys2.getPositionRange().getEndSeq() - 1);
+        Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L, 7L, 40)));
+        Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L, 8L, 40)));
+        Assert.assertFalse(eventStore.tryPut(buildEvent("1", 1L, 9L, 40)));
+
+        Events<Event> entrys3 = eventStore.tryGet(entrys2.getPositionRange().getEnd(), 4);
+        Assert.assertEquals(CanalEventUtils.createPosition(buildEvent("1", 1L, 5L, 40)), entrys3.getPositionRange()
+            .getStart());
+
+        try {
+            eventStore.ack(CanalEventUtils.createPosition(buildEvent("1", 1L, 100L)), 100L);
+            Assert.fail();
+        } catch (CanalStoreException e) {
+            // expect
+        }
+
+        eventStore.stop();
+    }
+
 }
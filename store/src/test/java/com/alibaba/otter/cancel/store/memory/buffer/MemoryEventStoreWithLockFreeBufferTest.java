@@ -0,0 +1,115 @@
+package com.alibaba.otter.cancel.store.memory.buffer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.protocol.CanalEntry.EventType;
+import com.alibaba.otter.canal.protocol.position.Position;
+import com.alibaba.otter.canal.store.helper.CanalEventUtils;
+import com.alibaba.otter.canal.store.memory.MemoryEventStoreWithLockFreeBuffer;
+import com.alibaba.otter.canal.store.memory.ring.WaitMode;
+import com.alibaba.otter.canal.store.model.BatchMode;
+import com.alibaba.otter.canal.store.model.Event;
+import com.alibaba.otter.canal.store.model.Events;
+
+/**
+ * 无锁版本store的put/get/ack/rollback测试
+ * 
+ * @author yzy
+ * @version 1.0.24
+ */
+public class MemoryEventStoreWithLockFreeBufferTest extends MemoryEventStoreBase {
+
+    @Test
+    public void testPutGetAndRollback() {
+        int bufferSize = 16;
+        MemoryEventStoreWithLockFreeBuffer eventStore = new MemoryEventStoreWithLockFreeBuffer();
+        eventStore.setBufferSize(bufferSize);
+        eventStore.start();
+
+        for (int i = 0; i < bufferSize; i++) {
+            Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L, 1L + i)));
+        }
+        Assert.assertFalse(eventStore.tryPut(buildEvent("1", 1L, 1L + bufferSize)));
+
+        Position first = eventStore.getFirstPosition();
+        Assert.assertEquals(first, CanalEventUtils.createPosition(buildEvent("1", 1L, 1L)));
+
+        Events<Event> events = eventStore.tryGet(first, bufferSize / 2);
+        Assert.assertEquals(bufferSize / 2, events.getEvents().size());
+
+        eventStore.rollback();
+        events = eventStore.tryGet(first, bufferSize);
+        Assert.assertEquals(bufferSize, events.getEvents().size());
+
+        // ack之后才能继续写入
+        eventStore.ack(events.getPositionRange().getEnd());
+        Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L, 1L + bufferSize)));
+        eventStore.stop();
+    }
+
+    @Test
+    public void testMemSizeAndBlockingGet() throws Exception {
+        final MemoryEventStoreWithLockFreeBuffer eventStore = new MemoryEventStoreWithLockFreeBuffer();
+        eventStore.setBufferSize(16);
+        eventStore.setBatchMode(BatchMode.MEMSIZE);
+        eventStore.setWaitMode(WaitMode.BLOCKING);
+        eventStore.start();
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final List<Event> result = new ArrayList<Event>();
+        Thread consumer = new Thread(new Runnable() {
+
+            public void run() {
+                try {
+                    result.addAll(eventStore.get(null, 2).getEvents());
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+                latch.countDown();
+            }
+        });
+        consumer.start();
+
+        eventStore.put(buildEvent("1", 1L, 1L, 1024));
+        sleep(100L);
+        Assert.assertEquals(1, latch.getCount()); // 1kb还不满足2kb的batch
+        eventStore.put(buildEvent("1", 2L, 2L, 1024));
+        Assert.assertTrue(latch.await(1000L, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(2, result.size());
+        eventStore.stop();
+    }
+
+    @Test
+    public void testDdlIsolation() {
+        MemoryEventStoreWithLockFreeBuffer eventStore = new MemoryEventStoreWithLockFreeBuffer();
+        eventStore.setBufferSize(16);
+        eventStore.setDdlIsolation(true);
+        eventStore.setWaitMode(WaitMode.YIELDING);
+        eventStore.start();
+
+        eventStore.tryPut(buildEvent("1", 1L, 1L));
+        eventStore.tryPut(buildEvent("1", 2L, 2L));
+        Event ddl = buildEvent("1", 3L, 3L);
+        ddl.setEntry(ddl.getEntry()
+            .toBuilder()
+            .setHeader(ddl.getEntry().getHeader().toBuilder().setEventType(EventType.ALTER))
+            .build());
+        eventStore.tryPut(ddl);
+        eventStore.tryPut(buildEvent("1", 4L, 4L));
+
+        Events<Event> events = eventStore.tryGet(null, 16);
+        Assert.assertEquals(2, events.getEvents().size());
+        events = eventStore.tryGet(events.getPositionRange().getEnd(), 16);
+        Assert.assertEquals(1, events.getEvents().size());
+        Assert.assertEquals(EventType.ALTER, events.getEvents().get(0).getEntry().getHeader().getEventType());
+        events = eventStore.tryGet(events.getPositionRange().getEnd(), 16);
+        Assert.assertEquals(1, events.getEvents().size());
+        eventStore.stop();
+    }
+}